@@ -0,0 +1,11 @@
+#!/bin/sh
+# Compiles the sources and runs the benchmarks.
+# Usage: ./run-benchmarks.sh [output.json]   (default: benchmark-results/results.json)
+# GSON_JAR can point at the Gson jar if it is not in the local Maven repository.
+set -e
+GSON_JAR="${GSON_JAR:-$HOME/.m2/repository/com/google/code/gson/gson/2.10.1/gson-2.10.1.jar}"
+OUT=out/benchmark
+rm -rf "$OUT"
+mkdir -p "$OUT"
+javac -encoding UTF-8 -d "$OUT" -cp "$GSON_JAR" $(find src -name '*.java')
+java -cp "$OUT:$GSON_JAR" benchmark.BenchmarkRunner "$@"
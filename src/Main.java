@@ -1,106 +1,633 @@
+import configuration.ConfigurationWatcher;
 import configuration.Configurations;
-import core.TicketPool;
+import core.CustomerClass;
+import core.EventRegistry;
+import core.TicketEvent;
+import core.TicketHolds;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import journal.JournalPosition;
+import journal.PoolSnapshot;
+import journal.PoolSnapshotter;
+import journal.TicketJournal;
 import logging.Logger;
+import metrics.FlightRecording;
+import metrics.MetricsRegistry;
+import metrics.PoolSampler;
+import metrics.SalesAnalytics;
+import server.TicketServer;
+import simulation.SaleSimulation;
 import threads.Customer;
+import threads.Pacer;
+import threads.PacingMode;
+import threads.ReleaseScheduler;
+import threads.TicketWorkers;
 import threads.Vendor;
+import threads.Workforce;
 import ui.CommandLineInterface;
+import util.TicketIdGenerator;
+import util.ZipfSampler;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Main class for running the Real-Time Event Ticketing System.
  * This class initializes the system, creates vendor and customer threads,
  * and listens for commands to manage the application lifecycle.
+ * Given command line options it runs headless instead: no prompts or commands, the run
+ * ends once the tickets are sold or the duration is over and a throughput summary is printed.
  */
 public class Main {
+    /**
+     * Path to the JSON file the metrics are written to at exit.
+     */
+    private static final String METRICS_FILE = "resources/metrics.json";
+
     public static void main(String[] args) throws InterruptedException {
-        // Clear the log file at the start of the application
-        Logger.clearLogFile();
+        // Start with an empty log file, keeping the previous one as a rolled file
+        Logger.rollLogFile();
+        // Run headless when command line options are given, otherwise ask for the configuration interactively
+        boolean headless = args.length > 0;
         // Initialize system configurations using the Command Line Interface
-        Configurations configurations= CommandLineInterface.configurations();
-        // Create a shared TicketPool instance with a maximum size defined in the configuration
-        TicketPool ticketPool=new TicketPool(configurations.getMaxPoolTickets());
-        // Array to hold vendor threads
-        Thread[] vendorThreads= new Thread[configurations.getNumberOfVendors()];
+        Configurations configurations = headless ? CommandLineInterface.configurations(args) : CommandLineInterface.configurations();
+        if (configurations == null) {
+            return; // Invalid arguments, the usage has been printed
+        }
+        if (headless) {
+            // The summary is the output of a headless run, log messages only go to the log file
+            Logger.setConsoleEnabled(false);
+        }
+        // Apply the configured log format and rotation before the sale logs anything
+        Logger.setFileOptions(configurations.getLogFormat(), configurations.getLogMaxFileMegabytes(),
+                configurations.getLogRotateMinutes(), configurations.getLogKeepFiles(), configurations.isLogCompress());
+        // Record the pool and logger events of the whole run when configured, keeping the events past their thresholds
+        FlightRecording.setThresholds(configurations.getJfrLockThresholdMicros(), configurations.getJfrWaitThresholdMicros(),
+                configurations.getJfrLogThresholdMicros(), configurations.getJfrHandoffThresholdMicros());
+        if (configurations.getJfrFile() != null) {
+            try {
+                FlightRecording.start(configurations.getJfrFile());
+            } catch (IOException e) {
+                System.err.println("Failed to start the flight recording: " + e.getMessage());
+            }
+        }
+        // Report how the ticket id generator keeps up with the clock, with the other metrics
+        TicketIdGenerator idGenerator = TicketIdGenerator.shared();
+        MetricsRegistry.gauge("ids.clockRegressions", idGenerator::getClockRegressions);
+        MetricsRegistry.gauge("ids.runAheadMillis", idGenerator::getRunAheadMillis);
+        // Move log output to a background writer if asynchronous logging is configured
+        if (configurations.isAsyncLogging()) {
+            Logger.enableAsync(configurations.getLogQueueCapacity(), configurations.getLogOverflowPolicy());
+        }
+        // Run the sale on a virtual clock when configured, to answer capacity questions quickly
+        if (configurations.isSimulation()) {
+            runSimulation(configurations);
+            return;
+        }
+        // Sell many events at once when configured, each from a pool of its own
+        if (configurations.getEventCount() > 1) {
+            runEvents(configurations, headless);
+            return;
+        }
+        // Create the shared ticket pool selected by the configuration, with its maximum size
+        TicketOperations ticketPool= TicketPoolFactory.create(configurations);
+        // Write every ticket added and sold to the journal if it is enabled
+        TicketJournal journal = openJournal(configurations);
+        PoolSnapshotter snapshotter = null;
+        long lastSequence = 0;
+        if (journal != null) {
+            // Resume a previous sale from its latest snapshot and the journal written after it
+            lastSequence = recoverPool(ticketPool, journal);
+            ticketPool.setPoolListener(journal);
+            snapshotter = new PoolSnapshotter(ticketPool, journal, TimeUnit.SECONDS.toMillis(configurations.getSnapshotIntervalSeconds()));
+            if (configurations.getSnapshotIntervalSeconds() > 0) {
+                snapshotter.start();
+            }
+        }
+        // Let customers hold tickets before buying them, returning the tickets of expired holds
+        TicketHolds holds = null;
+        if (configurations.getHoldTtlMillis() > 0) {
+            holds = new TicketHolds(ticketPool, configurations.getHoldTtlMillis());
+            holds.start();
+        }
+        // Let buyers outside the JVM buy from the pool over loopback TCP
+        TicketServer server = startServer(ticketPool, configurations.getServerPort());
+        // Sample the pool occupancy and rates once per second for the stats command
+        PoolSampler sampler = new PoolSampler(ticketPool, 1000);
+        sampler.start();
+        // Keep sliding-window sales rates and the busiest vendors and customers for the top command
+        SalesAnalytics analytics = new SalesAnalytics();
+        analytics.start();
+        // Executors running the vendors and customers on platform or virtual threads
+        TicketWorkers workers = new TicketWorkers(configurations.getExecutionMode());
+        // Timer threads driving every vendor instead of a thread each, with SCHEDULED pacing
+        ReleaseScheduler scheduler = createScheduler(configurations);
+        long start = System.nanoTime();
+        // Tickets recovered from an earlier run do not count towards this run's throughput
+        int addedBefore = ticketPool.getCounter();
+        int soldBefore = ticketPool.getSoldTicketCounter();
+
+        // Create and start the vendors, customers and VIP customers, each pacing at its configured rate;
+        // the workforce keeps track of them so a reloaded configuration can change their numbers and rates
+        Workforce workforce = new Workforce(ticketPool, configurations, workers, scheduler, holds, lastSequence);
+        workforce.start();
+        // Apply the configuration file again whenever it is written
+        ConfigurationWatcher watcher = startWatcher(configurations, workforce);
 
-        // Create and start vendor threads
-        for (int i = 0; i < configurations.getNumberOfVendors(); i++) {
-            vendorThreads[i]= new Thread(new Vendor(ticketPool, configurations.getReleaseRates(),configurations.getTotalTickets()));
-            vendorThreads[i].setName("Vendor " + i);
-            vendorThreads[i].start(); // Start the vendor thread
-            //System.out.println("Vendor "+ i +" : "+ vendorThreads[i].getName());
+        Thread commandListener = null;
+        if (headless) {
+            // Run until every ticket is sold or the duration is over, then stop like the q command
+            awaitEndOfRun(ticketPool, holds, configurations);
+            ticketPool.setStopFlag(true);
+            workers.interruptAll();
+        } else {
+            //Command listener thread to handle user commands during runtime
+            commandListener = new Thread(() -> {
+                Scanner scanner = new Scanner(System.in);
+                while (true) {
+                    String command = scanner.nextLine().trim();
+                    if (command.equalsIgnoreCase("q")) {
 
+                        // Signal all threads to stop by setting the stop flag in the ticket
+                        ticketPool.setStopFlag(true);
+                        System.out.println("Stop command received. Shutting down...");
+
+                        // Interrupt all vendor and customer threads to wake them up
+                        workers.interruptAll();
+                        break; // Exit the loop
+                    } else if (command.equalsIgnoreCase("stats")) {
+                        // Print the pool counters, rates and wait time percentiles
+                        System.out.println(MetricsRegistry.report());
+                    } else if (command.toLowerCase().startsWith("top")) {
+                        // Print the sales rates and the busiest vendors and customers
+                        printTop(analytics, command.substring(3));
+                    } else if (command.toLowerCase().startsWith("rate ")) {
+                        // Change the release rate of every vendor while the sale runs
+                        changeReleaseRate(scheduler, command.substring(5).trim());
+                    } else if (command.equalsIgnoreCase("reload")) {
+                        // Apply the configuration file to the running sale
+                        reloadConfiguration(workforce);
+                    } else if (command.toLowerCase().startsWith("jfr")) {
+                        // Start or stop a flight recording of the pool and logger events
+                        flightRecording(command.substring(3));
+                    }
+                }
+            });
+            commandListener.start(); // Start the command listener thread
         }
 
-        // Array to hold customer threads
-        Thread[] customerThreads= new Thread[configurations.getNumberOfCustomers()];
-        // Create and start customer threads
-        for (int i = 0; i < configurations.getNumberOfCustomers(); i++) {
-            customerThreads[i]= new Thread(new Customer(ticketPool, configurations.getReleaseRates(),configurations.getTotalTickets()));
-            customerThreads[i].setName("Customer "+ i);
-            customerThreads[i].start(); // Start the customer thread
-           // System.out.println("Customer "+ i +" : "+ customerThreads[i].getName());
+        // Wait for all vendor and customer threads to finish execution
+        workers.awaitTermination();
+        if (scheduler != null) {
+            scheduler.awaitTermination();
+        }
+        long elapsed = System.nanoTime() - start;
+        // Wait for the command listener thread to finish execution
+        if (commandListener != null) {
+            commandListener.join();
+        }
 
+        if (watcher != null) {
+            watcher.close();
         }
 
-        // The following section to add VIP customers with higher priority
-        for (int i = 0; i < configurations.getNumberOfCustomers(); i++) {
-            // Create a new thread for each VIP customer
-            customerThreads[i]= new Thread(new Customer(ticketPool, configurations.getReleaseRates(),configurations.getTotalTickets()));
-            // Set a custom name for the VIP customer thread for easier identification
-            customerThreads[i].setName("VIP Customer "+ i);
-            // Set the thread's priority to maximum to ensure it gets more CPU time
-            customerThreads[i].setPriority(Thread.MAX_PRIORITY);
-            // Start the VIP customer thread to begin ticket retrieval
-            customerThreads[i].start();
-            // Log the thread's name to the console for tracking
-            //System.out.println("Customer "+ i +" : "+ customerThreads[i].getName());
+        // Stop taking requests before the final snapshot sees the pool
+        if (server != null) {
+            server.close();
+        }
 
+        // Put the tickets still held back into the pool, before the final snapshot sees the pool
+        if (holds != null) {
+            holds.close();
         }
 
+        // Snapshot the final state so the next start replays nothing, then force the last journal records to disk
+        if (journal != null) {
+            snapshotter.stop();
+            try {
+                snapshotter.takeSnapshot();
+            } catch (IOException e) {
+                System.err.println("Failed to write the final snapshot: " + e.getMessage());
+            }
+            journal.close();
+        }
 
+        // Dump the metrics collected during the run
+        sampler.stop();
+        analytics.stop();
+        MetricsRegistry.writeJson(METRICS_FILE);
 
-        //Command listener thread to handle user commands during runtime
-        Thread commandListener = new Thread(() -> {
-            Scanner scanner = new Scanner(System.in);
-            while (true) {
-                String command = scanner.nextLine().trim();
-                if (command.equalsIgnoreCase("q")) {
+        // Write any queued log messages before exiting
+        Logger.shutdown();
 
-                    // Signal all threads to stop by setting the stop flag in the ticket
-                    ticketPool.setStopFlag(true);
-                    System.out.println("Stop command received. Shutting down...");
+        if (headless) {
+            printSummary(ticketPool, elapsed, addedBefore, soldBefore);
+        }
+        stopFlightRecording();
 
-                    // Interrupt all threads to wake them up
-                    for (Thread vendor : vendorThreads) {
-                        vendor.interrupt();
-                    }
+        // Print termination message
+        System.out.println("All threads terminated. Exiting application.");
+    }
 
-                    // Interrupt all customer threads to wake them up
-                    for (Thread customer : customerThreads) {
-                        customer.interrupt();
+    /**
+     * Runs many on-sales at once from an {@link EventRegistry}. Every event sells the configured
+     * tickets from a pool of the configured size and gets at least one vendor, one customer and
+     * one VIP customer; the vendors beyond one per event are dealt out in turn, and the customers
+     * beyond one per event go to events drawn from a Zipf distribution, so a few events are in
+     * high demand. Sold-out events are evicted as the run goes on, and the run ends once every
+     * event is sold out, the duration is over or, interactively, on the q command.
+     * The journal, ticket holds and the network server only apply to a single event.
+     *
+     * @param configurations the configuration of the run
+     * @param headless       true to run without commands and print a summary at the end
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    private static void runEvents(Configurations configurations, boolean headless) throws InterruptedException {
+        if (configurations.isJournalEnabled() || configurations.getHoldTtlMillis() > 0 || configurations.getServerPort() > 0) {
+            System.err.println("The journal, ticket holds and the network server only apply to a single event and are off for this run.");
+        }
+        int eventCount = configurations.getEventCount();
+        EventRegistry registry = EventRegistry.create(configurations);
+        ZipfSampler demand = new ZipfSampler(eventCount, configurations.getEventSkew());
+        TicketWorkers workers = new TicketWorkers(configurations.getExecutionMode());
+        ReleaseScheduler scheduler = createScheduler(configurations);
+        long start = System.nanoTime();
+        // Keep sliding-window sales rates and the busiest vendors and customers over every event
+        SalesAnalytics analytics = new SalesAnalytics();
+        analytics.start();
+
+        // Every event gets one vendor, and the extra vendors are dealt out over the events in turn
+        for (int i = 0; i < Math.max(configurations.getNumberOfVendors(), eventCount); i++) {
+            TicketEvent event = registry.event(eventId(i % eventCount)); // Opened on first use
+            Pacer pacer = Pacer.create(configurations.getPacingMode(), configurations.getReleaseRates());
+            startVendor(workers, scheduler, new Vendor(event, i / eventCount, pacer, configurations.getReleaseBatchSize()), configurations);
+        }
+        // Every event gets one customer of each class, and the extra customers follow the demand
+        for (CustomerClass customerClass : CustomerClass.values()) {
+            for (int i = 0; i < Math.max(configurations.getNumberOfCustomers(), eventCount); i++) {
+                TicketEvent event = registry.event(eventId(i < eventCount ? i : demand.sample()));
+                Pacer pacer = Pacer.create(configurations.getPacingMode(), configurations.getRetrievalRate());
+                Customer customer = new Customer(event, pacer, configurations.getRetrievalBatchSize(), customerClass);
+                if (customerClass == CustomerClass.VIP) {
+                    workers.startVipCustomer(customer);
+                } else {
+                    workers.startCustomer(customer);
+                }
+            }
+        }
+
+        AtomicBoolean stopRequested = new AtomicBoolean(false);
+        Thread commandListener = null;
+        if (!headless) {
+            // Command listener thread to handle user commands during runtime
+            commandListener = new Thread(() -> {
+                Scanner scanner = new Scanner(System.in);
+                while (!stopRequested.get()) {
+                    String command = scanner.nextLine().trim();
+                    if (command.equalsIgnoreCase("q")) {
+                        System.out.println("Stop command received. Shutting down...");
+                        stopRequested.set(true);
+                    } else if (command.equalsIgnoreCase("stats")) {
+                        // Print the counters of every event, the open events and the event lifetimes
+                        System.out.println(MetricsRegistry.report());
+                    } else if (command.toLowerCase().startsWith("top")) {
+                        printTop(analytics, command.substring(3));
+                    } else if (command.toLowerCase().startsWith("rate ")) {
+                        changeReleaseRate(scheduler, command.substring(5).trim());
+                    } else if (command.toLowerCase().startsWith("jfr")) {
+                        flightRecording(command.substring(3));
                     }
-                    break; // Exit the loop
                 }
+            });
+            commandListener.setDaemon(true); // Do not keep the process alive once every event is sold out
+            commandListener.start();
+        }
+
+        // Evict the sold-out events until none is left, the duration is over or q is typed
+        long deadline = start + TimeUnit.SECONDS.toNanos(configurations.getDurationSeconds());
+        while (registry.size() > 0 && !stopRequested.get()) {
+            if (headless && configurations.getDurationSeconds() > 0 && System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            registry.evictFinished();
+            Thread.sleep(10);
+        }
+        stopRequested.set(true);
+        registry.stopAll();
+        workers.interruptAll();
+        workers.awaitTermination();
+        if (scheduler != null) {
+            scheduler.awaitTermination();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        // Dump the metrics collected during the run and write any queued log messages
+        analytics.stop();
+        MetricsRegistry.writeJson(METRICS_FILE);
+        Logger.shutdown();
+
+        if (headless) {
+            double seconds = elapsed / 1e9;
+            long sold = MetricsRegistry.counter("pool.tickets.sold").sum();
+            System.out.println("---- Run summary ----");
+            System.out.printf("%-32s %.3f s%n", "duration", seconds);
+            System.out.printf("%-32s %d%n", "events", eventCount);
+            System.out.printf("%-32s %d%n", "events sold out", MetricsRegistry.counter("events.evicted").sum());
+            System.out.printf("%-32s %d%n", "tickets sold", sold);
+            System.out.printf("%-32s %.1f tickets/s%n", "sales throughput", sold / seconds);
+            System.out.println(MetricsRegistry.report());
+        }
+        stopFlightRecording();
+        System.out.println("All threads terminated. Exiting application.");
+    }
+
+    /**
+     * Runs the sale as a {@link SaleSimulation} on a virtual clock and prints the same summary
+     * and metrics as a headless run, with the duration and rates in simulated time.
+     * The journal, ticket holds, the network server and many events are not simulated.
+     *
+     * @param configurations the configuration of the run
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    private static void runSimulation(Configurations configurations) throws InterruptedException {
+        if (configurations.isJournalEnabled() || configurations.getHoldTtlMillis() > 0
+                || configurations.getServerPort() > 0 || configurations.getEventCount() > 1) {
+            System.err.println("The journal, ticket holds, the network server and many events are not simulated and are off for this run.");
+        }
+        SaleSimulation simulation = new SaleSimulation(configurations, configurations.getSimulationSeed());
+        long start = System.nanoTime();
+        long simulated = simulation.run();
+        long wall = System.nanoTime() - start;
+
+        // Dump the metrics collected during the run and write any queued log messages
+        MetricsRegistry.writeJson(METRICS_FILE);
+        Logger.shutdown();
+
+        System.out.println("---- Simulation ----");
+        System.out.printf("%-32s %d%n", "seed", configurations.getSimulationSeed());
+        System.out.printf("%-32s %d%n", "steps", simulation.getStepCount());
+        System.out.printf("%-32s %.3f s%n", "wall time", wall / 1e9);
+        System.out.printf("%-32s %.0fx%n", "speed-up", simulated / (double) wall);
+        printSummary(simulation.getTicketPool(), simulated, 0, 0);
+        stopFlightRecording();
+        System.out.println("Simulation finished. Exiting application.");
+    }
+
+    /**
+     * Gets the id of the event of a given rank in a multi-event run.
+     *
+     * @param rank the rank of the event, 0 for the most popular
+     * @return the event id
+     */
+    private static String eventId(int rank) {
+        return "event-" + rank;
+    }
+
+    /**
+     * Starts watching the configuration file if it is enabled, reloading it on every change.
+     *
+     * @param configurations the configuration of the run
+     * @param workforce      the vendors and customers a reload applies to
+     * @return the watcher, or null if watching is disabled or the file cannot be watched
+     */
+    private static ConfigurationWatcher startWatcher(Configurations configurations, Workforce workforce) {
+        if (!configurations.isWatchConfiguration()) {
+            return null;
+        }
+        try {
+            ConfigurationWatcher watcher = new ConfigurationWatcher(Paths.get(CommandLineInterface.getConfigurationFile()),
+                    () -> reloadConfiguration(workforce));
+            watcher.start();
+            return watcher;
+        } catch (IOException e) {
+            System.err.println("Cannot watch the configuration file: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Reads the configuration file again and applies it to the running sale, for the reload
+     * command and the configuration watcher. An invalid file leaves the sale unchanged.
+     *
+     * @param workforce the vendors and customers the configuration applies to
+     */
+    private static void reloadConfiguration(Workforce workforce) {
+        try {
+            System.out.println(workforce.apply(CommandLineInterface.reloadConfiguration()));
+        } catch (IllegalArgumentException e) {
+            System.out.println("Configuration not reloaded: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Creates the release scheduler driving the vendors if the pacing mode is SCHEDULED.
+     *
+     * @param configurations the configuration of the run
+     * @return the scheduler, or null if every vendor runs on a thread of its own
+     */
+    private static ReleaseScheduler createScheduler(Configurations configurations) {
+        if (configurations.getPacingMode() != PacingMode.SCHEDULED) {
+            return null;
+        }
+        return new ReleaseScheduler(configurations.getSchedulerThreads());
+    }
+
+    /**
+     * Starts a vendor on the release scheduler if there is one, otherwise on a thread of its own.
+     *
+     * @param workers        the executors running the vendor threads
+     * @param scheduler      the release scheduler, or null
+     * @param vendor         the vendor to start
+     * @param configurations the configuration giving the release rate and burst
+     */
+    private static void startVendor(TicketWorkers workers, ReleaseScheduler scheduler, Vendor vendor, Configurations configurations) {
+        if (scheduler != null) {
+            scheduler.schedule(vendor, configurations.getReleaseRates(), configurations.getReleaseBurst());
+        } else {
+            workers.startVendor(vendor);
+        }
+    }
+
+    /**
+     * Handles the rate command, changing the release rate of every scheduled vendor.
+     *
+     * @param scheduler the release scheduler, or null if vendors pace themselves
+     * @param rate      the new rate in tickets per second per vendor, as typed
+     */
+    private static void changeReleaseRate(ReleaseScheduler scheduler, String rate) {
+        if (scheduler == null) {
+            System.out.println("Release rates can only be changed while running with SCHEDULED pacing.");
+            return;
+        }
+        try {
+            double ratePerSecond = Double.parseDouble(rate);
+            int changed = scheduler.setRate(ratePerSecond);
+            System.out.println("Release rate set to " + ratePerSecond + " tickets/s for " + changed + " vendors.");
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: rate <tickets per second per vendor>");
+        }
+    }
+
+    /**
+     * Handles the top command: {@code top [n]} prints the tickets added and sold per second over
+     * the last 1, 10 and 60 seconds and the n busiest vendors and customers, 10 by default.
+     *
+     * @param analytics the analytics of the run
+     * @param arguments the words after top, as typed
+     */
+    private static void printTop(SalesAnalytics analytics, String arguments) {
+        try {
+            int limit = arguments.isBlank() ? 10 : Integer.parseInt(arguments.trim());
+            System.out.println(analytics.top(Math.max(1, limit)));
+        } catch (NumberFormatException e) {
+            System.out.println("Usage: top [number of vendors and customers]");
+        }
+    }
+
+    /**
+     * Handles the jfr command: {@code jfr start [file]} starts a flight recording of the pool and
+     * logger events, by default to {@link FlightRecording#DEFAULT_FILE}, and {@code jfr stop}
+     * stops it and writes the file.
+     *
+     * @param arguments the words after jfr, as typed
+     */
+    private static void flightRecording(String arguments) {
+        String[] words = arguments.trim().split("\\s+", 2);
+        try {
+            if (words[0].equalsIgnoreCase("start")) {
+                Path path = FlightRecording.start(words.length > 1 ? words[1] : null);
+                System.out.println("Flight recording started, it is written to " + path + " when stopped.");
+            } else if (words[0].equalsIgnoreCase("stop")) {
+                System.out.println("Flight recording written to " + FlightRecording.stop() + ".");
+            } else {
+                System.out.println("Usage: jfr start [file] | jfr stop");
             }
-        });
-        commandListener.start(); // Start the command listener thread
+        } catch (IOException | IllegalStateException e) {
+            System.out.println("Flight recording not changed: " + e.getMessage());
+        }
+    }
 
-        // Wait for all vendor threads to finish execution
-        for (Thread vendor: vendorThreads) {
-            vendor.join();
+    /**
+     * Stops the flight recording if one is still running at the end of a run and writes its file.
+     */
+    private static void stopFlightRecording() {
+        if (FlightRecording.isRecording()) {
+            System.out.println("Flight recording written to " + FlightRecording.stop() + ".");
+        }
+    }
+
+    /**
+     * Starts the network server over the pool if a port is configured.
+     *
+     * @param ticketPool the pool buyers buy from
+     * @param port       the loopback port to listen on, 0 for no server
+     * @return the started server, or null if none is configured or the port cannot be opened
+     */
+    private static TicketServer startServer(TicketOperations ticketPool, int port) {
+        if (port == 0) {
+            return null;
+        }
+        try {
+            TicketServer server = new TicketServer(ticketPool, port);
+            server.start();
+            System.out.println("Ticket server listening on loopback port " + server.getPort() + ".");
+            return server;
+        } catch (IOException e) {
+            System.err.println("Failed to start the ticket server on port " + port + ": " + e.getMessage());
+            return null;
+        }
+    }
 
+    /**
+     * Opens the journal configured for the run.
+     *
+     * @param configurations the configuration of the run
+     * @return the journal, or null if it is disabled or cannot be opened
+     */
+    private static TicketJournal openJournal(Configurations configurations) {
+        if (!configurations.isJournalEnabled()) {
+            return null;
         }
+        try {
+            TicketJournal journal = TicketJournal.open(new File(configurations.getJournalDirectory()),
+                    configurations.getJournalDurability(), configurations.getJournalFlushMillis());
+            MetricsRegistry.gauge("journal.records", journal::getNextIndex);
+            MetricsRegistry.gauge("journal.durableRecords", journal::getDurableIndex);
+            return journal;
+        } catch (IOException e) {
+            System.err.println("Failed to open the journal, running without it: " + e.getMessage());
+            return null;
+        }
+    }
 
-        // Wait for all customer threads to finish execution
-        for (Thread customer: customerThreads) {
-            customer.join();
+    /**
+     * Loads the pool with the tickets and counters recovered from the journal.
+     *
+     * @param ticketPool the empty pool
+     * @param journal    the journal of the previous runs
+     * @return the highest ticket sequence number released before, 0 for a new journal
+     */
+    private static long recoverPool(TicketOperations ticketPool, TicketJournal journal) {
+        long start = System.nanoTime();
+        try {
+            PoolSnapshot recovered = PoolSnapshot.recover(journal.getDirectory());
+            JournalPosition end = recovered.getPosition();
+            journal.resume(end);
+            int loaded = ticketPool.restore(recovered.getTicketIds(), (int) end.getAdded(), (int) end.getSold());
+            if (end.getIndex() > 0) {
+                System.out.printf("Recovered %d tickets in the pool (%d added, %d sold) in %d ms%n", loaded,
+                        end.getAdded(), end.getSold(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+            if (loaded < recovered.getTicketIds().length) {
+                System.err.println((recovered.getTicketIds().length - loaded) + " recovered tickets do not fit in the pool and were dropped");
+            }
+            return end.getLastSequence();
+        } catch (IOException e) {
+            System.err.println("Failed to recover the pool from the journal, starting empty: " + e.getMessage());
+            return 0;
+        }
+    }
 
+    /**
+     * Waits until every ticket of a headless run is sold or its duration is over.
+     * A held ticket is not sold until its hold is confirmed, as it may still come back.
+     *
+     * @param ticketPool     the pool the tickets are sold from
+     * @param holds          the holds customers reserve tickets through, null if they buy directly
+     * @param configurations the configuration holding the ticket count and duration
+     * @throws InterruptedException if the main thread is interrupted
+     */
+    private static void awaitEndOfRun(TicketOperations ticketPool, TicketHolds holds, Configurations configurations) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(configurations.getDurationSeconds());
+        while (ticketPool.getSoldTicketCounter() - (holds == null ? 0 : holds.getHeldCount()) < configurations.getTotalTickets()) {
+            if (configurations.getDurationSeconds() > 0 && System.nanoTime() - deadline >= 0) {
+                break;
+            }
+            Thread.sleep(10);
         }
-        // Wait for the command listener thread to finish execution
-        commandListener.join();
+    }
 
-        // Print termination message
-        System.out.println("All threads terminated. Exiting application.");
+    /**
+     * Prints the throughput summary of a headless run followed by the metrics report.
+     *
+     * @param ticketPool   the pool the tickets were sold from
+     * @param elapsedNanos how long the vendors and customers ran, in nanoseconds
+     * @param addedBefore  tickets added before the run, recovered from the journal
+     * @param soldBefore   tickets sold before the run, recovered from the journal
+     */
+    private static void printSummary(TicketOperations ticketPool, long elapsedNanos, int addedBefore, int soldBefore) {
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("---- Run summary ----");
+        System.out.printf("%-32s %.3f s%n", "duration", seconds);
+        System.out.printf("%-32s %d%n", "tickets added", ticketPool.getCounter());
+        System.out.printf("%-32s %d%n", "tickets sold", ticketPool.getSoldTicketCounter());
+        System.out.printf("%-32s %.1f tickets/s%n", "release throughput", (ticketPool.getCounter() - addedBefore) / seconds);
+        System.out.printf("%-32s %.1f tickets/s%n", "sales throughput", (ticketPool.getSoldTicketCounter() - soldBefore) / seconds);
+        System.out.println(MetricsRegistry.report());
     }
 }
\ No newline at end of file
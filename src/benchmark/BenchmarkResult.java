@@ -0,0 +1,55 @@
+package benchmark;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BenchmarkResult class holds the outcome of one benchmark with one set of
+ * parameters. Results are serialized to JSON so runs of different builds can be diffed.
+ */
+public class BenchmarkResult {
+
+    private final String benchmark; // The name of the benchmark
+    private final Map<String, String> params; // The parameters the benchmark ran with
+    private final double score; // The mean of the measured iterations
+    private final double scoreError; // The standard deviation of the measured iterations
+    private final String unit; // The unit of the score
+    private final List<Double> iterations; // The score of every measured iteration
+
+    /**
+     * Constructor to create a result from the scores of the measured iterations.
+     *
+     * @param benchmark  the name of the benchmark
+     * @param params     the parameters the benchmark ran with
+     * @param unit       the unit of the score
+     * @param iterations the score of every measured iteration
+     */
+    public BenchmarkResult(String benchmark, Map<String, String> params, String unit, List<Double> iterations) {
+        this.benchmark = benchmark;
+        this.params = new LinkedHashMap<>(params);
+        this.unit = unit;
+        this.iterations = iterations;
+
+        double sum = 0;
+        for (double value : iterations) {
+            sum += value;
+        }
+        this.score = sum / iterations.size();
+
+        double squares = 0;
+        for (double value : iterations) {
+            squares += (value - score) * (value - score);
+        }
+        this.scoreError = iterations.size() > 1 ? Math.sqrt(squares / (iterations.size() - 1)) : 0;
+    }
+
+    /**
+     * Converts the result to a single line for the console.
+     * @return a string representing the result
+     */
+    @Override
+    public String toString() {
+        return String.format("%-28s %-52s %16.2f +- %-12.2f %s", benchmark, params, score, scoreError, unit);
+    }
+}
@@ -0,0 +1,308 @@
+package benchmark;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import core.PoolType;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import logging.Logger;
+import logging.OverflowPolicy;
+import threads.Vendor;
+import util.Ticket;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The BenchmarkRunner class runs the benchmarks for the ticket pool and logger hot paths
+ * and writes the results as JSON, so the output of two builds can be diffed.
+ * It covers producer/consumer throughput, single operation latency with and without
+ * logging, the bytes allocated and garbage collections per ticket sold, and the heap
+ * retained per ticket held in a full pool.
+ */
+public class BenchmarkRunner {
+
+    /**
+     * Path of the JSON file the results are written to when no path is given.
+     */
+    private static final String DEFAULT_OUTPUT = "benchmark-results/results.json";
+
+    /**
+     * Vendor and customer thread counts for the throughput benchmark.
+     */
+    private static final int[][] VENDOR_CUSTOMER_RATIOS = {{2, 2}, {1, 4}, {4, 1}};
+
+    /**
+     * Pool capacities for the throughput benchmark.
+     */
+    private static final int[] MAX_POOL_TICKETS = {16, 1024};
+
+    /**
+     * Number of measured iterations of every benchmark.
+     */
+    private static final int ITERATIONS = 3;
+
+    /**
+     * Operations per latency iteration.
+     */
+    private static final int LATENCY_OPERATIONS = 10_000;
+
+    /**
+     * Tickets sold per allocation iteration.
+     */
+    private static final int ALLOCATION_TICKETS = 500_000;
+
+    /**
+     * Tickets held by the pool in the footprint benchmark.
+     */
+    private static final int FOOTPRINT_TICKETS = 1_000_000;
+
+    /**
+     * Gson instance for writing the results with pretty printing enabled.
+     */
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Logging modes the latency benchmark runs with.
+     */
+    private enum LoggingMode { OFF, SYNC, ASYNC }
+
+    /**
+     * Runs every benchmark and writes the results.
+     *
+     * @param args optional path of the JSON output file
+     * @throws Exception if a benchmark fails or the results cannot be written
+     */
+    public static void main(String[] args) throws Exception {
+        String output = args.length > 0 ? args[0] : DEFAULT_OUTPUT;
+        Logger.setConsoleEnabled(false);
+
+        List<BenchmarkResult> results = new ArrayList<>();
+        throughput(results);
+        latency(results);
+        allocation(results);
+        footprint(results);
+
+        Logger.setEnabled(true);
+        write(output, results);
+        System.out.println("Results written to " + output);
+    }
+
+    /**
+     * Measures tickets sold per second for every pool type, vendor:customer ratio and pool capacity.
+     *
+     * @param results the list the results are added to
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static void throughput(List<BenchmarkResult> results) throws InterruptedException {
+        Logger.setEnabled(false);
+        for (PoolType poolType : PoolType.values()) {
+            for (int[] ratio : VENDOR_CUSTOMER_RATIOS) {
+                for (int maxPoolTickets : MAX_POOL_TICKETS) {
+                    List<Double> scores = new ArrayList<>();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        TicketOperations pool = TicketPoolFactory.create(poolType, maxPoolTickets);
+                        scores.add(PoolWorkload.ticketsPerSecond(pool, ratio[0], ratio[1], 500, 1000));
+                    }
+                    Map<String, String> params = new LinkedHashMap<>();
+                    params.put("poolType", poolType.name());
+                    params.put("vendors", String.valueOf(ratio[0]));
+                    params.put("customers", String.valueOf(ratio[1]));
+                    params.put("maxPoolTickets", String.valueOf(maxPoolTickets));
+                    report(results, new BenchmarkResult("pool.throughput", params, "tickets/s", scores));
+                }
+            }
+        }
+    }
+
+    /**
+     * Measures the average time of a single addTicket and removeTicket call, on one thread
+     * so the pool never blocks, with logging off, synchronous and asynchronous.
+     *
+     * @param results the list the results are added to
+     */
+    private static void latency(List<BenchmarkResult> results) {
+        for (PoolType poolType : PoolType.values()) {
+            for (LoggingMode mode : LoggingMode.values()) {
+                List<Double> addScores = new ArrayList<>();
+                List<Double> removeScores = new ArrayList<>();
+                for (int i = -1; i < ITERATIONS; i++) { // The first pass is a warmup
+                    setLogging(mode);
+                    TicketOperations pool = TicketPoolFactory.create(poolType, LATENCY_OPERATIONS);
+                    Ticket ticket = new Ticket(0, 0);
+
+                    long start = System.nanoTime();
+                    for (int op = 0; op < LATENCY_OPERATIONS; op++) {
+                        pool.addTicket(ticket);
+                    }
+                    long added = System.nanoTime();
+                    for (int op = 0; op < LATENCY_OPERATIONS; op++) {
+                        pool.removeTicket();
+                    }
+                    long removed = System.nanoTime();
+                    Logger.shutdown();
+
+                    if (i >= 0) {
+                        addScores.add((added - start) / (double) LATENCY_OPERATIONS);
+                        removeScores.add((removed - added) / (double) LATENCY_OPERATIONS);
+                    }
+                }
+                Map<String, String> params = new LinkedHashMap<>();
+                params.put("poolType", poolType.name());
+                params.put("logging", mode.name());
+                report(results, new BenchmarkResult("pool.addTicket.latency", params, "ns/op", addScores));
+                report(results, new BenchmarkResult("pool.removeTicket.latency", params, "ns/op", removeScores));
+            }
+        }
+        Logger.setEnabled(false);
+    }
+
+    /**
+     * Measures the bytes allocated and the garbage collections per ticket sold, releasing
+     * tickets the way Vendor.run does and selling them through the pool on one thread.
+     *
+     * @param results the list the results are added to
+     */
+    private static void allocation(List<BenchmarkResult> results) {
+        Logger.setEnabled(false);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().threadId();
+        for (PoolType poolType : PoolType.values()) {
+            List<Double> bytes = new ArrayList<>();
+            List<Double> collections = new ArrayList<>();
+            for (int i = -1; i < ITERATIONS; i++) { // The first pass is a warmup
+                TicketOperations pool = TicketPoolFactory.create(poolType, 1024);
+                Vendor vendor = new Vendor(pool, 0, ALLOCATION_TICKETS);
+
+                long gcBefore = gcCount();
+                long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                for (int op = 0; op < ALLOCATION_TICKETS; op++) {
+                    pool.addTicketId(vendor.nextTicketId());
+                    pool.removeTicket();
+                }
+                long allocated = threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                long gcs = gcCount() - gcBefore;
+
+                if (i >= 0) {
+                    bytes.add(allocated / (double) ALLOCATION_TICKETS);
+                    collections.add(gcs * 1_000_000.0 / ALLOCATION_TICKETS);
+                }
+            }
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("poolType", poolType.name());
+            report(results, new BenchmarkResult("pool.allocation.bytesPerTicket", params, "B/ticket", bytes));
+            report(results, new BenchmarkResult("pool.allocation.gcCount", params, "collections/1M tickets", collections));
+        }
+    }
+
+    /**
+     * Measures the heap retained per ticket held in a full pool, releasing the tickets the
+     * way Vendor.run does. The heap is measured after a garbage collection before and
+     * after the pool is filled, so the figure includes the pool's own storage.
+     *
+     * @param results the list the results are added to
+     */
+    private static void footprint(List<BenchmarkResult> results) {
+        Logger.setEnabled(false);
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (PoolType poolType : PoolType.values()) {
+            List<Double> bytes = new ArrayList<>();
+            for (int i = 0; i < ITERATIONS; i++) {
+                long before = usedHeapAfterGc(memory);
+                TicketOperations pool = TicketPoolFactory.create(poolType, FOOTPRINT_TICKETS);
+                Vendor vendor = new Vendor(pool, 0, FOOTPRINT_TICKETS);
+                for (int op = 0; op < FOOTPRINT_TICKETS; op++) {
+                    pool.addTicketId(vendor.nextTicketId());
+                }
+                long after = usedHeapAfterGc(memory);
+                bytes.add((after - before) / (double) FOOTPRINT_TICKETS);
+                Reference.reachabilityFence(pool); // Keep the pool alive until it is measured
+            }
+            Map<String, String> params = new LinkedHashMap<>();
+            params.put("poolType", poolType.name());
+            report(results, new BenchmarkResult("pool.footprint.bytesPerTicket", params, "B/ticket", bytes));
+        }
+    }
+
+    /**
+     * Runs the garbage collector and reads the used heap.
+     *
+     * @param memory the memory bean to read the heap usage from
+     * @return the bytes of heap in use after the collection
+     */
+    private static long usedHeapAfterGc(MemoryMXBean memory) {
+        System.gc();
+        System.gc();
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Switches the logger to the given mode.
+     *
+     * @param mode the logging mode to use
+     */
+    private static void setLogging(LoggingMode mode) {
+        Logger.shutdown();
+        Logger.setEnabled(mode != LoggingMode.OFF);
+        if (mode == LoggingMode.ASYNC) {
+            Logger.enableAsync(8192, OverflowPolicy.BLOCK);
+        }
+    }
+
+    /**
+     * Sums the collection counts of all garbage collectors.
+     *
+     * @return the total number of garbage collections so far
+     */
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    /**
+     * Adds a result to the list and prints it.
+     *
+     * @param results the list the result is added to
+     * @param result  the result to add
+     */
+    private static void report(List<BenchmarkResult> results, BenchmarkResult result) {
+        results.add(result);
+        System.out.println(result);
+    }
+
+    /**
+     * Writes the results together with the JVM they were measured on to a JSON file.
+     *
+     * @param output  path of the JSON file
+     * @param results the results to write
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(String output, List<BenchmarkResult> results) throws IOException {
+        File file = new File(output);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        Map<String, Object> document = new LinkedHashMap<>();
+        document.put("timestamp", LocalDateTime.now().toString());
+        document.put("jvm", System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+        document.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        document.put("results", results);
+        try (Writer writer = new FileWriter(file)) {
+            gson.toJson(document, writer);
+        }
+    }
+}
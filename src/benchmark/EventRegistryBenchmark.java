@@ -0,0 +1,123 @@
+package benchmark;
+
+import configuration.Configurations;
+import core.EventRegistry;
+import core.PoolType;
+import core.TicketEvent;
+import logging.Logger;
+import metrics.MetricsRegistry;
+import util.ZipfSampler;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The EventRegistryBenchmark class measures what an event costs in an {@link EventRegistry}:
+ * the heap retained per open event for each pool type, and the rate at which threads look up
+ * events when their demand follows a Zipf distribution, so most lookups hit a few hot events.
+ * The heap figures are differences of the heap used after a full collection, so they are
+ * most exact with {@code -XX:+UseSerialGC}.
+ * <p>
+ * Usage: {@code EventRegistryBenchmark [events] [poolSize] [threads] [skew]}
+ */
+public class EventRegistryBenchmark {
+
+    /**
+     * How long each lookup measurement runs, in milliseconds.
+     */
+    private static final long MEASURE_MILLIS = 3000;
+
+    /**
+     * Opens the events with every pool type and prints one line per type.
+     *
+     * @param args the number of events, pool size per event, lookup threads and Zipf exponent
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int events = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        int poolSize = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        double skew = args.length > 3 ? Double.parseDouble(args[3]) : 1.0;
+        Logger.setEnabled(false);
+
+        ZipfSampler demand = new ZipfSampler(events, skew);
+        System.out.printf("events=%d poolSize=%d threads=%d skew=%.2f, hottest event draws %.1f%% of demand%n",
+                events, poolSize, threads, skew, demand.probability(0) * 100);
+        System.out.printf("%-14s %14s %14s %18s%n", "pool", "open ms", "bytes/event", "lookups/sec");
+        for (PoolType poolType : PoolType.values()) {
+            Configurations defaults = new Configurations();
+            defaults.setPoolType(poolType);
+            defaults.setShardCount(4);
+            defaults.setSeatSections(1);
+            defaults.setMaxPoolTickets(poolSize);
+            defaults.setTotalTickets(poolSize);
+
+            // Creating the registry replaces the gauge of the last one, which can then be collected
+            EventRegistry registry = EventRegistry.create(defaults);
+            long heapBefore = usedHeap();
+            long start = System.nanoTime();
+            for (int i = 0; i < events; i++) {
+                registry.event("event-" + i);
+            }
+            double openMillis = (System.nanoTime() - start) / 1e6;
+            long bytesPerEvent = (usedHeap() - heapBefore) / events;
+
+            double lookups = lookupsPerSecond(registry, demand, threads);
+            System.out.printf("%-14s %14.1f %14d %18.0f%n", poolType, openMillis, bytesPerEvent, lookups);
+            registry.stopAll();
+            MetricsRegistry.reset();
+        }
+    }
+
+    /**
+     * Looks events up from several threads, each drawing the event from the demand distribution.
+     *
+     * @param registry the registry holding the events
+     * @param demand   the distribution of the events looked up
+     * @param threads  the number of threads looking events up
+     * @return the number of lookups per second over all threads
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static double lookupsPerSecond(EventRegistry registry, ZipfSampler demand, int threads) throws InterruptedException {
+        LongAdder lookups = new LongAdder();
+        List<Thread> workers = new ArrayList<>();
+        long end = System.nanoTime() + MEASURE_MILLIS * 1_000_000;
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                long count = 0;
+                int sum = 0;
+                while (System.nanoTime() < end) {
+                    TicketEvent event = registry.event("event-" + demand.sample());
+                    sum += event.getTicketPool().getPoolSize(); // Touch the pool as a customer would
+                    count++;
+                }
+                lookups.add(count);
+                if (sum == -1) {
+                    System.out.println(); // Keep the pool reads from being optimised away
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        return lookups.sum() / (MEASURE_MILLIS / 1000.0);
+    }
+
+    /**
+     * Gets the heap in use after a full collection.
+     *
+     * @return the used heap in bytes
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+}
@@ -0,0 +1,119 @@
+package benchmark;
+
+import core.PoolType;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import logging.Logger;
+import threads.Customer;
+import threads.ExecutionMode;
+import threads.TicketWorkers;
+import threads.Vendor;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * The ExecutionModeComparison class runs a simulated on-sale with a large number of
+ * customers and reports the memory used and tickets sold per second for one execution mode.
+ * Each mode should run in its own JVM so the memory figures do not mix.
+ * <p>
+ * Usage: {@code ExecutionModeComparison [PLATFORM_THREADS|VIRTUAL_THREADS] [customers] [seconds] [poolType]}
+ */
+public class ExecutionModeComparison {
+
+    /**
+     * Number of vendors releasing tickets as fast as the pool accepts them.
+     */
+    private static final int VENDORS = 10;
+
+    /**
+     * Tickets every vendor releases in one step.
+     */
+    private static final int VENDOR_BATCH_SIZE = 100;
+
+    /**
+     * Maximum number of tickets allowed in the pool.
+     */
+    private static final int MAX_POOL_TICKETS = 10_000;
+
+    /**
+     * Retrieval rate of every customer; each customer buys a ticket every {@code rate * 500} ms.
+     */
+    private static final int CUSTOMER_RETRIEVAL_RATE = 1;
+
+    /**
+     * Runs the on-sale and prints the figures.
+     *
+     * @param args the execution mode, customer count, duration in seconds and pool type
+     * @throws Exception if the run is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        ExecutionMode mode = args.length > 0 ? ExecutionMode.valueOf(args[0]) : ExecutionMode.VIRTUAL_THREADS;
+        int customers = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        PoolType poolType = args.length > 3 ? PoolType.valueOf(args[3]) : PoolType.RING_BUFFER;
+        Logger.setEnabled(false);
+
+        TicketOperations pool = TicketPoolFactory.create(poolType, MAX_POOL_TICKETS);
+        TicketWorkers workers = new TicketWorkers(mode);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < VENDORS; i++) {
+            workers.startVendor(new Vendor(pool, 0, Integer.MAX_VALUE, VENDOR_BATCH_SIZE));
+        }
+        int started = 0;
+        try {
+            for (; started < customers; started++) {
+                workers.startCustomer(new Customer(pool, CUSTOMER_RETRIEVAL_RATE, Integer.MAX_VALUE));
+            }
+        } catch (OutOfMemoryError e) {
+            System.out.println("Could only start " + started + " customers: " + e.getMessage());
+        }
+        double startupMillis = (System.nanoTime() - start) / 1_000_000.0;
+
+        // Let the customers settle into their buying rhythm before measuring
+        Thread.sleep(2000);
+        int soldBefore = pool.getSoldTicketCounter();
+        long measureStart = System.nanoTime();
+        Thread.sleep(seconds * 1000L);
+        int soldAfter = pool.getSoldTicketCounter();
+        double elapsedSeconds = (System.nanoTime() - measureStart) / 1_000_000_000.0;
+
+        System.gc();
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        int liveThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+        String rss = residentSetSize();
+
+        pool.setStopFlag(true);
+        workers.interruptAll();
+        workers.awaitTermination();
+
+        System.out.printf("mode=%s pool=%s customers=%d%n", mode, poolType, started);
+        System.out.printf("startup: %.0f ms%n", startupMillis);
+        System.out.printf("throughput: %.0f tickets/s%n", (soldAfter - soldBefore) / elapsedSeconds);
+        System.out.printf("heap used after GC: %.1f MB%n", heap.getUsed() / (1024.0 * 1024.0));
+        System.out.printf("platform threads: %d%n", liveThreads);
+        System.out.printf("resident set size: %s%n", rss);
+    }
+
+    /**
+     * Reads the resident set size of this process, which includes thread stacks outside the heap.
+     *
+     * @return the resident set size as reported by the operating system, or "n/a" if unavailable
+     */
+    private static String residentSetSize() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return line.substring("VmRSS:".length()).trim();
+                }
+            }
+        } catch (IOException e) {
+            // Not running on Linux
+        }
+        return "n/a";
+    }
+}
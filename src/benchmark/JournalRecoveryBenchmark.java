@@ -0,0 +1,252 @@
+package benchmark;
+
+import core.PoolListener;
+import core.PoolType;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import journal.Durability;
+import journal.PoolSnapshot;
+import journal.PoolSnapshotter;
+import journal.TicketJournal;
+import logging.Logger;
+import util.Ticket;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The JournalRecoveryBenchmark class checks that a journaled pool of every type recovers exactly
+ * the tickets it held, however snapshots interleave with the vendors and customers.
+ * <p>
+ * For each pool type it first forces the race between a sale, a snapshot and the journal record
+ * of the ticket sold: while the pool tells the journal about a new ticket, a customer tries to
+ * buy that ticket and a snapshot is taken, both before the record is written. The customer must
+ * not get the ticket before it is recorded, and once the ticket is sold the recovered pool must
+ * be empty. It then runs a sale with vendors, customers returning some of their tickets and a
+ * thread taking snapshots back to back, stops it, and recovers the journal into a copy of the
+ * pool. Every check throws on failure; the benchmark prints {@code ok} once all have passed.
+ * <p>
+ * Usage: {@code JournalRecoveryBenchmark [seconds] [threads]}
+ */
+public class JournalRecoveryBenchmark {
+
+    /**
+     * Number of tickets the pool of each sale holds at most.
+     */
+    private static final int POOL_SIZE = 1000;
+
+    /**
+     * Longest time a vendor or customer waits for space or a ticket, in milliseconds.
+     */
+    private static final long WAIT_MILLIS = 10;
+
+    /**
+     * How long the racing customer and snapshot get before the ticket is recorded, in milliseconds.
+     */
+    private static final long RACE_MILLIS = 100;
+
+    /**
+     * Customers put back one ticket out of this many they buy.
+     */
+    private static final int RETURN_INTERVAL = 10;
+
+    /**
+     * Runs the race and the sale on every pool type and prints one line per type.
+     *
+     * @param args the length of each sale in seconds and the number of vendors and customers
+     * @throws Exception if a journal cannot be written or a thread is interrupted
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 2;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+        Logger.setEnabled(false);
+        System.out.printf("%-14s %8s %12s %10s %10s %10s%n", "pool", "race", "sold", "returned", "snapshots", "in pool");
+        for (PoolType type : PoolType.values()) {
+            checkRace(type);
+            run(type, seconds, threads);
+        }
+        System.out.println("ok");
+    }
+
+    /**
+     * Sells a single ticket while a customer and a snapshot race the journal record of its arrival,
+     * then checks the customer did not get it first and the recovered pool is empty.
+     *
+     * @param type the pool type
+     * @throws Exception if the journal cannot be written or a thread is interrupted
+     */
+    private static void checkRace(PoolType type) throws Exception {
+        File directory = Files.createTempDirectory("journal-race").toFile();
+        TicketOperations pool = TicketPoolFactory.create(type, POOL_SIZE);
+        TicketJournal journal = TicketJournal.open(directory, Durability.NONE, WAIT_MILLIS);
+        PoolSnapshotter snapshotter = new PoolSnapshotter(pool, journal, 0);
+        AtomicBoolean soldFirst = new AtomicBoolean();
+        AtomicBoolean recorded = new AtomicBoolean();
+        List<Thread> racers = new ArrayList<>();
+        pool.setPoolListener(new PoolListener() {
+            @Override
+            public void ticketAdded(long ticketId) {
+                if (racers.isEmpty()) {
+                    // Sell and snapshot before the journal hears of the ticket
+                    racers.add(Thread.ofPlatform().start(() -> {
+                        if (pool.tryRemoveTicket(0, TimeUnit.MILLISECONDS).isPresent() && !recorded.get()) {
+                            soldFirst.set(true);
+                        }
+                    }));
+                    racers.add(Thread.ofPlatform().start(() -> {
+                        try {
+                            snapshotter.takeSnapshot();
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    }));
+                    for (Thread racer : racers) {
+                        join(racer, RACE_MILLIS);
+                    }
+                }
+                journal.ticketAdded(ticketId);
+                recorded.set(true);
+            }
+
+            @Override
+            public void ticketSold(long ticketId) {
+                journal.ticketSold(ticketId);
+            }
+
+            @Override
+            public void ticketReturned(long ticketId) {
+                journal.ticketReturned(ticketId);
+            }
+
+            @Override
+            public void awaitDurable() {
+                journal.awaitDurable();
+            }
+        });
+
+        pool.addTicket(new Ticket(Ticket.pack(0, 1)));
+        for (Thread racer : racers) {
+            racer.join();
+        }
+        if (soldFirst.get()) {
+            throw new IllegalStateException(type + " sold a ticket before the journal recorded it");
+        }
+        if (pool.getPoolSize() > 0 && pool.tryRemoveTicket(0, TimeUnit.MILLISECONDS).isEmpty()) {
+            throw new IllegalStateException(type + " holds a ticket it does not sell");
+        }
+        journal.close();
+        long[] recovered = PoolSnapshot.recover(directory).getTicketIds();
+        delete(directory);
+        if (recovered.length > 0) {
+            throw new IllegalStateException(type + " recovered " + recovered.length + " sold tickets");
+        }
+    }
+
+    /**
+     * Runs a sale with snapshots taken back to back, then recovers the journal and checks it
+     * holds the tickets left in the pool, and prints one line.
+     *
+     * @param type    the pool type
+     * @param seconds the length of the sale
+     * @param threads the number of vendors and of customers
+     * @throws Exception if the journal cannot be written or a thread is interrupted
+     */
+    private static void run(PoolType type, int seconds, int threads) throws Exception {
+        File directory = Files.createTempDirectory("journal-sale").toFile();
+        TicketOperations pool = TicketPoolFactory.create(type, POOL_SIZE);
+        TicketJournal journal = TicketJournal.open(directory, Durability.NONE, WAIT_MILLIS);
+        pool.setPoolListener(journal);
+        PoolSnapshotter snapshotter = new PoolSnapshotter(pool, journal, 0);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        AtomicInteger returned = new AtomicInteger();
+        AtomicInteger snapshots = new AtomicInteger();
+
+        List<Thread> workers = new ArrayList<>();
+        for (int v = 0; v < threads; v++) {
+            int vendorIndex = v;
+            workers.add(Thread.ofPlatform().start(() -> {
+                long sequence = 1;
+                while (System.nanoTime() - deadline < 0) {
+                    Ticket ticket = new Ticket(Ticket.pack(vendorIndex, sequence));
+                    if (pool.tryAddTicket(ticket, WAIT_MILLIS, TimeUnit.MILLISECONDS)) {
+                        sequence++;
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < threads; c++) {
+            workers.add(Thread.ofPlatform().start(() -> {
+                int bought = 0;
+                while (System.nanoTime() - deadline < 0) {
+                    Optional<Ticket> ticket = pool.tryRemoveTicket(WAIT_MILLIS, TimeUnit.MILLISECONDS);
+                    if (ticket.isPresent() && ++bought % RETURN_INTERVAL == 0 && pool.returnTicket(ticket.get())) {
+                        returned.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        workers.add(Thread.ofPlatform().start(() -> {
+            while (System.nanoTime() - deadline < 0) {
+                try {
+                    snapshotter.takeSnapshot();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                snapshots.incrementAndGet();
+            }
+        }));
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        long[] expected = pool.snapshotTicketIds();
+        journal.close();
+        long[] recovered = PoolSnapshot.recover(directory).getTicketIds();
+        delete(directory);
+        Arrays.sort(expected);
+        Arrays.sort(recovered);
+        if (!Arrays.equals(expected, recovered)) {
+            throw new IllegalStateException(type + " recovered " + recovered.length + " tickets, the pool holds " + expected.length);
+        }
+        System.out.printf("%-14s %8s %12d %10d %10d %10d%n", type, "ok", pool.getSoldTicketCounter(), returned.get(),
+                snapshots.get(), expected.length);
+    }
+
+    /**
+     * Waits at most the given time for a thread to finish.
+     *
+     * @param thread the thread
+     * @param millis the longest wait, in milliseconds
+     */
+    private static void join(Thread thread, long millis) {
+        try {
+            thread.join(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+        }
+    }
+
+    /**
+     * Deletes a journal directory and the files in it.
+     *
+     * @param directory the directory
+     */
+    private static void delete(File directory) {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+}
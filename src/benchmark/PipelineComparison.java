@@ -0,0 +1,255 @@
+package benchmark;
+
+import core.CustomerClass;
+import core.PoolListener;
+import core.PoolType;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import logging.Logger;
+import metrics.LatencyHistogram;
+import pipeline.CustomerSubscriber;
+import pipeline.TicketProcessor;
+import pipeline.VendorPublisher;
+import threads.Customer;
+import threads.ExecutionMode;
+import threads.Pacer;
+import threads.PacingMode;
+import threads.TicketWorkers;
+import threads.Vendor;
+import util.Ticket;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The PipelineComparison class sells the same tickets twice, unpaced: once with vendor and
+ * customer threads blocking on a SYNCHRONIZED pool, and once through the {@link TicketProcessor}
+ * pipeline, where vendors publish on demand and customers subscribe with a batch of demand each.
+ * It reports the tickets sold per second and the time from a ticket entering the pool to its sale,
+ * measured for every eighth ticket by the same pool listener in both modes.
+ * <p>
+ * Usage: {@code PipelineComparison [tickets] [vendors] [customers] [poolSize] [batch] [rounds]}
+ */
+public class PipelineComparison {
+
+    /**
+     * Runs both modes for the given number of rounds and prints one line per run.
+     *
+     * @param args the tickets, vendors, customers, pool size, batch size and rounds
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int tickets = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int vendors = args.length > 1 ? Integer.parseInt(args[1]) : 8;
+        int customers = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int poolSize = args.length > 3 ? Integer.parseInt(args[3]) : 100;
+        int batch = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+        int rounds = args.length > 5 ? Integer.parseInt(args[5]) : 3;
+        Logger.setEnabled(false);
+
+        System.out.printf("tickets=%d vendors=%d customers=%d pool=%d batch=%d%n", tickets, vendors, customers, poolSize, batch);
+        System.out.printf("%-10s %12s %10s %10s %10s%n", "mode", "tickets/s", "p50 us", "p99 us", "max us");
+        for (int round = 0; round < rounds; round++) {
+            print("threaded", runThreaded(tickets, vendors, customers, poolSize, batch));
+            print("pipeline", runPipeline(tickets, vendors, customers, poolSize, batch));
+        }
+    }
+
+    /**
+     * Sells the tickets with a thread per vendor and customer blocking on a SYNCHRONIZED pool.
+     *
+     * @param tickets   the tickets to sell
+     * @param vendors   the number of vendor threads
+     * @param customers the number of customer threads
+     * @param poolSize  the maximum number of tickets in the pool
+     * @param batch     the tickets added or bought in one step
+     * @return the result of the run
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static Run runThreaded(int tickets, int vendors, int customers, int poolSize, int batch) throws InterruptedException {
+        TicketOperations pool = TicketPoolFactory.create(PoolType.SYNCHRONIZED, poolSize);
+        SaleLatency latency = new SaleLatency(vendors);
+        pool.setPoolListener(latency);
+        TicketWorkers workers = new TicketWorkers(ExecutionMode.PLATFORM_THREADS);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < vendors; i++) {
+            workers.startVendor(new Vendor(pool, i, Pacer.create(PacingMode.NONE, 0), tickets, batch));
+        }
+        for (int i = 0; i < customers; i++) {
+            workers.startCustomer(new Customer(pool, Pacer.create(PacingMode.NONE, 0), tickets, batch, CustomerClass.REGULAR));
+        }
+        while (pool.getSoldTicketCounter() < tickets) {
+            Thread.sleep(1);
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.setStopFlag(true);
+        workers.interruptAll();
+        workers.awaitTermination();
+        return new Run(pool.getSoldTicketCounter(), elapsed, latency.histogram);
+    }
+
+    /**
+     * Sells the tickets through the pipeline. Every customer subscribes first, then the vendors
+     * are connected and the sale runs on the thread connecting them.
+     *
+     * @param tickets   the tickets to sell
+     * @param vendors   the number of vendor publishers
+     * @param customers the number of customer subscribers
+     * @param poolSize  the capacity of the processor
+     * @param batch     the tickets requested from a vendor, and by a customer, at a time
+     * @return the result of the run
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static Run runPipeline(int tickets, int vendors, int customers, int poolSize, int batch) throws InterruptedException {
+        TicketProcessor processor = new TicketProcessor(poolSize, batch);
+        SaleLatency latency = new SaleLatency(vendors);
+        processor.setPoolListener(latency);
+        CustomerSubscriber[] subscribers = new CustomerSubscriber[customers];
+        for (int i = 0; i < customers; i++) {
+            subscribers[i] = new CustomerSubscriber("Customer " + i, batch);
+            processor.subscribe(subscribers[i]);
+        }
+        AtomicInteger allowance = new AtomicInteger(tickets);
+        VendorPublisher[] publishers = new VendorPublisher[vendors];
+        for (int i = 0; i < vendors; i++) {
+            publishers[i] = new VendorPublisher(i, allowance);
+        }
+
+        long start = System.nanoTime();
+        processor.connect(publishers);
+        for (CustomerSubscriber subscriber : subscribers) {
+            subscriber.awaitFinished(1, TimeUnit.MINUTES);
+        }
+        long elapsed = System.nanoTime() - start;
+        return new Run(processor.getSoldTicketCounter(), elapsed, latency.histogram);
+    }
+
+    /**
+     * Prints one run.
+     *
+     * @param mode the name of the mode
+     * @param run  the result of the run
+     */
+    private static void print(String mode, Run run) {
+        System.out.printf("%-10s %12.0f %10.1f %10.1f %10.1f%n", mode, run.sold * 1e9 / run.elapsedNanos,
+                run.latency.getPercentile(0.50) / 1e3, run.latency.getPercentile(0.99) / 1e3, run.latency.getMax() / 1e3);
+    }
+
+    /**
+     * The tickets sold, time taken and sale latency of one run.
+     */
+    private static final class Run {
+
+        /**
+         * The tickets sold.
+         */
+        private final long sold;
+
+        /**
+         * The time from the first vendor starting to the last ticket sold.
+         */
+        private final long elapsedNanos;
+
+        /**
+         * The time from a ticket entering the pool to its sale.
+         */
+        private final LatencyHistogram latency;
+
+        /**
+         * Constructor to create the result of a run.
+         *
+         * @param sold         the tickets sold
+         * @param elapsedNanos the time taken, in nanoseconds
+         * @param latency      the sale latency
+         */
+        private Run(long sold, long elapsedNanos, LatencyHistogram latency) {
+            this.sold = sold;
+            this.elapsedNanos = elapsedNanos;
+            this.latency = latency;
+        }
+    }
+
+    /**
+     * Pool listener recording the time from a ticket entering the pool to its sale, for every
+     * eighth ticket of each vendor. Entry times are kept in a ring per vendor indexed by the
+     * ticket's sequence number, so recording takes no lock and no map lookup; the ring is far
+     * larger than the tickets a pool holds, so a slot is not reused while its ticket is unsold.
+     */
+    private static final class SaleLatency implements PoolListener {
+
+        /**
+         * Only tickets whose sequence number is a multiple of this are timed.
+         */
+        private static final int SAMPLE_EVERY = 8;
+
+        /**
+         * Slots in the ring of each vendor, a power of two.
+         */
+        private static final int SLOTS = 1 << 16;
+
+        /**
+         * When each timed ticket entered the pool, by vendor and slot.
+         */
+        private final long[][] entered;
+
+        /**
+         * The time from a timed ticket entering the pool to its sale.
+         */
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        /**
+         * Constructor to create the listener.
+         *
+         * @param vendors the number of vendors
+         */
+        private SaleLatency(int vendors) {
+            entered = new long[vendors][SLOTS];
+        }
+
+        /**
+         * Gets the slot of a timed ticket in the ring of its vendor.
+         *
+         * @param sequence the sequence number of the ticket
+         * @return the slot
+         */
+        private static int slot(long sequence) {
+            return (int) (sequence / SAMPLE_EVERY) & (SLOTS - 1);
+        }
+
+        /**
+         * Records when a timed ticket entered the pool.
+         *
+         * @param ticketId the packed id of the ticket
+         */
+        @Override
+        public void ticketAdded(long ticketId) {
+            long sequence = Ticket.sequenceOf(ticketId);
+            if (sequence % SAMPLE_EVERY == 0) {
+                entered[Ticket.vendorIndexOf(ticketId)][slot(sequence)] = System.nanoTime();
+            }
+        }
+
+        /**
+         * Records the time a timed ticket spent in the pool.
+         *
+         * @param ticketId the packed id of the ticket
+         */
+        @Override
+        public void ticketSold(long ticketId) {
+            long sequence = Ticket.sequenceOf(ticketId);
+            if (sequence % SAMPLE_EVERY == 0) {
+                histogram.record(System.nanoTime() - entered[Ticket.vendorIndexOf(ticketId)][slot(sequence)]);
+            }
+        }
+
+        /**
+         * Ignores returned tickets, as nothing is returned in the comparison.
+         *
+         * @param ticketId the packed id of the ticket
+         */
+        @Override
+        public void ticketReturned(long ticketId) {
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package benchmark;
+
+import core.PoolType;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import logging.Logger;
+
+/**
+ * The PoolThroughputComparison class measures how many tickets per second each
+ * TicketOperations implementation sells with 2, 8 and 64 threads.
+ * Half of the threads act as vendors and the other half as customers, and
+ * logging is switched off so only the pool itself is measured.
+ */
+public class PoolThroughputComparison {
+
+    /**
+     * Thread counts to compare the pools at.
+     */
+    private static final int[] THREAD_COUNTS = {2, 8, 64};
+
+    /**
+     * Maximum number of tickets allowed in the pool during a run.
+     */
+    private static final int MAX_POOL_TICKETS = 1024;
+
+    /**
+     * How long to run before measuring, in milliseconds.
+     */
+    private static final long WARMUP_MILLIS = 1000;
+
+    /**
+     * How long each measurement runs, in milliseconds.
+     */
+    private static final long MEASURE_MILLIS = 3000;
+
+    /**
+     * Runs the comparison and prints one line per pool type and thread count.
+     *
+     * @param args unused
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        Logger.setEnabled(false);
+        System.out.printf("%-14s %8s %16s%n", "pool", "threads", "tickets/sec");
+        for (int threads : THREAD_COUNTS) {
+            for (PoolType poolType : PoolType.values()) {
+                TicketOperations pool = TicketPoolFactory.create(poolType, MAX_POOL_TICKETS);
+                double throughput = PoolWorkload.ticketsPerSecond(pool, threads / 2, threads / 2, WARMUP_MILLIS, MEASURE_MILLIS);
+                System.out.printf("%-14s %8d %16.0f%n", poolType, threads, throughput);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package benchmark;
+
+import core.TicketOperations;
+import util.Ticket;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The PoolWorkload class runs vendor and customer threads flat out against a
+ * ticket pool and measures how many tickets per second are sold.
+ */
+public class PoolWorkload {
+
+    /**
+     * Runs vendors and customers against the pool and returns the sell rate.
+     * The pool is stopped when the measurement ends.
+     *
+     * @param pool          the pool to measure
+     * @param vendors       the number of vendor threads adding tickets
+     * @param customers     the number of customer threads removing tickets
+     * @param warmupMillis  how long to run before measuring, in milliseconds
+     * @param measureMillis how long the measurement runs, in milliseconds
+     * @return the number of tickets sold per second during the measurement
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    public static double ticketsPerSecond(TicketOperations pool, int vendors, int customers,
+                                          long warmupMillis, long measureMillis) throws InterruptedException {
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 0; i < vendors; i++) {
+            Ticket ticket = new Ticket(i, 0);
+            workers.add(new Thread(() -> runUntilStopped(pool, () -> pool.addTicket(ticket)), "Vendor " + i));
+        }
+        for (int i = 0; i < customers; i++) {
+            workers.add(new Thread(() -> runUntilStopped(pool, pool::removeTicket), "Customer " + i));
+        }
+        workers.forEach(Thread::start);
+
+        Thread.sleep(warmupMillis);
+        int soldBefore = pool.getSoldTicketCounter();
+        long start = System.nanoTime();
+        Thread.sleep(measureMillis);
+        int soldAfter = pool.getSoldTicketCounter();
+        long elapsed = System.nanoTime() - start;
+
+        pool.setStopFlag(true);
+        for (Thread worker : workers) {
+            // A thread that checked the stop flag just before it was set can still be
+            // waiting inside the pool, so interrupt it if it does not finish on its own
+            worker.join(100);
+            if (worker.isAlive()) {
+                worker.interrupt();
+                worker.join();
+            }
+        }
+        return (soldAfter - soldBefore) * 1_000_000_000.0 / elapsed;
+    }
+
+    /**
+     * Repeats a pool operation until the pool is stopped or the thread is interrupted.
+     *
+     * @param pool      the pool whose stop flag ends the loop
+     * @param operation the add or remove operation to repeat
+     */
+    private static void runUntilStopped(TicketOperations pool, Runnable operation) {
+        try {
+            while (!pool.shouldStop() && !Thread.currentThread().isInterrupted()) {
+                operation.run();
+            }
+        } catch (RuntimeException e) {
+            // TicketPool rethrows an interrupted wait as a RuntimeException
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package benchmark;
+
+import configuration.Configurations;
+import core.PoolType;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import logging.Logger;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import threads.ExecutionMode;
+import threads.Pacer;
+import threads.PacingMode;
+import threads.ReleaseScheduler;
+import threads.TicketWorkers;
+import threads.Vendor;
+import util.Ticket;
+
+/**
+ * The ReleaseSchedulerBenchmark class checks how closely thousands of vendors hit their
+ * aggregate release rate, driven by a {@link ReleaseScheduler} and, for comparison, by one
+ * parking virtual thread each. Halfway through the scheduled run the rate of every vendor is
+ * doubled, to check that a rate change takes effect at once.
+ * The pool is large enough that vendors never wait for space.
+ * <p>
+ * Usage: {@code ReleaseSchedulerBenchmark [vendors] [ratePerVendor] [seconds] [schedulerThreads]}
+ */
+public class ReleaseSchedulerBenchmark {
+
+    /**
+     * Runs both modes and prints the expected and measured release rates.
+     *
+     * @param args the number of vendors, tickets per second per vendor, seconds per run and scheduler threads
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int vendors = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int rate = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        int threads = args.length > 3 ? Integer.parseInt(args[3]) : 2;
+        if (vendors > Ticket.MAX_VENDOR_INDEX + 1) {
+            throw new IllegalArgumentException("vendors must be at most " + (Ticket.MAX_VENDOR_INDEX + 1) + ", got " + vendors);
+        }
+        Logger.setEnabled(false);
+
+        System.out.printf("%-24s %8s %14s %14s %8s %14s%n", "mode", "threads", "expected/sec", "measured/sec", "error", "tick p99 us");
+
+        // Scheduled vendors: the first half at the rate, the second half at twice the rate
+        TicketOperations pool = newPool(vendors, rate * 3, seconds);
+        ReleaseScheduler scheduler = new ReleaseScheduler(threads);
+        for (int i = 0; i < vendors; i++) {
+            scheduler.schedule(new Vendor(pool, i, Pacer.create(PacingMode.NONE, 0), Integer.MAX_VALUE, 1), rate, 10);
+        }
+        long half = seconds * 500L;
+        Thread.sleep(1000); // Let every vendor reach its first tick
+        int before = pool.getCounter();
+        Thread.sleep(half);
+        int middle = pool.getCounter();
+        scheduler.setRate(rate * 2.0);
+        Thread.sleep(half);
+        int after = pool.getCounter();
+        pool.setStopFlag(true);
+        scheduler.awaitTermination();
+        LatencyHistogram tick = MetricsRegistry.histogram("scheduler.tick");
+        print("scheduled", threads, vendors * (double) rate, (middle - before) / (half / 1000.0), tick.getPercentile(0.99) / 1e3);
+        print("scheduled, rate doubled", threads, vendors * 2.0 * rate, (after - middle) / (half / 1000.0), tick.getPercentile(0.99) / 1e3);
+
+        // One virtual thread per vendor, parking between releases
+        pool = newPool(vendors, rate, seconds);
+        TicketWorkers workers = new TicketWorkers(ExecutionMode.VIRTUAL_THREADS);
+        for (int i = 0; i < vendors; i++) {
+            workers.startVendor(new Vendor(pool, i, Pacer.create(PacingMode.PARK, rate), Integer.MAX_VALUE, 1));
+        }
+        Thread.sleep(1000);
+        before = pool.getCounter();
+        Thread.sleep(seconds * 1000L);
+        after = pool.getCounter();
+        pool.setStopFlag(true);
+        workers.interruptAll();
+        workers.awaitTermination();
+        print("thread per vendor", vendors, vendors * (double) rate, (after - before) / (double) seconds, 0);
+    }
+
+    /**
+     * Creates a pool that holds every ticket a run releases.
+     *
+     * @param vendors the number of vendors
+     * @param rate    the highest tickets per second per vendor
+     * @param seconds the length of the run
+     * @return the pool
+     */
+    private static TicketOperations newPool(int vendors, int rate, int seconds) {
+        Configurations configurations = new Configurations();
+        configurations.setPoolType(PoolType.COMPACT);
+        return TicketPoolFactory.create(configurations, vendors * rate * (seconds + 2) * 2);
+    }
+
+    /**
+     * Prints one line of results.
+     *
+     * @param mode     how the vendors were driven
+     * @param threads  the number of threads driving them
+     * @param expected the expected tickets per second
+     * @param measured the measured tickets per second
+     * @param tickP99  the 99th percentile tick time in microseconds, 0 if not applicable
+     */
+    private static void print(String mode, int threads, double expected, double measured, double tickP99) {
+        System.out.printf("%-24s %8d %14.0f %14.0f %7.2f%% %14.1f%n",
+                mode, threads, expected, measured, (measured - expected) / expected * 100, tickP99);
+    }
+}
@@ -0,0 +1,126 @@
+package benchmark;
+
+import core.SeatMapTicketPool;
+import logging.Logger;
+import metrics.LatencyHistogram;
+import util.Ticket;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SeatMapBenchmark class sells out a 100k-seat venue to thousands of concurrent buyers
+ * and reports how long each adjacent-seat search and claim takes.
+ * Every buyer asks for 1 to 6 adjacent seats in a random section, falls back to any section,
+ * and asks for one seat fewer when no run is left, until the venue is sold out.
+ * Buyers run on virtual threads, so thousands of them search at the same time.
+ * <p>
+ * Usage: {@code SeatMapBenchmark [buyers] [rounds]}
+ */
+public class SeatMapBenchmark {
+
+    /**
+     * Number of sections of the venue.
+     */
+    private static final int SECTIONS = 20;
+
+    /**
+     * Number of rows of each section.
+     */
+    private static final int ROWS = 100;
+
+    /**
+     * Number of seats in each row.
+     */
+    private static final int SEATS_PER_ROW = 50;
+
+    /**
+     * Largest group of adjacent seats a buyer asks for.
+     */
+    private static final int MAX_GROUP = 6;
+
+    /**
+     * Sells out the venue once per round and prints one line per round.
+     *
+     * @param args the number of buyers and rounds
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int buyers = args.length > 0 ? Integer.parseInt(args[0]) : 4000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        Logger.setEnabled(false);
+
+        int seats = SECTIONS * ROWS * SEATS_PER_ROW;
+        SeatMapTicketPool pool = new SeatMapTicketPool(seats, SECTIONS, SEATS_PER_ROW);
+        System.out.printf("%-6s %8s %10s %12s %10s %10s %10s %10s%n",
+                "round", "buyers", "claims", "claims/sec", "p50 us", "p99 us", "p999 us", "max us");
+        long sequence = 0;
+        for (int round = 1; round <= rounds; round++) {
+            for (int i = 0; i < seats; i++) {
+                pool.addTicketId(Ticket.pack(0, ++sequence));
+            }
+            LatencyHistogram claimTime = new LatencyHistogram();
+            LongAdder claimed = new LongAdder();
+            long elapsed = sellOut(pool, buyers, claimTime, claimed);
+            if (pool.getPoolSize() != 0 || claimed.sum() != seats) {
+                throw new IllegalStateException("Venue not sold out exactly: " + claimed.sum() + " seats claimed, " + pool.getPoolSize() + " left");
+            }
+            System.out.printf("%-6d %8d %10d %12.0f %10.1f %10.1f %10.1f %10.1f%n",
+                    round, buyers, claimTime.getCount(), claimTime.getCount() / (elapsed / 1e9),
+                    claimTime.getPercentile(0.50) / 1e3, claimTime.getPercentile(0.99) / 1e3,
+                    claimTime.getPercentile(0.999) / 1e3, claimTime.getMax() / 1e3);
+        }
+    }
+
+    /**
+     * Lets the buyers claim seats until none are left.
+     *
+     * @param pool      the venue, every seat holding a ticket
+     * @param buyers    the number of concurrent buyers
+     * @param claimTime records the time taken by every successful claim
+     * @param claimed   counts the seats claimed
+     * @return the time taken to sell out, in nanoseconds
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static long sellOut(SeatMapTicketPool pool, int buyers, LatencyHistogram claimTime, LongAdder claimed)
+            throws InterruptedException {
+        CountDownLatch go = new CountDownLatch(1);
+        long start;
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < buyers; i++) {
+                executor.execute(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    int group = 1 + random.nextInt(MAX_GROUP);
+                    while (group > 0) {
+                        long claimStart = System.nanoTime();
+                        SeatMapTicketPool.SeatClaim claim = pool.claimAdjacent(random.nextInt(SECTIONS), group);
+                        if (claim == null) {
+                            claim = pool.claimAdjacent(group);
+                        }
+                        if (claim == null) {
+                            group--; // No run of this many seats is left anywhere
+                            continue;
+                        }
+                        claimTime.record(System.nanoTime() - claimStart);
+                        claimed.add(claim.size());
+                        group = Math.min(1 + random.nextInt(MAX_GROUP), group);
+                    }
+                });
+            }
+            start = System.nanoTime();
+            go.countDown();
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,226 @@
+package benchmark;
+
+import util.Ticket;
+import util.TicketIdGenerator;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The TicketIdBenchmark class hands out sequence numbers from a {@link TicketIdGenerator} on many
+ * threads at once, reports the rate, and checks the generator. It runs three sales: one on the
+ * system clock, one restarted after it on a clock an hour behind, and one on a clock that steps
+ * back by ten seconds halfway through. Every number of a sale is kept and sorted to check them,
+ * so large runs need a large heap, 16 bytes per id with the sort.
+ * <p>
+ * Each sale fails with an exception if a number is handed out twice, if a thread ever gets a
+ * number not above its previous one, or if the clock regressions counted differ from the steps
+ * back of its clock; the restarted sale also fails if it reuses a number of the first. Before the
+ * sales, a single thread steps a hand-driven clock back and checks that the step is counted once
+ * and the numbers carry on above those already handed out, and that a generator whose clock
+ * reaches {@link TicketIdGenerator#EXHAUSTED_AT} hands out the last numbers that fit in an id and
+ * then throws instead of wrapping. The benchmark prints {@code ok} once every check has passed.
+ * <p>
+ * Usage: {@code TicketIdBenchmark [ids] [threads]}
+ */
+public class TicketIdBenchmark {
+
+    /**
+     * How far the clock of the restarted sale is behind the system clock.
+     */
+    private static final long RESTART_BEHIND_MILLIS = 3_600_000L;
+
+    /**
+     * How far the clock of the last sale steps back.
+     */
+    private static final long STEP_BACK_MILLIS = 10_000L;
+
+    /**
+     * Numbers taken on each side of the step back of the hand-driven clock, several blocks' worth.
+     */
+    private static final int STEP_CHECK_IDS = 10_000;
+
+    /**
+     * Runs the three sales and prints one line per sale.
+     *
+     * @param args the number of ids of the first sale and the number of threads
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int ids = args.length > 0 ? Integer.parseInt(args[0]) : 100_000_000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        checkStepBack();
+        checkExhausted();
+        System.out.printf("%-10s %12s %8s %14s %8s %12s %12s%n",
+                "sale", "ids", "threads", "ids/sec", "unique", "regressions", "ahead ms");
+
+        // Hand out numbers on the system clock
+        TicketIdGenerator generator = new TicketIdGenerator(System::currentTimeMillis);
+        long[] first = run("clock", generator, ids, threads);
+        expectRegressions("clock", generator, 0, 0);
+        long last = first[first.length - 1];
+        first = null; // Let the restarted sale reuse the heap
+
+        // Restart on a clock behind the first sale, resuming after the highest number it handed out
+        generator = new TicketIdGenerator(() -> System.currentTimeMillis() - RESTART_BEHIND_MILLIS);
+        generator.resumeAfter(last);
+        long[] restarted = run("restart", generator, ids / 10, threads);
+        if (restarted[0] <= last) {
+            throw new IllegalStateException("Restarted sale reused " + restarted[0] + ", at or below " + last);
+        }
+        expectRegressions("restart", generator, 0, 0);
+        restarted = null;
+
+        // Step the clock back halfway through the sale
+        AtomicLong handedOut = new AtomicLong();
+        long half = ids / 20;
+        LongSupplier clock = () -> System.currentTimeMillis() - (handedOut.get() >= half ? STEP_BACK_MILLIS : 0);
+        generator = new TicketIdGenerator(clock);
+        run("step-back", generator, ids / 10, threads, handedOut);
+        // Threads that read the clock just before the step can move the last reading forward
+        // again, so each can make the step count once more, but it must count at least once
+        expectRegressions("step-back", generator, 1, threads);
+        System.out.println("ok");
+    }
+
+    /**
+     * Takes numbers on one thread from a clock driven by hand, steps the clock back and takes
+     * more, checking the numbers keep growing and the step is counted exactly once.
+     */
+    private static void checkStepBack() {
+        AtomicLong millis = new AtomicLong(System.currentTimeMillis());
+        TicketIdGenerator generator = new TicketIdGenerator(millis::get);
+        long previous = -1;
+        for (int i = 0; i < 2 * STEP_CHECK_IDS; i++) {
+            if (i == STEP_CHECK_IDS) {
+                millis.addAndGet(-STEP_BACK_MILLIS);
+            } else {
+                millis.incrementAndGet(); // The clock keeps moving on either side of the step
+            }
+            long sequence = generator.nextSequence();
+            if (sequence <= previous) {
+                throw new IllegalStateException("After the clock stepped back, " + sequence + " came after " + previous);
+            }
+            previous = sequence;
+        }
+        expectRegressions("hand clock", generator, 1, 1);
+    }
+
+    /**
+     * Takes numbers from a clock one millisecond before the generator runs out, checking the last
+     * block ends at {@link Ticket#MAX_SEQUENCE}, that the next number throws, and that packing a
+     * number past it throws too.
+     */
+    private static void checkExhausted() {
+        TicketIdGenerator generator = new TicketIdGenerator(() -> TicketIdGenerator.EXHAUSTED_AT.toEpochMilli() - 1);
+        long last = -1;
+        for (int i = 0; i < 1 << TicketIdGenerator.IDS_PER_MILLI_BITS; i++) {
+            last = generator.nextSequence();
+        }
+        if (last != Ticket.MAX_SEQUENCE) {
+            throw new IllegalStateException("The last millisecond ended at " + last + ", not " + Ticket.MAX_SEQUENCE);
+        }
+        try {
+            long wrapped = generator.nextSequence();
+            throw new IllegalStateException("An exhausted generator handed out " + wrapped);
+        } catch (IllegalStateException expected) {
+            if (!expected.getMessage().startsWith("Ticket sequence numbers exhausted")) {
+                throw expected;
+            }
+        }
+        try {
+            long packed = Ticket.pack(0, Ticket.MAX_SEQUENCE + 1);
+            throw new IllegalStateException("A sequence number past the last packed into " + packed);
+        } catch (IllegalArgumentException expected) {
+            // The sequence number does not fit
+        }
+    }
+
+    /**
+     * Checks the number of clock regressions a generator counted.
+     *
+     * @param sale      the name of the sale
+     * @param generator the generator of the sale
+     * @param min       the fewest regressions expected
+     * @param max       the most regressions expected
+     */
+    private static void expectRegressions(String sale, TicketIdGenerator generator, long min, long max) {
+        long regressions = generator.getClockRegressions();
+        if (regressions < min || regressions > max) {
+            throw new IllegalStateException(sale + " counted " + regressions + " clock regressions, expected "
+                    + (min == max ? String.valueOf(min) : min + " to " + max));
+        }
+    }
+
+    /**
+     * Hands out the given number of sequence numbers over the threads, then sorts them, checks
+     * they are unique and prints one line.
+     *
+     * @param sale      the name of the sale
+     * @param generator the generator to take numbers from
+     * @param ids       the numbers to hand out
+     * @param threads   the number of threads taking numbers
+     * @return the numbers handed out, sorted
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static long[] run(String sale, TicketIdGenerator generator, int ids, int threads) throws InterruptedException {
+        return run(sale, generator, ids, threads, new AtomicLong());
+    }
+
+    /**
+     * Hands out the given number of sequence numbers over the threads, counting them in blocks
+     * for a clock that depends on progress, then sorts them, checks they are unique and prints one line.
+     * Each thread checks that its numbers only grow.
+     *
+     * @param sale       the name of the sale
+     * @param generator  the generator to take numbers from
+     * @param ids        the numbers to hand out
+     * @param threads    the number of threads taking numbers
+     * @param handedOut  counts the numbers handed out, every 4096 numbers of a thread
+     * @return the numbers handed out, sorted
+     * @throws InterruptedException if the benchmark thread is interrupted
+     */
+    private static long[] run(String sale, TicketIdGenerator generator, int ids, int threads, AtomicLong handedOut)
+            throws InterruptedException {
+        long[] sequences = new long[ids];
+        Thread[] workers = new Thread[threads];
+        AtomicLong outOfOrder = new AtomicLong();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            // Each thread fills its own slice of the array, so the only shared state is the generator
+            int from = (int) ((long) ids * t / threads);
+            int to = (int) ((long) ids * (t + 1) / threads);
+            workers[t] = Thread.ofPlatform().start(() -> {
+                long previous = -1;
+                for (int i = from; i < to; i++) {
+                    sequences[i] = generator.nextSequence();
+                    if (sequences[i] <= previous) {
+                        outOfOrder.incrementAndGet();
+                    }
+                    previous = sequences[i];
+                    if ((i & 4095) == 0) {
+                        handedOut.addAndGet(4096);
+                    }
+                }
+            });
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (outOfOrder.get() > 0) {
+            throw new IllegalStateException(sale + " handed " + outOfOrder.get() + " numbers to a thread below its previous one");
+        }
+
+        Arrays.parallelSort(sequences);
+        for (int i = 1; i < sequences.length; i++) {
+            if (sequences[i] == sequences[i - 1]) {
+                throw new IllegalStateException(sale + " handed out " + sequences[i] + " twice");
+            }
+        }
+        System.out.printf("%-10s %12d %8d %14.0f %8s %12d %12d%n", sale, ids, threads, ids / (elapsed / 1e9),
+                "yes", generator.getClockRegressions(), generator.getRunAheadMillis());
+        return sequences;
+    }
+}
@@ -0,0 +1,199 @@
+package benchmark;
+
+import configuration.Configurations;
+import core.PoolType;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import logging.Logger;
+import metrics.LatencyHistogram;
+import server.TicketServer;
+import util.Ticket;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TicketLoadClient class drives a {@link TicketServer} over loopback and reports the
+ * requests per second and the latency of each request as the buyer sees it, from writing the
+ * request to reading its answer.
+ *
+ * Every connection keeps a fixed number of requests in flight, so the server sees pipelined
+ * requests from many buyers at once. A connection releases the tickets it bought before buying
+ * again, so a pool that is not refilled never runs dry and the run can last as long as asked.
+ * With port 0 the client starts its own server over a pool of the given type, so it needs no
+ * other process; otherwise it loads the server of a running system started with
+ * {@code --server-port}.
+ * <p>
+ * Usage: {@code TicketLoadClient [port] [connections] [depth] [seconds] [ticketsPerBuy] [poolType]}
+ */
+public class TicketLoadClient {
+
+    /**
+     * How long the connections run before latencies are recorded, in milliseconds.
+     */
+    private static final long WARMUP_MILLIS = 1000;
+
+    /**
+     * Loads the server and prints the results.
+     *
+     * @param args the port, connections, requests in flight per connection, seconds, tickets per BUY and pool type
+     * @throws Exception if the server cannot be started or reached
+     */
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 0;
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+        int depth = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int ticketsPerBuy = args.length > 4 ? Integer.parseInt(args[4]) : 1;
+        PoolType poolType = args.length > 5 ? PoolType.valueOf(args[5].toUpperCase()) : PoolType.SYNCHRONIZED;
+        Logger.setEnabled(false);
+
+        TicketServer server = null;
+        if (port == 0) {
+            // Stock enough tickets for every request in flight, so BUY requests are rarely turned away
+            int stock = connections * depth * ticketsPerBuy * 2;
+            Configurations configurations = new Configurations();
+            configurations.setPoolType(poolType);
+            TicketOperations pool = TicketPoolFactory.create(configurations, stock);
+            List<Ticket> tickets = new ArrayList<>(stock);
+            for (int i = 0; i < stock; i++) {
+                tickets.add(new Ticket(0, i));
+            }
+            pool.addTickets(tickets);
+            server = new TicketServer(pool, 0);
+            server.start();
+            port = server.getPort();
+            System.out.printf("Started a server on port %d over a %s pool of %d tickets%n", port, poolType, stock);
+        }
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder measured = new LongAdder();
+        LongAdder ticketsBought = new LongAdder();
+        LongAdder turnedAway = new LongAdder();
+        long start = System.nanoTime();
+        long measureFrom = start + WARMUP_MILLIS * 1_000_000;
+        long end = measureFrom + seconds * 1_000_000_000L;
+
+        List<Thread> workers = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            int connectionPort = port;
+            Thread worker = new Thread(() -> {
+                try {
+                    runConnection(connectionPort, depth, ticketsPerBuy, measureFrom, end, latency, measured, ticketsBought, turnedAway);
+                } catch (IOException e) {
+                    System.err.println("Connection failed: " + e.getMessage());
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        if (server != null) {
+            server.close();
+        }
+
+        System.out.printf("%-12s %6s %14s %10s %10s %10s %10s %12s %10s%n",
+                "connections", "depth", "requests/sec", "p50 us", "p99 us", "p999 us", "max us", "bought", "none");
+        System.out.printf("%-12d %6d %14.0f %10.1f %10.1f %10.1f %10.1f %12d %10d%n",
+                connections, depth, measured.sum() / (double) seconds,
+                latency.getPercentile(0.50) / 1e3, latency.getPercentile(0.99) / 1e3,
+                latency.getPercentile(0.999) / 1e3, latency.getMax() / 1e3,
+                ticketsBought.sum(), turnedAway.sum());
+    }
+
+    /**
+     * Runs one connection, keeping the given number of requests in flight until the end time
+     * and then reading the answers still owed.
+     *
+     * @param port          the port of the server
+     * @param depth         the number of requests in flight
+     * @param ticketsPerBuy the number of tickets each BUY asks for
+     * @param measureFrom   the time from which answers are measured, in nanoseconds
+     * @param end           the time after which no request is sent, in nanoseconds
+     * @param latency       the histogram of request latencies
+     * @param measured      the count of measured requests
+     * @param ticketsBought the count of tickets bought
+     * @param turnedAway    the count of BUY requests answered NONE
+     * @throws IOException if the connection fails
+     */
+    private static void runConnection(int port, int depth, int ticketsPerBuy, long measureFrom, long end,
+                                      LatencyHistogram latency, LongAdder measured,
+                                      LongAdder ticketsBought, LongAdder turnedAway) throws IOException {
+        try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+
+            // Send times and kinds of the requests in flight, oldest first, as answers come in order
+            ArrayDeque<Long> sentAt = new ArrayDeque<>(depth);
+            ArrayDeque<Boolean> isBuy = new ArrayDeque<>(depth);
+            ArrayDeque<String> held = new ArrayDeque<>();
+            byte[] buy = ("BUY " + ticketsPerBuy + "\n").getBytes(StandardCharsets.US_ASCII);
+
+            for (int i = 0; i < depth; i++) {
+                sentAt.add(System.nanoTime());
+                isBuy.add(true);
+                out.write(buy);
+            }
+            out.flush();
+
+            while (!sentAt.isEmpty()) {
+                // Read every answer that has arrived, then send as many new requests in one write
+                int answers = 0;
+                do {
+                    String answer = in.readLine();
+                    if (answer == null) {
+                        throw new IOException("server closed the connection");
+                    }
+                    long now = System.nanoTime();
+                    long sent = sentAt.poll();
+                    if (sent >= measureFrom && now <= end) {
+                        latency.record(now - sent);
+                        measured.increment();
+                    }
+                    if (isBuy.poll()) {
+                        if (answer.startsWith("OK")) {
+                            String[] ids = answer.split(" ");
+                            for (int i = 1; i < ids.length; i++) {
+                                held.add(ids[i]);
+                            }
+                            ticketsBought.add(ids.length - 1);
+                        } else {
+                            turnedAway.increment();
+                        }
+                    }
+                    answers++;
+                } while (in.ready());
+
+                if (System.nanoTime() > end) {
+                    continue; // Only read the answers still owed
+                }
+                for (int i = 0; i < answers; i++) {
+                    sentAt.add(System.nanoTime());
+                    if (!held.isEmpty()) {
+                        // Release the oldest ticket bought, so the pool stays stocked
+                        String ticketId = held.poll();
+                        isBuy.add(false);
+                        out.write(("RELEASE " + ticketId + "\n").getBytes(StandardCharsets.US_ASCII));
+                    } else {
+                        isBuy.add(true);
+                        out.write(buy);
+                    }
+                }
+                out.flush();
+            }
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package configuration;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ConfigurationWatcher class watches the configuration file with a {@link WatchService}
+ * and runs a reload action whenever the file is written, so a running system picks up a
+ * changed configuration without a restart.
+ *
+ * The directory of the file is watched, as a WatchService cannot watch a single file, and
+ * events for other files are ignored. Editors often write a file in several steps, so the
+ * watcher waits until the file has been quiet for a short while and then reloads once.
+ */
+public class ConfigurationWatcher implements AutoCloseable {
+
+    /**
+     * How long the file must go without changes before it is reloaded, in milliseconds.
+     */
+    private static final long QUIET_MILLIS = 50;
+
+    /**
+     * The file watched.
+     */
+    private final Path file;
+
+    /**
+     * The watch service over the directory of the file.
+     */
+    private final WatchService watchService;
+
+    /**
+     * Run on the watcher thread after each change of the file.
+     */
+    private final Runnable reload;
+
+    /**
+     * The thread waiting for changes.
+     */
+    private final Thread watchThread;
+
+    /**
+     * Constructor to register the directory of the file with a new watch service.
+     *
+     * @param file   the configuration file to watch
+     * @param reload run on the watcher thread after each change of the file
+     * @throws IOException if the directory cannot be watched
+     */
+    public ConfigurationWatcher(Path file, Runnable reload) throws IOException {
+        this.file = file.toAbsolutePath().normalize();
+        this.reload = reload;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        this.watchThread = new Thread(this::watchLoop, "Configuration Watcher");
+        this.watchThread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching the file.
+     */
+    public void start() {
+        watchThread.start();
+    }
+
+    /**
+     * Stops watching the file.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close(); // Wakes the watcher thread, which then exits
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    /**
+     * Waits for changes of the file and reloads it once it has been quiet for a while.
+     */
+    private void watchLoop() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+                // Let the writer finish: keep collecting events until the file is quiet
+                while ((key = watchService.poll(QUIET_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+                if (changed) {
+                    reload.run();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // The watcher was closed
+        }
+    }
+
+    /**
+     * Takes the events of a key and makes it ready for the next ones.
+     *
+     * @param key the signalled key
+     * @return true if one of the events was for the watched file
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // Overflow events carry no file name; the file may have changed
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+}
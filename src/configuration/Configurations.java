@@ -1,4 +1,13 @@
 package configuration;
+
+import core.PoolType;
+import core.PriorityPolicy;
+import journal.Durability;
+import logging.LogFormat;
+import logging.OverflowPolicy;
+import threads.ExecutionMode;
+import threads.PacingMode;
+
 /**
  * The Configurations class represents a configuration setup for ticket management,
  * including total tickets, release rates, retrieval rates, pool capacity, vendors, and customers.
@@ -12,6 +21,686 @@ public class Configurations {
     private int maxPoolTickets; // The maximum number of tickets allowed in the pool
     private int numberOfVendors; // The number of ticket vendors
     private int numberOfCustomers; // The number of ticket customers
+    private PoolType poolType = PoolType.SYNCHRONIZED; // The ticket pool implementation to use
+    private int shardCount = 0; // The number of shards of a sharded pool, 0 for one per processor
+    private ExecutionMode executionMode = ExecutionMode.PLATFORM_THREADS; // The kind of threads vendors and customers run on
+    private int releaseBatchSize = 1; // The number of tickets a vendor adds in one step
+    private int retrievalBatchSize = 1; // The number of tickets a customer removes in one step
+    private boolean asyncLogging = false; // Whether log messages are written by a background thread
+    private int logQueueCapacity = 8192; // The maximum number of log messages waiting to be written
+    private OverflowPolicy logOverflowPolicy = OverflowPolicy.BLOCK; // What to do when the log queue is full
+    private LogFormat logFormat = LogFormat.TEXT; // Whether the log file is written as text or binary records
+    private int logMaxFileMegabytes = 10; // The size at which the log file is rolled over, 0 for no limit
+    private int logRotateMinutes = 0; // The age at which the log file is rolled over, 0 for no limit
+    private int logKeepFiles = 5; // The number of rolled log files kept
+    private boolean logCompress = false; // Whether rolled log files are compressed with gzip
+    private PacingMode pacingMode = PacingMode.SLEEP; // How vendors and customers wait between operations
+    private int durationSeconds = 0; // How long a headless run lasts, 0 to run until all tickets are sold
+    private boolean journalEnabled = false; // Whether ticket sales are written to the journal
+    private String journalDirectory = "resources/journal"; // The directory holding the journal segments
+    private Durability journalDurability = Durability.PERIODIC; // When journal records are forced to disk
+    private int journalFlushMillis = 10; // The time between two forces of the journal in PERIODIC mode
+    private int snapshotIntervalSeconds = 60; // The time between two snapshots of a journaled pool, 0 for none
+    private PriorityPolicy priorityPolicy = PriorityPolicy.STRICT; // How waiting VIP and regular customers are chosen between
+    private int vipWeight = 4; // The tickets given to VIP customers for every regular ticket with WEIGHTED
+    private int vipStarvationMillis = 200; // How long a regular customer waits before it goes ahead of VIP customers with STRICT
+    private int holdTtlMillis = 0; // How long a customer's hold on a ticket lasts, 0 to buy tickets directly
+    private int holdAbandonPercent = 10; // The percentage of held tickets customers abandon
+    private int seatSections = 20; // The number of sections of a seat map pool, 0 for one per processor
+    private int seatsPerRow = 50; // The number of seats in a row of a seat map pool, at most 64
+    private int eventCount = 1; // The number of events sold at once, each with its own pool
+    private double eventSkew = 1.0; // The Zipf exponent spreading customers over the events, 0 for even demand
+    private int serverPort = 0; // The loopback port buyers can reach the pool on over TCP, 0 for no server
+    private int schedulerThreads = 2; // The timer threads driving the vendors with SCHEDULED pacing
+    private int releaseBurst = 10; // The most tickets a scheduled vendor releases at once after falling behind
+    private boolean watchConfiguration = true; // Whether changes to the configuration file are applied while the system runs
+    private boolean simulation = false; // Whether the sale runs on a virtual clock instead of real threads
+    private long simulationSeed = 42; // The seed of the random pauses of a simulated sale
+    private String jfrFile = null; // The file a flight recording of the whole run is written to, null for none
+    private int jfrLockThresholdMicros = 20; // The shortest contended pool lock acquire a flight recording keeps
+    private int jfrWaitThresholdMicros = 1000; // The shortest wait for space or a ticket a flight recording keeps
+    private int jfrLogThresholdMicros = 100; // The shortest log write a flight recording keeps
+    private int jfrHandoffThresholdMicros = 100; // The shortest ticket handoff a flight recording keeps
+
+    /**
+     * Gets the ticket pool implementation to use.
+     * @return the pool type
+     */
+    public PoolType getPoolType() {
+        return poolType;
+    }
+
+    /**
+     * Sets the ticket pool implementation to use.
+     * @param poolType the pool type to set
+     */
+    public void setPoolType(PoolType poolType) {
+        this.poolType = poolType;
+    }
+
+    /**
+     * Gets the number of shards of a sharded pool.
+     * @return the shard count, 0 for one shard per available processor
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Sets the number of shards of a sharded pool.
+     * @param shardCount the shard count to set, 0 for one shard per available processor
+     */
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Gets the kind of threads vendors and customers run on.
+     * @return the execution mode
+     */
+    public ExecutionMode getExecutionMode() {
+        return executionMode;
+    }
+
+    /**
+     * Sets the kind of threads vendors and customers run on.
+     * @param executionMode the execution mode to set
+     */
+    public void setExecutionMode(ExecutionMode executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    /**
+     * Gets the number of tickets a vendor adds in one step.
+     * @return the release batch size
+     */
+    public int getReleaseBatchSize() {
+        return releaseBatchSize;
+    }
+
+    /**
+     * Sets the number of tickets a vendor adds in one step.
+     * @param releaseBatchSize the release batch size to set
+     */
+    public void setReleaseBatchSize(int releaseBatchSize) {
+        this.releaseBatchSize = releaseBatchSize;
+    }
+
+    /**
+     * Gets the number of tickets a customer removes in one step.
+     * @return the retrieval batch size
+     */
+    public int getRetrievalBatchSize() {
+        return retrievalBatchSize;
+    }
+
+    /**
+     * Sets the number of tickets a customer removes in one step.
+     * @param retrievalBatchSize the retrieval batch size to set
+     */
+    public void setRetrievalBatchSize(int retrievalBatchSize) {
+        this.retrievalBatchSize = retrievalBatchSize;
+    }
+
+    /**
+     * Checks if log messages are written by a background thread.
+     * @return true if asynchronous logging is enabled
+     */
+    public boolean isAsyncLogging() {
+        return asyncLogging;
+    }
+
+    /**
+     * Sets whether log messages are written by a background thread.
+     * @param asyncLogging true to enable asynchronous logging
+     */
+    public void setAsyncLogging(boolean asyncLogging) {
+        this.asyncLogging = asyncLogging;
+    }
+
+    /**
+     * Gets the maximum number of log messages waiting to be written.
+     * @return the log queue capacity
+     */
+    public int getLogQueueCapacity() {
+        return logQueueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of log messages waiting to be written.
+     * @param logQueueCapacity the log queue capacity to set
+     */
+    public void setLogQueueCapacity(int logQueueCapacity) {
+        this.logQueueCapacity = logQueueCapacity;
+    }
+
+    /**
+     * Gets what the asynchronous logger does when its queue is full.
+     * @return the log overflow policy
+     */
+    public OverflowPolicy getLogOverflowPolicy() {
+        return logOverflowPolicy;
+    }
+
+    /**
+     * Sets what the asynchronous logger does when its queue is full.
+     * @param logOverflowPolicy the log overflow policy to set
+     */
+    public void setLogOverflowPolicy(OverflowPolicy logOverflowPolicy) {
+        this.logOverflowPolicy = logOverflowPolicy;
+    }
+
+    /**
+     * Gets whether the log file is written as text or binary records.
+     * @return the log format
+     */
+    public LogFormat getLogFormat() {
+        return logFormat;
+    }
+
+    /**
+     * Sets whether the log file is written as text or binary records.
+     * @param logFormat the log format to set
+     */
+    public void setLogFormat(LogFormat logFormat) {
+        this.logFormat = logFormat;
+    }
+
+    /**
+     * Gets the size at which the log file is rolled over.
+     * @return the size in MiB, 0 for no limit
+     */
+    public int getLogMaxFileMegabytes() {
+        return logMaxFileMegabytes;
+    }
+
+    /**
+     * Sets the size at which the log file is rolled over.
+     * @param logMaxFileMegabytes the size in MiB to set, 0 for no limit
+     */
+    public void setLogMaxFileMegabytes(int logMaxFileMegabytes) {
+        this.logMaxFileMegabytes = logMaxFileMegabytes;
+    }
+
+    /**
+     * Gets the age at which the log file is rolled over.
+     * @return the age in minutes, 0 for no limit
+     */
+    public int getLogRotateMinutes() {
+        return logRotateMinutes;
+    }
+
+    /**
+     * Sets the age at which the log file is rolled over.
+     * @param logRotateMinutes the age in minutes to set, 0 for no limit
+     */
+    public void setLogRotateMinutes(int logRotateMinutes) {
+        this.logRotateMinutes = logRotateMinutes;
+    }
+
+    /**
+     * Gets the number of rolled log files kept.
+     * @return the number of rolled log files
+     */
+    public int getLogKeepFiles() {
+        return logKeepFiles;
+    }
+
+    /**
+     * Sets the number of rolled log files kept.
+     * @param logKeepFiles the number of rolled log files to set
+     */
+    public void setLogKeepFiles(int logKeepFiles) {
+        this.logKeepFiles = logKeepFiles;
+    }
+
+    /**
+     * Checks whether rolled log files are compressed with gzip.
+     * @return true if rolled log files are compressed
+     */
+    public boolean isLogCompress() {
+        return logCompress;
+    }
+
+    /**
+     * Sets whether rolled log files are compressed with gzip.
+     * @param logCompress true to compress rolled log files
+     */
+    public void setLogCompress(boolean logCompress) {
+        this.logCompress = logCompress;
+    }
+
+    /**
+     * Gets how vendors and customers wait between operations.
+     * @return the pacing mode; with any mode but SLEEP the rates are operations per second
+     */
+    public PacingMode getPacingMode() {
+        return pacingMode;
+    }
+
+    /**
+     * Sets how vendors and customers wait between operations.
+     * @param pacingMode the pacing mode to set
+     */
+    public void setPacingMode(PacingMode pacingMode) {
+        this.pacingMode = pacingMode;
+    }
+
+    /**
+     * Gets how long a headless run lasts.
+     * @return the duration in seconds, 0 to run until all tickets are sold
+     */
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    /**
+     * Sets how long a headless run lasts.
+     * @param durationSeconds the duration in seconds to set, 0 to run until all tickets are sold
+     */
+    public void setDurationSeconds(int durationSeconds) {
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * Checks whether ticket sales are written to the journal.
+     * @return true if the journal is enabled
+     */
+    public boolean isJournalEnabled() {
+        return journalEnabled;
+    }
+
+    /**
+     * Sets whether ticket sales are written to the journal.
+     * @param journalEnabled true to enable the journal
+     */
+    public void setJournalEnabled(boolean journalEnabled) {
+        this.journalEnabled = journalEnabled;
+    }
+
+    /**
+     * Gets the directory holding the journal segments.
+     * @return the journal directory
+     */
+    public String getJournalDirectory() {
+        return journalDirectory;
+    }
+
+    /**
+     * Sets the directory holding the journal segments.
+     * @param journalDirectory the journal directory to set
+     */
+    public void setJournalDirectory(String journalDirectory) {
+        this.journalDirectory = journalDirectory;
+    }
+
+    /**
+     * Gets when journal records are forced to disk.
+     * @return the journal durability
+     */
+    public Durability getJournalDurability() {
+        return journalDurability;
+    }
+
+    /**
+     * Sets when journal records are forced to disk.
+     * @param journalDurability the journal durability to set
+     */
+    public void setJournalDurability(Durability journalDurability) {
+        this.journalDurability = journalDurability;
+    }
+
+    /**
+     * Gets the time between two forces of the journal in PERIODIC mode.
+     * @return the flush interval in milliseconds
+     */
+    public int getJournalFlushMillis() {
+        return journalFlushMillis;
+    }
+
+    /**
+     * Sets the time between two forces of the journal in PERIODIC mode.
+     * @param journalFlushMillis the flush interval in milliseconds to set
+     */
+    public void setJournalFlushMillis(int journalFlushMillis) {
+        this.journalFlushMillis = journalFlushMillis;
+    }
+
+    /**
+     * Gets the time between two snapshots of a journaled pool.
+     * @return the snapshot interval in seconds, 0 for no periodic snapshots
+     */
+    public int getSnapshotIntervalSeconds() {
+        return snapshotIntervalSeconds;
+    }
+
+    /**
+     * Sets the time between two snapshots of a journaled pool.
+     * @param snapshotIntervalSeconds the snapshot interval in seconds to set, 0 for no periodic snapshots
+     */
+    public void setSnapshotIntervalSeconds(int snapshotIntervalSeconds) {
+        this.snapshotIntervalSeconds = snapshotIntervalSeconds;
+    }
+
+    /**
+     * Gets how waiting VIP and regular customers are chosen between.
+     * @return the priority policy
+     */
+    public PriorityPolicy getPriorityPolicy() {
+        return priorityPolicy;
+    }
+
+    /**
+     * Sets how waiting VIP and regular customers are chosen between.
+     * @param priorityPolicy the priority policy to set
+     */
+    public void setPriorityPolicy(PriorityPolicy priorityPolicy) {
+        this.priorityPolicy = priorityPolicy;
+    }
+
+    /**
+     * Gets the tickets given to VIP customers for every regular ticket with WEIGHTED.
+     * @return the VIP weight
+     */
+    public int getVipWeight() {
+        return vipWeight;
+    }
+
+    /**
+     * Sets the tickets given to VIP customers for every regular ticket with WEIGHTED.
+     * @param vipWeight the VIP weight to set
+     */
+    public void setVipWeight(int vipWeight) {
+        this.vipWeight = vipWeight;
+    }
+
+    /**
+     * Gets how long a regular customer waits before it goes ahead of VIP customers with STRICT.
+     * @return the starvation limit in milliseconds
+     */
+    public int getVipStarvationMillis() {
+        return vipStarvationMillis;
+    }
+
+    /**
+     * Sets how long a regular customer waits before it goes ahead of VIP customers with STRICT.
+     * @param vipStarvationMillis the starvation limit in milliseconds to set
+     */
+    public void setVipStarvationMillis(int vipStarvationMillis) {
+        this.vipStarvationMillis = vipStarvationMillis;
+    }
+
+    /**
+     * Gets how long a customer's hold on a ticket lasts.
+     * @return the hold time to live in milliseconds, 0 when customers buy tickets directly
+     */
+    public int getHoldTtlMillis() {
+        return holdTtlMillis;
+    }
+
+    /**
+     * Sets how long a customer's hold on a ticket lasts.
+     * @param holdTtlMillis the hold time to live in milliseconds to set, 0 to buy tickets directly
+     */
+    public void setHoldTtlMillis(int holdTtlMillis) {
+        this.holdTtlMillis = holdTtlMillis;
+    }
+
+    /**
+     * Gets the percentage of held tickets customers abandon.
+     * @return the abandon percentage
+     */
+    public int getHoldAbandonPercent() {
+        return holdAbandonPercent;
+    }
+
+    /**
+     * Sets the percentage of held tickets customers abandon.
+     * @param holdAbandonPercent the abandon percentage to set
+     */
+    public void setHoldAbandonPercent(int holdAbandonPercent) {
+        this.holdAbandonPercent = holdAbandonPercent;
+    }
+
+    /**
+     * Gets the number of sections of a seat map pool.
+     * @return the section count, 0 for one section per available processor
+     */
+    public int getSeatSections() {
+        return seatSections;
+    }
+
+    /**
+     * Sets the number of sections of a seat map pool.
+     * @param seatSections the section count to set, 0 for one section per available processor
+     */
+    public void setSeatSections(int seatSections) {
+        this.seatSections = seatSections;
+    }
+
+    /**
+     * Gets the number of seats in a row of a seat map pool.
+     * @return the seats per row
+     */
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    /**
+     * Sets the number of seats in a row of a seat map pool.
+     * @param seatsPerRow the seats per row to set, 1 to 64
+     */
+    public void setSeatsPerRow(int seatsPerRow) {
+        this.seatsPerRow = seatsPerRow;
+    }
+
+    /**
+     * Gets the number of events sold at once.
+     * @return the event count, 1 for a single on-sale
+     */
+    public int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Sets the number of events sold at once.
+     * @param eventCount the event count to set, 1 for a single on-sale
+     */
+    public void setEventCount(int eventCount) {
+        this.eventCount = eventCount;
+    }
+
+    /**
+     * Gets the Zipf exponent spreading customers over the events.
+     * @return the skew, 0 for even demand
+     */
+    public double getEventSkew() {
+        return eventSkew;
+    }
+
+    /**
+     * Sets the Zipf exponent spreading customers over the events.
+     * @param eventSkew the skew to set, 0 for even demand
+     */
+    public void setEventSkew(double eventSkew) {
+        this.eventSkew = eventSkew;
+    }
+
+    /**
+     * Gets the loopback port buyers can reach the pool on over TCP.
+     * @return the port, 0 for no server
+     */
+    public int getServerPort() {
+        return serverPort;
+    }
+
+    /**
+     * Sets the loopback port buyers can reach the pool on over TCP.
+     * @param serverPort the port to set, 0 for no server
+     */
+    public void setServerPort(int serverPort) {
+        this.serverPort = serverPort;
+    }
+
+    /**
+     * Gets the number of timer threads driving the vendors with SCHEDULED pacing.
+     * @return the number of scheduler threads
+     */
+    public int getSchedulerThreads() {
+        return schedulerThreads;
+    }
+
+    /**
+     * Sets the number of timer threads driving the vendors with SCHEDULED pacing.
+     * @param schedulerThreads the number of scheduler threads to set
+     */
+    public void setSchedulerThreads(int schedulerThreads) {
+        this.schedulerThreads = schedulerThreads;
+    }
+
+    /**
+     * Gets the most tickets a scheduled vendor releases at once after falling behind.
+     * @return the release burst
+     */
+    public int getReleaseBurst() {
+        return releaseBurst;
+    }
+
+    /**
+     * Sets the most tickets a scheduled vendor releases at once after falling behind.
+     * @param releaseBurst the release burst to set
+     */
+    public void setReleaseBurst(int releaseBurst) {
+        this.releaseBurst = releaseBurst;
+    }
+
+    /**
+     * Checks whether changes to the configuration file are applied while the system runs.
+     * @return true if the configuration file is watched
+     */
+    public boolean isWatchConfiguration() {
+        return watchConfiguration;
+    }
+
+    /**
+     * Sets whether changes to the configuration file are applied while the system runs.
+     * @param watchConfiguration true to watch the configuration file
+     */
+    public void setWatchConfiguration(boolean watchConfiguration) {
+        this.watchConfiguration = watchConfiguration;
+    }
+
+    /**
+     * Checks whether the sale runs on a virtual clock instead of real threads.
+     * @return true if the sale is simulated
+     */
+    public boolean isSimulation() {
+        return simulation;
+    }
+
+    /**
+     * Sets whether the sale runs on a virtual clock instead of real threads.
+     * @param simulation true to simulate the sale
+     */
+    public void setSimulation(boolean simulation) {
+        this.simulation = simulation;
+    }
+
+    /**
+     * Gets the seed of the random pauses of a simulated sale.
+     * @return the simulation seed
+     */
+    public long getSimulationSeed() {
+        return simulationSeed;
+    }
+
+    /**
+     * Sets the seed of the random pauses of a simulated sale.
+     * @param simulationSeed the simulation seed to set
+     */
+    public void setSimulationSeed(long simulationSeed) {
+        this.simulationSeed = simulationSeed;
+    }
+
+    /**
+     * Gets the file a flight recording of the whole run is written to.
+     * @return the recording file, or null for none
+     */
+    public String getJfrFile() {
+        return jfrFile;
+    }
+
+    /**
+     * Sets the file a flight recording of the whole run is written to.
+     * @param jfrFile the recording file to set, or null for none
+     */
+    public void setJfrFile(String jfrFile) {
+        this.jfrFile = jfrFile;
+    }
+
+    /**
+     * Gets the shortest contended pool lock acquire a flight recording keeps, in microseconds.
+     * @return the lock threshold
+     */
+    public int getJfrLockThresholdMicros() {
+        return jfrLockThresholdMicros;
+    }
+
+    /**
+     * Sets the shortest contended pool lock acquire a flight recording keeps, in microseconds.
+     * @param jfrLockThresholdMicros the lock threshold to set
+     */
+    public void setJfrLockThresholdMicros(int jfrLockThresholdMicros) {
+        this.jfrLockThresholdMicros = jfrLockThresholdMicros;
+    }
+
+    /**
+     * Gets the shortest wait for space or a ticket a flight recording keeps, in microseconds.
+     * @return the wait threshold
+     */
+    public int getJfrWaitThresholdMicros() {
+        return jfrWaitThresholdMicros;
+    }
+
+    /**
+     * Sets the shortest wait for space or a ticket a flight recording keeps, in microseconds.
+     * @param jfrWaitThresholdMicros the wait threshold to set
+     */
+    public void setJfrWaitThresholdMicros(int jfrWaitThresholdMicros) {
+        this.jfrWaitThresholdMicros = jfrWaitThresholdMicros;
+    }
+
+    /**
+     * Gets the shortest log write a flight recording keeps, in microseconds.
+     * @return the log write threshold
+     */
+    public int getJfrLogThresholdMicros() {
+        return jfrLogThresholdMicros;
+    }
+
+    /**
+     * Sets the shortest log write a flight recording keeps, in microseconds.
+     * @param jfrLogThresholdMicros the log write threshold to set
+     */
+    public void setJfrLogThresholdMicros(int jfrLogThresholdMicros) {
+        this.jfrLogThresholdMicros = jfrLogThresholdMicros;
+    }
+
+    /**
+     * Gets the shortest ticket handoff a flight recording keeps, in microseconds.
+     * @return the handoff threshold
+     */
+    public int getJfrHandoffThresholdMicros() {
+        return jfrHandoffThresholdMicros;
+    }
+
+    /**
+     * Sets the shortest ticket handoff a flight recording keeps, in microseconds.
+     * @param jfrHandoffThresholdMicros the handoff threshold to set
+     */
+    public void setJfrHandoffThresholdMicros(int jfrHandoffThresholdMicros) {
+        this.jfrHandoffThresholdMicros = jfrHandoffThresholdMicros;
+    }
 
     /**
      * Gets the number of vendors.
@@ -83,6 +772,15 @@ public class Configurations {
                 ", maximumTicketCapacity=" + maxPoolTickets +
                 ", numberOfVendors=" + numberOfVendors +
                 ", numberOfCustomers=" + numberOfCustomers +
+                ", poolType=" + poolType +
+                ", executionMode=" + executionMode +
+                ", releaseBatchSize=" + releaseBatchSize +
+                ", retrievalBatchSize=" + retrievalBatchSize +
+                ", asyncLogging=" + asyncLogging +
+                ", pacingMode=" + pacingMode +
+                ", journalEnabled=" + journalEnabled +
+                ", priorityPolicy=" + priorityPolicy +
+                ", holdTtlMillis=" + holdTtlMillis +
                 '}';
     }
 
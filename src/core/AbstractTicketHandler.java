@@ -1,24 +1,45 @@
 package core;
 /**
  * AbstractTicketHandler serves as a base class for handling ticket-related operations.
- * It defines a contract for ticket handling and provides a shared TicketPool resource.
+ * It defines a contract for ticket handling and provides a shared TicketOperations resource.
  */
 
 public abstract class AbstractTicketHandler {
 
     // Shared resource for managing tickets
-    protected TicketPool ticketpool;
+    protected TicketOperations ticketpool;
 
     /**
-     * Constructor to initialize the AbstractTicketHandler with a TicketPool.
+     * Constructor to initialize the AbstractTicketHandler with a ticket pool.
      *
-     * @param ticketPool the TicketPool instance to be used by the handler
+     * @param ticketPool the TicketOperations instance to be used by the handler
      */
-    public AbstractTicketHandler(TicketPool ticketPool){
+    public AbstractTicketHandler(TicketOperations ticketPool){
         this.ticketpool = ticketPool;
     }
 
 
+    /**
+     * Flag to indicate the handler should finish, set when the number of vendors or customers is scaled down.
+     */
+    private volatile boolean retired = false;
+
+    /**
+     * Asks the handler to finish once its current operation is done, while the others go on.
+     */
+    public void retire() {
+        retired = true;
+    }
+
+    /**
+     * Checks if the handler was asked to finish.
+     *
+     * @return true if the handler is retired
+     */
+    public boolean isRetired() {
+        return retired;
+    }
+
     /**
      * Abstract method to handle tickets.
      * Concrete subclasses must implement this method to define specific ticket handling logic.
@@ -0,0 +1,675 @@
+package core;
+
+import logging.LogEvent;
+import logging.Logger;
+import util.Ticket;
+
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The CompactTicketPool class implements the TicketOperations interface with the packed
+ * ticket ids stored in a preallocated primitive long array used as a ring.
+ * A pooled ticket costs 8 bytes and no object, so a large inventory adds nothing for the
+ * garbage collector to trace. Vendors adding ids through {@link #addTicketId(long)} never
+ * create a Ticket object; Ticket objects are only created when tickets leave the pool
+ * through {@link #drainTo(Collection, int)}.
+ * Waiting is guarded by a ReentrantLock like {@link TicketPool}.
+ */
+public class CompactTicketPool implements TicketOperations {
+
+    /**
+     * The packed ids of the tickets in the pool, used as a ring. Replaced when the pool is resized,
+     * and always at least as long as the number of tickets in the pool.
+     */
+    private long[] ticketIds;
+
+    /**
+     * Maximum number of tickets allowed in the pool, guarded by the lock.
+     */
+    private int capacity;
+
+    /**
+     * Index of the oldest ticket in the ring.
+     */
+    private int head = 0;
+
+    /**
+     * Number of tickets currently in the ring.
+     */
+    private volatile int size = 0;
+
+    /**
+     * Counter for the total number of tickets added to the pool.
+     */
+    private volatile int counter = 0;
+
+    /**
+     * Counter for the total number of tickets sold.
+     */
+    private volatile int soldTicketCounter = 0;
+
+    /**
+     * Listener notified of every ticket added and sold.
+     */
+    private volatile PoolListener listener = PoolListener.NONE;
+
+    /**
+     * Flag to indicate if ticket processing should stop.
+     */
+    private volatile boolean stopFlag = false;
+
+    /**
+     * Lock guarding the ring and its counters.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition vendors wait on while the pool is full.
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Lanes customers wait in while the pool is empty, one per customer class.
+     */
+    private final PriorityLanes lanes;
+
+    /**
+     * Constructor to initialize the CompactTicketPool with a maximum ticket capacity.
+     * Waiting customers are served in the order they arrived, whatever their class.
+     *
+     * @param maxPoolTickets the maximum number of tickets that can be stored in the pool
+     */
+    public CompactTicketPool(int maxPoolTickets) {
+        this(maxPoolTickets, PriorityPolicy.NONE, 1, 0);
+    }
+
+    /**
+     * Constructor to initialize the CompactTicketPool with a maximum ticket capacity and priority lanes.
+     *
+     * @param maxPoolTickets      the maximum number of tickets that can be stored in the pool
+     * @param priorityPolicy      how waiting VIP and regular customers are chosen between
+     * @param vipWeight           tickets given to VIP customers for every regular ticket with WEIGHTED
+     * @param vipStarvationMillis how long a regular customer waits before it goes ahead of VIP customers with STRICT
+     */
+    public CompactTicketPool(int maxPoolTickets, PriorityPolicy priorityPolicy, int vipWeight, long vipStarvationMillis) {
+        this.capacity = Math.max(1, maxPoolTickets);
+        this.ticketIds = new long[capacity];
+        this.lanes = new PriorityLanes(lock, priorityPolicy, vipWeight, vipStarvationMillis);
+    }
+
+    /**
+     * Adds a ticket to the ticket pool by storing its packed id.
+     * If the pool is full, the thread waits until space becomes available.
+     *
+     * @param ticket the Ticket object to be added
+     */
+    @Override
+    public void addTicket(Ticket ticket) {
+        addTicketId(ticket.getId());
+    }
+
+    /**
+     * Adds a ticket given by its packed id to the ticket pool.
+     * If the pool is full, the thread waits until space becomes available.
+     * The ticket is not added if the pool is stopped while waiting.
+     *
+     * @param ticketId the packed ticket id
+     */
+    @Override
+    public void addTicketId(long ticketId) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            while (size >= capacity && !stopFlag) {
+                // If the pool is full, log the status and wait for space to become available
+                Logger.log(LogEvent.POOL_FULL);
+                long waitStart = System.nanoTime();
+                PoolWaitEvent event = new PoolWaitEvent();
+                event.begin();
+                try {
+                    notFull.await(); // Releases the lock and waits for a customer to free space
+                    PoolMetrics.addWaited(waitStart);
+                    event.finish(PoolWaitEvent.POOL_FULL, null, size < capacity);
+                } catch (InterruptedException e) {
+                    // Handle interruption gracefully and rethrow as RuntimeException
+                    Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                    throw new RuntimeException(e);
+                }
+            }
+            if (size < capacity) {
+                insert(ticketId);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Adds a ticket to the ticket pool by storing its packed id, waiting at most the given time for space.
+     *
+     * @param ticket  the Ticket object to be added
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the ticket was added
+     */
+    @Override
+    public boolean tryAddTicket(Ticket ticket, long timeout, TimeUnit unit) {
+        return tryAddTicketId(ticket.getId(), timeout, unit);
+    }
+
+    /**
+     * Adds a ticket given by its packed id to the ticket pool, waiting at most the given time for space.
+     *
+     * @param ticketId the packed ticket id
+     * @param timeout  the maximum time to wait
+     * @param unit     the unit of the timeout
+     * @return true if the ticket was added
+     */
+    @Override
+    public boolean tryAddTicketId(long ticketId, long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            while (size >= capacity) {
+                if (stopFlag || remaining <= 0) {
+                    return false;
+                }
+                // If the pool is full, log the status and wait for space until the time runs out
+                Logger.log(LogEvent.POOL_FULL);
+                long waitStart = System.nanoTime();
+                PoolWaitEvent event = new PoolWaitEvent();
+                event.begin();
+                try {
+                    remaining = notFull.awaitNanos(remaining); // Releases the lock and waits for a customer to free space
+                    PoolMetrics.addWaited(waitStart);
+                    event.finish(PoolWaitEvent.POOL_FULL, null, size < capacity);
+                } catch (InterruptedException e) {
+                    Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                    Thread.currentThread().interrupt(); // Restore the interrupted status
+                    return false;
+                }
+            }
+            insert(ticketId);
+            return true;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Removes the oldest ticket from the ticket pool for a regular customer.
+     * If the pool is empty, the thread waits until a ticket becomes available.
+     * Nothing is removed if the pool is stopped while waiting.
+     */
+    @Override
+    public void removeTicket() {
+        removeTicket(CustomerClass.REGULAR);
+    }
+
+    /**
+     * Removes the oldest ticket from the ticket pool for a customer of a priority class.
+     * If no ticket is free, the customer waits in the lane of its class until a ticket is handed to it.
+     * Nothing is removed if the pool is stopped while waiting.
+     *
+     * @param customerClass the class of the customer
+     */
+    @Override
+    public void removeTicket(CustomerClass customerClass) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            if (lanes.available(size) > 0) {
+                lanes.took(customerClass);
+                take();
+                return;
+            }
+            if (stopFlag) {
+                return;
+            }
+            // If the pool is empty, log the status and wait for a ticket to be handed over
+            Logger.log(LogEvent.POOL_EMPTY);
+            try {
+                if (lanes.await(customerClass, false, 0)) {
+                    take();
+                }
+            } catch (InterruptedException e) {
+                // Handle interruption gracefully and rethrow as RuntimeException
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                throw new RuntimeException(e);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Removes the oldest ticket from the ticket pool for a regular customer, waiting at most the given time for one.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return the removed ticket, or empty if none became available in time
+     */
+    @Override
+    public Optional<Ticket> tryRemoveTicket(long timeout, TimeUnit unit) {
+        return tryRemoveTicket(CustomerClass.REGULAR, timeout, unit);
+    }
+
+    /**
+     * Removes the oldest ticket from the ticket pool for a customer of a priority class,
+     * waiting at most the given time in the lane of its class.
+     *
+     * @param customerClass the class of the customer
+     * @param timeout       the maximum time to wait
+     * @param unit          the unit of the timeout
+     * @return the removed ticket, or empty if none became available in time
+     */
+    @Override
+    public Optional<Ticket> tryRemoveTicket(CustomerClass customerClass, long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            if (lanes.available(size) > 0) {
+                lanes.took(customerClass);
+                return Optional.of(new Ticket(take()));
+            }
+            if (stopFlag || remaining <= 0) {
+                lanes.gaveUp(); // Polls and stopped pools do not wait
+                return Optional.empty();
+            }
+            // If the pool is empty, log the status and wait for a ticket until the time runs out
+            Logger.log(LogEvent.POOL_EMPTY);
+            try {
+                if (lanes.await(customerClass, true, remaining)) {
+                    return Optional.of(new Ticket(take()));
+                }
+            } catch (InterruptedException e) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                Thread.currentThread().interrupt(); // Restore the interrupted status
+            }
+            return Optional.empty();
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Releases the lock at the end of an operation, then lets the listener wait for the tickets
+     * of the operation to be stored, so other threads can take the lock and join the same commit.
+     */
+    private void release() {
+        lock.unlock();
+        listener.awaitDurable();
+    }
+
+    /**
+     * Appends a packed id to the ring and wakes one waiting customer.
+     * The caller holds the lock and has checked there is space.
+     *
+     * @param ticketId the packed ticket id
+     */
+    private void insert(long ticketId) {
+        ticketIds[(head + size) % ticketIds.length] = ticketId;
+        size++;
+        counter++;
+        listener.ticketAdded(ticketId);
+        PoolMetrics.added(1);
+        Logger.log(LogEvent.TICKET_ADDED, counter);
+        Logger.log(LogEvent.TICKET_ADDED_BY, ticketId);
+
+        lanes.ticketsAdded(1); // Hand the ticket to one waiting customer, chosen by class
+    }
+
+    /**
+     * Takes the oldest id out of the ring as a sale and wakes one waiting vendor.
+     * The caller holds the lock and has checked the ring is not empty.
+     *
+     * @return the packed id of the sold ticket
+     */
+    private long take() {
+        long ticketId = poll();
+        soldTicketCounter++;
+        listener.ticketSold(ticketId);
+        PoolMetrics.sold(1);
+
+        Logger.log(LogEvent.TICKET_REMOVED, ticketId);
+        Logger.log(LogEvent.TICKETS_SOLD, soldTicketCounter);
+        notFull.signal(); // Wake one vendor waiting to add a ticket
+        return ticketId;
+    }
+
+    /**
+     * Adds a batch of tickets to the ticket pool while holding the lock once.
+     * If the pool is full, the thread waits until space becomes available, then adds
+     * as many tickets as fit and wakes the waiting threads a single time.
+     *
+     * @param tickets the tickets to be added
+     * @return the number of tickets added from the start of the collection
+     */
+    @Override
+    public int addTickets(Collection<Ticket> tickets) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            if (tickets.isEmpty()) {
+                return 0;
+            }
+            while (size >= capacity && !stopFlag) {
+                // If the pool is full, log the status and wait for space to become available
+                Logger.log(LogEvent.POOL_FULL);
+                long waitStart = System.nanoTime();
+                PoolWaitEvent event = new PoolWaitEvent();
+                event.begin();
+                try {
+                    notFull.await(); // Releases the lock and waits for a customer to free space
+                    PoolMetrics.addWaited(waitStart);
+                    event.finish(PoolWaitEvent.POOL_FULL, null, size < capacity);
+                } catch (InterruptedException e) {
+                    // Handle interruption gracefully and rethrow as RuntimeException
+                    Logger.log("Thread interrupted while waiting to add tickets: " + Thread.currentThread().getName());
+                    throw new RuntimeException(e);
+                }
+            }
+            int added = 0;
+            for (Ticket ticket : tickets) {
+                if (size >= capacity) {
+                    break;
+                }
+                ticketIds[(head + size) % ticketIds.length] = ticket.getId();
+                listener.ticketAdded(ticket.getId());
+                size++;
+                added++;
+            }
+            if (added == 0) {
+                return 0; // Stopped while the pool was full
+            }
+            counter += added;
+            PoolMetrics.added(added);
+            Logger.log(LogEvent.TICKETS_ADDED, added, counter);
+
+            lanes.ticketsAdded(added); // Hand the tickets to as many waiting customers, chosen by class
+            return added;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Removes up to the given number of tickets from the ticket pool for a regular customer while holding the lock once.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed
+     */
+    @Override
+    public int drainTo(Collection<Ticket> target, int max) {
+        return drainTo(target, max, CustomerClass.REGULAR);
+    }
+
+    /**
+     * Removes up to the given number of tickets from the ticket pool for a customer of a priority
+     * class while holding the lock once. If no ticket is free, the customer waits in the lane of
+     * its class until a ticket is handed to it, then takes it and as many free tickets as allowed
+     * and wakes the waiting vendors a single time.
+     *
+     * @param target        the collection the removed tickets are added to
+     * @param max           the maximum number of tickets to remove
+     * @param customerClass the class of the customer
+     * @return the number of tickets removed
+     */
+    @Override
+    public int drainTo(Collection<Ticket> target, int max, CustomerClass customerClass) {
+        return drain(target, max, customerClass, false, 0);
+    }
+
+    /**
+     * Removes up to the given number of tickets for a regular customer while holding the lock
+     * once, waiting at most the given time in the regular lane if no ticket is free.
+     *
+     * @param target  the collection the removed tickets are added to
+     * @param max     the maximum number of tickets to remove
+     * @param timeout the maximum time to wait for the first ticket, 0 not to wait
+     * @param unit    the unit of the timeout
+     * @return the number of tickets removed, 0 if none became available in time
+     */
+    @Override
+    public int tryDrainTo(Collection<Ticket> target, int max, long timeout, TimeUnit unit) {
+        return drain(target, max, CustomerClass.REGULAR, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes up to the given number of tickets while holding the lock once, waiting in the lane
+     * of the customer's class if no ticket is free, and wakes the waiting vendors a single time.
+     *
+     * @param target        the collection the removed tickets are added to
+     * @param max           the maximum number of tickets to remove
+     * @param customerClass the class of the customer
+     * @param timed         true to give up after the timeout
+     * @param timeoutNanos  the maximum time to wait for a timed wait, in nanoseconds
+     * @return the number of tickets removed
+     */
+    private int drain(Collection<Ticket> target, int max, CustomerClass customerClass, boolean timed, long timeoutNanos) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            if (max <= 0) {
+                return 0;
+            }
+            if (lanes.available(size) == 0) {
+                if (stopFlag || (timed && timeoutNanos <= 0)) {
+                    lanes.gaveUp(); // Polls and stopped pools do not wait
+                    return 0;
+                }
+                // If the pool is empty, log the status and wait for a ticket to be handed over
+                Logger.log(LogEvent.POOL_EMPTY);
+                try {
+                    if (!lanes.await(customerClass, timed, timeoutNanos)) {
+                        return 0; // Stopped or timed out while the pool was empty
+                    }
+                } catch (InterruptedException e) {
+                    // Handle interruption gracefully and rethrow as RuntimeException
+                    Logger.log("Thread interrupted while waiting to remove tickets: " + Thread.currentThread().getName());
+                    throw new RuntimeException(e);
+                }
+            } else {
+                lanes.took(customerClass);
+            }
+            int removed = 0;
+            while (removed < max && lanes.available(size) > 0) {
+                long ticketId = poll();
+                listener.ticketSold(ticketId);
+                target.add(new Ticket(ticketId));
+                removed++;
+            }
+            if (removed == 0) {
+                return 0; // Stopped while the pool was empty
+            }
+            soldTicketCounter += removed;
+            PoolMetrics.sold(removed);
+
+            Logger.log(LogEvent.TICKETS_REMOVED, removed);
+            Logger.log(LogEvent.TICKETS_SOLD, soldTicketCounter);
+            notFull.signalAll(); // Wake the waiting vendors once for the whole batch
+            return removed;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Takes the oldest id out of the ring. The caller holds the lock and has checked the ring is not empty.
+     *
+     * @return the packed id of the oldest ticket
+     */
+    private long poll() {
+        long ticketId = ticketIds[head];
+        head = (head + 1) % ticketIds.length;
+        size--;
+        return ticketId;
+    }
+
+    /**
+     * Gets the total number of tickets added to the pool.
+     *
+     * @return the total number of tickets added
+     */
+    @Override
+    public int getCounter() {
+        return counter;
+    }
+
+    /**
+     * Gets the total number of tickets sold.
+     *
+     * @return the total number of tickets sold
+     */
+    @Override
+    public int getSoldTicketCounter() {
+        return soldTicketCounter;
+    }
+
+    /**
+     * Gets the number of tickets currently in the pool.
+     *
+     * @return the number of tickets waiting to be sold
+     */
+    @Override
+    public int getPoolSize() {
+        return size;
+    }
+
+    /**
+     * Sets the listener notified of every ticket added and sold.
+     *
+     * @param listener the listener, null to remove it
+     */
+    @Override
+    public void setPoolListener(PoolListener listener) {
+        this.listener = listener == null ? PoolListener.NONE : listener;
+    }
+
+    /**
+     * Copies the packed ids of the tickets in the ring, oldest first, holding the lock for the copy.
+     *
+     * @return the ids of the tickets in the pool
+     */
+    @Override
+    public long[] snapshotTicketIds() {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            long[] copy = new long[size];
+            // The ring wraps at most once: copy up to the end of the array, then from its start
+            int first = Math.min(size, ticketIds.length - head);
+            System.arraycopy(ticketIds, head, copy, 0, first);
+            System.arraycopy(ticketIds, 0, copy, first, size - first);
+            return copy;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads recovered tickets and counters into the empty pool, without notifying the listener.
+     *
+     * @param ticketIds         the packed ids of the tickets to load, oldest first
+     * @param counter           the total number of tickets added before the restart
+     * @param soldTicketCounter the total number of tickets sold before the restart
+     * @return the number of tickets loaded, at most the pool capacity
+     */
+    @Override
+    public int restore(long[] ticketIds, int counter, int soldTicketCounter) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            int loaded = Math.max(0, Math.min(ticketIds.length, capacity - size));
+            for (int i = 0; i < loaded; i++) {
+                this.ticketIds[(head + size) % this.ticketIds.length] = ticketIds[i];
+                size++;
+            }
+            this.counter = counter;
+            this.soldTicketCounter = soldTicketCounter;
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a sold ticket back at the end of the pool and hands it to a waiting customer.
+     *
+     * @param ticket the ticket to put back
+     * @return true if the ticket was put back, false if the pool is full
+     */
+    @Override
+    public boolean returnTicket(Ticket ticket) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            if (size >= capacity) {
+                return false;
+            }
+            ticketIds[(head + size) % ticketIds.length] = ticket.getId();
+            size++;
+            soldTicketCounter--; // The sale is undone, the ticket does not count as added again
+            listener.ticketReturned(ticket.getId());
+            PoolMetrics.returned(1);
+            Logger.log(LogEvent.TICKET_RETURNED, soldTicketCounter);
+            lanes.ticketsAdded(1); // Hand the ticket to one waiting customer, chosen by class
+            return true;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Changes the maximum number of tickets in the pool, copying the ring into an array of the
+     * new size. When the pool holds more tickets than the new capacity the array keeps room for
+     * them, and vendors wait until customers bring the pool under the new capacity.
+     *
+     * @param maxPoolTickets the new maximum number of tickets, at least 1
+     * @return true, as the pool can always be resized
+     */
+    @Override
+    public boolean resize(int maxPoolTickets) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            long[] resized = new long[Math.max(Math.max(1, maxPoolTickets), size)];
+            // Unwrap the ring so the oldest ticket is first in the new array
+            int first = Math.min(size, ticketIds.length - head);
+            System.arraycopy(ticketIds, head, resized, 0, first);
+            System.arraycopy(ticketIds, 0, resized, first, size - first);
+            ticketIds = resized;
+            head = 0;
+            capacity = Math.max(1, maxPoolTickets);
+            notFull.signalAll(); // Vendors waiting for space may now fit
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Sets the stop flag to indicate whether ticket processing should stop.
+     *
+     * @param stopFlag true to stop ticket processing, false to continue
+     */
+    @Override
+    public void setStopFlag(boolean stopFlag) {
+        PoolLockEvent.lock(lock, PoolType.COMPACT);
+        try {
+            this.stopFlag = stopFlag;
+            // Wake every waiting vendor and customer so they can see the flag
+            notFull.signalAll();
+            lanes.setStopped(stopFlag);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks if ticket processing should stop.
+     *
+     * @return true if processing should stop, false otherwise
+     */
+    @Override
+    public boolean shouldStop() {
+        return stopFlag;
+    }
+}
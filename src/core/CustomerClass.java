@@ -0,0 +1,18 @@
+package core;
+
+/**
+ * The CustomerClass enum lists the priority classes of customers. Pools that support
+ * priority lanes queue waiting customers per class and serve them by the {@link PriorityPolicy}.
+ */
+public enum CustomerClass {
+
+    /**
+     * A regular customer, the lower class.
+     */
+    REGULAR,
+
+    /**
+     * A VIP customer, the higher class.
+     */
+    VIP
+}
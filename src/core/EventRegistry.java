@@ -0,0 +1,157 @@
+package core;
+
+import configuration.Configurations;
+import logging.Logger;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The EventRegistry class holds the events of a process that runs many on-sales at once,
+ * keyed by event id in a {@link ConcurrentHashMap}.
+ *
+ * An event is opened on first use, with its own capacity and ticket count or with those of the
+ * default configuration, and gets a pool of its own created by {@link TicketPoolFactory}. Lookups
+ * do not lock, and opening an event only locks its bin of the map, so the events never share a
+ * lock: a hot event only slows down its own vendors and customers. An event stays small, an
+ * id, a pool and two numbers, so its footprint is that of its pool; the compact pool costs a few
+ * hundred bytes plus 8 bytes per ticket of capacity. Sold-out events are evicted and stopped,
+ * so the map only holds the on-sales still running.
+ */
+public class EventRegistry {
+
+    /**
+     * The open events, by event id.
+     */
+    private final ConcurrentHashMap<String, TicketEvent> events = new ConcurrentHashMap<>();
+
+    /**
+     * The configuration giving the pool type, priority policy and default size of every event.
+     */
+    private final Configurations defaults;
+
+    /**
+     * Events opened and evicted.
+     */
+    private final LongAdder opened = MetricsRegistry.counter("events.opened");
+    private final LongAdder evicted = MetricsRegistry.counter("events.evicted");
+
+    /**
+     * Time from opening an event to evicting it.
+     */
+    private final LatencyHistogram lifetime = MetricsRegistry.histogram("events.lifetime");
+
+    /**
+     * Constructor to create an empty registry. Use {@link #create(Configurations)} instead.
+     *
+     * @param defaults the configuration giving the pool type, priority policy and default size of every event
+     */
+    private EventRegistry(Configurations defaults) {
+        this.defaults = defaults;
+    }
+
+    /**
+     * Creates an empty registry and registers its gauge.
+     *
+     * @param defaults the configuration giving the pool type, priority policy and default size of every event
+     * @return the registry
+     */
+    public static EventRegistry create(Configurations defaults) {
+        EventRegistry registry = new EventRegistry(defaults);
+        MetricsRegistry.gauge("events.open", registry::size);
+        return registry;
+    }
+
+    /**
+     * Gets an event, opening it with the pool size and ticket count of the default configuration
+     * if it is not open yet.
+     *
+     * @param eventId the id of the event
+     * @return the event
+     */
+    public TicketEvent event(String eventId) {
+        return open(eventId, defaults.getMaxPoolTickets(), defaults.getTotalTickets());
+    }
+
+    /**
+     * Gets an event, opening it with the given pool size and ticket count if it is not open yet.
+     * An event already open keeps its own size and count.
+     *
+     * @param eventId        the id of the event
+     * @param maxPoolTickets the maximum number of tickets in the pool of the event
+     * @param totalTickets   the total number of tickets the event sells
+     * @return the event
+     */
+    public TicketEvent open(String eventId, int maxPoolTickets, int totalTickets) {
+        TicketEvent event = events.get(eventId);
+        if (event != null) {
+            return event; // Open already, found without locking
+        }
+        return events.computeIfAbsent(eventId, id -> {
+            opened.increment();
+            Logger.log("Opening event " + id + " with " + totalTickets + " tickets.");
+            return new TicketEvent(id, TicketPoolFactory.create(defaults, maxPoolTickets), totalTickets);
+        });
+    }
+
+    /**
+     * Gets an event without opening it.
+     *
+     * @param eventId the id of the event
+     * @return the event, or null if it is not open
+     */
+    public TicketEvent get(String eventId) {
+        return events.get(eventId);
+    }
+
+    /**
+     * Evicts every sold-out event and stops its sale, so its vendors and customers finish.
+     *
+     * @return the number of events evicted
+     */
+    public int evictFinished() {
+        int count = 0;
+        for (TicketEvent event : events.values()) {
+            // Remove only this event, in case the id was opened again since it was read
+            if (event.isFinished() && events.remove(event.getEventId(), event)) {
+                event.stop();
+                lifetime.record(System.nanoTime() - event.getOpenedNanos());
+                Logger.log("Event " + event.getEventId() + " sold out and was evicted.");
+                count++;
+            }
+        }
+        evicted.add(count);
+        return count;
+    }
+
+    /**
+     * Stops the sale of every open event, leaving the events registered.
+     */
+    public void stopAll() {
+        for (TicketEvent event : events.values()) {
+            event.stop();
+        }
+    }
+
+    /**
+     * Gets the open events.
+     *
+     * @return a live, unmodifiable view of the open events
+     */
+    public Collection<TicketEvent> events() {
+        return Collections.unmodifiableCollection(events.values());
+    }
+
+    /**
+     * Gets the number of open events.
+     *
+     * @return the number of events opened and not evicted
+     */
+    public int size() {
+        return events.size();
+    }
+}
@@ -0,0 +1,57 @@
+package core;
+
+/**
+ * The PoolListener interface is notified of every ticket a pool accepts, sells and takes back.
+ * Pools call it while the ticket is being added or removed, on the vendor or customer
+ * thread, so implementations must be thread-safe and quick. Once an operation is over and
+ * its locks are released, pools call {@link #awaitDurable()} once, where a listener may wait
+ * for the events of the operation to be stored without holding up other threads.
+ */
+public interface PoolListener {
+
+    /**
+     * Listener that ignores every event, used while no listener is set.
+     */
+    PoolListener NONE = new PoolListener() {
+        @Override
+        public void ticketAdded(long ticketId) {
+        }
+
+        @Override
+        public void ticketSold(long ticketId) {
+        }
+
+        @Override
+        public void ticketReturned(long ticketId) {
+        }
+    };
+
+    /**
+     * Called when a ticket is added to the pool.
+     *
+     * @param ticketId the packed id of the ticket
+     */
+    void ticketAdded(long ticketId);
+
+    /**
+     * Called when a ticket is sold from the pool.
+     *
+     * @param ticketId the packed id of the ticket
+     */
+    void ticketSold(long ticketId);
+
+    /**
+     * Called when a sold ticket is put back into the pool, such as a hold that expired.
+     *
+     * @param ticketId the packed id of the ticket
+     */
+    void ticketReturned(long ticketId);
+
+    /**
+     * Called on the same thread after a pool operation that notified the listener, once the
+     * pool no longer holds a lock. Does nothing unless the listener has to wait for its events
+     * to be stored.
+     */
+    default void awaitDurable() {
+    }
+}
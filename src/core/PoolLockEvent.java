@@ -0,0 +1,62 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Flight Recorder event for a thread blocked acquiring the lock of a ticket pool. It is only
+ * created when the lock is held by another thread, so an uncontended acquire costs one tryLock,
+ * and with no recording running the event is never committed.
+ */
+@Name(PoolLockEvent.NAME)
+@Label("Pool Lock Contended")
+@Category({"Ticketing", "Pool"})
+@Description("A thread blocked acquiring the lock of a ticket pool")
+@Threshold("20 us")
+@StackTrace(false)
+final class PoolLockEvent extends jdk.jfr.Event {
+
+    /**
+     * The name of the event in recordings.
+     */
+    static final String NAME = "ticketing.PoolLock";
+
+    /**
+     * The pool implementation whose lock was contended.
+     */
+    @Label("Pool")
+    String pool;
+
+    /**
+     * The number of threads already queued for the lock when the thread started waiting.
+     */
+    @Label("Queued Threads")
+    int queued;
+
+    /**
+     * Acquires a pool lock, recording how long the thread was blocked if another thread held it.
+     *
+     * @param lock the pool lock
+     * @param pool the pool implementation, for the event
+     */
+    static void lock(ReentrantLock lock, PoolType pool) {
+        if (lock.tryLock()) {
+            return; // Uncontended, nothing to record
+        }
+        PoolLockEvent event = new PoolLockEvent();
+        event.begin();
+        lock.lock();
+        event.end();
+        if (event.shouldCommit()) {
+            event.pool = pool.name();
+            event.queued = lock.getQueueLength();
+            event.commit();
+        }
+    }
+}
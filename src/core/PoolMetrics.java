@@ -0,0 +1,167 @@
+package core;
+
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The PoolMetrics class records what the ticket pools do into the metrics registry:
+ * tickets added and sold, overall and per thread, and the time threads spend blocked
+ * waiting for space or tickets. The metrics are looked up once and kept in fields, and the
+ * per-thread counters are cached per thread, so recording is a few uncontended additions.
+ */
+final class PoolMetrics {
+
+    /**
+     * Total tickets added to any pool.
+     */
+    private static final LongAdder ADDED = MetricsRegistry.counter("pool.tickets.added");
+
+    /**
+     * Total tickets sold from any pool.
+     */
+    private static final LongAdder SOLD = MetricsRegistry.counter("pool.tickets.sold");
+
+    /**
+     * Total sold tickets put back into any pool.
+     */
+    private static final LongAdder RETURNED = MetricsRegistry.counter("pool.tickets.returned");
+
+    /**
+     * Time vendors spent blocked waiting for space.
+     */
+    private static final LatencyHistogram ADD_WAIT = MetricsRegistry.histogram("pool.addTicket.wait");
+
+    /**
+     * Time customers spent blocked waiting for tickets.
+     */
+    private static final LatencyHistogram REMOVE_WAIT = MetricsRegistry.histogram("pool.removeTicket.wait");
+
+    /**
+     * Time customers of each class spent blocked waiting in a priority lane, indexed by {@link CustomerClass#ordinal()}.
+     */
+    private static final LatencyHistogram[] REMOVE_WAIT_BY_CLASS = {
+            MetricsRegistry.histogram("pool.removeTicket.wait.regular"),
+            MetricsRegistry.histogram("pool.removeTicket.wait.vip")
+    };
+
+    /**
+     * Tickets added by the current thread.
+     */
+    private static final ThreadLocal<ThreadCounter> ADDED_BY_THREAD = ThreadLocal.withInitial(
+            () -> new ThreadCounter("vendor.tickets.added"));
+
+    /**
+     * Tickets bought by the current thread.
+     */
+    private static final ThreadLocal<ThreadCounter> SOLD_TO_THREAD = ThreadLocal.withInitial(
+            () -> new ThreadCounter("customer.tickets.bought"));
+
+    private PoolMetrics() {
+    }
+
+    /**
+     * Records tickets added by the current thread.
+     *
+     * @param count the number of tickets added
+     */
+    static void added(int count) {
+        ADDED.add(count);
+        ADDED_BY_THREAD.get().counter().add(count);
+    }
+
+    /**
+     * Records tickets sold to the current thread.
+     *
+     * @param count the number of tickets sold
+     */
+    static void sold(int count) {
+        SOLD.add(count);
+        SOLD_TO_THREAD.get().counter().add(count);
+    }
+
+    /**
+     * Records sold tickets put back into a pool.
+     *
+     * @param count the number of tickets put back
+     */
+    static void returned(int count) {
+        RETURNED.add(count);
+    }
+
+    /**
+     * Records how long a vendor was blocked waiting for space.
+     *
+     * @param startNanos the {@link System#nanoTime()} when the vendor started waiting
+     */
+    static void addWaited(long startNanos) {
+        ADD_WAIT.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records how long a customer was blocked waiting for a ticket.
+     *
+     * @param startNanos the {@link System#nanoTime()} when the customer started waiting
+     */
+    static void removeWaited(long startNanos) {
+        REMOVE_WAIT.record(System.nanoTime() - startNanos);
+    }
+
+    /**
+     * Records how long a customer of a priority class was blocked waiting for a ticket.
+     *
+     * @param customerClass the class of the customer
+     * @param startNanos    the {@link System#nanoTime()} when the customer started waiting
+     */
+    static void removeWaited(CustomerClass customerClass, long startNanos) {
+        long waited = System.nanoTime() - startNanos;
+        REMOVE_WAIT.record(waited);
+        REMOVE_WAIT_BY_CLASS[customerClass.ordinal()].record(waited);
+    }
+
+    /**
+     * The keyed counter of the current thread, looked up again when the thread is renamed, as the
+     * simulation does when one thread acts for every vendor and customer in turn.
+     */
+    private static final class ThreadCounter {
+
+        /**
+         * The name of the keyed counter.
+         */
+        private final String metric;
+
+        /**
+         * The thread name the counter was looked up for.
+         */
+        private String threadName;
+
+        /**
+         * The counter of that thread name.
+         */
+        private LongAdder counter;
+
+        /**
+         * Constructor to create the counter of a thread, looked up on first use.
+         *
+         * @param metric the name of the keyed counter
+         */
+        private ThreadCounter(String metric) {
+            this.metric = metric;
+        }
+
+        /**
+         * Gets the counter of the current thread name.
+         *
+         * @return the counter
+         */
+        private LongAdder counter() {
+            String name = Thread.currentThread().getName();
+            if (!name.equals(threadName)) {
+                threadName = name;
+                counter = MetricsRegistry.keyedCounter(metric, name);
+            }
+            return counter;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package core;
+
+/**
+ * The PoolType enum lists the TicketOperations implementations that can be
+ * selected through the configuration file.
+ */
+public enum PoolType {
+
+    /**
+     * The original monitor based {@link TicketPool}.
+     */
+    SYNCHRONIZED,
+
+    /**
+     * The lock-free array backed {@link RingBufferTicketPool}.
+     */
+    RING_BUFFER,
+
+    /**
+     * The {@link ShardedTicketPool}, split into independently locked shards.
+     */
+    SHARDED,
+
+    /**
+     * The {@link CompactTicketPool}, storing packed ticket ids in a primitive array.
+     */
+    COMPACT,
+
+    /**
+     * The {@link SeatMapTicketPool}, a venue seat map with per-row availability bitsets.
+     */
+    SEAT_MAP
+}
@@ -0,0 +1,72 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for a vendor waiting for space in a full pool, or a customer waiting
+ * for a ticket in an empty pool. The event spans one wait on the pool's condition or lane,
+ * with the lock released.
+ */
+@Name(PoolWaitEvent.NAME)
+@Label("Pool Wait")
+@Category({"Ticketing", "Pool"})
+@Description("A vendor waiting for space or a customer waiting for a ticket")
+@Threshold("1 ms")
+@StackTrace(false)
+final class PoolWaitEvent extends jdk.jfr.Event {
+
+    /**
+     * The name of the event in recordings.
+     */
+    static final String NAME = "ticketing.PoolWait";
+
+    /**
+     * Reason of a vendor waiting for space.
+     */
+    static final String POOL_FULL = "pool full";
+
+    /**
+     * Reason of a customer waiting for a ticket.
+     */
+    static final String POOL_EMPTY = "pool empty";
+
+    /**
+     * Why the thread waited: pool full or pool empty.
+     */
+    @Label("Reason")
+    String reason;
+
+    /**
+     * The class of the waiting customer, null for a vendor.
+     */
+    @Label("Customer Class")
+    String customerClass;
+
+    /**
+     * Whether the wait ended with space or a ticket rather than a timeout or a stop.
+     */
+    @Label("Satisfied")
+    boolean satisfied;
+
+    /**
+     * Ends the wait and commits the event if a recording wants it.
+     *
+     * @param reason        why the thread waited
+     * @param customerClass the class of the waiting customer, null for a vendor
+     * @param satisfied     true if the wait ended with space or a ticket
+     */
+    void finish(String reason, CustomerClass customerClass, boolean satisfied) {
+        end();
+        if (shouldCommit()) {
+            this.reason = reason;
+            this.customerClass = customerClass == null ? null : customerClass.name();
+            this.satisfied = satisfied;
+            commit();
+        }
+    }
+}
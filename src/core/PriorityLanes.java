@@ -0,0 +1,342 @@
+package core;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The PriorityLanes class queues the customers waiting for tickets in a lock-based pool,
+ * one lane per {@link CustomerClass}, and hands every new ticket to the waiting customer
+ * chosen by the {@link PriorityPolicy}.
+ *
+ * A ticket handed to a waiter is reserved for it and only that waiter is woken, so there is
+ * no storm of wakeups and a customer arriving later cannot take the ticket first: customers
+ * that do not wait only take unreserved tickets. Within a lane customers are served in the
+ * order they started waiting; a customer whose timed wait runs out and that waits again right
+ * away keeps its place, so bounded waits that recheck the stop flag do not send it to the back
+ * and its wait is recorded once, from the first attempt to the ticket. The lower class is
+ * never starved: with STRICT a regular customer who has waited longer than the starvation
+ * limit gets the next ticket, and with WEIGHTED it gets at least one ticket in every
+ * vipWeight + 1 while both classes wait.
+ *
+ * Every method is called with the pool lock held.
+ */
+final class PriorityLanes {
+
+    /**
+     * The pool lock, used to create the condition of each waiter.
+     */
+    private final ReentrantLock lock;
+
+    /**
+     * How waiting VIP and regular customers are chosen between.
+     */
+    private final PriorityPolicy policy;
+
+    /**
+     * Tickets given to VIP customers for every ticket given to a regular customer with WEIGHTED.
+     */
+    private final int vipWeight;
+
+    /**
+     * How long a regular customer waits before it goes ahead of VIP customers with STRICT, in nanoseconds.
+     */
+    private final long starvationNanos;
+
+    /**
+     * Orders waiters by when they started waiting, then by arrival.
+     */
+    private static final Comparator<Waiter> OLDEST_FIRST =
+            Comparator.<Waiter>comparingLong(waiter -> waiter.since).thenComparingLong(waiter -> waiter.arrival);
+
+    /**
+     * Regular customers waiting for a ticket, oldest first.
+     */
+    private final PriorityQueue<Waiter> regularLane = new PriorityQueue<>(OLDEST_FIRST);
+
+    /**
+     * VIP customers waiting for a ticket, oldest first.
+     */
+    private final PriorityQueue<Waiter> vipLane = new PriorityQueue<>(OLDEST_FIRST);
+
+    /**
+     * How soon after a timed wait runs out the customer must wait again to keep its place, in
+     * nanoseconds; a customer coming back later had given up, and its old wait is forgotten.
+     */
+    private static final long RETRY_GRACE_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * When the current thread started waiting, kept while its timed waits run out and it retries,
+     * and when its last timed wait ran out.
+     */
+    private final ThreadLocal<long[]> waitingSince = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Number of waiters queued so far, to order waiters that started at the same time.
+     */
+    private long arrivals = 0;
+
+    /**
+     * Number of tickets in the pool reserved for woken waiters.
+     */
+    private int reserved = 0;
+
+    /**
+     * Number of tickets given to VIP customers in a row while regular customers waited.
+     */
+    private int vipStreak = 0;
+
+    /**
+     * Flag to indicate the pool is stopped and waiters should leave.
+     */
+    private boolean stopped = false;
+
+    /**
+     * Constructor to create empty lanes.
+     *
+     * @param lock             the pool lock
+     * @param policy           how waiting VIP and regular customers are chosen between, null for NONE
+     * @param vipWeight        tickets given to VIP customers for every regular ticket with WEIGHTED
+     * @param starvationMillis how long a regular customer waits before it goes ahead of VIP customers with STRICT
+     */
+    PriorityLanes(ReentrantLock lock, PriorityPolicy policy, int vipWeight, long starvationMillis) {
+        this.lock = lock;
+        this.policy = policy == null ? PriorityPolicy.NONE : policy;
+        this.vipWeight = Math.max(1, vipWeight);
+        this.starvationNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, starvationMillis));
+    }
+
+    /**
+     * Gets the number of tickets a customer that is not waiting may take.
+     *
+     * @param size the number of tickets in the pool
+     * @return the tickets not reserved for woken waiters
+     */
+    int available(int size) {
+        return size - reserved;
+    }
+
+    /**
+     * Queues the current customer in the lane of its class and waits until a ticket is
+     * reserved for it. The reservation is used up on return, so the caller takes one ticket.
+     *
+     * @param customerClass the class of the customer
+     * @param timed         true to give up after the timeout
+     * @param timeoutNanos  the maximum time to wait for a timed wait, in nanoseconds
+     * @return true if a ticket was reserved for the customer, false if the wait timed out or the pool stopped
+     * @throws InterruptedException if the customer is interrupted; a ticket reserved for it is passed on
+     */
+    boolean await(CustomerClass customerClass, boolean timed, long timeoutNanos) throws InterruptedException {
+        if (timed && timeoutNanos <= 0) {
+            gaveUp(); // A poll does not wait, so it neither queues nor keeps an earlier wait
+            return false;
+        }
+        long[] since = waitStart();
+        if (since[0] == 0) {
+            since[0] = System.nanoTime();
+        }
+        Waiter waiter = new Waiter(lock.newCondition(), since[0], arrivals++);
+        PriorityQueue<Waiter> lane = customerClass == CustomerClass.VIP ? vipLane : regularLane;
+        lane.add(waiter);
+        PoolWaitEvent event = new PoolWaitEvent();
+        event.begin();
+        try {
+            long remaining = timeoutNanos;
+            while (!waiter.granted && !stopped) {
+                if (!timed) {
+                    waiter.condition.await();
+                } else if (remaining > 0) {
+                    remaining = waiter.condition.awaitNanos(remaining);
+                } else {
+                    break;
+                }
+            }
+        } catch (InterruptedException e) {
+            event.finish(PoolWaitEvent.POOL_EMPTY, customerClass, false);
+            if (waiter.granted) {
+                // Hand the ticket reserved for this customer to the next waiter
+                reserved--;
+                ticketsAdded(1);
+            } else {
+                lane.remove(waiter);
+            }
+            endWait(customerClass, since);
+            throw e;
+        }
+        event.finish(PoolWaitEvent.POOL_EMPTY, customerClass, waiter.granted);
+        if (waiter.granted) {
+            if (waiter.handoff != null) {
+                waiter.handoff.finish(customerClass, since[0]);
+            }
+            reserved--;
+            endWait(customerClass, since);
+            return true;
+        }
+        lane.remove(waiter);
+        if (stopped) {
+            endWait(customerClass, since);
+        } else {
+            // A timed wait that ran out keeps its start, so an attempt right after it keeps its place
+            since[1] = System.nanoTime();
+        }
+        return false;
+    }
+
+    /**
+     * Forgets the wait of the current thread without recording it, when the customer gives up
+     * instead of waiting again.
+     */
+    void gaveUp() {
+        waitingSince.get()[0] = 0;
+    }
+
+    /**
+     * Ends the wait of a customer that took a free ticket without waiting, after its last timed
+     * wait ran out. Does nothing for a customer that was not waiting.
+     *
+     * @param customerClass the class of the customer
+     */
+    void took(CustomerClass customerClass) {
+        long[] since = waitStart();
+        if (since[0] != 0) {
+            endWait(customerClass, since);
+        }
+    }
+
+    /**
+     * Gets the wait of the current thread, forgetting it if the customer did not come back right
+     * after its last timed wait ran out, so a later ticket does not record a wait it never made.
+     *
+     * @return the start of the wait of the current thread, 0 if it is not waiting, and when its last timed wait ran out
+     */
+    private long[] waitStart() {
+        long[] since = waitingSince.get();
+        if (since[0] != 0 && System.nanoTime() - since[1] > RETRY_GRACE_NANOS) {
+            since[0] = 0;
+        }
+        return since;
+    }
+
+    /**
+     * Records the whole wait of the current thread and clears its start.
+     *
+     * @param customerClass the class of the customer
+     * @param since         the start of the wait of the current thread
+     */
+    private void endWait(CustomerClass customerClass, long[] since) {
+        PoolMetrics.removeWaited(customerClass, since[0]);
+        since[0] = 0;
+    }
+
+    /**
+     * Reserves newly added tickets for waiting customers and wakes them, one per ticket.
+     *
+     * @param count the number of tickets added
+     */
+    void ticketsAdded(int count) {
+        for (int i = 0; i < count; i++) {
+            Waiter waiter = next();
+            if (waiter == null) {
+                return; // Nobody is waiting, the rest of the tickets stay unreserved
+            }
+            waiter.granted = true;
+            waiter.handoff = TicketHandoffEvent.start(); // Null unless a recording takes handoffs
+            reserved++;
+            waiter.condition.signal();
+        }
+    }
+
+    /**
+     * Takes the waiter the policy serves next out of its lane.
+     *
+     * @return the waiter, or null if no customer is waiting
+     */
+    private Waiter next() {
+        Waiter vip = vipLane.peek();
+        Waiter regular = regularLane.peek();
+        if (vip == null && regular == null) {
+            return null;
+        }
+        boolean serveVip;
+        if (regular == null || vip == null) {
+            serveVip = regular == null;
+        } else {
+            switch (policy) {
+                case STRICT:
+                    serveVip = System.nanoTime() - regular.since < starvationNanos;
+                    break;
+                case WEIGHTED:
+                    serveVip = vipStreak < vipWeight;
+                    break;
+                case NONE:
+                default:
+                    serveVip = vip.since - regular.since <= 0;
+            }
+        }
+        if (serveVip) {
+            if (regular != null) {
+                vipStreak++; // Only count VIP tickets that a regular customer was waiting for
+            }
+            return vipLane.poll();
+        }
+        vipStreak = 0;
+        return regularLane.poll();
+    }
+
+    /**
+     * Sets the stop flag and wakes every waiting customer so it can leave.
+     *
+     * @param stopped true to stop the pool, false to continue
+     */
+    void setStopped(boolean stopped) {
+        this.stopped = stopped;
+        regularLane.forEach(waiter -> waiter.condition.signal());
+        vipLane.forEach(waiter -> waiter.condition.signal());
+    }
+
+    /**
+     * A customer waiting in a lane.
+     */
+    private static final class Waiter {
+
+        /**
+         * Condition only this customer waits on.
+         */
+        private final Condition condition;
+
+        /**
+         * The {@link System#nanoTime()} when the customer started waiting.
+         */
+        private final long since;
+
+        /**
+         * Position of the waiter in the order waiters were queued.
+         */
+        private final long arrival;
+
+        /**
+         * Set once a ticket is reserved for the customer.
+         */
+        private boolean granted = false;
+
+        /**
+         * The handoff of the ticket reserved for the customer, while a recording takes handoffs.
+         */
+        private TicketHandoffEvent handoff;
+
+        /**
+         * Constructor to create a waiter.
+         *
+         * @param condition the condition the customer waits on
+         * @param since     the {@link System#nanoTime()} when the customer started waiting
+         * @param arrival   position of the waiter in the order waiters were queued
+         */
+        private Waiter(Condition condition, long since, long arrival) {
+            this.condition = condition;
+            this.since = since;
+            this.arrival = arrival;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package core;
+
+/**
+ * The PriorityPolicy enum defines how a pool with priority lanes chooses between waiting
+ * VIP and regular customers when a ticket is added.
+ */
+public enum PriorityPolicy {
+
+    /**
+     * No priority: the customer that has waited longest gets the ticket, whatever its class.
+     */
+    NONE,
+
+    /**
+     * VIP customers always go first, except that a regular customer who has waited longer
+     * than the starvation limit gets the next ticket.
+     */
+    STRICT,
+
+    /**
+     * While both classes wait, VIP customers get a fixed number of tickets for every ticket
+     * given to a regular customer.
+     */
+    WEIGHTED
+}
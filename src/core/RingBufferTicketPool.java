@@ -0,0 +1,678 @@
+package core;
+
+import logging.LogEvent;
+import logging.Logger;
+import util.Ticket;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The RingBufferTicketPool class implements the TicketOperations interface on top of a
+ * preallocated array ring. Vendors and customers claim slots by compare-and-set on the
+ * tail and head indices instead of taking a shared monitor, and a thread that finds the
+ * pool full or empty parks until exactly one counterpart wakes it up.
+ */
+public class RingBufferTicketPool implements TicketOperations {
+
+    /**
+     * Preallocated slots holding the tickets in the pool.
+     */
+    private final AtomicReferenceArray<Ticket> slots;
+
+    /**
+     * Sequence number of every slot. A slot is free for the producer at position p when its
+     * sequence equals p, and holds a ticket for the consumer at position p when it equals p + 1.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * Maximum number of tickets allowed in the pool.
+     */
+    private final int maxPoolTickets;
+
+    /**
+     * Position of the next slot a vendor will fill.
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Position of the next slot a customer will empty.
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * Counter for the total number of tickets added to the pool.
+     */
+    private final AtomicInteger counter = new AtomicInteger();
+
+    /**
+     * Counter for the total number of tickets sold.
+     */
+    private final AtomicInteger soldTicketCounter = new AtomicInteger();
+
+    /**
+     * Vendor threads parked until space becomes available.
+     */
+    private final Queue<Waiter> waitingVendors = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Customer threads parked until a ticket becomes available.
+     */
+    private final Queue<Waiter> waitingCustomers = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Listener notified of every ticket added and sold.
+     */
+    private volatile PoolListener listener = PoolListener.NONE;
+
+    /**
+     * Flag to indicate if ticket processing should stop.
+     */
+    private volatile boolean stopFlag = false;
+
+    /**
+     * Constructor to initialize the RingBufferTicketPool with a maximum ticket capacity.
+     *
+     * @param maxPoolTickets the maximum number of tickets that can be stored in the pool
+     */
+    public RingBufferTicketPool(int maxPoolTickets) {
+        if (maxPoolTickets <= 0) {
+            throw new IllegalArgumentException("The maximum pool size must be greater than 0");
+        }
+        this.maxPoolTickets = maxPoolTickets;
+        this.slots = new AtomicReferenceArray<>(maxPoolTickets);
+        this.sequences = new AtomicLongArray(maxPoolTickets);
+        for (int i = 0; i < maxPoolTickets; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    /**
+     * Adds a ticket to the ticket pool.
+     * If the pool is full, the thread parks until a customer frees a slot.
+     *
+     * @param ticket the Ticket object to be added
+     */
+    @Override
+    public void addTicket(Ticket ticket) {
+        while (!offer(ticket, listener, false)) {
+            if (stopFlag) {
+                return;
+            }
+            // If the pool is full, log the status and park until a customer frees a slot
+            Logger.log(LogEvent.POOL_FULL);
+            if (!await(waitingVendors, false)) {
+                Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                return;
+            }
+        }
+        added(ticket);
+    }
+
+    /**
+     * Adds a ticket to the ticket pool, parking at most the given time for a free slot.
+     *
+     * @param ticket  the Ticket object to be added
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the ticket was added
+     */
+    @Override
+    public boolean tryAddTicket(Ticket ticket, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offer(ticket, listener, false)) {
+            if (stopFlag || System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            // If the pool is full, log the status and park until a customer frees a slot or the time runs out
+            Logger.log(LogEvent.POOL_FULL);
+            if (!await(waitingVendors, false, true, deadline)) {
+                Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                return false;
+            }
+        }
+        added(ticket);
+        return true;
+    }
+
+    /**
+     * Counts and logs a ticket placed by {@link #offer(Ticket, PoolListener, boolean)} and passes the news on.
+     *
+     * @param ticket the ticket that was added
+     */
+    private void added(Ticket ticket) {
+        int count = counter.incrementAndGet();
+        PoolMetrics.added(1);
+        Logger.log(LogEvent.TICKET_ADDED, count);
+        Logger.log(LogEvent.TICKET_ADDED_BY, ticket.getId());
+
+        // Wake a single customer, and pass the wakeup on to another vendor if space remains
+        wakeOne(waitingCustomers);
+        if (hasSpace()) {
+            wakeOne(waitingVendors);
+        }
+        listener.awaitDurable(); // After the wakeups, so the woken threads can join the same commit
+    }
+
+    /**
+     * Removes a ticket from the ticket pool.
+     * If the pool is empty, the thread parks until a vendor adds a ticket.
+     */
+    @Override
+    public void removeTicket() {
+        Ticket ticket;
+        while ((ticket = poll()) == null) {
+            if (stopFlag) {
+                return;
+            }
+            // If the pool is empty, log the status and park until a vendor adds a ticket
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!await(waitingCustomers, true)) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                return;
+            }
+        }
+        sold(ticket);
+    }
+
+    /**
+     * Removes the oldest ticket from the ticket pool, parking at most the given time for one.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return the removed ticket, or empty if none became available in time
+     */
+    @Override
+    public Optional<Ticket> tryRemoveTicket(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Ticket ticket;
+        while ((ticket = poll()) == null) {
+            if (stopFlag || System.nanoTime() - deadline >= 0) {
+                return Optional.empty();
+            }
+            // If the pool is empty, log the status and park until a vendor adds a ticket or the time runs out
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!await(waitingCustomers, true, true, deadline)) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                return Optional.empty();
+            }
+        }
+        sold(ticket);
+        return Optional.of(ticket);
+    }
+
+    /**
+     * Counts and logs a ticket taken by {@link #poll()} and passes the news on.
+     *
+     * @param ticket the ticket that was sold
+     */
+    private void sold(Ticket ticket) {
+        int sold = soldTicketCounter.incrementAndGet();
+        listener.ticketSold(ticket.getId());
+        PoolMetrics.sold(1);
+
+        Logger.log(LogEvent.TICKET_REMOVED, ticket.getId());
+        Logger.log(LogEvent.TICKETS_SOLD, sold);
+
+        // Wake a single vendor, and pass the wakeup on to another customer if tickets remain
+        wakeOne(waitingVendors);
+        if (!isEmpty()) {
+            wakeOne(waitingCustomers);
+        }
+        listener.awaitDurable();
+    }
+
+    /**
+     * Adds a batch of tickets to the ticket pool.
+     * If the pool is full, the thread parks until a customer frees a slot, then fills as
+     * many slots as are free and wakes a single customer.
+     *
+     * @param tickets the tickets to be added
+     * @return the number of tickets added from the start of the collection
+     */
+    @Override
+    public int addTickets(Collection<Ticket> tickets) {
+        if (tickets.isEmpty()) {
+            return 0;
+        }
+        int added = 0;
+        while (true) {
+            for (Ticket ticket : tickets) {
+                if (!offer(ticket, listener, false)) {
+                    break;
+                }
+                added++;
+            }
+            if (added > 0 || stopFlag) {
+                break;
+            }
+            // If the pool is full, log the status and park until a customer frees a slot
+            Logger.log(LogEvent.POOL_FULL);
+            if (!await(waitingVendors, false)) {
+                Logger.log("Thread interrupted while waiting to add tickets: " + Thread.currentThread().getName());
+                return 0;
+            }
+        }
+        if (added == 0) {
+            return 0; // Stopped while the pool was full
+        }
+        int count = counter.addAndGet(added);
+        PoolMetrics.added(added);
+        Logger.log(LogEvent.TICKETS_ADDED, added, count);
+
+        // One wakeup is enough: a customer that finds tickets left passes it on
+        wakeOne(waitingCustomers);
+        if (hasSpace()) {
+            wakeOne(waitingVendors);
+        }
+        listener.awaitDurable(); // Once for the whole batch
+        return added;
+    }
+
+    /**
+     * Removes up to the given number of tickets from the ticket pool.
+     * If the pool is empty, the thread parks until a vendor adds a ticket, then takes as
+     * many tickets as are available and wakes a single vendor.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed
+     */
+    @Override
+    public int drainTo(Collection<Ticket> target, int max) {
+        return drain(target, max, false, 0);
+    }
+
+    /**
+     * Removes up to the given number of tickets from the ticket pool, parking at most the given
+     * time if the pool is empty.
+     *
+     * @param target  the collection the removed tickets are added to
+     * @param max     the maximum number of tickets to remove
+     * @param timeout the maximum time to wait for the first ticket, 0 not to wait
+     * @param unit    the unit of the timeout
+     * @return the number of tickets removed, 0 if none became available in time
+     */
+    @Override
+    public int tryDrainTo(Collection<Ticket> target, int max, long timeout, TimeUnit unit) {
+        return drain(target, max, true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes up to the given number of tickets, parking while the pool is empty until a vendor
+     * adds a ticket or, for a timed wait, the deadline passes.
+     *
+     * @param target   the collection the removed tickets are added to
+     * @param max      the maximum number of tickets to remove
+     * @param timed    true to give up at the deadline
+     * @param deadline the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return the number of tickets removed
+     */
+    private int drain(Collection<Ticket> target, int max, boolean timed, long deadline) {
+        if (max <= 0) {
+            return 0;
+        }
+        int removed = 0;
+        while (true) {
+            Ticket ticket;
+            while (removed < max && (ticket = poll()) != null) {
+                listener.ticketSold(ticket.getId());
+                target.add(ticket);
+                removed++;
+            }
+            if (removed > 0 || stopFlag || (timed && System.nanoTime() - deadline >= 0)) {
+                break;
+            }
+            // If the pool is empty, log the status and park until a vendor adds a ticket
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!await(waitingCustomers, true, timed, deadline)) {
+                Logger.log("Thread interrupted while waiting to remove tickets: " + Thread.currentThread().getName());
+                return 0;
+            }
+        }
+        if (removed == 0) {
+            return 0; // Stopped or timed out while the pool was empty
+        }
+        int sold = soldTicketCounter.addAndGet(removed);
+        PoolMetrics.sold(removed);
+
+        Logger.log(LogEvent.TICKETS_REMOVED, removed);
+        Logger.log(LogEvent.TICKETS_SOLD, sold);
+
+        // One wakeup is enough: a vendor that finds space left passes it on
+        wakeOne(waitingVendors);
+        if (!isEmpty()) {
+            wakeOne(waitingCustomers);
+        }
+        listener.awaitDurable(); // Once for the whole batch
+        return removed;
+    }
+
+    /**
+     * Tries to place a ticket in the next free slot without blocking. The listener is told
+     * once the slot is claimed but before the ticket is published, so the journal never holds
+     * the sale of a ticket before the ticket itself.
+     *
+     * @param ticket   the ticket to place
+     * @param listener the listener to tell, {@link PoolListener#NONE} for none
+     * @param returned true if the ticket is a sold ticket put back, false if it is new
+     * @return true if the ticket was placed, false if the pool is full
+     */
+    private boolean offer(Ticket ticket, PoolListener listener, boolean returned) {
+        long position = tail.get();
+        while (true) {
+            int index = index(position);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    slots.set(index, ticket);
+                    if (returned) {
+                        listener.ticketReturned(ticket.getId());
+                    } else {
+                        listener.ticketAdded(ticket.getId());
+                    }
+                    // Publish the slot to the customer that will claim this position
+                    sequences.set(index, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                return false; // The slot still holds a ticket from the previous lap
+            } else {
+                position = tail.get(); // Another vendor claimed this position first
+            }
+        }
+    }
+
+    /**
+     * Tries to take the oldest ticket without blocking.
+     *
+     * @return the ticket, or null if the pool is empty
+     */
+    private Ticket poll() {
+        long position = head.get();
+        while (true) {
+            int index = index(position);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    Ticket ticket = slots.get(index);
+                    slots.set(index, null);
+                    // Hand the slot back to the vendor that will reach it on the next lap
+                    sequences.set(index, position + maxPoolTickets);
+                    return ticket;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return null; // No ticket has been published at this position yet
+            } else {
+                position = head.get(); // Another customer claimed this position first
+            }
+        }
+    }
+
+    /**
+     * Parks the current thread on the given wait queue until it is woken up.
+     * The condition is checked again after the thread is queued, so a wakeup sent
+     * between the failed attempt and the park is never lost. A thread that leaves
+     * without being handed a wakeup, because it timed out, was interrupted or found
+     * the condition already met, takes its waiter out of the queue, so waiters that
+     * give up do not pile up in it.
+     *
+     * @param waiters         the queue the thread waits on
+     * @param waitForTickets  true to wait for a ticket, false to wait for space
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean await(Queue<Waiter> waiters, boolean waitForTickets) {
+        return await(waiters, waitForTickets, false, 0);
+    }
+
+    /**
+     * Parks the current thread on the given wait queue until it is woken up or,
+     * for a timed wait, the deadline passes. See {@link #await(Queue, boolean)}.
+     *
+     * @param waiters         the queue the thread waits on
+     * @param waitForTickets  true to wait for a ticket, false to wait for space
+     * @param timed           true to give up at the deadline
+     * @param deadline        the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean await(Queue<Waiter> waiters, boolean waitForTickets, boolean timed, long deadline) {
+        long waitStart = System.nanoTime();
+        Waiter waiter = new Waiter();
+        waiters.add(waiter);
+        boolean signalled;
+        try {
+            boolean ready = waitForTickets ? !isEmpty() : hasSpace();
+            if (!ready && !stopFlag) {
+                if (!timed) {
+                    LockSupport.park(this);
+                } else if (deadline - waitStart > 0) {
+                    LockSupport.parkNanos(this, deadline - waitStart);
+                }
+            }
+            if (waitForTickets) {
+                PoolMetrics.removeWaited(waitStart);
+            } else {
+                PoolMetrics.addWaited(waitStart);
+            }
+        } finally {
+            // Claim the waiter back; one no wakeup claimed is still queued, so take it out
+            signalled = !waiter.claimed.compareAndSet(false, true);
+            if (!signalled) {
+                waiters.remove(waiter);
+            }
+        }
+        // If a wakeup already claimed the waiter and this thread is giving up, pass the wakeup on
+        boolean interrupted = waiter.thread.isInterrupted();
+        boolean expired = timed && System.nanoTime() - deadline >= 0;
+        if (signalled && (interrupted || stopFlag || expired)) {
+            wakeOne(waiters);
+        }
+        return !interrupted;
+    }
+
+    /**
+     * Unparks one thread from the given wait queue, if any is waiting.
+     * Waiters claimed by their own thread but not yet taken out are dropped on the way.
+     *
+     * @param waiters the queue to wake a thread from
+     */
+    private void wakeOne(Queue<Waiter> waiters) {
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            if (waiter.claimed.compareAndSet(false, true)) {
+                LockSupport.unpark(waiter.thread);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Checks if the next slot a vendor would fill is free.
+     *
+     * @return true if a ticket can be added
+     */
+    private boolean hasSpace() {
+        long position = tail.get();
+        return sequences.get(index(position)) - position >= 0;
+    }
+
+    /**
+     * Checks if the next slot a customer would empty is still unpublished.
+     *
+     * @return true if no ticket can be removed
+     */
+    private boolean isEmpty() {
+        long position = head.get();
+        return sequences.get(index(position)) - (position + 1) < 0;
+    }
+
+    /**
+     * Maps a ring position onto an array index.
+     *
+     * @param position the ever increasing ring position
+     * @return the slot index for the position
+     */
+    private int index(long position) {
+        return (int) (position % maxPoolTickets);
+    }
+
+    /**
+     * Gets the number of tickets currently in the pool.
+     *
+     * @return the number of tickets waiting to be sold
+     */
+    @Override
+    public int getPoolSize() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, maxPoolTickets));
+    }
+
+    /**
+     * Gets the total number of tickets sold.
+     *
+     * @return the total number of tickets sold
+     */
+    @Override
+    public int getSoldTicketCounter() {
+        return soldTicketCounter.get();
+    }
+
+    /**
+     * Gets the total number of tickets added to the pool.
+     *
+     * @return the total number of tickets added
+     */
+    @Override
+    public int getCounter() {
+        return counter.get();
+    }
+
+    /**
+     * Sets the listener notified of every ticket added and sold.
+     *
+     * @param listener the listener, null to remove it
+     */
+    @Override
+    public void setPoolListener(PoolListener listener) {
+        this.listener = listener == null ? PoolListener.NONE : listener;
+    }
+
+    /**
+     * Copies the packed ids of the tickets in the ring, oldest first, without taking a lock.
+     * The positions between the head and the tail are read one by one, so vendors and customers
+     * are never held up; a ticket taken while its slot is read may be missed, and is then sold
+     * after the copy started. A position claimed by a vendor but not yet published is waited
+     * for, as its ticket may already be in the journal.
+     *
+     * @return the ids of the tickets in the pool
+     */
+    @Override
+    public long[] snapshotTicketIds() {
+        long start = head.get();
+        long end = tail.get();
+        long[] ticketIds = new long[(int) Math.max(0, end - start)];
+        int count = 0;
+        for (long position = start; position < end; position++) {
+            int index = index(position);
+            long sequence;
+            while ((sequence = sequences.get(index)) == position) {
+                Thread.onSpinWait(); // Claimed and recorded, about to be published
+            }
+            Ticket ticket = slots.get(index);
+            if (sequence == position + 1 && ticket != null) {
+                ticketIds[count++] = ticket.getId();
+            }
+        }
+        return Arrays.copyOf(ticketIds, count);
+    }
+
+    /**
+     * Loads recovered tickets and counters into the empty pool, without notifying the listener.
+     *
+     * @param ticketIds         the packed ids of the tickets to load, oldest first
+     * @param counter           the total number of tickets added before the restart
+     * @param soldTicketCounter the total number of tickets sold before the restart
+     * @return the number of tickets loaded, at most the pool capacity
+     */
+    @Override
+    public int restore(long[] ticketIds, int counter, int soldTicketCounter) {
+        int loaded = 0;
+        while (loaded < ticketIds.length && offer(new Ticket(ticketIds[loaded]), PoolListener.NONE, false)) {
+            loaded++;
+        }
+        this.counter.set(counter);
+        this.soldTicketCounter.set(soldTicketCounter);
+        return loaded;
+    }
+
+    /**
+     * Puts a sold ticket back in the next free slot and wakes a single waiting customer.
+     *
+     * @param ticket the ticket to put back
+     * @return true if the ticket was put back, false if the pool is full
+     */
+    @Override
+    public boolean returnTicket(Ticket ticket) {
+        if (!offer(ticket, listener, true)) {
+            return false;
+        }
+        int sold = soldTicketCounter.decrementAndGet(); // The sale is undone, the ticket does not count as added again
+        PoolMetrics.returned(1);
+        Logger.log(LogEvent.TICKET_RETURNED, sold);
+        wakeOne(waitingCustomers);
+        listener.awaitDurable();
+        return true;
+    }
+
+    /**
+     * Sets the stop flag and unparks every waiting vendor and customer.
+     *
+     * @param stopFlag true to stop ticket processing, false to continue
+     */
+    @Override
+    public void setStopFlag(boolean stopFlag) {
+        this.stopFlag = stopFlag;
+        waitingVendors.forEach(waiter -> LockSupport.unpark(waiter.thread));
+        waitingCustomers.forEach(waiter -> LockSupport.unpark(waiter.thread));
+    }
+
+    /**
+     * Checks if ticket processing should stop.
+     *
+     * @return true if processing should stop, false otherwise
+     */
+    @Override
+    public boolean shouldStop() {
+        return stopFlag;
+    }
+
+    /**
+     * A parked thread in one of the wait queues. Its flag is set by whichever comes first:
+     * a wakeup claiming the waiter, or the thread itself leaving the queue.
+     */
+    private static final class Waiter {
+
+        /**
+         * Set once the waiter is claimed by a wakeup or by its own thread.
+         */
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        /**
+         * The thread waiting for space or a ticket.
+         */
+        private final Thread thread = Thread.currentThread();
+    }
+}
@@ -0,0 +1,1244 @@
+package core;
+
+import logging.LogEvent;
+import logging.Logger;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import util.Ticket;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The SeatMapTicketPool class implements the TicketOperations interface as the seat map of a
+ * venue: the pool is split into sections of rows, and every seat holds at most one ticket for
+ * sale. Availability is kept as one bitset word per row, bit i set while seat i of the row has
+ * a ticket, so finding N adjacent seats scans a whole row with a few shifts and ANDs instead of
+ * visiting the seats one by one.
+ *
+ * Every section has its own lock, so searches and claims in different sections never contend.
+ * A claim of several adjacent seats clears their bits, takes their tickets and reports them sold
+ * under the section lock once, so it either gets every seat or none. Vendors put new tickets in
+ * the first empty seat, front rows first, starting at their home section; customers buying one
+ * ticket get the best seat: the front row, as close to the middle as possible. Like
+ * {@link ShardedTicketPool}, threads only touch the shared wait lock when every section is full
+ * or empty. A row holds at most 64 seats, one bitset word; the last row of a section may be shorter.
+ */
+public class SeatMapTicketPool implements TicketOperations {
+
+    /**
+     * Maximum number of seats in a row, the bits of one word.
+     */
+    public static final int MAX_SEATS_PER_ROW = Long.SIZE;
+
+    /**
+     * The sections holding the seats.
+     */
+    private final Section[] sections;
+
+    /**
+     * Maximum number of tickets allowed in the pool, the number of seats.
+     */
+    private final int maxPoolTickets;
+
+    /**
+     * Number of seats in a full row.
+     */
+    private final int seatsPerRow;
+
+    /**
+     * Source of home section indices, handed out round-robin.
+     */
+    private final AtomicInteger nextHome = new AtomicInteger();
+
+    /**
+     * The home section index of the current thread.
+     */
+    private final ThreadLocal<Integer> home = ThreadLocal.withInitial(this::assignHome);
+
+    /**
+     * Lock used only by threads that found every section full or empty.
+     */
+    private final ReentrantLock waitLock = new ReentrantLock();
+
+    /**
+     * Condition vendors wait on while every section is full.
+     */
+    private final Condition notFull = waitLock.newCondition();
+
+    /**
+     * Condition customers wait on while every section is empty.
+     */
+    private final Condition notEmpty = waitLock.newCondition();
+
+    /**
+     * Number of vendors waiting on {@link #notFull}; checked before taking the wait lock to signal.
+     */
+    private final AtomicInteger waitingVendors = new AtomicInteger();
+
+    /**
+     * Number of customers waiting on {@link #notEmpty}; checked before taking the wait lock to signal.
+     */
+    private final AtomicInteger waitingCustomers = new AtomicInteger();
+
+    /**
+     * Time taken by each adjacent-seat search and claim, including the section lock.
+     */
+    private final LatencyHistogram claimTime = MetricsRegistry.histogram("pool.seatmap.claim");
+
+    /**
+     * Listener notified of every ticket added and sold.
+     */
+    private volatile PoolListener listener = PoolListener.NONE;
+
+    /**
+     * Flag to indicate if ticket processing should stop.
+     */
+    private volatile boolean stopFlag = false;
+
+    /**
+     * Tickets added before a restart, counted on top of the section counters.
+     */
+    private volatile int restoredCounter = 0;
+
+    /**
+     * Tickets sold before a restart, counted on top of the section counters.
+     */
+    private volatile int restoredSoldTicketCounter = 0;
+
+    /**
+     * Constructor to initialize the SeatMapTicketPool. The seats are split as evenly as possible
+     * over the sections, so the section capacities always add up to the maximum pool size.
+     *
+     * @param maxPoolTickets the maximum number of tickets that can be stored in the pool, the number of seats
+     * @param sectionCount   the number of sections, at most one per seat
+     * @param seatsPerRow    the number of seats in a full row, 1 to 64
+     */
+    public SeatMapTicketPool(int maxPoolTickets, int sectionCount, int seatsPerRow) {
+        if (maxPoolTickets <= 0) {
+            throw new IllegalArgumentException("The maximum pool size must be greater than 0");
+        }
+        if (seatsPerRow <= 0 || seatsPerRow > MAX_SEATS_PER_ROW) {
+            throw new IllegalArgumentException("The number of seats per row must be between 1 and " + MAX_SEATS_PER_ROW);
+        }
+        int count = Math.max(1, Math.min(sectionCount, maxPoolTickets));
+        this.maxPoolTickets = maxPoolTickets;
+        this.seatsPerRow = seatsPerRow;
+        this.sections = new Section[count];
+        for (int i = 0; i < count; i++) {
+            sections[i] = new Section(i, maxPoolTickets / count + (i < maxPoolTickets % count ? 1 : 0), seatsPerRow);
+        }
+    }
+
+    /**
+     * Puts a ticket in the first empty seat of the home section of the current thread, or of the
+     * next section with space. If every seat is taken, the thread waits until a customer frees one.
+     *
+     * @param ticket the Ticket object to be added
+     */
+    @Override
+    public void addTicket(Ticket ticket) {
+        addTicketId(ticket.getId());
+    }
+
+    /**
+     * Puts a ticket, given by its packed id, in the first empty seat of the home section of the
+     * current thread, or of the next section with space. No Ticket object is kept.
+     *
+     * @param ticketId the packed id of the ticket to be added
+     */
+    @Override
+    public void addTicketId(long ticketId) {
+        while (!offerAny(ticketId)) {
+            if (stopFlag) {
+                return;
+            }
+            // If every seat is taken, log the status and wait for a seat to become empty
+            Logger.log(LogEvent.POOL_FULL);
+            if (!awaitSpace(false, 0)) {
+                Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                return;
+            }
+        }
+        added(ticketId);
+    }
+
+    /**
+     * Puts a ticket in the first empty seat, waiting at most the given time if every seat is taken.
+     *
+     * @param ticket  the Ticket object to be added
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the ticket was added
+     */
+    @Override
+    public boolean tryAddTicket(Ticket ticket, long timeout, TimeUnit unit) {
+        return tryAddTicketId(ticket.getId(), timeout, unit);
+    }
+
+    /**
+     * Puts a ticket, given by its packed id, in the first empty seat, waiting at most the given
+     * time if every seat is taken.
+     *
+     * @param ticketId the packed id of the ticket to be added
+     * @param timeout  the maximum time to wait
+     * @param unit     the unit of the timeout
+     * @return true if the ticket was added
+     */
+    @Override
+    public boolean tryAddTicketId(long ticketId, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offerAny(ticketId)) {
+            if (stopFlag || System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            // If every seat is taken, log the status and wait for a seat until the time runs out
+            Logger.log(LogEvent.POOL_FULL);
+            if (!awaitSpace(true, deadline)) {
+                Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                return false;
+            }
+        }
+        added(ticketId);
+        return true;
+    }
+
+    /**
+     * Records and logs a ticket put in a seat and wakes one waiting customer.
+     *
+     * @param ticketId the packed id of the ticket that was added
+     */
+    private void added(long ticketId) {
+        PoolMetrics.added(1);
+        Logger.log(LogEvent.TICKET_ADDED, getCounter());
+        Logger.log(LogEvent.TICKET_ADDED_BY, ticketId);
+
+        signal(waitingCustomers, notEmpty);
+        listener.awaitDurable(); // After the section lock and the wakeup, so others can join the same commit
+    }
+
+    /**
+     * Sells the best seat of the home section of the current thread, or of the next section with
+     * a ticket. If every seat is empty, the thread waits until a vendor adds a ticket.
+     */
+    @Override
+    public void removeTicket() {
+        SeatClaim claim;
+        while ((claim = claimAny(1)) == null) {
+            if (stopFlag) {
+                return;
+            }
+            // If every seat is empty, log the status and wait for tickets to be added
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!awaitTickets(false, 0)) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                return;
+            }
+        }
+        sold(claim);
+    }
+
+    /**
+     * Sells the best seat of the home section of the current thread, or of the next section with
+     * a ticket, waiting at most the given time if every seat is empty.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return the removed ticket, or empty if none became available in time
+     */
+    @Override
+    public Optional<Ticket> tryRemoveTicket(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        SeatClaim claim;
+        while ((claim = claimAny(1)) == null) {
+            if (stopFlag || System.nanoTime() - deadline >= 0) {
+                return Optional.empty();
+            }
+            // If every seat is empty, log the status and wait for tickets until the time runs out
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!awaitTickets(true, deadline)) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                return Optional.empty();
+            }
+        }
+        sold(claim);
+        return Optional.of(new Ticket(claim.ticketIds[0]));
+    }
+
+    /**
+     * Claims the best run of adjacent seats in one section: the front row that has the run,
+     * as close to the middle of the row as possible. The seats are sold together or not at all.
+     * Does not wait; a claim that finds no run returns null.
+     *
+     * @param section the index of the section
+     * @param count   the number of adjacent seats, 1 to the seats per row
+     * @return the claimed seats, or null if the section has no run of that many seats
+     */
+    public SeatClaim claimAdjacent(int section, int count) {
+        if (section < 0 || section >= sections.length) {
+            throw new IllegalArgumentException("Section out of range: " + section);
+        }
+        checkRunLength(count);
+        long start = System.nanoTime();
+        SeatClaim claim = sections[section].claim(count, listener);
+        claimTime.record(System.nanoTime() - start);
+        if (claim != null) {
+            sold(claim);
+        }
+        return claim;
+    }
+
+    /**
+     * Claims the best run of adjacent seats in the home section of the current thread, or in the
+     * next section that has one. The seats are sold together or not at all. Does not wait.
+     *
+     * @param count the number of adjacent seats, 1 to the seats per row
+     * @return the claimed seats, or null if no section has a run of that many seats
+     */
+    public SeatClaim claimAdjacent(int count) {
+        checkRunLength(count);
+        long start = System.nanoTime();
+        SeatClaim claim = claimAny(count);
+        claimTime.record(System.nanoTime() - start);
+        if (claim != null) {
+            sold(claim);
+        }
+        return claim;
+    }
+
+    /**
+     * Checks that a run of adjacent seats fits in a row.
+     *
+     * @param count the number of adjacent seats
+     * @throws IllegalArgumentException if the run is empty or longer than a row
+     */
+    private void checkRunLength(int count) {
+        if (count <= 0 || count > seatsPerRow) {
+            throw new IllegalArgumentException("The number of adjacent seats must be between 1 and " + seatsPerRow);
+        }
+    }
+
+    /**
+     * Records and logs the seats of a claim and wakes one waiting vendor.
+     *
+     * @param claim the seats that were sold
+     */
+    private void sold(SeatClaim claim) {
+        int count = claim.ticketIds.length;
+        PoolMetrics.sold(count);
+        if (Logger.isEnabled()) { // Render the seats only when they are logged
+            Logger.log(Thread.currentThread().getName() + " successfully removed " + count + " tickets from the pool: " + claim);
+        }
+        Logger.log(LogEvent.TICKETS_SOLD, getSoldTicketCounter());
+
+        signal(waitingVendors, notFull);
+        listener.awaitDurable(); // Once for all the seats of the claim
+    }
+
+    /**
+     * Puts a batch of tickets in empty seats, filling the home section first and then the others,
+     * taking each section lock once. Waits only if every seat is taken.
+     *
+     * @param tickets the tickets to be added
+     * @return the number of tickets added from the start of the collection
+     */
+    @Override
+    public int addTickets(Collection<Ticket> tickets) {
+        if (tickets.isEmpty()) {
+            return 0;
+        }
+        int added;
+        while ((added = offerAll(tickets)) == 0) {
+            if (stopFlag) {
+                return 0;
+            }
+            Logger.log(LogEvent.POOL_FULL);
+            if (!awaitSpace(false, 0)) {
+                Logger.log("Thread interrupted while waiting to add tickets: " + Thread.currentThread().getName());
+                return 0;
+            }
+        }
+        PoolMetrics.added(added);
+        Logger.log(LogEvent.TICKETS_ADDED, added, getCounter());
+
+        signal(waitingCustomers, notEmpty);
+        listener.awaitDurable(); // Once for the whole batch
+        return added;
+    }
+
+    /**
+     * Removes up to the given number of tickets, as adjacent seats when a section has a run of
+     * that many, otherwise as the best seats left, front rows first. Waits only if every seat is empty.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed
+     */
+    @Override
+    public int drainTo(Collection<Ticket> target, int max) {
+        return drain(target, max, false, 0);
+    }
+
+    /**
+     * Removes up to the given number of tickets like {@link #drainTo(Collection, int)}, waiting
+     * at most the given time if the pool is empty.
+     *
+     * @param target  the collection the removed tickets are added to
+     * @param max     the maximum number of tickets to remove
+     * @param timeout the maximum time to wait for the first ticket, 0 not to wait
+     * @param unit    the unit of the timeout
+     * @return the number of tickets removed, 0 if none became available in time
+     */
+    @Override
+    public int tryDrainTo(Collection<Ticket> target, int max, long timeout, TimeUnit unit) {
+        return drain(target, max, true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes up to the given number of tickets, waiting while the pool is empty until a vendor
+     * adds a ticket or, for a timed wait, the deadline passes.
+     *
+     * @param target   the collection the removed tickets are added to
+     * @param max      the maximum number of tickets to remove
+     * @param timed    true to give up at the deadline
+     * @param deadline the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return the number of tickets removed
+     */
+    private int drain(Collection<Ticket> target, int max, boolean timed, long deadline) {
+        if (max <= 0) {
+            return 0;
+        }
+        int removed;
+        while ((removed = pollAll(target, max)) == 0) {
+            if (stopFlag || (timed && System.nanoTime() - deadline >= 0)) {
+                return 0;
+            }
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!awaitTickets(timed, deadline)) {
+                Logger.log("Thread interrupted while waiting to remove tickets: " + Thread.currentThread().getName());
+                return 0;
+            }
+        }
+        PoolMetrics.sold(removed);
+        Logger.log(LogEvent.TICKETS_REMOVED, removed);
+        Logger.log(LogEvent.TICKETS_SOLD, getSoldTicketCounter());
+
+        signal(waitingVendors, notFull);
+        listener.awaitDurable(); // Once for the whole batch
+        return removed;
+    }
+
+    /**
+     * Tries to put a ticket in each section in turn, starting at the home section.
+     *
+     * @param ticketId the packed id of the ticket to add
+     * @return true if a section had an empty seat
+     */
+    private boolean offerAny(long ticketId) {
+        int start = home.get();
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[(start + i) % sections.length].offer(ticketId, listener)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries to claim a run of adjacent seats in each section in turn, starting at the home section.
+     *
+     * @param count the number of adjacent seats
+     * @return the claimed seats, or null if no section has a run of that many seats
+     */
+    private SeatClaim claimAny(int count) {
+        int start = home.get();
+        PoolListener listener = this.listener;
+        for (int i = 0; i < sections.length; i++) {
+            SeatClaim claim = sections[(start + i) % sections.length].claim(count, listener);
+            if (claim != null) {
+                return claim;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Puts tickets from the start of the collection in the sections, starting at the home section,
+     * until the collection is used up or every seat is taken.
+     *
+     * @param tickets the tickets to add
+     * @return the number of tickets added
+     */
+    private int offerAll(Collection<Ticket> tickets) {
+        Iterator<Ticket> iterator = tickets.iterator();
+        int start = home.get();
+        int added = 0;
+        for (int i = 0; i < sections.length && iterator.hasNext(); i++) {
+            added += sections[(start + i) % sections.length].offerAll(iterator, listener);
+        }
+        return added;
+    }
+
+    /**
+     * Takes up to the given number of tickets, as one run of adjacent seats if any section has
+     * one, otherwise seat by seat from the sections, starting at the home section.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed
+     */
+    private int pollAll(Collection<Ticket> target, int max) {
+        if (max > 1) {
+            // A batch bought together sits together when a row still has room for it
+            SeatClaim claim = claimAny(Math.min(max, seatsPerRow));
+            if (claim != null) {
+                for (long ticketId : claim.ticketIds) {
+                    target.add(new Ticket(ticketId));
+                }
+                return claim.ticketIds.length;
+            }
+        }
+        int start = home.get();
+        int removed = 0;
+        for (int i = 0; i < sections.length && removed < max; i++) {
+            removed += sections[(start + i) % sections.length].pollAll(target, max - removed, listener);
+        }
+        return removed;
+    }
+
+    /**
+     * Waits on the shared wait lock until a section has an empty seat, the pool is stopped or,
+     * for a timed wait, the deadline passes.
+     *
+     * @param timed    true to give up at the deadline
+     * @param deadline the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean awaitSpace(boolean timed, long deadline) {
+        long waitStart = System.nanoTime();
+        waitLock.lock();
+        waitingVendors.incrementAndGet();
+        try {
+            // Check again after registering, so a customer that frees a seat now will signal
+            while (isFull() && !stopFlag) {
+                if (!timed) {
+                    notFull.await();
+                } else if (notFull.awaitNanos(deadline - System.nanoTime()) <= 0) {
+                    break; // The time ran out
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+            return false;
+        } finally {
+            waitingVendors.decrementAndGet();
+            waitLock.unlock();
+            PoolMetrics.addWaited(waitStart);
+        }
+    }
+
+    /**
+     * Waits on the shared wait lock until a section has a ticket, the pool is stopped or, for a
+     * timed wait, the deadline passes.
+     *
+     * @param timed    true to give up at the deadline
+     * @param deadline the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean awaitTickets(boolean timed, long deadline) {
+        long waitStart = System.nanoTime();
+        waitLock.lock();
+        waitingCustomers.incrementAndGet();
+        try {
+            // Check again after registering, so a vendor that adds a ticket now will signal
+            while (isEmpty() && !stopFlag) {
+                if (!timed) {
+                    notEmpty.await();
+                } else if (notEmpty.awaitNanos(deadline - System.nanoTime()) <= 0) {
+                    break; // The time ran out
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+            return false;
+        } finally {
+            waitingCustomers.decrementAndGet();
+            waitLock.unlock();
+            PoolMetrics.removeWaited(waitStart);
+        }
+    }
+
+    /**
+     * Wakes one waiting thread, taking the wait lock only if a thread is actually waiting.
+     *
+     * @param waiting   the number of threads waiting on the condition
+     * @param condition the condition to signal
+     */
+    private void signal(AtomicInteger waiting, Condition condition) {
+        if (waiting.get() == 0) {
+            return;
+        }
+        waitLock.lock();
+        try {
+            condition.signal();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if every seat holds a ticket.
+     *
+     * @return true if no ticket can be added
+     */
+    private boolean isFull() {
+        for (Section section : sections) {
+            if (section.size < section.capacity) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if every seat is empty.
+     *
+     * @return true if no ticket can be removed
+     */
+    private boolean isEmpty() {
+        for (Section section : sections) {
+            if (section.size > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands out home section indices round-robin.
+     *
+     * @return the home section index for a thread using the pool for the first time
+     */
+    private int assignHome() {
+        return Math.floorMod(nextHome.getAndIncrement(), sections.length);
+    }
+
+    /**
+     * Finds the best run of adjacent seats in a row: the start of the run closest to the middle.
+     *
+     * Bit i of the result of each step is set while seats i to i + run - 1 are all available.
+     * ANDing the word with itself shifted by the current run length doubles the run, so a run of
+     * N seats takes about log2(N) steps for the whole row.
+     *
+     * @param available   the availability bits of the row
+     * @param count       the number of adjacent seats
+     * @param seatsPerRow the number of seats in a full row
+     * @return the first seat of the run, or -1 if the row has no run of that many seats
+     */
+    static int bestRun(long available, int count, int seatsPerRow) {
+        long starts = available;
+        int run = 1;
+        while (run < count && starts != 0) {
+            int shift = Math.min(run, count - run);
+            starts &= starts >>> shift;
+            run += shift;
+        }
+        if (starts == 0) {
+            return -1;
+        }
+        // The run starting here is centred in a full row
+        int middle = (seatsPerRow - count) / 2;
+        long before = starts & ((2L << middle) - 1);
+        long after = starts & (-1L << middle);
+        int left = before == 0 ? -1 : 63 - Long.numberOfLeadingZeros(before);
+        int right = after == 0 ? -1 : Long.numberOfTrailingZeros(after);
+        if (left < 0) {
+            return right;
+        }
+        if (right < 0 || middle - left <= right - middle) {
+            return left;
+        }
+        return right;
+    }
+
+    /**
+     * Gets the number of sections.
+     *
+     * @return the number of sections
+     */
+    public int getSectionCount() {
+        return sections.length;
+    }
+
+    /**
+     * Gets the number of seats in a full row.
+     *
+     * @return the seats per row
+     */
+    public int getSeatsPerRow() {
+        return seatsPerRow;
+    }
+
+    /**
+     * Gets the number of rows of a section.
+     *
+     * @param section the index of the section
+     * @return the number of rows, the last one possibly shorter
+     */
+    public int getRowCount(int section) {
+        return sections[section].rows.length;
+    }
+
+    /**
+     * Gets the number of tickets for sale in a section, read without its lock.
+     *
+     * @param section the index of the section
+     * @return the number of seats holding a ticket
+     */
+    public int getAvailableSeats(int section) {
+        return sections[section].size;
+    }
+
+    /**
+     * Gets the maximum number of tickets allowed in the pool, the number of seats.
+     *
+     * @return the maximum pool size
+     */
+    public int getMaxPoolTickets() {
+        return maxPoolTickets;
+    }
+
+    /**
+     * Gets the number of tickets currently in the pool, summed over the sections.
+     *
+     * @return the number of tickets waiting to be sold
+     */
+    @Override
+    public int getPoolSize() {
+        int size = 0;
+        for (Section section : sections) {
+            size += section.size;
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total number of tickets sold, summed over the sections.
+     *
+     * @return the total number of tickets sold
+     */
+    @Override
+    public int getSoldTicketCounter() {
+        int sold = restoredSoldTicketCounter;
+        for (Section section : sections) {
+            sold += section.sold;
+        }
+        return sold;
+    }
+
+    /**
+     * Gets the total number of tickets added to the pool, summed over the sections.
+     *
+     * @return the total number of tickets added
+     */
+    @Override
+    public int getCounter() {
+        int added = restoredCounter;
+        for (Section section : sections) {
+            added += section.added;
+        }
+        return added;
+    }
+
+    /**
+     * Sets the listener notified of every ticket added and sold.
+     *
+     * @param listener the listener, null to remove it
+     */
+    @Override
+    public void setPoolListener(PoolListener listener) {
+        this.listener = listener == null ? PoolListener.NONE : listener;
+    }
+
+    /**
+     * Copies the packed ids of the tickets in the pool, locking one section at a time,
+     * so vendors and customers only wait for the copy of a single section.
+     *
+     * @return the ids of the tickets in the pool, in seat order within each section
+     */
+    @Override
+    public long[] snapshotTicketIds() {
+        long[] ticketIds = new long[maxPoolTickets];
+        int count = 0;
+        for (Section section : sections) {
+            count = section.copyIds(ticketIds, count);
+        }
+        return Arrays.copyOf(ticketIds, count);
+    }
+
+    /**
+     * Loads recovered tickets and counters into the empty pool, without notifying the listener.
+     * The tickets are dealt out over the sections in turn, each filling its front seats first.
+     *
+     * @param ticketIds         the packed ids of the tickets to load, oldest first
+     * @param counter           the total number of tickets added before the restart
+     * @param soldTicketCounter the total number of tickets sold before the restart
+     * @return the number of tickets loaded, at most the pool capacity
+     */
+    @Override
+    public int restore(long[] ticketIds, int counter, int soldTicketCounter) {
+        int loaded = 0;
+        for (int i = 0; i < ticketIds.length && loaded < maxPoolTickets; i++) {
+            // Some section has an empty seat while fewer than maxPoolTickets are loaded
+            int section = i % sections.length;
+            while (!sections[section].offer(ticketIds[i], PoolListener.NONE)) {
+                section = (section + 1) % sections.length;
+            }
+            loaded++;
+        }
+        // The section counters now hold the loaded tickets; the rest of the history goes on top
+        restoredCounter = counter - getCounter();
+        restoredSoldTicketCounter = soldTicketCounter - getSoldTicketCounter();
+        return loaded;
+    }
+
+    /**
+     * Puts a sold ticket back in the first empty seat of the home section of the current thread,
+     * or of the next section with space, and wakes one waiting customer. The section taking it
+     * back counts the sale as undone, so the summed sold counter stays exact.
+     *
+     * @param ticket the ticket to put back
+     * @return true if the ticket was put back, false if every seat is taken
+     */
+    @Override
+    public boolean returnTicket(Ticket ticket) {
+        int start = home.get();
+        for (int i = 0; i < sections.length; i++) {
+            if (sections[(start + i) % sections.length].putBack(ticket.getId(), listener)) {
+                PoolMetrics.returned(1);
+                Logger.log(LogEvent.TICKET_RETURNED, getSoldTicketCounter());
+                signal(waitingCustomers, notEmpty);
+                listener.awaitDurable();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sets the stop flag and wakes every waiting vendor and customer.
+     *
+     * @param stopFlag true to stop ticket processing, false to continue
+     */
+    @Override
+    public void setStopFlag(boolean stopFlag) {
+        this.stopFlag = stopFlag;
+        waitLock.lock();
+        try {
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if ticket processing should stop.
+     *
+     * @return true if processing should stop, false otherwise
+     */
+    @Override
+    public boolean shouldStop() {
+        return stopFlag;
+    }
+
+    /**
+     * Seats claimed together in one row, with the tickets they held.
+     */
+    public static final class SeatClaim {
+
+        /**
+         * Index of the section.
+         */
+        private final int section;
+
+        /**
+         * Index of the row within the section, 0 for the front row.
+         */
+        private final int row;
+
+        /**
+         * Index of the first seat within the row.
+         */
+        private final int firstSeat;
+
+        /**
+         * Packed ids of the tickets, one per seat from the first seat on.
+         */
+        private final long[] ticketIds;
+
+        /**
+         * Constructor to create a claim.
+         *
+         * @param section   index of the section
+         * @param row       index of the row within the section
+         * @param firstSeat index of the first seat within the row
+         * @param ticketIds packed ids of the tickets, one per seat
+         */
+        private SeatClaim(int section, int row, int firstSeat, long[] ticketIds) {
+            this.section = section;
+            this.row = row;
+            this.firstSeat = firstSeat;
+            this.ticketIds = ticketIds;
+        }
+
+        /**
+         * Gets the index of the section.
+         *
+         * @return the section index
+         */
+        public int getSection() {
+            return section;
+        }
+
+        /**
+         * Gets the index of the row within the section.
+         *
+         * @return the row index, 0 for the front row
+         */
+        public int getRow() {
+            return row;
+        }
+
+        /**
+         * Gets the index of the first seat within the row.
+         *
+         * @return the first seat index
+         */
+        public int getFirstSeat() {
+            return firstSeat;
+        }
+
+        /**
+         * Gets the packed ids of the tickets claimed.
+         *
+         * @return the ticket ids, one per seat from the first seat on
+         */
+        public long[] getTicketIds() {
+            return ticketIds.clone();
+        }
+
+        /**
+         * Gets the number of seats claimed.
+         *
+         * @return the number of seats
+         */
+        public int size() {
+            return ticketIds.length;
+        }
+
+        /**
+         * Renders the seats for logging, for example "section 3 row 0 seats 22-25".
+         *
+         * @return the seats as text
+         */
+        @Override
+        public String toString() {
+            return "section " + section + " row " + row + " seats " + firstSeat + "-" + (firstSeat + ticketIds.length - 1);
+        }
+    }
+
+    /**
+     * One section of the venue: rows of seats with their availability bits, its own lock and counters.
+     * The counters are only written under the section lock, so their sums stay exact.
+     */
+    private static final class Section {
+
+        /**
+         * Lock guarding the section.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Index of the section.
+         */
+        private final int index;
+
+        /**
+         * Availability of each row: bit i is set while seat i holds a ticket for sale.
+         */
+        private final long[] rows;
+
+        /**
+         * The seats that exist in each row; every row is full but the last.
+         */
+        private final long[] seats;
+
+        /**
+         * Packed ticket id held by each seat, row by row.
+         */
+        private final long[] ticketIds;
+
+        /**
+         * Number of seats in a full row.
+         */
+        private final int seatsPerRow;
+
+        /**
+         * Number of seats in the section.
+         */
+        private final int capacity;
+
+        /**
+         * Lowest row that may have an empty seat, so vendors skip the full rows in front of it.
+         */
+        private int freeRow = 0;
+
+        /**
+         * Number of seats holding a ticket, readable without the lock.
+         */
+        private volatile int size;
+
+        /**
+         * Number of tickets added to the section.
+         */
+        private volatile int added;
+
+        /**
+         * Number of tickets sold from the section.
+         */
+        private volatile int sold;
+
+        /**
+         * Constructor to create a section with every seat empty.
+         *
+         * @param index       index of the section
+         * @param capacity    the number of seats in the section
+         * @param seatsPerRow the number of seats in a full row
+         */
+        private Section(int index, int capacity, int seatsPerRow) {
+            this.index = index;
+            this.capacity = capacity;
+            this.seatsPerRow = seatsPerRow;
+            int rowCount = (capacity + seatsPerRow - 1) / seatsPerRow;
+            this.rows = new long[rowCount];
+            this.seats = new long[rowCount];
+            this.ticketIds = new long[rowCount * seatsPerRow];
+            for (int row = 0; row < rowCount; row++) {
+                int width = Math.min(seatsPerRow, capacity - row * seatsPerRow);
+                seats[row] = width == Long.SIZE ? -1L : (1L << width) - 1;
+            }
+        }
+
+        /**
+         * Puts a ticket in the first empty seat if the section has one, telling the listener under
+         * the section lock so the journal holds the ticket before any customer can buy it.
+         *
+         * @param ticketId the packed id of the ticket
+         * @param listener the listener to tell, {@link PoolListener#NONE} for none
+         * @return true if the ticket was added
+         */
+        private boolean offer(long ticketId, PoolListener listener) {
+            if (size >= capacity) {
+                return false; // Skip the lock when the section is visibly full
+            }
+            lock.lock();
+            try {
+                if (!place(ticketId)) {
+                    return false;
+                }
+                listener.ticketAdded(ticketId);
+                added++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Puts a sold ticket back in the first empty seat if the section has one, undoing one sale.
+         * The listener is told under the section lock, like {@link #offer(long, PoolListener)}.
+         *
+         * @param ticketId the packed id of the ticket
+         * @param listener the listener to tell
+         * @return true if the ticket was put back
+         */
+        private boolean putBack(long ticketId, PoolListener listener) {
+            if (size >= capacity) {
+                return false; // Skip the lock when the section is visibly full
+            }
+            lock.lock();
+            try {
+                if (!place(ticketId)) {
+                    return false;
+                }
+                listener.ticketReturned(ticketId);
+                sold--; // May go below zero for a ticket sold by another section, only the sum is read
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Puts tickets from the iterator in empty seats while the section has them.
+         *
+         * @param iterator the tickets still to be added
+         * @param listener the listener notified of every ticket added
+         * @return the number of tickets added
+         */
+        private int offerAll(Iterator<Ticket> iterator, PoolListener listener) {
+            if (size >= capacity) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                int count = 0;
+                while (size < capacity && iterator.hasNext()) {
+                    long ticketId = iterator.next().getId();
+                    place(ticketId);
+                    listener.ticketAdded(ticketId);
+                    count++;
+                }
+                added += count;
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Puts a ticket in the first empty seat, front rows first. Called with the lock held.
+         *
+         * @param ticketId the packed id of the ticket
+         * @return true if the ticket was placed, false if every seat is taken
+         */
+        private boolean place(long ticketId) {
+            for (int row = freeRow; row < rows.length; row++) {
+                long empty = seats[row] & ~rows[row];
+                if (empty != 0) {
+                    int seat = Long.numberOfTrailingZeros(empty);
+                    rows[row] |= 1L << seat;
+                    ticketIds[row * seatsPerRow + seat] = ticketId;
+                    size++;
+                    freeRow = rows[row] == seats[row] ? row + 1 : row;
+                    return true;
+                }
+            }
+            freeRow = rows.length;
+            return false;
+        }
+
+        /**
+         * Claims the best run of adjacent seats: the front row that has the run, the run closest
+         * to the middle of the row. The bits are cleared and the tickets reported sold under the
+         * lock, so no other thread sees part of the claim.
+         *
+         * @param count    the number of adjacent seats
+         * @param listener the listener notified of every ticket sold
+         * @return the claimed seats, or null if no row has a run of that many seats
+         */
+        private SeatClaim claim(int count, PoolListener listener) {
+            if (size < count) {
+                return null; // Skip the lock when the section visibly has too few tickets
+            }
+            lock.lock();
+            try {
+                for (int row = 0; row < rows.length; row++) {
+                    long available = rows[row];
+                    if (Long.bitCount(available) < count) {
+                        continue;
+                    }
+                    int first = bestRun(available, count, seatsPerRow);
+                    if (first < 0) {
+                        continue;
+                    }
+                    long[] claimed = new long[count];
+                    int base = row * seatsPerRow + first;
+                    for (int i = 0; i < count; i++) {
+                        claimed[i] = ticketIds[base + i];
+                        listener.ticketSold(claimed[i]);
+                    }
+                    rows[row] = available & ~(count == Long.SIZE ? -1L : ((1L << count) - 1) << first);
+                    size -= count;
+                    sold += count;
+                    freeRow = Math.min(freeRow, row);
+                    return new SeatClaim(index, row, first, claimed);
+                }
+                return null;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Takes up to the given number of tickets seat by seat, front rows first.
+         *
+         * @param target   the collection the removed tickets are added to
+         * @param max      the maximum number of tickets to remove
+         * @param listener the listener notified of every ticket sold
+         * @return the number of tickets removed
+         */
+        private int pollAll(Collection<Ticket> target, int max, PoolListener listener) {
+            if (size == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                int count = 0;
+                for (int row = 0; row < rows.length && count < max; row++) {
+                    long available = rows[row];
+                    if (available == 0) {
+                        continue;
+                    }
+                    freeRow = Math.min(freeRow, row);
+                    while (available != 0 && count < max) {
+                        int seat = Long.numberOfTrailingZeros(available);
+                        available &= available - 1;
+                        long ticketId = ticketIds[row * seatsPerRow + seat];
+                        listener.ticketSold(ticketId);
+                        target.add(new Ticket(ticketId));
+                        count++;
+                    }
+                    rows[row] = available;
+                }
+                size -= count;
+                sold += count;
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Copies the ids of the tickets in the section, in seat order, into an array.
+         *
+         * @param target the array to copy into
+         * @param offset the index of the first free element of the array
+         * @return the index after the last id copied
+         */
+        private int copyIds(long[] target, int offset) {
+            lock.lock();
+            try {
+                for (int row = 0; row < rows.length; row++) {
+                    long available = rows[row];
+                    while (available != 0) {
+                        target[offset++] = ticketIds[row * seatsPerRow + Long.numberOfTrailingZeros(available)];
+                        available &= available - 1;
+                    }
+                }
+                return offset;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,930 @@
+package core;
+
+import logging.LogEvent;
+import logging.Logger;
+import util.Ticket;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The ShardedTicketPool class implements the TicketOperations interface by splitting the pool
+ * into independent shards, each with its own lock and its own share of the capacity.
+ * Every thread is given a home shard the first time it uses the pool. Vendors add to their home
+ * shard and customers take from theirs, and both move on to the other shards when the home shard
+ * is full or empty, so customers steal tickets from busier shards. Threads only touch the shared
+ * wait lock when every shard is full or empty.
+ */
+public class ShardedTicketPool implements TicketOperations {
+
+    /**
+     * The shards holding the tickets.
+     */
+    private final Shard[] shards;
+
+    /**
+     * Maximum number of tickets allowed in the pool across all shards.
+     */
+    private volatile int maxPoolTickets;
+
+    /**
+     * Source of home shard indices, handed out round-robin.
+     */
+    private final AtomicInteger nextHome = new AtomicInteger();
+
+    /**
+     * The home shard index of the current thread.
+     */
+    private final ThreadLocal<Integer> home = ThreadLocal.withInitial(this::assignHome);
+
+    /**
+     * Lock used only by threads that found every shard full or empty.
+     */
+    private final ReentrantLock waitLock = new ReentrantLock();
+
+    /**
+     * Condition vendors wait on while every shard is full.
+     */
+    private final Condition notFull = waitLock.newCondition();
+
+    /**
+     * Condition customers wait on while every shard is empty.
+     */
+    private final Condition notEmpty = waitLock.newCondition();
+
+    /**
+     * Number of vendors waiting on {@link #notFull}; checked before taking the wait lock to signal.
+     */
+    private final AtomicInteger waitingVendors = new AtomicInteger();
+
+    /**
+     * Number of customers waiting on {@link #notEmpty}; checked before taking the wait lock to signal.
+     */
+    private final AtomicInteger waitingCustomers = new AtomicInteger();
+
+    /**
+     * Listener notified of every ticket added and sold.
+     */
+    private volatile PoolListener listener = PoolListener.NONE;
+
+    /**
+     * Flag to indicate if ticket processing should stop.
+     */
+    private volatile boolean stopFlag = false;
+
+    /**
+     * Tickets added before a restart, counted on top of the shard counters.
+     */
+    private volatile int restoredCounter = 0;
+
+    /**
+     * Tickets sold before a restart, counted on top of the shard counters.
+     */
+    private volatile int restoredSoldTicketCounter = 0;
+
+    /**
+     * Constructor to initialize the ShardedTicketPool. The capacity is split as evenly as possible,
+     * so the shard capacities always add up to the maximum pool size.
+     *
+     * @param maxPoolTickets the maximum number of tickets that can be stored in the pool
+     * @param shardCount     the number of shards, at most one per ticket of capacity
+     */
+    public ShardedTicketPool(int maxPoolTickets, int shardCount) {
+        if (maxPoolTickets <= 0) {
+            throw new IllegalArgumentException("The maximum pool size must be greater than 0");
+        }
+        int count = Math.max(1, Math.min(shardCount, maxPoolTickets));
+        this.maxPoolTickets = maxPoolTickets;
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard(maxPoolTickets / count + (i < maxPoolTickets % count ? 1 : 0));
+        }
+    }
+
+    /**
+     * Adds a ticket to the home shard of the current thread, or to the next shard with space.
+     * If every shard is full, the thread waits until a customer frees space.
+     *
+     * @param ticket the Ticket object to be added
+     */
+    @Override
+    public void addTicket(Ticket ticket) {
+        while (!offerAny(ticket)) {
+            if (stopFlag) {
+                return;
+            }
+            // If every shard is full, log the status and wait for space to become available
+            Logger.log(LogEvent.POOL_FULL);
+            if (!awaitSpace()) {
+                Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                return;
+            }
+        }
+        added(ticket);
+    }
+
+    /**
+     * Adds a ticket to the home shard of the current thread, or to the next shard with space,
+     * waiting at most the given time if every shard is full.
+     *
+     * @param ticket  the Ticket object to be added
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the ticket was added
+     */
+    @Override
+    public boolean tryAddTicket(Ticket ticket, long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!offerAny(ticket)) {
+            if (stopFlag || System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+            // If every shard is full, log the status and wait for space until the time runs out
+            Logger.log(LogEvent.POOL_FULL);
+            if (!awaitSpace(true, deadline)) {
+                Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                return false;
+            }
+        }
+        added(ticket);
+        return true;
+    }
+
+    /**
+     * Records and logs a ticket added to a shard and wakes one waiting customer.
+     *
+     * @param ticket the ticket that was added
+     */
+    private void added(Ticket ticket) {
+        PoolMetrics.added(1);
+        Logger.log(LogEvent.TICKET_ADDED, getCounter());
+        Logger.log(LogEvent.TICKET_ADDED_BY, ticket.getId());
+
+        signal(waitingCustomers, notEmpty);
+        listener.awaitDurable(); // After the shard lock and the wakeup, so others can join the same commit
+    }
+
+    /**
+     * Removes a ticket from the home shard of the current thread, stealing from the other shards
+     * when it is empty. If every shard is empty, the thread waits until a vendor adds a ticket.
+     */
+    @Override
+    public void removeTicket() {
+        Ticket ticket;
+        while ((ticket = pollAny()) == null) {
+            if (stopFlag) {
+                return;
+            }
+            // If every shard is empty, log the status and wait for tickets to be added
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!awaitTickets()) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                return;
+            }
+        }
+        sold(ticket);
+    }
+
+    /**
+     * Removes a ticket from the home shard of the current thread, stealing from the other shards
+     * when it is empty, and waiting at most the given time if every shard is empty.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return the removed ticket, or empty if none became available in time
+     */
+    @Override
+    public Optional<Ticket> tryRemoveTicket(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Ticket ticket;
+        while ((ticket = pollAny()) == null) {
+            if (stopFlag || System.nanoTime() - deadline >= 0) {
+                return Optional.empty();
+            }
+            // If every shard is empty, log the status and wait for tickets until the time runs out
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!awaitTickets(true, deadline)) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                return Optional.empty();
+            }
+        }
+        sold(ticket);
+        return Optional.of(ticket);
+    }
+
+    /**
+     * Records and logs a ticket taken from a shard and wakes one waiting vendor.
+     *
+     * @param ticket the ticket that was sold
+     */
+    private void sold(Ticket ticket) {
+        listener.ticketSold(ticket.getId());
+        PoolMetrics.sold(1);
+        Logger.log(LogEvent.TICKET_REMOVED, ticket.getId());
+        Logger.log(LogEvent.TICKETS_SOLD, getSoldTicketCounter());
+
+        signal(waitingVendors, notFull);
+        listener.awaitDurable();
+    }
+
+    /**
+     * Adds a batch of tickets, filling the home shard first and then the others,
+     * taking each shard lock once. Waits only if every shard is full.
+     *
+     * @param tickets the tickets to be added
+     * @return the number of tickets added from the start of the collection
+     */
+    @Override
+    public int addTickets(Collection<Ticket> tickets) {
+        if (tickets.isEmpty()) {
+            return 0;
+        }
+        int added;
+        while ((added = offerAll(tickets)) == 0) {
+            if (stopFlag) {
+                return 0;
+            }
+            Logger.log(LogEvent.POOL_FULL);
+            if (!awaitSpace()) {
+                Logger.log("Thread interrupted while waiting to add tickets: " + Thread.currentThread().getName());
+                return 0;
+            }
+        }
+        PoolMetrics.added(added);
+        Logger.log(LogEvent.TICKETS_ADDED, added, getCounter());
+
+        signal(waitingCustomers, notEmpty);
+        listener.awaitDurable(); // Once for the whole batch
+        return added;
+    }
+
+    /**
+     * Removes up to the given number of tickets, draining the home shard first and then stealing
+     * from the others, taking each shard lock once. Waits only if every shard is empty.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed
+     */
+    @Override
+    public int drainTo(Collection<Ticket> target, int max) {
+        return drain(target, max, false, 0);
+    }
+
+    /**
+     * Removes up to the given number of tickets like {@link #drainTo(Collection, int)}, waiting
+     * at most the given time if the pool is empty.
+     *
+     * @param target  the collection the removed tickets are added to
+     * @param max     the maximum number of tickets to remove
+     * @param timeout the maximum time to wait for the first ticket, 0 not to wait
+     * @param unit    the unit of the timeout
+     * @return the number of tickets removed, 0 if none became available in time
+     */
+    @Override
+    public int tryDrainTo(Collection<Ticket> target, int max, long timeout, TimeUnit unit) {
+        return drain(target, max, true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes up to the given number of tickets, waiting while the pool is empty until a vendor
+     * adds a ticket or, for a timed wait, the deadline passes.
+     *
+     * @param target   the collection the removed tickets are added to
+     * @param max      the maximum number of tickets to remove
+     * @param timed    true to give up at the deadline
+     * @param deadline the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return the number of tickets removed
+     */
+    private int drain(Collection<Ticket> target, int max, boolean timed, long deadline) {
+        if (max <= 0) {
+            return 0;
+        }
+        int removed;
+        while ((removed = pollAll(target, max)) == 0) {
+            if (stopFlag || (timed && System.nanoTime() - deadline >= 0)) {
+                return 0;
+            }
+            Logger.log(LogEvent.POOL_EMPTY);
+            if (!awaitTickets(timed, deadline)) {
+                Logger.log("Thread interrupted while waiting to remove tickets: " + Thread.currentThread().getName());
+                return 0;
+            }
+        }
+        PoolMetrics.sold(removed);
+        Logger.log(LogEvent.TICKETS_REMOVED, removed);
+        Logger.log(LogEvent.TICKETS_SOLD, getSoldTicketCounter());
+
+        signal(waitingVendors, notFull);
+        listener.awaitDurable(); // Once for the whole batch
+        return removed;
+    }
+
+    /**
+     * Tries to add a ticket to each shard in turn, starting at the home shard.
+     *
+     * @param ticket the ticket to add
+     * @return true if a shard had space for the ticket
+     */
+    private boolean offerAny(Ticket ticket) {
+        int start = home.get();
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[(start + i) % shards.length].offer(ticket, listener)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Tries to take a ticket from each shard in turn, starting at the home shard.
+     *
+     * @return the ticket, or null if every shard is empty
+     */
+    private Ticket pollAny() {
+        int start = home.get();
+        for (int i = 0; i < shards.length; i++) {
+            Ticket ticket = shards[(start + i) % shards.length].poll();
+            if (ticket != null) {
+                return ticket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Adds tickets from the start of the collection to the shards, starting at the home shard,
+     * until the collection is used up or every shard is full.
+     *
+     * @param tickets the tickets to add
+     * @return the number of tickets added
+     */
+    private int offerAll(Collection<Ticket> tickets) {
+        Iterator<Ticket> iterator = tickets.iterator();
+        int start = home.get();
+        int added = 0;
+        for (int i = 0; i < shards.length && iterator.hasNext(); i++) {
+            added += shards[(start + i) % shards.length].offerAll(iterator, listener);
+        }
+        return added;
+    }
+
+    /**
+     * Takes up to the given number of tickets from the shards, starting at the home shard.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed
+     */
+    private int pollAll(Collection<Ticket> target, int max) {
+        int start = home.get();
+        int removed = 0;
+        for (int i = 0; i < shards.length && removed < max; i++) {
+            removed += shards[(start + i) % shards.length].pollAll(target, max - removed, listener);
+        }
+        return removed;
+    }
+
+    /**
+     * Waits on the shared wait lock until a shard has space or the pool is stopped.
+     *
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean awaitSpace() {
+        return awaitSpace(false, 0);
+    }
+
+    /**
+     * Waits on the shared wait lock until a shard has space, the pool is stopped or, for a timed wait, the deadline passes.
+     *
+     * @param timed    true to give up at the deadline
+     * @param deadline the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean awaitSpace(boolean timed, long deadline) {
+        long waitStart = System.nanoTime();
+        waitLock.lock();
+        waitingVendors.incrementAndGet();
+        try {
+            // Check again after registering, so a customer that frees space now will signal
+            while (isFull() && !stopFlag) {
+                if (!timed) {
+                    notFull.await();
+                } else if (notFull.awaitNanos(deadline - System.nanoTime()) <= 0) {
+                    break; // The time ran out
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+            return false;
+        } finally {
+            waitingVendors.decrementAndGet();
+            waitLock.unlock();
+            PoolMetrics.addWaited(waitStart);
+        }
+    }
+
+    /**
+     * Waits on the shared wait lock until a shard has a ticket or the pool is stopped.
+     *
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean awaitTickets() {
+        return awaitTickets(false, 0);
+    }
+
+    /**
+     * Waits on the shared wait lock until a shard has a ticket, the pool is stopped or, for a timed wait, the deadline passes.
+     *
+     * @param timed    true to give up at the deadline
+     * @param deadline the {@link System#nanoTime()} to give up at, for a timed wait
+     * @return false if the thread was interrupted, true otherwise
+     */
+    private boolean awaitTickets(boolean timed, long deadline) {
+        long waitStart = System.nanoTime();
+        waitLock.lock();
+        waitingCustomers.incrementAndGet();
+        try {
+            // Check again after registering, so a vendor that adds a ticket now will signal
+            while (isEmpty() && !stopFlag) {
+                if (!timed) {
+                    notEmpty.await();
+                } else if (notEmpty.awaitNanos(deadline - System.nanoTime()) <= 0) {
+                    break; // The time ran out
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+            return false;
+        } finally {
+            waitingCustomers.decrementAndGet();
+            waitLock.unlock();
+            PoolMetrics.removeWaited(waitStart);
+        }
+    }
+
+    /**
+     * Wakes one waiting thread, taking the wait lock only if a thread is actually waiting.
+     *
+     * @param waiting   the number of threads waiting on the condition
+     * @param condition the condition to signal
+     */
+    private void signal(AtomicInteger waiting, Condition condition) {
+        if (waiting.get() == 0) {
+            return;
+        }
+        waitLock.lock();
+        try {
+            condition.signal();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if every shard is full.
+     *
+     * @return true if no ticket can be added
+     */
+    private boolean isFull() {
+        for (Shard shard : shards) {
+            if (shard.size() < shard.capacity) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if every shard is empty.
+     *
+     * @return true if no ticket can be removed
+     */
+    private boolean isEmpty() {
+        for (Shard shard : shards) {
+            if (shard.size() > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Hands out home shard indices round-robin.
+     *
+     * @return the home shard index for a thread using the pool for the first time
+     */
+    private int assignHome() {
+        return Math.floorMod(nextHome.getAndIncrement(), shards.length);
+    }
+
+    /**
+     * Gets the number of shards.
+     *
+     * @return the number of shards
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Gets the maximum number of tickets allowed in the pool across all shards.
+     *
+     * @return the maximum pool size
+     */
+    public int getMaxPoolTickets() {
+        return maxPoolTickets;
+    }
+
+    /**
+     * Gets the number of tickets currently in the pool, summed over the shards.
+     *
+     * @return the number of tickets waiting to be sold
+     */
+    @Override
+    public int getPoolSize() {
+        int size = 0;
+        for (Shard shard : shards) {
+            size += shard.size();
+        }
+        return size;
+    }
+
+    /**
+     * Gets the total number of tickets sold, summed over the shards.
+     *
+     * @return the total number of tickets sold
+     */
+    @Override
+    public int getSoldTicketCounter() {
+        int sold = restoredSoldTicketCounter;
+        for (Shard shard : shards) {
+            sold += shard.sold;
+        }
+        return sold;
+    }
+
+    /**
+     * Gets the total number of tickets added to the pool, summed over the shards.
+     *
+     * @return the total number of tickets added
+     */
+    @Override
+    public int getCounter() {
+        int added = restoredCounter;
+        for (Shard shard : shards) {
+            added += shard.added;
+        }
+        return added;
+    }
+
+    /**
+     * Sets the listener notified of every ticket added and sold.
+     *
+     * @param listener the listener, null to remove it
+     */
+    @Override
+    public void setPoolListener(PoolListener listener) {
+        this.listener = listener == null ? PoolListener.NONE : listener;
+    }
+
+    /**
+     * Copies the packed ids of the tickets in the pool, locking one shard at a time,
+     * so vendors and customers only wait for the copy of a single shard.
+     *
+     * @return the ids of the tickets in the pool, oldest first within each shard
+     */
+    @Override
+    public long[] snapshotTicketIds() {
+        long[][] copies = new long[shards.length][];
+        int count = 0;
+        for (int i = 0; i < shards.length; i++) {
+            // A resized pool may hold more tickets than its capacity, so each shard sizes its own copy
+            copies[i] = shards[i].copyIds();
+            count += copies[i].length;
+        }
+        long[] ticketIds = new long[count];
+        int offset = 0;
+        for (long[] copy : copies) {
+            System.arraycopy(copy, 0, ticketIds, offset, copy.length);
+            offset += copy.length;
+        }
+        return ticketIds;
+    }
+
+    /**
+     * Loads recovered tickets and counters into the empty pool, without notifying the listener.
+     * The tickets are dealt out over the shards in turn.
+     *
+     * @param ticketIds         the packed ids of the tickets to load, oldest first
+     * @param counter           the total number of tickets added before the restart
+     * @param soldTicketCounter the total number of tickets sold before the restart
+     * @return the number of tickets loaded, at most the pool capacity
+     */
+    @Override
+    public int restore(long[] ticketIds, int counter, int soldTicketCounter) {
+        int loaded = 0;
+        for (int i = 0; i < ticketIds.length && loaded < maxPoolTickets; i++) {
+            // Every shard has room left somewhere while fewer than maxPoolTickets are loaded
+            int shard = i % shards.length;
+            while (!shards[shard].offer(new Ticket(ticketIds[i]), PoolListener.NONE)) {
+                shard = (shard + 1) % shards.length;
+            }
+            loaded++;
+        }
+        // The shard counters now hold the loaded tickets; the rest of the history goes on top
+        restoredCounter = counter - getCounter();
+        restoredSoldTicketCounter = soldTicketCounter - getSoldTicketCounter();
+        return loaded;
+    }
+
+    /**
+     * Puts a sold ticket back into the home shard of the current thread, or the next shard with
+     * space, and wakes one waiting customer. The shard taking it back counts the sale as undone,
+     * so the summed sold counter stays exact whichever shard sold the ticket.
+     *
+     * @param ticket the ticket to put back
+     * @return true if the ticket was put back, false if every shard is full
+     */
+    @Override
+    public boolean returnTicket(Ticket ticket) {
+        int start = home.get();
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[(start + i) % shards.length].putBack(ticket, listener)) {
+                PoolMetrics.returned(1);
+                Logger.log(LogEvent.TICKET_RETURNED, getSoldTicketCounter());
+                signal(waitingCustomers, notEmpty);
+                listener.awaitDurable();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Changes the maximum number of tickets in the pool, splitting the new capacity over the
+     * shards as the constructor does. Shards holding more tickets than their new capacity keep
+     * them and take no more until customers bring them under it.
+     *
+     * @param maxPoolTickets the new maximum number of tickets, at least 1
+     * @return true, as the pool can always be resized
+     */
+    @Override
+    public boolean resize(int maxPoolTickets) {
+        int capacity = Math.max(1, maxPoolTickets);
+        for (int i = 0; i < shards.length; i++) {
+            shards[i].capacity = capacity / shards.length + (i < capacity % shards.length ? 1 : 0);
+        }
+        this.maxPoolTickets = capacity;
+        waitLock.lock();
+        try {
+            notFull.signalAll(); // Vendors waiting for space may now fit
+        } finally {
+            waitLock.unlock();
+        }
+        return true;
+    }
+
+    /**
+     * Sets the stop flag and wakes every waiting vendor and customer.
+     *
+     * @param stopFlag true to stop ticket processing, false to continue
+     */
+    @Override
+    public void setStopFlag(boolean stopFlag) {
+        this.stopFlag = stopFlag;
+        waitLock.lock();
+        try {
+            notFull.signalAll();
+            notEmpty.signalAll();
+        } finally {
+            waitLock.unlock();
+        }
+    }
+
+    /**
+     * Checks if ticket processing should stop.
+     *
+     * @return true if processing should stop, false otherwise
+     */
+    @Override
+    public boolean shouldStop() {
+        return stopFlag;
+    }
+
+    /**
+     * One shard of the pool: a bounded queue with its own lock and counters.
+     * The counters are only written under the shard lock, so their sums stay exact.
+     */
+    private static final class Shard {
+
+        /**
+         * Lock guarding the shard.
+         */
+        private final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Tickets in the shard, oldest first.
+         */
+        private final ArrayDeque<Ticket> tickets;
+
+        /**
+         * Maximum number of tickets allowed in the shard, changed when the pool is resized.
+         */
+        private volatile int capacity;
+
+        /**
+         * Number of tickets in the shard, readable without the lock.
+         */
+        private volatile int size;
+
+        /**
+         * Number of tickets added to the shard.
+         */
+        private volatile int added;
+
+        /**
+         * Number of tickets sold from the shard.
+         */
+        private volatile int sold;
+
+        /**
+         * Constructor to create an empty shard.
+         *
+         * @param capacity the maximum number of tickets allowed in the shard
+         */
+        private Shard(int capacity) {
+            this.capacity = capacity;
+            this.tickets = new ArrayDeque<>(capacity);
+        }
+
+        /**
+         * Gets the number of tickets in the shard.
+         *
+         * @return the number of tickets in the shard
+         */
+        private int size() {
+            return size;
+        }
+
+        /**
+         * Adds a ticket if the shard has space, telling the listener under the shard lock so the
+         * journal holds the ticket before any customer can buy it.
+         *
+         * @param ticket   the ticket to add
+         * @param listener the listener to tell, {@link PoolListener#NONE} for none
+         * @return true if the ticket was added
+         */
+        private boolean offer(Ticket ticket, PoolListener listener) {
+            if (size >= capacity) {
+                return false; // Skip the lock when the shard is visibly full
+            }
+            lock.lock();
+            try {
+                if (tickets.size() >= capacity) {
+                    return false;
+                }
+                tickets.addLast(ticket);
+                listener.ticketAdded(ticket.getId());
+                size = tickets.size();
+                added++;
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Puts a sold ticket back if the shard has space, undoing one sale. The listener is told
+         * under the shard lock, like {@link #offer(Ticket, PoolListener)}.
+         *
+         * @param ticket   the ticket to put back
+         * @param listener the listener to tell
+         * @return true if the ticket was put back
+         */
+        private boolean putBack(Ticket ticket, PoolListener listener) {
+            if (size >= capacity) {
+                return false; // Skip the lock when the shard is visibly full
+            }
+            lock.lock();
+            try {
+                if (tickets.size() >= capacity) {
+                    return false;
+                }
+                tickets.addLast(ticket);
+                listener.ticketReturned(ticket.getId());
+                size = tickets.size();
+                sold--; // May go below zero for a ticket sold by another shard, only the sum is read
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Takes the oldest ticket if the shard has one.
+         *
+         * @return the ticket, or null if the shard is empty
+         */
+        private Ticket poll() {
+            if (size == 0) {
+                return null; // Skip the lock when the shard is visibly empty
+            }
+            lock.lock();
+            try {
+                Ticket ticket = tickets.pollFirst();
+                if (ticket != null) {
+                    size = tickets.size();
+                    sold++;
+                }
+                return ticket;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Adds tickets from the iterator while the shard has space.
+         *
+         * @param iterator the tickets still to be added
+         * @param listener the listener notified of every ticket added
+         * @return the number of tickets added
+         */
+        private int offerAll(Iterator<Ticket> iterator, PoolListener listener) {
+            if (size >= capacity) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                int count = 0;
+                while (tickets.size() < capacity && iterator.hasNext()) {
+                    Ticket ticket = iterator.next();
+                    tickets.addLast(ticket);
+                    listener.ticketAdded(ticket.getId());
+                    count++;
+                }
+                size = tickets.size();
+                added += count;
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Takes up to the given number of tickets, oldest first.
+         *
+         * @param target   the collection the removed tickets are added to
+         * @param max      the maximum number of tickets to remove
+         * @param listener the listener notified of every ticket sold
+         * @return the number of tickets removed
+         */
+        private int pollAll(Collection<Ticket> target, int max, PoolListener listener) {
+            if (size == 0) {
+                return 0;
+            }
+            lock.lock();
+            try {
+                int count = 0;
+                Ticket ticket;
+                while (count < max && (ticket = tickets.pollFirst()) != null) {
+                    listener.ticketSold(ticket.getId());
+                    target.add(ticket);
+                    count++;
+                }
+                size = tickets.size();
+                sold += count;
+                return count;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Copies the ids of the tickets in the shard, oldest first.
+         *
+         * @return the ids of the tickets in the shard
+         */
+        private long[] copyIds() {
+            lock.lock();
+            try {
+                long[] ticketIds = new long[tickets.size()];
+                int i = 0;
+                for (Ticket ticket : tickets) {
+                    ticketIds[i++] = ticket.getId();
+                }
+                return ticketIds;
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package core;
+
+/**
+ * The TicketEvent class is one on-sale in an {@link EventRegistry}: an event id, the pool its
+ * tickets are sold from and the number of tickets it sells. Every event has a pool of its own,
+ * so vendors and customers of different events never share a lock.
+ */
+public final class TicketEvent {
+
+    /**
+     * The id the event is registered under.
+     */
+    private final String eventId;
+
+    /**
+     * The pool the tickets of the event are sold from.
+     */
+    private final TicketOperations ticketPool;
+
+    /**
+     * The total number of tickets the event sells.
+     */
+    private final int totalTickets;
+
+    /**
+     * The {@link System#nanoTime()} when the event was opened.
+     */
+    private final long openedNanos = System.nanoTime();
+
+    /**
+     * Constructor to create an event.
+     *
+     * @param eventId      the id the event is registered under
+     * @param ticketPool   the pool the tickets of the event are sold from
+     * @param totalTickets the total number of tickets the event sells
+     */
+    TicketEvent(String eventId, TicketOperations ticketPool, int totalTickets) {
+        this.eventId = eventId;
+        this.ticketPool = ticketPool;
+        this.totalTickets = totalTickets;
+    }
+
+    /**
+     * Gets the id the event is registered under.
+     *
+     * @return the event id
+     */
+    public String getEventId() {
+        return eventId;
+    }
+
+    /**
+     * Gets the pool the tickets of the event are sold from.
+     *
+     * @return the ticket pool
+     */
+    public TicketOperations getTicketPool() {
+        return ticketPool;
+    }
+
+    /**
+     * Gets the total number of tickets the event sells.
+     *
+     * @return the total number of tickets
+     */
+    public int getTotalTickets() {
+        return totalTickets;
+    }
+
+    /**
+     * Gets the {@link System#nanoTime()} when the event was opened.
+     *
+     * @return the time the event was opened
+     */
+    public long getOpenedNanos() {
+        return openedNanos;
+    }
+
+    /**
+     * Checks if every ticket of the event is sold.
+     *
+     * @return true if the event is sold out
+     */
+    public boolean isFinished() {
+        return ticketPool.getSoldTicketCounter() >= totalTickets;
+    }
+
+    /**
+     * Stops the sale, waking the vendors and customers of the event so they finish.
+     */
+    public void stop() {
+        ticketPool.setStopFlag(true);
+    }
+}
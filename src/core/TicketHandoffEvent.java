@@ -0,0 +1,70 @@
+package core;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight Recorder event for a ticket handed to a waiting customer. The event starts when the
+ * thread adding the ticket reserves it for the customer and wakes it, and ends when the customer
+ * runs again with the lock held, so its duration is the wakeup latency of the handoff.
+ */
+@Name(TicketHandoffEvent.NAME)
+@Label("Ticket Handoff")
+@Category({"Ticketing", "Pool"})
+@Description("A ticket reserved for a waiting customer, from the wakeup to the customer running")
+@Threshold("100 us")
+@StackTrace(false)
+final class TicketHandoffEvent extends jdk.jfr.Event {
+
+    /**
+     * The name of the event in recordings.
+     */
+    static final String NAME = "ticketing.TicketHandoff";
+
+    /**
+     * The class of the customer the ticket was handed to.
+     */
+    @Label("Customer Class")
+    String customerClass;
+
+    /**
+     * How long the customer had waited in its lane, from its first attempt to the ticket.
+     */
+    @Label("Customer Wait")
+    @Timespan(Timespan.NANOSECONDS)
+    long waited;
+
+    /**
+     * Starts a handoff if a recording wants the event.
+     *
+     * @return the started event, or null if no recording is taking it
+     */
+    static TicketHandoffEvent start() {
+        TicketHandoffEvent event = new TicketHandoffEvent();
+        if (!event.isEnabled()) {
+            return null;
+        }
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Ends the handoff on the customer's thread and commits the event if it passes the threshold.
+     *
+     * @param customerClass the class of the customer
+     * @param waitStart     the {@link System#nanoTime()} when the customer started waiting
+     */
+    void finish(CustomerClass customerClass, long waitStart) {
+        end();
+        if (shouldCommit()) {
+            this.customerClass = customerClass.name();
+            this.waited = System.nanoTime() - waitStart;
+            commit();
+        }
+    }
+}
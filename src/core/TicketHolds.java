@@ -0,0 +1,332 @@
+package core;
+
+import logging.Logger;
+import metrics.MetricsRegistry;
+import util.Ticket;
+import util.TimingWheel;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The TicketHolds class lets customers reserve a ticket before buying it, like a seat held in a
+ * shopping cart. A reserved ticket leaves the pool at once, so no one else can buy it, and the
+ * customer then confirms the sale or releases the ticket. A hold that is neither confirmed nor
+ * released within its time to live expires and the ticket goes back into the pool.
+ *
+ * Reserving is a sale to the pool, and releasing or expiring uses
+ * {@link TicketOperations#returnTicket(Ticket)}, so the sold counter and the journal always
+ * agree with the tickets in the pool. Expiry runs on one background thread driven by a
+ * {@link TimingWheel} with a 10 ms tick: reserving, confirming and releasing are O(1), a hold
+ * costs 32 bytes in the wheel, and the thread only visits the holds that are due, so millions
+ * of outstanding holds cost no periodic scan. A ticket that does not fit back into a full pool
+ * is kept and tried again every tick until vendors stop filling the space; it still counts as
+ * held until then, so it is never taken for sold.
+ */
+public class TicketHolds implements AutoCloseable {
+
+    /**
+     * Returned by {@link #reserve} when no ticket could be reserved.
+     */
+    public static final long NO_HOLD = -1;
+
+    /**
+     * Resolution of the expiry clock, in milliseconds.
+     */
+    private static final long TICK_MILLIS = 10;
+
+    /**
+     * The pool the tickets are held from.
+     */
+    private final TicketOperations ticketPool;
+
+    /**
+     * How long a hold lasts, in ticks.
+     */
+    private final long ttlTicks;
+
+    /**
+     * Lock guarding the wheel and the tickets waiting to be returned.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Expiry times of the outstanding holds, carrying their ticket ids.
+     */
+    private final TimingWheel wheel;
+
+    /**
+     * The {@link System#nanoTime()} of tick 0.
+     */
+    private final long originNanos = System.nanoTime();
+
+    /**
+     * The background thread expiring the holds, null until started.
+     */
+    private Thread expiryThread;
+
+    /**
+     * Ids of released or expired tickets that did not fit back into the pool, guarded by the lock.
+     */
+    private long[] pending = new long[16];
+
+    /**
+     * Number of ids in {@link #pending}.
+     */
+    private int pendingCount = 0;
+
+    /**
+     * Ids of the holds expired on the current tick, only used by the expiry thread.
+     */
+    private long[] due = new long[16];
+
+    /**
+     * Number of ids in {@link #due}.
+     */
+    private int dueCount = 0;
+
+    /**
+     * Number of outstanding holds and tickets waiting to go back into the pool, written under the lock.
+     */
+    private volatile int heldCount = 0;
+
+    /**
+     * Holds taken, confirmed, released and expired.
+     */
+    private final LongAdder reserved = MetricsRegistry.counter("holds.reserved");
+    private final LongAdder confirmed = MetricsRegistry.counter("holds.confirmed");
+    private final LongAdder released = MetricsRegistry.counter("holds.released");
+    private final LongAdder expired = MetricsRegistry.counter("holds.expired");
+
+    /**
+     * Constructor to create the holds of a pool.
+     *
+     * @param ticketPool the pool the tickets are held from
+     * @param ttlMillis  how long a hold lasts before the ticket goes back, in milliseconds
+     */
+    public TicketHolds(TicketOperations ticketPool, long ttlMillis) {
+        this.ticketPool = ticketPool;
+        this.ttlTicks = Math.max(1, (ttlMillis + TICK_MILLIS - 1) / TICK_MILLIS);
+        this.wheel = new TimingWheel(0, 1024);
+    }
+
+    /**
+     * Registers the gauge of the holds and starts expiring them.
+     */
+    public void start() {
+        MetricsRegistry.gauge("holds.outstanding", this::getHeldCount);
+        expiryThread = new Thread(this::expiryLoop, "Hold Expirer");
+        expiryThread.setDaemon(true);
+        expiryThread.start();
+    }
+
+    /**
+     * Reserves the oldest ticket in the pool, waiting at most the given time for one.
+     *
+     * @param customerClass the class of the customer, for pools with priority lanes
+     * @param timeout       the maximum time to wait for a ticket
+     * @param unit          the unit of the timeout
+     * @return the hold, or {@link #NO_HOLD} if no ticket became available in time
+     */
+    public long reserve(CustomerClass customerClass, long timeout, TimeUnit unit) {
+        Ticket ticket = ticketPool.tryRemoveTicket(customerClass, timeout, unit).orElse(null);
+        if (ticket == null) {
+            return NO_HOLD;
+        }
+        long hold;
+        lock.lock();
+        try {
+            hold = wheel.schedule(ticket.getId(), currentTick() + ttlTicks);
+            heldCount = wheel.size() + pendingCount;
+        } finally {
+            lock.unlock();
+        }
+        reserved.increment();
+        return hold;
+    }
+
+    /**
+     * Confirms the sale of a held ticket.
+     *
+     * @param hold the hold returned by {@link #reserve}
+     * @return true if the ticket is bought, false if the hold had already expired or ended
+     */
+    public boolean confirm(long hold) {
+        lock.lock();
+        try {
+            if (!wheel.cancel(hold)) {
+                return false;
+            }
+            heldCount = wheel.size() + pendingCount;
+        } finally {
+            lock.unlock();
+        }
+        confirmed.increment();
+        return true;
+    }
+
+    /**
+     * Releases a held ticket back into the pool before its hold expires.
+     *
+     * @param hold the hold returned by {@link #reserve}
+     * @return true if the ticket was released, false if the hold had already expired or ended
+     */
+    public boolean release(long hold) {
+        long ticketId;
+        lock.lock();
+        try {
+            if (!wheel.isScheduled(hold)) {
+                return false;
+            }
+            ticketId = wheel.payload(hold);
+            wheel.cancel(hold);
+        } finally {
+            lock.unlock();
+        }
+        giveBack(ticketId);
+        lock.lock();
+        try {
+            heldCount = wheel.size() + pendingCount; // Counted as held until it is back in the pool
+        } finally {
+            lock.unlock();
+        }
+        released.increment();
+        return true;
+    }
+
+    /**
+     * Gets the number of tickets held: outstanding holds and tickets waiting to go back into the pool.
+     *
+     * @return the number of tickets reserved and neither bought nor returned yet
+     */
+    public int getHeldCount() {
+        return heldCount;
+    }
+
+    /**
+     * Stops expiring holds and returns every ticket still held to the pool, as a shutdown
+     * abandons the carts. Returned tickets are journaled, so a restart finds them in the pool.
+     */
+    @Override
+    public void close() {
+        if (expiryThread != null) {
+            expiryThread.interrupt();
+            try {
+                expiryThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Restore the interrupted status
+            }
+        }
+        dueCount = 0;
+        lock.lock();
+        try {
+            for (int i = 0; i < pendingCount; i++) {
+                collectDue(pending[i]);
+            }
+            pendingCount = 0;
+            wheel.cancelAll(this::collectDue);
+            heldCount = 0;
+        } finally {
+            lock.unlock();
+        }
+        returnDue();
+        Logger.log("Ticket holds closed, " + pendingCount + " tickets did not fit back into the pool.");
+    }
+
+    /**
+     * Gets the current tick of the expiry clock.
+     *
+     * @return the number of ticks since the holds were created
+     */
+    private long currentTick() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - originNanos) / TICK_MILLIS;
+    }
+
+    /**
+     * Main loop of the expiry thread: once per tick, returns the tickets of the holds that are due.
+     */
+    private void expiryLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(TICK_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+            dueCount = 0;
+            int count;
+            lock.lock();
+            try {
+                // Retry the tickets that did not fit before, then expire the holds that are due
+                for (int i = 0; i < pendingCount; i++) {
+                    collectDue(pending[i]);
+                }
+                pendingCount = 0;
+                int before = dueCount;
+                wheel.advanceTo(currentTick(), this::collectDue);
+                count = dueCount - before;
+                // The due tickets still count as held until they are back in the pool
+                heldCount = wheel.size() + dueCount;
+            } finally {
+                lock.unlock();
+            }
+            if (count > 0) {
+                expired.add(count);
+                Logger.log(count + " ticket holds expired.");
+            }
+            if (dueCount > 0) {
+                returnDue();
+                lock.lock();
+                try {
+                    heldCount = wheel.size() + pendingCount;
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a ticket id to the tickets to return after the lock is released.
+     *
+     * @param ticketId the packed ticket id
+     */
+    private void collectDue(long ticketId) {
+        if (dueCount == due.length) {
+            due = Arrays.copyOf(due, due.length * 2);
+        }
+        due[dueCount++] = ticketId;
+    }
+
+    /**
+     * Returns the collected tickets to the pool.
+     */
+    private void returnDue() {
+        for (int i = 0; i < dueCount; i++) {
+            giveBack(due[i]);
+        }
+        dueCount = 0;
+    }
+
+    /**
+     * Returns a ticket to the pool, keeping it for the next tick if the pool is full.
+     *
+     * @param ticketId the packed ticket id
+     */
+    private void giveBack(long ticketId) {
+        if (ticketPool.returnTicket(new Ticket(ticketId))) {
+            return;
+        }
+        lock.lock();
+        try {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pending.length * 2);
+            }
+            pending[pendingCount++] = ticketId;
+            heldCount = wheel.size() + pendingCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -2,6 +2,12 @@ package core;
 
 import util.Ticket;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
 /**
  * The TicketOperations interface defines the operations that can be performed
  * on a ticketing system, such as adding and removing tickets.
@@ -15,9 +21,248 @@ public interface TicketOperations {
      */
     void addTicket(Ticket ticket);
 
+    /**
+     * Adds a ticket given by its packed id to the ticketing system.
+     * Pools that store ids directly override this to avoid creating a Ticket object.
+     *
+     * @param ticketId the packed ticket id, see {@link Ticket#pack(int, long)}
+     */
+    default void addTicketId(long ticketId) {
+        addTicket(new Ticket(ticketId));
+    }
+
     /**
      * Removes a ticket from the ticketing system.
      * Implementations should define the criteria for ticket removal.
      */
     void removeTicket();
+
+    /**
+     * Adds a ticket to the ticketing system, waiting at most the given time for space.
+     * The capacity is never exceeded: the ticket is only added once there is room for it.
+     * If the thread is interrupted while waiting, the interrupt status is kept and false returned.
+     *
+     * @param ticket  the Ticket object to be added
+     * @param timeout the maximum time to wait, 0 to only add if there is space now
+     * @param unit    the unit of the timeout
+     * @return true if the ticket was added, false if the time ran out, the system was stopped or the thread was interrupted
+     */
+    boolean tryAddTicket(Ticket ticket, long timeout, TimeUnit unit);
+
+    /**
+     * Adds a ticket given by its packed id, waiting at most the given time for space.
+     * Pools that store ids directly override this to avoid creating a Ticket object.
+     *
+     * @param ticketId the packed ticket id, see {@link Ticket#pack(int, long)}
+     * @param timeout  the maximum time to wait, 0 to only add if there is space now
+     * @param unit     the unit of the timeout
+     * @return true if the ticket was added, false if the time ran out, the system was stopped or the thread was interrupted
+     */
+    default boolean tryAddTicketId(long ticketId, long timeout, TimeUnit unit) {
+        return tryAddTicket(new Ticket(ticketId), timeout, unit);
+    }
+
+    /**
+     * Removes the oldest available ticket from the ticketing system, waiting at most the given time for one.
+     * If the thread is interrupted while waiting, the interrupt status is kept and an empty result returned.
+     *
+     * @param timeout the maximum time to wait, 0 to only remove a ticket that is available now
+     * @param unit    the unit of the timeout
+     * @return the removed ticket, or empty if the time ran out, the system was stopped or the thread was interrupted
+     */
+    Optional<Ticket> tryRemoveTicket(long timeout, TimeUnit unit);
+
+    /**
+     * Adds a batch of tickets to the ticketing system in one step.
+     * Waits until at least one ticket fits, then adds as many tickets as there is space for,
+     * in iteration order. Callers keep the tickets that were not added and try again.
+     *
+     * @param tickets the tickets to be added
+     * @return the number of tickets added from the start of the collection,
+     *         0 if the system was stopped before any could be added
+     */
+    int addTickets(Collection<Ticket> tickets);
+
+    /**
+     * Removes up to the given number of tickets from the ticketing system in one step.
+     * Waits until at least one ticket is available, then moves as many as are available.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed, 0 if the system was stopped while empty
+     */
+    int drainTo(Collection<Ticket> target, int max);
+
+    /**
+     * Removes a ticket for a customer of a priority class, waiting until one is available.
+     * Systems without priority lanes serve every class alike.
+     *
+     * @param customerClass the class of the customer
+     */
+    default void removeTicket(CustomerClass customerClass) {
+        removeTicket();
+    }
+
+    /**
+     * Removes the oldest ticket for a customer of a priority class, waiting at most the given time.
+     * Systems without priority lanes serve every class alike.
+     *
+     * @param customerClass the class of the customer
+     * @param timeout       the maximum time to wait, 0 to only remove a ticket that is available now
+     * @param unit          the unit of the timeout
+     * @return the removed ticket, or empty if the time ran out, the system was stopped or the thread was interrupted
+     */
+    default Optional<Ticket> tryRemoveTicket(CustomerClass customerClass, long timeout, TimeUnit unit) {
+        return tryRemoveTicket(timeout, unit);
+    }
+
+    /**
+     * Removes up to the given number of tickets for a customer of a priority class in one step.
+     * Systems without priority lanes serve every class alike.
+     *
+     * @param target        the collection the removed tickets are added to
+     * @param max           the maximum number of tickets to remove
+     * @param customerClass the class of the customer
+     * @return the number of tickets removed, 0 if the system was stopped while empty
+     */
+    default int drainTo(Collection<Ticket> target, int max, CustomerClass customerClass) {
+        return drainTo(target, max);
+    }
+
+    /**
+     * Removes up to the given number of tickets in one step, waiting at most the given time for
+     * the first one, for callers that must not block such as a network front end. The default
+     * takes the tickets one at a time; the pools override it to take them in one step.
+     *
+     * @param target  the collection the removed tickets are added to
+     * @param max     the maximum number of tickets to remove
+     * @param timeout the maximum time to wait for the first ticket, 0 not to wait
+     * @param unit    the unit of the timeout
+     * @return the number of tickets removed, 0 if none became available in time
+     */
+    default int tryDrainTo(Collection<Ticket> target, int max, long timeout, TimeUnit unit) {
+        if (max <= 0) {
+            return 0;
+        }
+        Optional<Ticket> ticket = tryRemoveTicket(timeout, unit);
+        int removed = 0;
+        while (ticket.isPresent()) {
+            target.add(ticket.get());
+            if (++removed == max) {
+                break;
+            }
+            ticket = tryRemoveTicket(0, TimeUnit.NANOSECONDS);
+        }
+        return removed;
+    }
+
+    /**
+     * Removes up to the given number of tickets that are free right now, for callers that must
+     * never wait such as the selector thread of a network front end. The pools return at once
+     * from a zero timeout, without queuing in a priority lane or logging an empty pool.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed, 0 if none was free
+     */
+    default int pollTo(Collection<Ticket> target, int max) {
+        return tryDrainTo(target, max, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Removes up to the given number of tickets from the ticketing system in one step.
+     *
+     * @param max the maximum number of tickets to remove
+     * @return the removed tickets, empty if the system was stopped while empty
+     */
+    default List<Ticket> removeTickets(int max) {
+        List<Ticket> tickets = new ArrayList<>(Math.max(0, max));
+        drainTo(tickets, max);
+        return tickets;
+    }
+
+    /**
+     * Gets the total number of tickets added to the ticketing system.
+     *
+     * @return the total number of tickets added
+     */
+    int getCounter();
+
+    /**
+     * Gets the total number of tickets sold by the ticketing system.
+     *
+     * @return the total number of tickets sold
+     */
+    int getSoldTicketCounter();
+
+    /**
+     * Gets the number of tickets currently in the ticketing system, waiting to be sold.
+     *
+     * @return the number of tickets in the pool
+     */
+    int getPoolSize();
+
+    /**
+     * Sets the listener notified of every ticket the ticketing system accepts and sells,
+     * for example the journal.
+     *
+     * @param listener the listener, null to remove it
+     */
+    void setPoolListener(PoolListener listener);
+
+    /**
+     * Copies the packed ids of the tickets in the ticketing system, oldest first, while vendors
+     * and customers keep running. A ticket added or sold during the copy may or may not be
+     * included, so a snapshot pairs the copy with the journal records written from just before it.
+     *
+     * @return the ids of the tickets in the ticketing system
+     */
+    long[] snapshotTicketIds();
+
+    /**
+     * Loads recovered tickets and counters into the empty ticketing system before vendors and
+     * customers start. The listener is not notified, as the tickets are already in the journal.
+     *
+     * @param ticketIds         the packed ids of the tickets to load, oldest first
+     * @param counter           the total number of tickets added before the restart
+     * @param soldTicketCounter the total number of tickets sold before the restart
+     * @return the number of tickets loaded, fewer than given if they do not fit
+     */
+    int restore(long[] ticketIds, int counter, int soldTicketCounter);
+
+    /**
+     * Puts a sold ticket back into the ticketing system, for a hold that was released or expired.
+     * The ticket is not counted as added again: the sold counter goes down by one instead, and
+     * the listener is told the ticket was returned. Never waits, so a timer thread can call it.
+     *
+     * @param ticket the ticket to put back
+     * @return true if the ticket was put back, false if the system is full
+     */
+    boolean returnTicket(Ticket ticket);
+
+    /**
+     * Changes the maximum number of tickets in the ticketing system while it runs. Tickets beyond
+     * a smaller capacity are kept, and vendors wait until customers bring the system under it.
+     * Systems whose layout is fixed when they are created keep their capacity.
+     *
+     * @param maxPoolTickets the new maximum number of tickets, at least 1
+     * @return true if the capacity was changed, false if this system cannot be resized
+     */
+    default boolean resize(int maxPoolTickets) {
+        return false;
+    }
+
+    /**
+     * Sets the stop flag and wakes any thread waiting on the ticketing system.
+     *
+     * @param stopFlag true to stop ticket processing, false to continue
+     */
+    void setStopFlag(boolean stopFlag);
+
+    /**
+     * Checks if ticket processing should stop.
+     *
+     * @return true if processing should stop, false otherwise
+     */
+    boolean shouldStop();
 }
@@ -1,15 +1,23 @@
 package core;
 
+import logging.LogEvent;
 import logging.Logger;
 import util.Ticket;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * The TicketPool class implements the TicketOperations interface to manage a pool of tickets.
  * It provides thread-safe operations to add and remove tickets, ensuring proper synchronization.
+ * The pool is guarded by a ReentrantLock rather than its monitor, so virtual threads waiting
+ * for space or tickets unmount from their carrier thread instead of pinning it.
  */
 public class TicketPool implements TicketOperations {
 
@@ -19,9 +27,9 @@ public class TicketPool implements TicketOperations {
     private int soldTicketCounter=0;
 
     /**
-     * Maximum number of tickets allowed in the pool.
+     * Maximum number of tickets allowed in the pool, guarded by the lock.
      */
-    private final int maxPoolTickets;
+    private int maxPoolTickets;
 
     /**
      * Counter for the total number of tickets added to the pool.
@@ -33,6 +41,7 @@ public class TicketPool implements TicketOperations {
      *
      * @return the total number of tickets sold
      */
+    @Override
     public int getSoldTicketCounter() {
         return soldTicketCounter;
     }
@@ -42,6 +51,7 @@ public class TicketPool implements TicketOperations {
      *
      * @return the total number of tickets added
      */
+    @Override
     public int getCounter() {
         return counter;
     }
@@ -51,16 +61,50 @@ public class TicketPool implements TicketOperations {
      */
     private final List<Ticket> ticketPool= Collections.synchronizedList(new LinkedList<>());
 
+    /**
+     * Lock guarding the pool and its counters.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Condition vendors wait on while the pool is full.
+     */
+    private final Condition notFull = lock.newCondition();
+
+    /**
+     * Lanes customers wait in while the pool is empty, one per customer class.
+     */
+    private final PriorityLanes lanes;
+
     /**
      * Constructor to initialize the TicketPool with a maximum ticket capacity.
+     * Waiting customers are served in the order they arrived, whatever their class.
      *
      * @param maxPoolTickets the maximum number of tickets that can be stored in the pool
      */
     public TicketPool(int maxPoolTickets) {
+        this(maxPoolTickets, PriorityPolicy.NONE, 1, 0);
+    }
+
+    /**
+     * Constructor to initialize the TicketPool with a maximum ticket capacity and priority lanes.
+     *
+     * @param maxPoolTickets      the maximum number of tickets that can be stored in the pool
+     * @param priorityPolicy      how waiting VIP and regular customers are chosen between
+     * @param vipWeight           tickets given to VIP customers for every regular ticket with WEIGHTED
+     * @param vipStarvationMillis how long a regular customer waits before it goes ahead of VIP customers with STRICT
+     */
+    public TicketPool(int maxPoolTickets, PriorityPolicy priorityPolicy, int vipWeight, long vipStarvationMillis) {
         this.maxPoolTickets = maxPoolTickets;
+        this.lanes = new PriorityLanes(lock, priorityPolicy, vipWeight, vipStarvationMillis);
     }
 
 
+    /**
+     * Listener notified of every ticket added and sold.
+     */
+    private volatile PoolListener listener = PoolListener.NONE;
+
     /**
      * Flag to indicate if ticket processing should stop.
      */
@@ -70,62 +114,481 @@ public class TicketPool implements TicketOperations {
     /**
      * Adds a ticket to the ticket pool.
      * If the pool is full, the thread waits until space becomes available.
+     * The ticket is not added if the pool is stopped while waiting.
      *
      * @param ticket the Ticket object to be added
      */
     @Override
-    public synchronized void addTicket(Ticket ticket) {
-        if (ticketPool.size() >= maxPoolTickets){
-            // If the pool is full, log the status and wait for space to become available
-            Logger.log("Ticket pool is full. Waiting for space to become available...");
-            try {
-                wait(); // Releases the lock and waits for notification
+    public void addTicket(Ticket ticket) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            while (ticketPool.size() >= maxPoolTickets && !stopFlag){
+                // If the pool is full, log the status and wait for space to become available
+                Logger.log(LogEvent.POOL_FULL);
+                long waitStart = System.nanoTime();
+                PoolWaitEvent event = new PoolWaitEvent();
+                event.begin();
+                try {
+                    notFull.await(); // Releases the lock and waits for a customer to free space
+                    PoolMetrics.addWaited(waitStart);
+                    event.finish(PoolWaitEvent.POOL_FULL, null, ticketPool.size() < maxPoolTickets);
+
+                } catch (InterruptedException e) {
+                    // Handle interruption gracefully and rethrow as RuntimeException
+                    Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                    throw new RuntimeException(e);
+                }
 
+            }
+            if (ticketPool.size() < maxPoolTickets) {
+                insert(ticket);
+            }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Adds a ticket to the ticket pool, waiting at most the given time for space.
+     *
+     * @param ticket  the Ticket object to be added
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the ticket was added
+     */
+    @Override
+    public boolean tryAddTicket(Ticket ticket, long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            while (ticketPool.size() >= maxPoolTickets) {
+                if (stopFlag || remaining <= 0) {
+                    return false;
+                }
+                // If the pool is full, log the status and wait for space until the time runs out
+                Logger.log(LogEvent.POOL_FULL);
+                long waitStart = System.nanoTime();
+                PoolWaitEvent event = new PoolWaitEvent();
+                event.begin();
+                try {
+                    remaining = notFull.awaitNanos(remaining); // Releases the lock and waits for a customer to free space
+                    PoolMetrics.addWaited(waitStart);
+                    event.finish(PoolWaitEvent.POOL_FULL, null, ticketPool.size() < maxPoolTickets);
+                } catch (InterruptedException e) {
+                    Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                    Thread.currentThread().interrupt(); // Restore the interrupted status
+                    return false;
+                }
+            }
+            insert(ticket);
+            return true;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Removes a ticket from the ticket pool for a regular customer.
+     * If the pool is empty, the thread waits until a ticket becomes available.
+     * Nothing is removed if the pool is stopped while waiting.
+     */
+    @Override
+    public void removeTicket() {
+        removeTicket(CustomerClass.REGULAR);
+    }
+
+    /**
+     * Removes a ticket from the ticket pool for a customer of a priority class.
+     * If no ticket is free, the customer waits in the lane of its class until a ticket is handed to it.
+     * Nothing is removed if the pool is stopped while waiting.
+     *
+     * @param customerClass the class of the customer
+     */
+    @Override
+    public void removeTicket(CustomerClass customerClass) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            if (lanes.available(ticketPool.size()) > 0) {
+                lanes.took(customerClass);
+                take();
+                return;
+            }
+            if (stopFlag) {
+                return;
+            }
+            // If the pool is empty, log the status and wait for a ticket to be handed over
+            Logger.log(LogEvent.POOL_EMPTY);
+            try {
+                if (lanes.await(customerClass, false, 0)) {
+                    take();
+                }
             } catch (InterruptedException e) {
                 // Handle interruption gracefully and rethrow as RuntimeException
-                Logger.log("Thread interrupted while waiting to add a ticket: " + Thread.currentThread().getName());
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
                 throw new RuntimeException(e);
             }
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Removes the oldest ticket from the ticket pool for a regular customer, waiting at most the given time for one.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return the removed ticket, or empty if none became available in time
+     */
+    @Override
+    public Optional<Ticket> tryRemoveTicket(long timeout, TimeUnit unit) {
+        return tryRemoveTicket(CustomerClass.REGULAR, timeout, unit);
+    }
 
+    /**
+     * Removes the oldest ticket from the ticket pool for a customer of a priority class,
+     * waiting at most the given time in the lane of its class.
+     *
+     * @param customerClass the class of the customer
+     * @param timeout       the maximum time to wait
+     * @param unit          the unit of the timeout
+     * @return the removed ticket, or empty if none became available in time
+     */
+    @Override
+    public Optional<Ticket> tryRemoveTicket(CustomerClass customerClass, long timeout, TimeUnit unit) {
+        long remaining = unit.toNanos(timeout);
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            if (lanes.available(ticketPool.size()) > 0) {
+                lanes.took(customerClass);
+                return Optional.of(take());
+            }
+            if (stopFlag || remaining <= 0) {
+                lanes.gaveUp(); // Polls and stopped pools do not wait
+                return Optional.empty();
+            }
+            // If the pool is empty, log the status and wait for a ticket until the time runs out
+            Logger.log(LogEvent.POOL_EMPTY);
+            try {
+                if (lanes.await(customerClass, true, remaining)) {
+                    return Optional.of(take());
+                }
+            } catch (InterruptedException e) {
+                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
+                Thread.currentThread().interrupt(); // Restore the interrupted status
+            }
+            return Optional.empty();
+        } finally {
+            release();
         }
+    }
+
+    /**
+     * Releases the lock at the end of an operation, then lets the listener wait for the tickets
+     * of the operation to be stored, so other threads can take the lock and join the same commit.
+     */
+    private void release() {
+        lock.unlock();
+        listener.awaitDurable();
+    }
+
+    /**
+     * Appends a ticket to the pool and wakes one waiting customer.
+     * The caller holds the lock and has checked there is space.
+     *
+     * @param ticket the ticket to add
+     */
+    private void insert(Ticket ticket) {
         ticketPool.add(ticket);
         counter++;
-        Logger.log("Ticket successfully added to the pool. Current ticket count: " + counter);
+        listener.ticketAdded(ticket.getId());
+        PoolMetrics.added(1);
+        Logger.log(LogEvent.TICKET_ADDED, counter);
+        Logger.log(LogEvent.TICKET_ADDED_BY, ticket.getId());
 
-        Logger.log(Thread.currentThread().getName() + " added a new ticket to the pool: " + ticket.getVendorID());
+        lanes.ticketsAdded(1); // Hand the ticket to one waiting customer, chosen by class
+    }
 
-        notifyAll();
+    /**
+     * Takes the oldest ticket out of the pool and wakes one waiting vendor.
+     * The caller holds the lock and has checked the pool is not empty.
+     *
+     * @return the removed ticket
+     */
+    private Ticket take() {
+        // Remove the first ticket in the queue
+        Ticket ticket= ticketPool.remove(0);
+        soldTicketCounter++; // Increment the counter for tickets sold
+        listener.ticketSold(ticket.getId());
+        PoolMetrics.sold(1);
 
+        Logger.log(LogEvent.TICKET_REMOVED, ticket.getId());
+        Logger.log(LogEvent.TICKETS_SOLD, soldTicketCounter);
+        notFull.signal(); // Wake one vendor waiting to add a ticket
+        return ticket;
     }
 
     /**
-     * Removes a ticket from the ticket pool.
-     * If the pool is empty, the thread waits until a ticket becomes available.
+     * Adds a batch of tickets to the ticket pool while holding the lock once.
+     * If the pool is full, the thread waits until space becomes available, then adds
+     * as many tickets as fit and wakes the waiting threads a single time.
+     *
+     * @param tickets the tickets to be added
+     * @return the number of tickets added from the start of the collection
      */
     @Override
-    public synchronized void removeTicket() {
+    public int addTickets(Collection<Ticket> tickets) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            if (tickets.isEmpty()) {
+                return 0;
+            }
+            while (ticketPool.size() >= maxPoolTickets && !stopFlag) {
+                // If the pool is full, log the status and wait for space to become available
+                Logger.log(LogEvent.POOL_FULL);
+                long waitStart = System.nanoTime();
+                PoolWaitEvent event = new PoolWaitEvent();
+                event.begin();
+                try {
+                    notFull.await(); // Releases the lock and waits for a customer to free space
+                    PoolMetrics.addWaited(waitStart);
+                    event.finish(PoolWaitEvent.POOL_FULL, null, ticketPool.size() < maxPoolTickets);
+                } catch (InterruptedException e) {
+                    // Handle interruption gracefully and rethrow as RuntimeException
+                    Logger.log("Thread interrupted while waiting to add tickets: " + Thread.currentThread().getName());
+                    throw new RuntimeException(e);
+                }
+            }
+            int space = maxPoolTickets - ticketPool.size();
+            int added = 0;
+            for (Ticket ticket : tickets) {
+                if (added >= space) {
+                    break;
+                }
+                ticketPool.add(ticket);
+                listener.ticketAdded(ticket.getId());
+                added++;
+            }
+            if (added == 0) {
+                return 0; // Stopped while the pool was full
+            }
+            counter += added;
+            PoolMetrics.added(added);
+            Logger.log(LogEvent.TICKETS_ADDED, added, counter);
 
-        if (!ticketPool.isEmpty()){
-            // Remove the first ticket in the queue
-            Ticket ticket= ticketPool.remove(0);
-            soldTicketCounter++; // Increment the counter for tickets sold
+            lanes.ticketsAdded(added); // Hand the tickets to as many waiting customers, chosen by class
+            return added;
+        } finally {
+            release();
+        }
+    }
 
-            Logger.log(Thread.currentThread().getName()+" successfully removed a ticket from the pool. Vendor ID: " + ticket.getTicketID() + ", Ticket ID: " + ticket.getVendorID());
-            Logger.log("Total tickets sold so far: " + soldTicketCounter);
-            notifyAll(); // Notify threads waiting to add tickets
-        }else{
-            // If the pool is empty, log the status and wait for tickets to be added
-            Logger.log("The ticket pool is currently empty. Waiting for tickets to be added...");
-            try {
-                wait(); // Releases the lock and waits for notification
+    /**
+     * Removes up to the given number of tickets from the ticket pool for a regular customer while holding the lock once.
+     *
+     * @param target the collection the removed tickets are added to
+     * @param max    the maximum number of tickets to remove
+     * @return the number of tickets removed
+     */
+    @Override
+    public int drainTo(Collection<Ticket> target, int max) {
+        return drainTo(target, max, CustomerClass.REGULAR);
+    }
 
-            } catch (InterruptedException e) {
-                // Handle interruption gracefully and rethrow as RuntimeException
-                Logger.log("Thread interrupted while waiting to remove a ticket: " + Thread.currentThread().getName());
-                throw new RuntimeException(e);
+    /**
+     * Removes up to the given number of tickets from the ticket pool for a customer of a priority
+     * class while holding the lock once. If no ticket is free, the customer waits in the lane of
+     * its class until a ticket is handed to it, then takes it and as many free tickets as allowed
+     * and wakes the waiting vendors a single time.
+     *
+     * @param target        the collection the removed tickets are added to
+     * @param max           the maximum number of tickets to remove
+     * @param customerClass the class of the customer
+     * @return the number of tickets removed
+     */
+    @Override
+    public int drainTo(Collection<Ticket> target, int max, CustomerClass customerClass) {
+        return drain(target, max, customerClass, false, 0);
+    }
+
+    /**
+     * Removes up to the given number of tickets for a regular customer while holding the lock
+     * once, waiting at most the given time in the regular lane if no ticket is free.
+     *
+     * @param target  the collection the removed tickets are added to
+     * @param max     the maximum number of tickets to remove
+     * @param timeout the maximum time to wait for the first ticket, 0 not to wait
+     * @param unit    the unit of the timeout
+     * @return the number of tickets removed, 0 if none became available in time
+     */
+    @Override
+    public int tryDrainTo(Collection<Ticket> target, int max, long timeout, TimeUnit unit) {
+        return drain(target, max, CustomerClass.REGULAR, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * Removes up to the given number of tickets while holding the lock once, waiting in the lane
+     * of the customer's class if no ticket is free, and wakes the waiting vendors a single time.
+     *
+     * @param target        the collection the removed tickets are added to
+     * @param max           the maximum number of tickets to remove
+     * @param customerClass the class of the customer
+     * @param timed         true to give up after the timeout
+     * @param timeoutNanos  the maximum time to wait for a timed wait, in nanoseconds
+     * @return the number of tickets removed
+     */
+    private int drain(Collection<Ticket> target, int max, CustomerClass customerClass, boolean timed, long timeoutNanos) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            if (max <= 0) {
+                return 0;
+            }
+            if (lanes.available(ticketPool.size()) == 0) {
+                if (stopFlag || (timed && timeoutNanos <= 0)) {
+                    lanes.gaveUp(); // Polls and stopped pools do not wait
+                    return 0;
+                }
+                // If the pool is empty, log the status and wait for a ticket to be handed over
+                Logger.log(LogEvent.POOL_EMPTY);
+                try {
+                    if (!lanes.await(customerClass, timed, timeoutNanos)) {
+                        return 0; // Stopped or timed out while the pool was empty
+                    }
+                } catch (InterruptedException e) {
+                    // Handle interruption gracefully and rethrow as RuntimeException
+                    Logger.log("Thread interrupted while waiting to remove tickets: " + Thread.currentThread().getName());
+                    throw new RuntimeException(e);
+                }
+            } else {
+                lanes.took(customerClass);
+            }
+            int removed = 0;
+            while (removed < max && lanes.available(ticketPool.size()) > 0) {
+                Ticket ticket = ticketPool.remove(0);
+                listener.ticketSold(ticket.getId());
+                target.add(ticket);
+                removed++;
+            }
+            if (removed == 0) {
+                return 0; // Stopped while the pool was empty
+            }
+            soldTicketCounter += removed;
+            PoolMetrics.sold(removed);
+
+            Logger.log(LogEvent.TICKETS_REMOVED, removed);
+            Logger.log(LogEvent.TICKETS_SOLD, soldTicketCounter);
+            notFull.signalAll(); // Wake the waiting vendors once for the whole batch
+            return removed;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Gets the number of tickets currently in the pool.
+     *
+     * @return the number of tickets waiting to be sold
+     */
+    @Override
+    public int getPoolSize() {
+        return ticketPool.size();
+    }
+
+    /**
+     * Sets the listener notified of every ticket added and sold.
+     *
+     * @param listener the listener, null to remove it
+     */
+    @Override
+    public void setPoolListener(PoolListener listener) {
+        this.listener = listener == null ? PoolListener.NONE : listener;
+    }
+
+    /**
+     * Copies the packed ids of the tickets in the pool, oldest first, holding the lock for the copy.
+     *
+     * @return the ids of the tickets in the pool
+     */
+    @Override
+    public long[] snapshotTicketIds() {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            long[] ticketIds = new long[ticketPool.size()];
+            int i = 0;
+            for (Ticket ticket : ticketPool) {
+                ticketIds[i++] = ticket.getId();
+            }
+            return ticketIds;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Loads recovered tickets and counters into the empty pool, without notifying the listener.
+     *
+     * @param ticketIds         the packed ids of the tickets to load, oldest first
+     * @param counter           the total number of tickets added before the restart
+     * @param soldTicketCounter the total number of tickets sold before the restart
+     * @return the number of tickets loaded, at most the pool capacity
+     */
+    @Override
+    public int restore(long[] ticketIds, int counter, int soldTicketCounter) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            int loaded = Math.min(ticketIds.length, maxPoolTickets);
+            for (int i = 0; i < loaded; i++) {
+                ticketPool.add(new Ticket(ticketIds[i]));
+            }
+            this.counter = counter;
+            this.soldTicketCounter = soldTicketCounter;
+            return loaded;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Puts a sold ticket back at the end of the pool and hands it to a waiting customer.
+     *
+     * @param ticket the ticket to put back
+     * @return true if the ticket was put back, false if the pool is full
+     */
+    @Override
+    public boolean returnTicket(Ticket ticket) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            if (ticketPool.size() >= maxPoolTickets) {
+                return false;
             }
+            ticketPool.add(ticket);
+            soldTicketCounter--; // The sale is undone, the ticket does not count as added again
+            listener.ticketReturned(ticket.getId());
+            PoolMetrics.returned(1);
+            Logger.log(LogEvent.TICKET_RETURNED, soldTicketCounter);
+            lanes.ticketsAdded(1); // Hand the ticket to one waiting customer, chosen by class
+            return true;
+        } finally {
+            release();
         }
+    }
 
+    /**
+     * Changes the maximum number of tickets in the pool. Tickets beyond a smaller capacity stay
+     * in the pool, and vendors wait until customers bring it under the new capacity.
+     *
+     * @param maxPoolTickets the new maximum number of tickets, at least 1
+     * @return true, as the pool can always be resized
+     */
+    @Override
+    public boolean resize(int maxPoolTickets) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            this.maxPoolTickets = Math.max(1, maxPoolTickets);
+            notFull.signalAll(); // Vendors waiting for space may now fit
+            return true;
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -133,9 +596,17 @@ public class TicketPool implements TicketOperations {
      *
      * @param stopFlag true to stop ticket processing, false to continue
      */
-    public synchronized void setStopFlag(boolean stopFlag) {
-        this.stopFlag = stopFlag;
-        notifyAll();
+    @Override
+    public void setStopFlag(boolean stopFlag) {
+        PoolLockEvent.lock(lock, PoolType.SYNCHRONIZED);
+        try {
+            this.stopFlag = stopFlag;
+            // Wake every waiting vendor and customer so they can see the flag
+            notFull.signalAll();
+            lanes.setStopped(stopFlag);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -143,6 +614,7 @@ public class TicketPool implements TicketOperations {
      *
      * @return true if processing should stop, false otherwise
      */
+    @Override
     public boolean shouldStop(){
         return stopFlag;
     }
@@ -0,0 +1,79 @@
+package core;
+
+import configuration.Configurations;
+
+/**
+ * The TicketPoolFactory class creates the TicketOperations implementation
+ * selected by the pool type of a configuration.
+ */
+public class TicketPoolFactory {
+
+    /**
+     * Creates a ticket pool for the given configuration.
+     *
+     * The lock-based pools get the priority lanes of the configuration; the lock-free and
+     * sharded pools serve every customer class alike. A seat map gets the sections and row width
+     * of the configuration.
+     *
+     * @param configurations the configuration holding the pool type, capacity, priority policy and seat layout
+     * @return the TicketOperations instance shared by vendors and customers
+     */
+    public static TicketOperations create(Configurations configurations) {
+        return create(configurations, configurations.getMaxPoolTickets());
+    }
+
+    /**
+     * Creates a ticket pool of the given capacity with the other settings of a configuration,
+     * for the events of an {@link EventRegistry} that each have their own size.
+     *
+     * @param configurations the configuration holding the pool type, priority policy and seat layout
+     * @param maxPoolTickets the maximum number of tickets that can be stored in the pool
+     * @return the TicketOperations instance shared by vendors and customers
+     */
+    public static TicketOperations create(Configurations configurations, int maxPoolTickets) {
+        if (configurations.getPoolType() == PoolType.SHARDED && configurations.getShardCount() > 0) {
+            return new ShardedTicketPool(maxPoolTickets, configurations.getShardCount());
+        }
+        if (configurations.getPoolType() == PoolType.SEAT_MAP) {
+            int sections = configurations.getSeatSections() > 0 ? configurations.getSeatSections() : Runtime.getRuntime().availableProcessors();
+            return new SeatMapTicketPool(maxPoolTickets, sections, configurations.getSeatsPerRow());
+        }
+        if (configurations.getPoolType() == PoolType.COMPACT) {
+            return new CompactTicketPool(maxPoolTickets, configurations.getPriorityPolicy(),
+                    configurations.getVipWeight(), configurations.getVipStarvationMillis());
+        }
+        if (configurations.getPoolType() == null || configurations.getPoolType() == PoolType.SYNCHRONIZED) {
+            return new TicketPool(maxPoolTickets, configurations.getPriorityPolicy(),
+                    configurations.getVipWeight(), configurations.getVipStarvationMillis());
+        }
+        return create(configurations.getPoolType(), maxPoolTickets);
+    }
+
+    /**
+     * Creates a ticket pool of the given type and capacity.
+     * A sharded pool gets one shard per available processor, and a seat map one section per
+     * available processor with rows of 64 seats.
+     *
+     * @param poolType       the implementation to create, null selects the synchronized pool
+     * @param maxPoolTickets the maximum number of tickets that can be stored in the pool
+     * @return the TicketOperations instance shared by vendors and customers
+     */
+    public static TicketOperations create(PoolType poolType, int maxPoolTickets) {
+        if (poolType == null) {
+            poolType = PoolType.SYNCHRONIZED;
+        }
+        switch (poolType) {
+            case RING_BUFFER:
+                return new RingBufferTicketPool(maxPoolTickets);
+            case SHARDED:
+                return new ShardedTicketPool(maxPoolTickets, Runtime.getRuntime().availableProcessors());
+            case COMPACT:
+                return new CompactTicketPool(maxPoolTickets);
+            case SEAT_MAP:
+                return new SeatMapTicketPool(maxPoolTickets, Runtime.getRuntime().availableProcessors(), SeatMapTicketPool.MAX_SEATS_PER_ROW);
+            case SYNCHRONIZED:
+            default:
+                return new TicketPool(maxPoolTickets);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package journal;
+
+/**
+ * The Durability enum defines when the ticket journal forces its records to disk.
+ * Records are written to a memory-mapped file, so they survive a crash of the process in
+ * every mode; forcing protects them against a crash of the operating system or a power loss.
+ */
+public enum Durability {
+
+    /**
+     * Records are only forced when the journal is closed.
+     */
+    NONE,
+
+    /**
+     * A background thread forces every record written since the last force at a fixed interval.
+     */
+    PERIODIC,
+
+    /**
+     * Each pool operation waits until a background thread has forced the last record it wrote,
+     * so a ticket is durable once the pool call that recorded it returns. The wait happens after
+     * the pool releases its lock: a batch waits once for all its tickets, and the operations of
+     * other threads arriving meanwhile are committed together by the next fsync.
+     */
+    PER_BATCH
+}
@@ -0,0 +1,96 @@
+package journal;
+
+/**
+ * The JournalPosition class is a point in a ticket journal together with the totals of the
+ * records before it: the tickets added and sold, and the highest sequence number released.
+ * Tickets sold and then returned to the pool are not counted as sold.
+ * A snapshot stores the position it was taken at, and recovery carries the totals on from there.
+ */
+public final class JournalPosition {
+
+    /**
+     * The position of an empty journal.
+     */
+    public static final JournalPosition START = new JournalPosition(0, 0, 0, 0);
+
+    /**
+     * Index of the first record after the position.
+     */
+    private final long index;
+
+    /**
+     * Number of ADDED records before the position.
+     */
+    private final long added;
+
+    /**
+     * Number of SOLD records less RETURNED records before the position.
+     */
+    private final long sold;
+
+    /**
+     * Highest sequence number of a ticket added before the position.
+     */
+    private final long lastSequence;
+
+    /**
+     * Constructor to create a journal position.
+     *
+     * @param index        index of the first record after the position
+     * @param added        number of ADDED records before the position
+     * @param sold         number of SOLD records less RETURNED records before the position
+     * @param lastSequence highest sequence number of a ticket added before the position
+     */
+    public JournalPosition(long index, long added, long sold, long lastSequence) {
+        this.index = index;
+        this.added = added;
+        this.sold = sold;
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Gets the index of the first record after the position.
+     *
+     * @return the record index
+     */
+    public long getIndex() {
+        return index;
+    }
+
+    /**
+     * Gets the number of tickets added before the position.
+     *
+     * @return the number of ADDED records
+     */
+    public long getAdded() {
+        return added;
+    }
+
+    /**
+     * Gets the number of tickets sold and not returned before the position.
+     *
+     * @return the number of SOLD records less RETURNED records
+     */
+    public long getSold() {
+        return sold;
+    }
+
+    /**
+     * Gets the highest sequence number of a ticket added before the position.
+     *
+     * @return the last sequence number, 0 if no ticket was added
+     */
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * Converts the position to a string for logging and display.
+     *
+     * @return a string with the index and totals
+     */
+    @Override
+    public String toString() {
+        return "JournalPosition {index=" + index + ", added=" + added + ", sold=" + sold + ", lastSequence=" + lastSequence + '}';
+    }
+}
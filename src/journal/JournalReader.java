@@ -0,0 +1,157 @@
+package journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The JournalReader class reads a ticket journal back, both for tools and for recovery.
+ * Segments are mapped read-only and scanned as longs, so reading runs at the speed the
+ * operating system can page the files in. Run it on its own to summarize a journal:
+ *
+ * <pre>java journal.JournalReader [directory] [--print]</pre>
+ */
+public class JournalReader {
+
+    /**
+     * Lists the segment files of a journal in the order they were written.
+     *
+     * @param directory the journal directory
+     * @return the segment files, empty if there are none
+     */
+    public static List<File> segments(File directory) {
+        File[] files = directory.listFiles((dir, name) ->
+                name.startsWith(TicketJournal.SEGMENT_PREFIX) && name.endsWith(TicketJournal.SEGMENT_SUFFIX));
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        // The index in the name is zero padded, so sorting by name sorts by index
+        Arrays.sort(files);
+        return new ArrayList<>(Arrays.asList(files));
+    }
+
+    /**
+     * Gets the file name of the segment starting at a record index.
+     *
+     * @param base the index of the first record of the segment
+     * @return the file name
+     */
+    static String segmentName(long base) {
+        return String.format("%s%020d%s", TicketJournal.SEGMENT_PREFIX, base, TicketJournal.SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Gets the index of the first record of a segment from its file name.
+     *
+     * @param segment the segment file
+     * @return the index of its first record
+     */
+    static long segmentBase(File segment) {
+        String name = segment.getName();
+        return Long.parseLong(name.substring(TicketJournal.SEGMENT_PREFIX.length(),
+                name.length() - TicketJournal.SEGMENT_SUFFIX.length()));
+    }
+
+    /**
+     * Reads every record of a journal from a record index on, stopping at the end of the journal.
+     *
+     * @param directory the journal directory
+     * @param fromIndex the index of the first record to visit
+     * @param visitor   receives the records in order
+     * @return the index after the last record, which is where the journal continues
+     * @throws IOException if a segment cannot be read
+     */
+    public static long read(File directory, long fromIndex, JournalVisitor visitor) throws IOException {
+        List<File> segments = segments(directory);
+        if (!segments.isEmpty() && segmentBase(segments.get(0)) > fromIndex) {
+            throw new IOException("Journal records from " + fromIndex + " to " + segmentBase(segments.get(0)) + " are missing");
+        }
+        long end = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            long base = segmentBase(segments.get(i));
+            // Skip segments that end before the first record wanted
+            if (i + 1 < segments.size() && segmentBase(segments.get(i + 1)) <= fromIndex) {
+                end = segmentBase(segments.get(i + 1));
+                continue;
+            }
+            try (FileChannel channel = FileChannel.open(segments.get(i).toPath(), StandardOpenOption.READ)) {
+                LongBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())
+                        .order(ByteOrder.BIG_ENDIAN).asLongBuffer();
+                int count = records.limit() / 2;
+                int record = (int) Math.max(0, fromIndex - base);
+                end = base + record;
+                for (; record < count; record++) {
+                    long header = records.get(record * 2);
+                    if (header == 0) {
+                        return base + record; // Zero filled space: the end of the journal
+                    }
+                    visitor.record(base + record, (int) (header >>> 56), header & TicketJournal.TIMESTAMP_MASK,
+                            records.get(record * 2 + 1));
+                }
+                end = base + count;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Summarizes a journal: the number of records of each type, the tickets still in the pool
+     * and how fast the journal was read.
+     *
+     * @param args the journal directory, resources/journal if omitted, and --print to list every record
+     * @throws IOException if the journal cannot be read
+     */
+    public static void main(String[] args) throws IOException {
+        File directory = new File("resources/journal");
+        boolean print = false;
+        for (String arg : args) {
+            if (arg.equals("--print")) {
+                print = true;
+            } else {
+                directory = new File(arg);
+            }
+        }
+        List<File> segments = segments(directory);
+        if (segments.isEmpty()) {
+            System.err.println("No journal found in " + directory);
+            return;
+        }
+        // Segments before the latest snapshots may have been deleted
+        long first = segmentBase(segments.get(0));
+
+        long[] counts = new long[4]; // Indexed by record type
+        boolean printRecords = print;
+        long start = System.nanoTime();
+        long records = read(directory, first, (index, type, timestampMillis, ticketId) -> {
+            counts[type >= TicketJournal.ADDED && type <= TicketJournal.RETURNED ? type : 0]++;
+            if (printRecords) {
+                System.out.printf("%d %s %d %d%n", index, type == TicketJournal.ADDED ? "ADDED" : type == TicketJournal.SOLD ? "SOLD"
+                        : type == TicketJournal.RETURNED ? "RETURNED" : "?" + type, timestampMillis, ticketId);
+            }
+        });
+        records -= first;
+        double seconds = Math.max(1, System.nanoTime() - start) / 1e9;
+
+        System.out.println("---- Journal " + directory + " ----");
+        System.out.println("Records: " + records + (first > 0 ? " from index " + first : ""));
+        System.out.println("Added: " + counts[TicketJournal.ADDED]);
+        System.out.println("Sold: " + counts[TicketJournal.SOLD]);
+        if (counts[TicketJournal.RETURNED] > 0) {
+            System.out.println("Returned: " + counts[TicketJournal.RETURNED]);
+        }
+        if (counts[0] > 0) {
+            System.out.println("Unknown: " + counts[0]);
+        }
+        if (first == 0) {
+            System.out.println("In pool: " + (counts[TicketJournal.ADDED] - counts[TicketJournal.SOLD] + counts[TicketJournal.RETURNED]));
+        }
+        System.out.printf("Read in %.3f s: %.0f records/s, %.1f MB/s%n", seconds, records / seconds,
+                records * TicketJournal.RECORD_BYTES / seconds / (1 << 20));
+    }
+}
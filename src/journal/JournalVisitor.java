@@ -0,0 +1,18 @@
+package journal;
+
+/**
+ * The JournalVisitor interface receives the records of a ticket journal as it is read back.
+ */
+@FunctionalInterface
+public interface JournalVisitor {
+
+    /**
+     * Called for every record, in the order the records were written.
+     *
+     * @param index           the position of the record in the journal, starting at 0
+     * @param type            {@link TicketJournal#ADDED} or {@link TicketJournal#SOLD}
+     * @param timestampMillis when the record was written, in milliseconds since the epoch
+     * @param ticketId        the packed id of the ticket
+     */
+    void record(long index, int type, long timestampMillis, long ticketId);
+}
@@ -0,0 +1,345 @@
+package journal;
+
+import util.Ticket;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * The PoolSnapshot class holds the tickets in a pool at a journal position, and reads and
+ * writes snapshot files next to the journal segments.
+ *
+ * The tickets are copied while vendors and customers keep running, after the position is
+ * read, so the copy may miss tickets sold during the copy and include tickets added after
+ * the position. Recovery makes this exact by replaying the journal from the position: every
+ * ticket is added and sold once, so the tickets in the pool are those in the snapshot or added
+ * after the position, less those sold after the position, whatever the order of the records.
+ * A ticket returned to the pool may be sold again; the records of one ticket are journaled in
+ * the order they happened, so for a ticket returned after the position its last record decides.
+ *
+ * A snapshot file is big-endian: a magic number and version, the position, the number of
+ * tickets, their packed ids and a CRC32 of everything before it.
+ */
+public final class PoolSnapshot {
+
+    /**
+     * Magic number at the start of a snapshot file, "TSNP".
+     */
+    private static final int MAGIC = 0x54534E50;
+
+    /**
+     * Version of the snapshot file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * Size of the fields before the ticket ids, in bytes.
+     */
+    private static final int HEADER_BYTES = 4 + 4 + 8 * 4 + 4;
+
+    /**
+     * Prefix of the snapshot file names.
+     */
+    private static final String PREFIX = "snapshot-";
+
+    /**
+     * Suffix of the snapshot file names.
+     */
+    private static final String SUFFIX = ".bin";
+
+    /**
+     * The journal position the snapshot was taken at.
+     */
+    private final JournalPosition position;
+
+    /**
+     * The packed ids of the tickets in the pool, oldest first.
+     */
+    private final long[] ticketIds;
+
+    /**
+     * Constructor to create a snapshot.
+     *
+     * @param position  the journal position the snapshot was taken at
+     * @param ticketIds the packed ids of the tickets in the pool, oldest first
+     */
+    public PoolSnapshot(JournalPosition position, long[] ticketIds) {
+        this.position = position;
+        this.ticketIds = ticketIds;
+    }
+
+    /**
+     * Gets the journal position the snapshot was taken at.
+     *
+     * @return the position
+     */
+    public JournalPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * Gets the packed ids of the tickets in the pool.
+     *
+     * @return the ticket ids, oldest first
+     */
+    public long[] getTicketIds() {
+        return ticketIds;
+    }
+
+    /**
+     * Writes the snapshot to the journal directory. The file is written and forced under a
+     * temporary name and then renamed, so a crash never leaves a partial snapshot behind.
+     *
+     * @param directory the journal directory
+     * @return the snapshot file
+     * @throws IOException if the file cannot be written
+     */
+    public File write(File directory) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + ticketIds.length * 8 + 8);
+        buffer.putInt(MAGIC).putInt(VERSION)
+                .putLong(position.getIndex()).putLong(position.getAdded())
+                .putLong(position.getSold()).putLong(position.getLastSequence())
+                .putInt(ticketIds.length);
+        buffer.asLongBuffer().put(ticketIds);
+        buffer.position(buffer.position() + ticketIds.length * 8);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+
+        File file = new File(directory, String.format("%s%020d%s", PREFIX, position.getIndex(), SUFFIX));
+        File temporary = new File(directory, file.getName() + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write(buffer.array());
+            out.getFD().sync();
+        }
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file;
+    }
+
+    /**
+     * Reads a snapshot file, checking its format and checksum.
+     *
+     * @param file the snapshot file
+     * @return the snapshot
+     * @throws IOException if the file cannot be read or is damaged
+     */
+    public static PoolSnapshot read(File file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        if (bytes.length < HEADER_BYTES + 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            throw new IOException("Not a snapshot file: " + file);
+        }
+        JournalPosition position = new JournalPosition(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getLong());
+        int count = buffer.getInt();
+        if (count < 0 || bytes.length != HEADER_BYTES + (long) count * 8 + 8) {
+            throw new IOException("Truncated snapshot file: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 8);
+        if (crc.getValue() != buffer.getLong(bytes.length - 8)) {
+            throw new IOException("Checksum mismatch in snapshot file: " + file);
+        }
+        long[] ticketIds = new long[count];
+        buffer.asLongBuffer().get(ticketIds);
+        return new PoolSnapshot(position, ticketIds);
+    }
+
+    /**
+     * Lists the snapshot files in the journal directory, oldest first.
+     *
+     * @param directory the journal directory
+     * @return the snapshot files
+     */
+    public static File[] list(File directory) {
+        File[] files = directory.listFiles((dir, name) -> name.startsWith(PREFIX) && name.endsWith(SUFFIX));
+        if (files == null) {
+            return new File[0];
+        }
+        // The index in the name is zero padded, so sorting by name sorts by position
+        Arrays.sort(files);
+        return files;
+    }
+
+    /**
+     * Gets the journal index a snapshot file was taken at from its name.
+     *
+     * @param file the snapshot file
+     * @return the journal index
+     */
+    public static long indexOf(File file) {
+        String name = file.getName();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    /**
+     * Reads the newest snapshot that is intact, falling back to older ones.
+     *
+     * @param directory the journal directory
+     * @return the snapshot, or null if there is none
+     */
+    public static PoolSnapshot readLatest(File directory) {
+        File[] files = list(directory);
+        for (int i = files.length - 1; i >= 0; i--) {
+            try {
+                return read(files[i]);
+            } catch (IOException e) {
+                System.err.println("Skipping snapshot: " + e.getMessage());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Rebuilds the pool as it was at the end of the journal: the latest snapshot plus the
+     * journal records written after it. Only the records after the snapshot are read, so the
+     * time taken depends on the snapshot interval and pool size rather than on total sales.
+     *
+     * @param directory the journal directory
+     * @return the tickets in the pool at the end of the journal, with the position of the end
+     * @throws IOException if the journal cannot be read
+     */
+    public static PoolSnapshot recover(File directory) throws IOException {
+        PoolSnapshot snapshot = readLatest(directory);
+        if (snapshot == null) {
+            snapshot = new PoolSnapshot(JournalPosition.START, new long[0]);
+        }
+        JournalPosition from = snapshot.getPosition();
+        Tail tail = new Tail();
+        long end = JournalReader.read(directory, from.getIndex(), tail);
+        end = Math.max(end, from.getIndex());
+
+        long[] added = Arrays.copyOf(tail.added, tail.addedCount);
+        long[] sold = Arrays.copyOf(tail.sold, tail.soldCount);
+        // Sort the tail, which is short, instead of the snapshot, which holds the whole pool
+        long[] addedSorted = added.clone();
+        Arrays.sort(addedSorted);
+        Arrays.sort(sold);
+        boolean[] inSnapshot = new boolean[addedSorted.length];
+
+        long[] ticketIds = new long[snapshot.ticketIds.length + added.length + tail.lastAfterReturn.size()];
+        int count = 0;
+        for (long ticketId : snapshot.ticketIds) {
+            int index = Arrays.binarySearch(addedSorted, ticketId);
+            if (index >= 0) {
+                inSnapshot[index] = true; // Copied after its ADDED record: already in place
+            }
+            if (inPool(ticketId, sold, tail.lastAfterReturn)) {
+                ticketIds[count++] = ticketId;
+            }
+        }
+        for (long ticketId : added) {
+            if (!inSnapshot[Arrays.binarySearch(addedSorted, ticketId)] && inPool(ticketId, sold, tail.lastAfterReturn)) {
+                ticketIds[count++] = ticketId;
+            }
+        }
+        // Tickets sold before the position, missed by the copy and returned after it
+        for (Map.Entry<Long, Integer> entry : tail.lastAfterReturn.entrySet()) {
+            if (entry.getValue() == TicketJournal.RETURNED) {
+                ticketIds[count++] = entry.getKey();
+            }
+        }
+
+        JournalPosition position = new JournalPosition(end, from.getAdded() + tail.addedCount,
+                from.getSold() + tail.soldCount - tail.returnedCount, Math.max(from.getLastSequence(), tail.lastSequence));
+        return new PoolSnapshot(position, Arrays.copyOf(ticketIds, count));
+    }
+
+    /**
+     * Decides whether a ticket in the snapshot or added in the tail is still in the pool.
+     * A returned ticket is taken out of the map, so it is decided once.
+     *
+     * @param ticketId        the packed id of the ticket
+     * @param sold            the ids sold in the tail, sorted
+     * @param lastAfterReturn the last record of each ticket returned in the tail
+     * @return true if the ticket is in the pool at the end of the journal
+     */
+    private static boolean inPool(long ticketId, long[] sold, Map<Long, Integer> lastAfterReturn) {
+        if (!lastAfterReturn.isEmpty()) {
+            Integer last = lastAfterReturn.remove(ticketId);
+            if (last != null) {
+                return last == TicketJournal.RETURNED;
+            }
+        }
+        return Arrays.binarySearch(sold, ticketId) < 0;
+    }
+
+    /**
+     * Collects the records of the journal tail after a snapshot.
+     */
+    private static final class Tail implements JournalVisitor {
+
+        /**
+         * Ids of the tickets added, in journal order.
+         */
+        private long[] added = new long[1024];
+
+        /**
+         * Number of ids in {@link #added}.
+         */
+        private int addedCount;
+
+        /**
+         * Ids of the tickets sold, in journal order.
+         */
+        private long[] sold = new long[1024];
+
+        /**
+         * Number of ids in {@link #sold}.
+         */
+        private int soldCount;
+
+        /**
+         * Number of RETURNED records.
+         */
+        private int returnedCount;
+
+        /**
+         * The last record, RETURNED or SOLD, of each ticket returned in the tail. Holds only
+         * returned tickets, which are few, so tickets sold once stay in the sorted arrays.
+         */
+        private final Map<Long, Integer> lastAfterReturn = new HashMap<>();
+
+        /**
+         * Highest sequence number of a ticket added in the tail.
+         */
+        private long lastSequence;
+
+        /**
+         * Collects one record.
+         *
+         * @param index           the position of the record in the journal
+         * @param type            the record type
+         * @param timestampMillis when the record was written
+         * @param ticketId        the packed id of the ticket
+         */
+        @Override
+        public void record(long index, int type, long timestampMillis, long ticketId) {
+            if (type == TicketJournal.ADDED) {
+                if (addedCount == added.length) {
+                    added = Arrays.copyOf(added, added.length * 2);
+                }
+                added[addedCount++] = ticketId;
+                lastSequence = Math.max(lastSequence, Ticket.sequenceOf(ticketId));
+            } else if (type == TicketJournal.SOLD) {
+                if (soldCount == sold.length) {
+                    sold = Arrays.copyOf(sold, sold.length * 2);
+                }
+                sold[soldCount++] = ticketId;
+                if (!lastAfterReturn.isEmpty()) {
+                    lastAfterReturn.replace(ticketId, TicketJournal.SOLD); // Sold again after it was returned
+                }
+            } else if (type == TicketJournal.RETURNED) {
+                returnedCount++;
+                lastAfterReturn.put(ticketId, TicketJournal.RETURNED);
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package journal;
+
+import core.TicketOperations;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The PoolSnapshotter class writes a snapshot of a journaled pool once per interval on a
+ * background thread, so a restart only replays the journal written since the last snapshot.
+ * Taking a snapshot reads the journal position, copies the pool while vendors and customers
+ * keep running, and writes the copy next to the journal. Older snapshots and the journal
+ * segments only they needed are then deleted; the previous snapshot is kept as a fallback.
+ */
+public class PoolSnapshotter {
+
+    /**
+     * Number of snapshots kept in the journal directory.
+     */
+    private static final int SNAPSHOTS_KEPT = 2;
+
+    /**
+     * The pool being snapshotted.
+     */
+    private final TicketOperations ticketPool;
+
+    /**
+     * The journal the pool writes to.
+     */
+    private final TicketJournal journal;
+
+    /**
+     * Time between snapshots, in milliseconds.
+     */
+    private final long intervalMillis;
+
+    /**
+     * The background thread taking the snapshots, null until started.
+     */
+    private Thread snapshotThread;
+
+    /**
+     * Time taken to copy the pool for each snapshot.
+     */
+    private final LatencyHistogram copyTime = MetricsRegistry.histogram("journal.snapshot.copy");
+
+    /**
+     * Time taken to take and write each snapshot.
+     */
+    private final LatencyHistogram snapshotTime = MetricsRegistry.histogram("journal.snapshot.total");
+
+    /**
+     * Constructor to create a snapshotter.
+     *
+     * @param ticketPool     the pool to snapshot
+     * @param journal        the journal the pool writes to
+     * @param intervalMillis time between snapshots, in milliseconds
+     */
+    public PoolSnapshotter(TicketOperations ticketPool, TicketJournal journal, long intervalMillis) {
+        this.ticketPool = ticketPool;
+        this.journal = journal;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Starts taking snapshots on a background thread.
+     */
+    public void start() {
+        snapshotThread = new Thread(this::snapshotLoop, "Pool Snapshotter");
+        snapshotThread.setDaemon(true);
+        snapshotThread.start();
+    }
+
+    /**
+     * Stops taking snapshots and waits for a snapshot in progress to be written.
+     */
+    public void stop() {
+        if (snapshotThread == null) {
+            return; // Never started
+        }
+        snapshotThread.interrupt();
+        try {
+            snapshotThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+        }
+    }
+
+    /**
+     * Takes a snapshot now and deletes the snapshots and journal segments no longer needed.
+     *
+     * @return the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public File takeSnapshot() throws IOException {
+        long start = System.nanoTime();
+        // Read the position first: the copy then holds every ticket it counts as in the pool
+        JournalPosition position = journal.position();
+        long[] ticketIds = ticketPool.snapshotTicketIds();
+        copyTime.record(System.nanoTime() - start);
+
+        File file = new PoolSnapshot(position, ticketIds).write(journal.getDirectory());
+
+        File[] snapshots = PoolSnapshot.list(journal.getDirectory());
+        if (snapshots.length >= SNAPSHOTS_KEPT) {
+            for (int i = 0; i < snapshots.length - SNAPSHOTS_KEPT; i++) {
+                snapshots[i].delete();
+            }
+            // Keep the journal from the oldest snapshot kept, so it can still be recovered from
+            File oldest = snapshots[snapshots.length - SNAPSHOTS_KEPT];
+            journal.deleteSegmentsBefore(PoolSnapshot.indexOf(oldest));
+        }
+        snapshotTime.record(System.nanoTime() - start);
+        return file;
+    }
+
+    /**
+     * Main loop of the snapshot thread.
+     */
+    private void snapshotLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            try {
+                takeSnapshot();
+            } catch (IOException e) {
+                System.err.println("Failed to write a snapshot: " + e.getMessage());
+            }
+        }
+    }
+}
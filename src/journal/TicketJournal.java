@@ -0,0 +1,558 @@
+package journal;
+
+import core.PoolListener;
+import util.Ticket;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * The TicketJournal class is an append-only binary journal of the tickets a pool adds and sells.
+ * Set as the pool listener, it writes one fixed size record per event into memory-mapped
+ * segment files, so appending is two stores into memory under a short lock and never waits
+ * for the disk. Depending on the {@link Durability}, a background thread forces everything
+ * written since its last pass with a single fsync, committing the records of many vendors
+ * and customers together. In PER_BATCH mode a pool operation waits, once its pool lock is
+ * released, for the force covering the last record it wrote; operations arriving while a
+ * force runs share the next one.
+ *
+ * A record is 16 bytes: a long holding the record type in its top byte and the time in
+ * milliseconds below it, then the packed ticket id. Segments are named after the index of
+ * their first record and are zero filled when created, so the first record with type 0 marks
+ * the end of the journal. Opening an existing journal continues after its last record.
+ */
+public class TicketJournal implements PoolListener, AutoCloseable {
+
+    /**
+     * Record type of a ticket added to the pool.
+     */
+    public static final int ADDED = 1;
+
+    /**
+     * Record type of a ticket sold from the pool.
+     */
+    public static final int SOLD = 2;
+
+    /**
+     * Record type of a sold ticket put back into the pool.
+     */
+    public static final int RETURNED = 3;
+
+    /**
+     * Size of one record in bytes.
+     */
+    public static final int RECORD_BYTES = 16;
+
+    /**
+     * Size of a segment file in bytes when none is given: 4M records.
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = 64 << 20;
+
+    /**
+     * Prefix of the segment file names.
+     */
+    static final String SEGMENT_PREFIX = "journal-";
+
+    /**
+     * Suffix of the segment file names.
+     */
+    static final String SEGMENT_SUFFIX = ".bin";
+
+    /**
+     * Mask selecting the timestamp of a record header.
+     */
+    static final long TIMESTAMP_MASK = (1L << 56) - 1;
+
+    /**
+     * Directory holding the segment files.
+     */
+    private final File directory;
+
+    /**
+     * When records are forced to disk.
+     */
+    private final Durability durability;
+
+    /**
+     * Time between two forces in PERIODIC mode, in milliseconds; in PER_BATCH mode the
+     * longest the flusher sleeps without being woken by a writer.
+     */
+    private final long flushMillis;
+
+    /**
+     * Size of a segment file in bytes, a multiple of the record size.
+     */
+    private final int segmentBytes;
+
+    /**
+     * Lock guarding the current segment while records are appended.
+     */
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * The segment records are appended to.
+     */
+    private MappedByteBuffer segment;
+
+    /**
+     * Index of the first record of the current segment.
+     */
+    private long segmentBase;
+
+    /**
+     * Full segments that still have to be forced before they are released.
+     */
+    private final List<MappedByteBuffer> sealed = new ArrayList<>();
+
+    /**
+     * Number of ADDED records in the journal, guarded by the lock.
+     */
+    private long addedRecords;
+
+    /**
+     * Number of SOLD records less RETURNED records in the journal, guarded by the lock.
+     */
+    private long soldRecords;
+
+    /**
+     * Highest sequence number of a ticket added to the journal, guarded by the lock.
+     */
+    private long lastSequence;
+
+    /**
+     * Index the next record is written at, which is also the number of records in the journal.
+     */
+    private volatile long nextIndex;
+
+    /**
+     * Every record below this index has been forced to disk.
+     */
+    private volatile long durableIndex;
+
+    /**
+     * Thread forcing the records in PERIODIC and PER_BATCH mode, null in NONE mode.
+     */
+    private final Thread flusher;
+
+    /**
+     * Flag to indicate the journal is closed and takes no more records.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Monitor PER_BATCH writers wait on until the flusher has forced their records.
+     */
+    private final Object committed = new Object();
+
+    /**
+     * Index of the last record the current thread wrote in PER_BATCH mode and has not yet waited
+     * for, -1 if none.
+     */
+    private final ThreadLocal<long[]> pending = ThreadLocal.withInitial(() -> new long[] {-1});
+
+    /**
+     * Constructor to open a journal. Use {@link #open(File, Durability, long)} instead.
+     *
+     * @param directory    directory holding the segment files
+     * @param durability   when records are forced to disk
+     * @param flushMillis  time between two forces in PERIODIC mode, in milliseconds
+     * @param segmentBytes size of a segment file in bytes
+     * @throws IOException if the journal cannot be read or created
+     */
+    private TicketJournal(File directory, Durability durability, long flushMillis, int segmentBytes) throws IOException {
+        this.directory = directory;
+        this.durability = durability == null ? Durability.PERIODIC : durability;
+        this.flushMillis = Math.max(1, flushMillis);
+        this.segmentBytes = Math.max(RECORD_BYTES, segmentBytes - segmentBytes % RECORD_BYTES);
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create journal directory " + directory);
+        }
+
+        // Continue after the last record of an existing journal
+        List<File> segments = JournalReader.segments(directory);
+        if (segments.isEmpty()) {
+            segmentBase = 0;
+        } else {
+            File last = segments.get(segments.size() - 1);
+            segmentBase = JournalReader.segmentBase(last);
+        }
+        segment = map(segmentBase);
+        long count = 0;
+        while (count * RECORD_BYTES < segment.capacity() && segment.getLong((int) (count * RECORD_BYTES)) != 0) {
+            count++;
+        }
+        nextIndex = segmentBase + count;
+        durableIndex = nextIndex;
+
+        if (this.durability == Durability.NONE) {
+            flusher = null;
+        } else {
+            flusher = new Thread(this::flushLoop, "Journal Flusher");
+            flusher.setDaemon(true);
+            flusher.start();
+        }
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed, with the default segment size.
+     *
+     * @param directory   directory holding the segment files
+     * @param durability  when records are forced to disk
+     * @param flushMillis time between two forces in PERIODIC mode, in milliseconds
+     * @return the journal, positioned after its last record
+     * @throws IOException if the journal cannot be read or created
+     */
+    public static TicketJournal open(File directory, Durability durability, long flushMillis) throws IOException {
+        return new TicketJournal(directory, durability, flushMillis, DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Opens the journal in a directory, creating it if needed.
+     *
+     * @param directory    directory holding the segment files
+     * @param durability   when records are forced to disk
+     * @param flushMillis  time between two forces in PERIODIC mode, in milliseconds
+     * @param segmentBytes size of a segment file in bytes
+     * @return the journal, positioned after its last record
+     * @throws IOException if the journal cannot be read or created
+     */
+    public static TicketJournal open(File directory, Durability durability, long flushMillis, int segmentBytes) throws IOException {
+        return new TicketJournal(directory, durability, flushMillis, segmentBytes);
+    }
+
+    /**
+     * Records a ticket added to the pool.
+     *
+     * @param ticketId the packed id of the ticket
+     */
+    @Override
+    public void ticketAdded(long ticketId) {
+        record(ADDED, ticketId);
+    }
+
+    /**
+     * Records a ticket sold from the pool.
+     *
+     * @param ticketId the packed id of the ticket
+     */
+    @Override
+    public void ticketSold(long ticketId) {
+        record(SOLD, ticketId);
+    }
+
+    /**
+     * Records a sold ticket put back into the pool.
+     *
+     * @param ticketId the packed id of the ticket
+     */
+    @Override
+    public void ticketReturned(long ticketId) {
+        record(RETURNED, ticketId);
+    }
+
+    /**
+     * Waits in PER_BATCH mode until the last record the current thread wrote has been forced,
+     * committing every record of the pool operation at once. Pools call it after releasing
+     * their lock, so other threads can append to the same force meanwhile.
+     */
+    @Override
+    public void awaitDurable() {
+        if (durability != Durability.PER_BATCH) {
+            return;
+        }
+        long[] last = pending.get();
+        if (last[0] >= 0) {
+            long index = last[0];
+            last[0] = -1;
+            awaitDurable(index);
+        }
+    }
+
+    /**
+     * Appends a record and, in PER_BATCH mode, remembers its index for {@link #awaitDurable()}.
+     *
+     * @param type     the record type
+     * @param ticketId the packed id of the ticket
+     */
+    private void record(int type, long ticketId) {
+        long index = append(type, ticketId);
+        if (index >= 0 && durability == Durability.PER_BATCH) {
+            pending.get()[0] = index; // Indexes only grow, so this is the highest of the operation
+        }
+    }
+
+    /**
+     * Appends a record, moving on to a new segment when the current one is full.
+     * The header is written after the ticket id, so a record is only seen once it is complete.
+     *
+     * @param type     the record type
+     * @param ticketId the packed id of the ticket
+     * @return the index of the record, or -1 if the journal is closed
+     */
+    private long append(int type, long ticketId) {
+        long index = -1;
+        lock.lock();
+        try {
+            if (closed) {
+                return -1;
+            }
+            long offset = (nextIndex - segmentBase) * RECORD_BYTES;
+            if (offset >= segment.capacity()) {
+                roll();
+                offset = 0;
+            }
+            segment.putLong((int) offset + 8, ticketId);
+            segment.putLong((int) offset, ((long) type << 56) | (System.currentTimeMillis() & TIMESTAMP_MASK));
+            index = nextIndex++;
+            if (type == ADDED) {
+                addedRecords++;
+                lastSequence = Math.max(lastSequence, Ticket.sequenceOf(ticketId));
+            } else if (type == SOLD) {
+                soldRecords++;
+            } else {
+                soldRecords--; // A returned ticket is no longer sold
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to extend the journal: " + e.getMessage());
+        } finally {
+            lock.unlock();
+        }
+        return index;
+    }
+
+    /**
+     * Waits until a record has been forced to disk, waking the flusher first. Returns at once
+     * if it already is, if no flusher runs in this mode, or if the journal is closed.
+     *
+     * @param index the index of the record
+     */
+    public void awaitDurable(long index) {
+        if (flusher == null || durableIndex > index) {
+            return;
+        }
+        LockSupport.unpark(flusher);
+        boolean interrupted = false;
+        synchronized (committed) {
+            while (durableIndex <= index && !closed) {
+                try {
+                    committed.wait();
+                } catch (InterruptedException e) {
+                    interrupted = true; // The record is already written, so finish waiting for it
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+        }
+    }
+
+    /**
+     * Seals the full current segment and maps the next one. The caller holds the lock.
+     *
+     * @throws IOException if the next segment cannot be created
+     */
+    private void roll() throws IOException {
+        MappedByteBuffer next = map(nextIndex);
+        if (durability != Durability.NONE) {
+            sealed.add(segment); // The flusher forces it before letting it go
+        } else {
+            segment.force(); // Nothing else will
+        }
+        segment = next;
+        segmentBase = nextIndex;
+    }
+
+    /**
+     * Maps the segment file starting at the given record index, creating it if needed.
+     *
+     * @param base the index of the first record of the segment
+     * @return the writable mapping of the whole segment
+     * @throws IOException if the file cannot be created or mapped
+     */
+    private MappedByteBuffer map(long base) throws IOException {
+        File file = new File(directory, JournalReader.segmentName(base));
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = Math.max(segmentBytes, channel.size() - channel.size() % RECORD_BYTES);
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    /**
+     * Forces every record written so far and every sealed segment to disk.
+     * One call commits the records of all threads that appended since the previous call.
+     */
+    private void flush() {
+        List<MappedByteBuffer> full;
+        MappedByteBuffer current;
+        long base;
+        long target;
+        lock.lock();
+        try {
+            full = new ArrayList<>(sealed);
+            sealed.clear();
+            current = segment;
+            base = segmentBase;
+            target = nextIndex;
+        } finally {
+            lock.unlock();
+        }
+        for (MappedByteBuffer buffer : full) {
+            buffer.force();
+        }
+        long from = Math.max(0, durableIndex - base) * RECORD_BYTES;
+        long to = (target - base) * RECORD_BYTES;
+        if (to > from) {
+            current.force((int) from, (int) (to - from));
+        }
+        durableIndex = target;
+    }
+
+    /**
+     * Main loop of the flusher thread: forces new records every interval, or in PER_BATCH mode
+     * whenever a writer wakes it, then wakes the writers waiting for their records, until the
+     * journal is closed. Writers appending during a force are covered by the next one.
+     */
+    private void flushLoop() {
+        while (!closed) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(flushMillis));
+            if (nextIndex != durableIndex) {
+                try {
+                    flush();
+                } catch (RuntimeException e) {
+                    System.err.println("Failed to force the journal: " + e.getMessage()); // Retried on the next pass
+                }
+                wakeWriters();
+            }
+        }
+    }
+
+    /**
+     * Wakes the PER_BATCH writers so they check whether their records are durable.
+     */
+    private void wakeWriters() {
+        if (durability == Durability.PER_BATCH) {
+            synchronized (committed) {
+                committed.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Gets the index the next record is written at.
+     *
+     * @return the number of records in the journal
+     */
+    public long getNextIndex() {
+        return nextIndex;
+    }
+
+    /**
+     * Gets the current end of the journal with the totals of the records before it.
+     * Pools record a ticket they add or put back before any customer can take it, and a sale
+     * once the ticket is taken, so a sale never comes before its ticket in the journal and a
+     * copy of a pool taken after this call holds every ticket the position counts as added and
+     * not yet sold.
+     *
+     * @return the position the next record is written at
+     */
+    public JournalPosition position() {
+        lock.lock();
+        try {
+            return new JournalPosition(nextIndex, addedRecords, soldRecords, lastSequence);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Carries on the totals recovered from an existing journal, so later positions count
+     * the records written before the restart. Called before the journal takes new records.
+     *
+     * @param recovered the recovered end of the journal
+     */
+    public void resume(JournalPosition recovered) {
+        lock.lock();
+        try {
+            addedRecords = recovered.getAdded();
+            soldRecords = recovered.getSold();
+            lastSequence = recovered.getLastSequence();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes the segments holding only records before an index, which a snapshot has made
+     * unnecessary. The segment being written is always kept.
+     *
+     * @param index the index of the first record still needed
+     * @return the number of segments deleted
+     */
+    public int deleteSegmentsBefore(long index) {
+        List<File> segments = JournalReader.segments(directory);
+        int deleted = 0;
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            // A segment ends where the next one starts
+            if (JournalReader.segmentBase(segments.get(i + 1)) > index) {
+                break;
+            }
+            if (segments.get(i).delete()) {
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+
+    /**
+     * Gets the number of records known to be forced to disk.
+     *
+     * @return every record below this index is durable
+     */
+    public long getDurableIndex() {
+        return durableIndex;
+    }
+
+    /**
+     * Gets the directory holding the segment files.
+     *
+     * @return the journal directory
+     */
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Stops taking records, stops the flusher and forces every record to disk.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        if (flusher != null) {
+            LockSupport.unpark(flusher);
+            try {
+                flusher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // Restore the interrupted status
+            }
+        }
+        flush();
+        wakeWriters();
+    }
+}
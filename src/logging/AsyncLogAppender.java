@@ -0,0 +1,310 @@
+package logging;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The AsyncLogAppender class moves console and file output off the logging thread.
+ * Callers put messages into a bounded queue and a single background writer keeps the
+ * log file open, writes the messages in batches and flushes on batch size or time.
+ * Messages are queued as records, so the writer also turns them into text.
+ * A failed write loses its batch and closes the file, which the next batch opens again,
+ * so the writer keeps draining the queue and producers never wait on a dead writer.
+ * Messages logged while the appender closes are handed back and written synchronously.
+ */
+class AsyncLogAppender {
+
+    /**
+     * Maximum number of messages taken from the queue in one batch.
+     */
+    private static final int MAX_BATCH_SIZE = 512;
+
+    /**
+     * Number of written messages after which the file is flushed.
+     */
+    private static final int FLUSH_SIZE = 256;
+
+    /**
+     * Maximum time a written message stays unflushed, in milliseconds.
+     */
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+
+    /**
+     * With the SAMPLE policy, one message out of this many is kept while the queue is full.
+     */
+    private static final int SAMPLE_INTERVAL = 100;
+
+    /**
+     * Bounded queue of timestamped messages waiting to be written.
+     */
+    private final BlockingQueue<LogRecord> queue;
+
+    /**
+     * What to do with a message when the queue is full.
+     */
+    private final OverflowPolicy overflowPolicy;
+
+    /**
+     * The log file the writer appends to, rolled over as it grows.
+     */
+    private final LogFile file;
+
+    /**
+     * Number of messages discarded because the queue was full.
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * Number of messages that found the queue full, used to pick samples.
+     */
+    private final AtomicLong overflowed = new AtomicLong();
+
+    /**
+     * Number of messages lost because writing them to the file failed.
+     */
+    private final AtomicLong lost = new AtomicLong();
+
+    /**
+     * Number of batches whose write failed, only used by the writer.
+     */
+    private long failedWrites = 0;
+
+    /**
+     * Flag to indicate the last write failed, only used by the writer.
+     */
+    private boolean failing = false;
+
+    /**
+     * The background thread writing the queued messages.
+     */
+    private final Thread writerThread;
+
+    /**
+     * Flag to indicate the appender no longer accepts messages.
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * Flag to indicate the writer has stopped, so queued messages will never be taken.
+     */
+    private volatile boolean writerStopped = false;
+
+    /**
+     * Constructor to create the appender and start its background writer.
+     *
+     * @param logFile        the log file to append to
+     * @param capacity       the maximum number of queued messages
+     * @param overflowPolicy what to do with a message when the queue is full
+     */
+    AsyncLogAppender(LogFile logFile, int capacity, OverflowPolicy overflowPolicy) {
+        this.file = logFile;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.overflowPolicy = overflowPolicy == null ? OverflowPolicy.BLOCK : overflowPolicy;
+        this.writerThread = new Thread(this::writeLoop, "Log Writer");
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    /**
+     * Queues a message for the background writer, applying the overflow policy if the queue is full.
+     * A message arriving after {@link #close()}, or queued too late for the writer to take it, is
+     * handed back once the writer has closed the file, for the caller to write synchronously.
+     *
+     * @param message the timestamped message to write
+     * @return true if the message was queued or counted as dropped, false if the caller must write it
+     */
+    boolean append(LogRecord message) {
+        boolean queued = false;
+        if (!closed) {
+            if (!queue.offer(message) && !overflow(message)) {
+                return true; // Dropped and counted
+            }
+            if (!closed) {
+                return true; // The writer drains every message queued before the close
+            }
+            queued = true;
+        }
+        // Closed: wait for the writer to finish, then take back the message if it never took it
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+            if (!queued || queue.remove(message)) {
+                dropped.incrementAndGet();
+            }
+            return true;
+        }
+        return queued && !queue.remove(message);
+    }
+
+    /**
+     * Applies the overflow policy to a message that found the queue full.
+     *
+     * @param message the timestamped message to write
+     * @return true if the message was queued, false if it was dropped
+     */
+    private boolean overflow(LogRecord message) {
+        if (writerStopped) {
+            dropped.incrementAndGet(); // Nothing will ever make room
+            return false;
+        }
+        switch (overflowPolicy) {
+            case DROP:
+                dropped.incrementAndGet();
+                return false;
+            case SAMPLE:
+                if (overflowed.incrementAndGet() % SAMPLE_INTERVAL != 0) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+                return put(message);
+            case BLOCK:
+            default:
+                return put(message);
+        }
+    }
+
+    /**
+     * Waits for room in the queue and adds the message, or drops it if the writer stops meanwhile.
+     *
+     * @param message the timestamped message to write
+     * @return true if the message was queued, false if it was dropped
+     */
+    private boolean put(LogRecord message) {
+        try {
+            while (!queue.offer(message, FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (writerStopped) {
+                    dropped.incrementAndGet();
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            dropped.incrementAndGet();
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+            return false;
+        }
+    }
+
+    /**
+     * Stops accepting messages, writes everything still queued and closes the file.
+     */
+    void close() {
+        closed = true;
+        writerThread.interrupt();
+        try {
+            writerThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Main loop of the background writer. The file stays open for the lifetime of the appender,
+     * unless a write fails.
+     */
+    private void writeLoop() {
+        List<LogRecord> batch = new ArrayList<>(MAX_BATCH_SIZE);
+        try (LogFile logFile = file) {
+            int unflushed = 0;
+            long lastFlush = System.currentTimeMillis();
+            while (!closed || !queue.isEmpty()) {
+                LogRecord first = null;
+                try {
+                    // Once closed, only drain what is left without waiting for more
+                    first = closed ? queue.poll() : queue.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    // close() interrupts the writer; the next pass drains what is left and exits
+                }
+                LogWriteEvent event = new LogWriteEvent();
+                event.begin();
+                int written = 0;
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+                }
+                try {
+                    if (!batch.isEmpty()) {
+                        written = write(logFile, batch);
+                        unflushed += written;
+                    }
+                    long now = System.currentTimeMillis();
+                    boolean flushed = false;
+                    if (unflushed > 0 && (unflushed >= FLUSH_SIZE || now - lastFlush >= FLUSH_INTERVAL_MILLIS)) {
+                        logFile.flush();
+                        System.out.flush();
+                        unflushed = 0;
+                        lastFlush = now;
+                        flushed = true;
+                    }
+                    if (written > 0 || flushed) {
+                        event.finish(logFile.getFormat(), written, true, flushed);
+                        failing = false;
+                    }
+                } catch (IOException e) {
+                    failed(logFile, batch.size() + unflushed - written, e);
+                    unflushed = 0;
+                }
+                batch.clear();
+            }
+            long droppedMessages = dropped.get();
+            if (droppedMessages > 0) {
+                batch.add(new LogRecord(LogRecord.now(), LogEvent.TEXT, Thread.currentThread().getName(), 0, 0,
+                        "Asynchronous logger dropped " + droppedMessages + " messages because its queue was full."));
+            }
+            if (failedWrites > 0) {
+                batch.add(new LogRecord(LogRecord.now(), LogEvent.TEXT, Thread.currentThread().getName(), 0, 0,
+                        "Asynchronous logger lost " + lost.get() + " messages to " + failedWrites + " failed writes."));
+            }
+            if (!batch.isEmpty()) {
+                write(logFile, batch);
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write to log file: " + e.getMessage());
+        } finally {
+            writerStopped = true;
+        }
+    }
+
+    /**
+     * Counts a failed write and drops the file's buffer, so the next batch opens it again.
+     * Only the first of a run of failures is reported, to keep the console readable.
+     *
+     * @param logFile  the log file that failed
+     * @param messages the messages lost with the write
+     * @param e        the failure
+     */
+    private void failed(LogFile logFile, long messages, IOException e) {
+        if (!failing) {
+            System.err.println("Failed to write to log file: " + e.getMessage());
+            failing = true;
+        }
+        failedWrites++;
+        lost.addAndGet(messages);
+        logFile.discard();
+    }
+
+    /**
+     * Writes a batch of messages to the console and the log file.
+     *
+     * @param logFile the open log file
+     * @param batch   the messages to write
+     * @return the number of messages written
+     * @throws IOException if writing to the file fails
+     */
+    private int write(LogFile logFile, List<LogRecord> batch) throws IOException {
+        boolean console = Logger.isConsoleEnabled();
+        for (LogRecord message : batch) {
+            if (console) {
+                System.out.println(message.toText());
+            }
+            logFile.write(message);
+        }
+        return batch.size();
+    }
+}
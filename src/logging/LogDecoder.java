@@ -0,0 +1,285 @@
+package logging;
+
+import util.Ticket;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * The LogDecoder class reads binary log files and prints them in the layout of the text log,
+ * one timestamped line per message. Rolled files compressed with gzip are read as they are.
+ *
+ * Messages can be filtered by thread name, event type and vendor index. Filtering happens on the
+ * decoded numbers, before a message is turned into text, so only the messages printed pay for it.
+ * With {@code --count} the decoder prints how many messages of each event type match instead.
+ * <p>
+ * Usage: {@code LogDecoder [--thread=NAME,...] [--event=EVENT,...] [--vendor=N] [--count] FILE...}
+ */
+public class LogDecoder {
+
+    /**
+     * Usage text printed when the arguments are invalid.
+     */
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java logging.LogDecoder [options] FILE...",
+            "  --thread=NAME,...  only messages logged by these threads",
+            "  --event=EVENT,...  only these events: " + Arrays.toString(LogEvent.values()),
+            "  --vendor=N         only messages about tickets of this vendor index",
+            "  --count            print the number of matching messages of each event instead of the messages");
+
+    /**
+     * The thread names to keep, empty to keep every thread.
+     */
+    private final Set<String> threads;
+
+    /**
+     * The events to keep, by id; null to keep every event.
+     */
+    private final boolean[] events;
+
+    /**
+     * The vendor index to keep, or -1 to keep every message.
+     */
+    private final int vendor;
+
+    /**
+     * The number of matching messages of each event, when counting.
+     */
+    private final Map<LogEvent, Long> counts;
+
+    /**
+     * Constructor to create a decoder with its filters.
+     *
+     * @param threads the thread names to keep, empty to keep every thread
+     * @param events  the events to keep, empty to keep every event
+     * @param vendor  the vendor index to keep, or -1 to keep every message
+     * @param count   true to count the matching messages instead of printing them
+     */
+    LogDecoder(Set<String> threads, Set<LogEvent> events, int vendor, boolean count) {
+        this.threads = threads;
+        this.vendor = vendor;
+        this.counts = count ? new EnumMap<>(LogEvent.class) : null;
+        if (events.isEmpty()) {
+            this.events = null;
+        } else {
+            this.events = new boolean[128];
+            for (LogEvent event : events) {
+                this.events[event.getId()] = true;
+            }
+        }
+    }
+
+    /**
+     * Decodes the files given on the command line, in order, to standard output.
+     *
+     * @param args the options and the files
+     * @throws IOException if a file cannot be read or is not a binary log
+     */
+    public static void main(String[] args) throws IOException {
+        Set<String> threads = new HashSet<>();
+        Set<LogEvent> events = new HashSet<>();
+        int vendor = -1;
+        boolean count = false;
+        List<String> files = new ArrayList<>();
+        try {
+            for (String arg : args) {
+                if (arg.startsWith("--thread=")) {
+                    threads.addAll(List.of(arg.substring("--thread=".length()).split(",")));
+                } else if (arg.startsWith("--event=")) {
+                    for (String name : arg.substring("--event=".length()).split(",")) {
+                        events.add(LogEvent.valueOf(name.trim().toUpperCase()));
+                    }
+                } else if (arg.startsWith("--vendor=")) {
+                    vendor = Integer.parseInt(arg.substring("--vendor=".length()));
+                } else if (arg.equals("--count")) {
+                    count = true;
+                } else if (arg.startsWith("--")) {
+                    throw new IllegalArgumentException("Unknown option: " + arg);
+                } else {
+                    files.add(arg);
+                }
+            }
+            if (files.isEmpty()) {
+                throw new IllegalArgumentException("No log file given");
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return;
+        }
+
+        LogDecoder decoder = new LogDecoder(threads, events, vendor, count);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        for (String file : files) {
+            decoder.decode(file, out);
+        }
+        if (count) {
+            for (Map.Entry<LogEvent, Long> entry : decoder.counts.entrySet()) {
+                out.write(String.format("%-16s %12d%n", entry.getKey(), entry.getValue()));
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Decodes one binary log file, compressed with gzip if its name ends in .gz.
+     *
+     * @param file the file to decode
+     * @param out  where the matching messages are printed
+     * @throws IOException if the file cannot be read or is not a binary log
+     */
+    void decode(String file, Writer out) throws IOException {
+        InputStream raw = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        if (file.endsWith(".gz")) {
+            raw = new GZIPInputStream(raw, 1 << 16);
+        }
+        try (DataInputStream in = new DataInputStream(raw)) {
+            decode(in, out, file);
+        } catch (EOFException e) {
+            // The last record of a log cut short by a crash is incomplete; everything before it is printed
+            System.err.println(file + " ends with a record cut short");
+        }
+    }
+
+    /**
+     * Decodes the records of a binary log.
+     *
+     * @param in   the records
+     * @param out  where the matching messages are printed
+     * @param name the name of the file, for error messages
+     * @throws IOException if the records cannot be read or are not a binary log
+     */
+    private void decode(DataInputStream in, Writer out, String name) throws IOException {
+        List<String> threadNames = new ArrayList<>(); // By thread number, for the current segment
+        List<Boolean> threadKept = new ArrayList<>();
+        long nanos = 0;
+        boolean started = false;
+        int type;
+        while ((type = in.read()) >= 0) {
+            if (type == LogFile.SEGMENT_RECORD) {
+                byte[] magic = new byte[LogFile.MAGIC.length];
+                in.readFully(magic);
+                int version = in.readUnsignedByte();
+                if (!Arrays.equals(magic, LogFile.MAGIC) || version != LogFile.VERSION) {
+                    throw new IOException(name + " is not a binary log of version " + LogFile.VERSION);
+                }
+                nanos = in.readLong();
+                threadNames.clear(); // Thread numbers start again in every segment
+                threadKept.clear();
+                started = true;
+                continue;
+            }
+            if (!started) {
+                throw new IOException(name + " is not a binary log");
+            }
+            if (type == LogFile.THREAD_RECORD) {
+                int number = (int) readNumber(in);
+                String thread = readText(in);
+                while (threadNames.size() <= number) {
+                    threadNames.add(null);
+                    threadKept.add(false);
+                }
+                threadNames.set(number, thread);
+                threadKept.set(number, threads.isEmpty() || threads.contains(thread));
+                continue;
+            }
+            LogEvent event = LogEvent.byId(type);
+            if (event == null) {
+                throw new IOException(name + " holds an unknown event id " + type);
+            }
+
+            // Read the whole record, then decide if it is kept
+            nanos += readSigned(in);
+            int thread = (int) readNumber(in);
+            long first = 0;
+            long second = 0;
+            String text = null;
+            int recordVendor = -1;
+            if (event == LogEvent.TEXT) {
+                text = readText(in);
+            } else if (event.hasTicket()) {
+                recordVendor = (int) readNumber(in);
+                first = Ticket.pack(recordVendor, readNumber(in));
+            } else {
+                if (event.getValueCount() > 0) {
+                    first = readSigned(in);
+                }
+                if (event.getValueCount() > 1) {
+                    second = readSigned(in);
+                }
+            }
+
+            if ((events != null && !events[type]) || !threadKept.get(thread) || (vendor >= 0 && recordVendor != vendor)) {
+                continue;
+            }
+            if (counts != null) {
+                counts.merge(event, 1L, Long::sum);
+            } else {
+                out.write(new LogRecord(nanos, event, threadNames.get(thread), first, second, text).toText());
+                out.write(System.lineSeparator());
+            }
+        }
+    }
+
+    /**
+     * Reads a string written as its length in bytes followed by its UTF-8 bytes.
+     *
+     * @param in the records
+     * @return the string
+     * @throws IOException if the string cannot be read
+     */
+    private static String readText(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[(int) readNumber(in)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Reads a signed number written by mapping small negative numbers to small unsigned ones.
+     *
+     * @param in the records
+     * @return the number
+     * @throws IOException if the number cannot be read
+     */
+    private static long readSigned(DataInputStream in) throws IOException {
+        long value = readNumber(in);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Reads an unsigned number written in 7-bit groups, lowest first.
+     *
+     * @param in the records
+     * @return the number
+     * @throws IOException if the number cannot be read
+     */
+    private static long readNumber(DataInputStream in) throws IOException {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Log record cut short");
+            }
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
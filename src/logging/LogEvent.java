@@ -0,0 +1,184 @@
+package logging;
+
+import util.Ticket;
+
+/**
+ * The LogEvent enum lists the kinds of messages the system logs often enough to give them a
+ * type of their own. A message of a known type is logged as its type and a few numbers, and
+ * only turned into text when it is printed or written to a text log; the binary log stores
+ * the type and the numbers as they are. Any other message is logged as {@link #TEXT}.
+ *
+ * The ids are written to binary log files, so an id must never change or be reused.
+ */
+public enum LogEvent {
+
+    /**
+     * A free text message.
+     */
+    TEXT(1, 0, false),
+
+    /**
+     * A vendor found the pool full and waits for space.
+     */
+    POOL_FULL(2, 0, false),
+
+    /**
+     * A customer found the pool empty and waits for tickets.
+     */
+    POOL_EMPTY(3, 0, false),
+
+    /**
+     * A ticket was added; the value is the number of tickets in the pool.
+     */
+    TICKET_ADDED(4, 1, false),
+
+    /**
+     * The thread added a ticket; the value is the ticket id.
+     */
+    TICKET_ADDED_BY(5, 1, true),
+
+    /**
+     * The thread removed a ticket; the value is the ticket id.
+     */
+    TICKET_REMOVED(6, 1, true),
+
+    /**
+     * The total number of tickets sold; the value is the count.
+     */
+    TICKETS_SOLD(7, 1, false),
+
+    /**
+     * The thread added a batch of tickets; the values are the batch size and the number of tickets in the pool.
+     */
+    TICKETS_ADDED(8, 2, false),
+
+    /**
+     * The thread removed a batch of tickets; the value is the batch size.
+     */
+    TICKETS_REMOVED(9, 1, false),
+
+    /**
+     * An expired hold returned a ticket to the pool; the value is the total number of tickets sold.
+     */
+    TICKET_RETURNED(10, 1, false),
+
+    /**
+     * The vendor thread released all its tickets and stopped.
+     */
+    VENDOR_FINISHED(11, 0, false);
+
+    /**
+     * The events by id, for decoding.
+     */
+    private static final LogEvent[] BY_ID = new LogEvent[16];
+
+    static {
+        for (LogEvent event : values()) {
+            BY_ID[event.id] = event;
+        }
+    }
+
+    /**
+     * The id written to binary log files.
+     */
+    private final int id;
+
+    /**
+     * The number of values the event carries, 0 to 2.
+     */
+    private final int valueCount;
+
+    /**
+     * Flag to indicate the first value is a ticket id, written as its vendor index and sequence number.
+     */
+    private final boolean ticket;
+
+    /**
+     * Constructor to create an event type.
+     *
+     * @param id         the id written to binary log files
+     * @param valueCount the number of values the event carries
+     * @param ticket     true if the first value is a ticket id
+     */
+    LogEvent(int id, int valueCount, boolean ticket) {
+        this.id = id;
+        this.valueCount = valueCount;
+        this.ticket = ticket;
+    }
+
+    /**
+     * Gets the id written to binary log files.
+     *
+     * @return the id
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the number of values the event carries.
+     *
+     * @return 0, 1 or 2
+     */
+    int getValueCount() {
+        return valueCount;
+    }
+
+    /**
+     * Checks if the first value is a ticket id.
+     *
+     * @return true if the first value is a ticket id
+     */
+    boolean hasTicket() {
+        return ticket;
+    }
+
+    /**
+     * Finds the event with an id.
+     *
+     * @param id the id read from a binary log file
+     * @return the event, or null if no event has the id
+     */
+    static LogEvent byId(int id) {
+        return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+    }
+
+    /**
+     * Renders the message of an event, exactly as the system logged it before events had types.
+     *
+     * @param thread the name of the thread that logged the event
+     * @param first  the first value
+     * @param second the second value
+     * @param text   the text of a {@link #TEXT} message, null otherwise
+     * @return the message
+     */
+    String render(String thread, long first, long second, String text) {
+        switch (this) {
+            case POOL_FULL:
+                return "Ticket pool is full. Waiting for space to become available...";
+            case POOL_EMPTY:
+                return "The ticket pool is currently empty. Waiting for tickets to be added...";
+            case TICKET_ADDED:
+                return "Ticket successfully added to the pool. Current ticket count: " + first;
+            case TICKET_ADDED_BY:
+                return thread + " added a new ticket to the pool: " + new Ticket(first).getTicketID();
+            case TICKET_REMOVED:
+                Ticket removed = new Ticket(first);
+                return thread + " successfully removed a ticket from the pool. Vendor ID: " + removed.getVendorID()
+                        + ", Ticket ID: " + removed.getTicketID();
+            case TICKETS_SOLD:
+                return "Total tickets sold so far: " + first;
+            case TICKETS_ADDED:
+                return thread + " added " + first + " tickets to the pool. Current ticket count: " + second;
+            case TICKETS_REMOVED:
+                return thread + " successfully removed " + first + " tickets from the pool.";
+            case TICKET_RETURNED:
+                return "Ticket returned to the pool. Total tickets sold so far: " + first;
+            case VENDOR_FINISHED:
+                return "All tickets have been sold. Thread " + thread + " has completed its task.";
+            case TEXT:
+            default:
+                return text;
+        }
+    }
+}
@@ -0,0 +1,527 @@
+package logging;
+
+import util.Ticket;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The LogFile class writes log records to the active log file in text or binary form and
+ * rolls the file over when it grows too large or too old.
+ *
+ * Rolling renames the active file to a name holding the time it was last written, such as
+ * log-20240101-120000-000.txt, and starts a new active file. Rolled files are compressed with
+ * gzip if configured, and the oldest are deleted so only the configured number are kept; both
+ * happen on a housekeeping thread so logging does not wait for them.
+ *
+ * A binary log file is a sequence of segments. A segment starts with a segment record holding
+ * the time it was started; each later record holds its event id, the time since the previous
+ * record, the number of its thread and its values, all as variable-length numbers. A thread name
+ * is written once per segment, in a thread record, the first time the thread logs. Appending to
+ * an existing binary file starts a new segment, so every segment can be decoded on its own.
+ *
+ * A LogFile is not thread safe; the logger only uses it from one thread at a time.
+ */
+final class LogFile implements AutoCloseable {
+
+    /**
+     * Record type of a thread record: the thread number and its name.
+     */
+    static final int THREAD_RECORD = 0;
+
+    /**
+     * Record type of a segment record: the magic bytes, the version and the start time.
+     */
+    static final int SEGMENT_RECORD = 0x7F;
+
+    /**
+     * The bytes following the type of a segment record, identifying a binary log.
+     */
+    static final byte[] MAGIC = {'T', 'L', 'G'};
+
+    /**
+     * The version of the binary format.
+     */
+    static final int VERSION = 1;
+
+    /**
+     * Size of the write buffer, in bytes.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The timestamp in the name of a rolled file.
+     */
+    private static final DateTimeFormatter ROLLED_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss-SSS");
+
+    /**
+     * The line separator of the text log.
+     */
+    private static final byte[] NEW_LINE = System.lineSeparator().getBytes(StandardCharsets.UTF_8);
+
+    /**
+     * The thread compressing and deleting rolled files, shared by every log file.
+     */
+    private static final ExecutorService housekeeping = Executors.newSingleThreadExecutor(
+            Thread.ofPlatform().name("Log Housekeeping").daemon().factory());
+
+    /**
+     * The active log file.
+     */
+    private final File file;
+
+    /**
+     * The format records are written in.
+     */
+    private final LogFormat format;
+
+    /**
+     * The size at which the file is rolled over, in bytes, 0 for no limit.
+     */
+    private final long maxBytes;
+
+    /**
+     * The age at which the file is rolled over, in milliseconds, 0 for no limit.
+     */
+    private final long rotateMillis;
+
+    /**
+     * The number of rolled files kept.
+     */
+    private final int keepFiles;
+
+    /**
+     * Flag to indicate rolled files are compressed with gzip.
+     */
+    private final boolean compress;
+
+    /**
+     * Bytes written and not yet passed to the file.
+     */
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    /**
+     * Number of bytes at the start of the buffer not yet passed to the file.
+     */
+    private int position = 0;
+
+    /**
+     * The open active file, null until the first record is written.
+     */
+    private OutputStream out;
+
+    /**
+     * The size of the active file including the buffered bytes.
+     */
+    private long size;
+
+    /**
+     * The time the active file was opened, in milliseconds.
+     */
+    private long openedMillis;
+
+    /**
+     * The numbers given to the thread names of the current binary segment.
+     */
+    private final Map<String, Integer> threadNumbers = new HashMap<>();
+
+    /**
+     * The time of the previous record of the current binary segment, in nanoseconds since the epoch.
+     */
+    private long lastNanos;
+
+    /**
+     * Flag to indicate the current binary segment has been started.
+     */
+    private boolean segmentStarted;
+
+    /**
+     * Constructor to create a log file. Nothing is opened until the first record is written.
+     *
+     * @param path         the path of the active log file
+     * @param format       the format records are written in
+     * @param maxBytes     the size at which the file is rolled over, 0 for no limit
+     * @param rotateMillis the age at which the file is rolled over, 0 for no limit
+     * @param keepFiles    the number of rolled files kept
+     * @param compress     true to compress rolled files with gzip
+     */
+    LogFile(String path, LogFormat format, long maxBytes, long rotateMillis, int keepFiles, boolean compress) {
+        this.file = new File(path);
+        this.format = format;
+        this.maxBytes = maxBytes;
+        this.rotateMillis = rotateMillis;
+        this.keepFiles = keepFiles;
+        this.compress = compress;
+    }
+
+    /**
+     * Gets the format records are written in.
+     *
+     * @return the format of the file
+     */
+    LogFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Writes a record, rolling the file over first if it is due.
+     *
+     * @param record the record to write
+     * @throws IOException if the file cannot be written
+     */
+    void write(LogRecord record) throws IOException {
+        if (out == null) {
+            open();
+        } else if (size > 0 && ((maxBytes > 0 && size >= maxBytes)
+                || (rotateMillis > 0 && System.currentTimeMillis() - openedMillis >= rotateMillis))) {
+            closeFile();
+            roll(file, keepFiles, compress);
+            open();
+        }
+        if (format == LogFormat.BINARY) {
+            writeBinary(record);
+        } else {
+            writeBytes(record.toText().getBytes(StandardCharsets.UTF_8));
+            writeBytes(NEW_LINE);
+        }
+    }
+
+    /**
+     * Passes the buffered bytes to the file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    void flush() throws IOException {
+        if (out != null && position > 0) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+
+    /**
+     * Writes the buffered bytes and closes the file. The next record opens it again.
+     */
+    @Override
+    public void close() {
+        try {
+            closeFile();
+        } catch (IOException e) {
+            System.err.println("Failed to write to log file: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Drops the buffered bytes and closes the file after a failed write, without writing
+     * anything more. The next record opens it again.
+     */
+    void discard() {
+        position = 0;
+        if (out != null) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                // The file already failed, closing it is all that is left to do
+            } finally {
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Opens the active file for appending.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    private void open() throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (!parent.exists()) {
+            parent.mkdirs(); // Create parent directories
+        }
+        out = new FileOutputStream(file, true);
+        size = file.length();
+        openedMillis = System.currentTimeMillis();
+        threadNumbers.clear();
+        segmentStarted = false; // Appended records go in a segment of their own
+    }
+
+    /**
+     * Writes the buffered bytes and closes the active file.
+     *
+     * @throws IOException if the file cannot be written
+     */
+    private void closeFile() throws IOException {
+        if (out != null) {
+            try {
+                flush();
+            } finally {
+                out.close();
+                out = null;
+            }
+        }
+    }
+
+    /**
+     * Writes a record in binary form, starting the segment and naming the thread first if needed.
+     *
+     * @param record the record to write
+     */
+    private void writeBinary(LogRecord record) throws IOException {
+        if (!segmentStarted) {
+            writeByte(SEGMENT_RECORD);
+            writeBytes(MAGIC);
+            writeByte(VERSION);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (record.epochNanos >>> shift));
+            }
+            lastNanos = record.epochNanos;
+            segmentStarted = true;
+        }
+        Integer thread = threadNumbers.get(record.thread);
+        if (thread == null) {
+            thread = threadNumbers.size();
+            threadNumbers.put(record.thread, thread);
+            writeByte(THREAD_RECORD);
+            writeNumber(thread);
+            writeText(record.thread);
+        }
+        LogEvent event = record.event;
+        writeByte(event.getId());
+        // Records are written in the order they were queued, which can differ slightly from
+        // the order of their timestamps, so the time since the previous record can be negative
+        writeSigned(record.epochNanos - lastNanos);
+        lastNanos = record.epochNanos;
+        writeNumber(thread);
+        if (event == LogEvent.TEXT) {
+            writeText(record.text);
+        } else if (event.hasTicket()) {
+            writeNumber(Ticket.vendorIndexOf(record.first)); // A small number, unlike the packed id
+            writeNumber(Ticket.sequenceOf(record.first));
+        } else {
+            if (event.getValueCount() > 0) {
+                writeSigned(record.first);
+            }
+            if (event.getValueCount() > 1) {
+                writeSigned(record.second);
+            }
+        }
+    }
+
+    /**
+     * Writes a string as its length in bytes followed by its UTF-8 bytes.
+     *
+     * @param text the string to write
+     */
+    private void writeText(String text) throws IOException {
+        byte[] bytes = (text == null ? "null" : text).getBytes(StandardCharsets.UTF_8);
+        writeNumber(bytes.length);
+        writeBytes(bytes);
+    }
+
+    /**
+     * Writes a signed number, mapping small negative numbers to small unsigned ones.
+     *
+     * @param value the number to write
+     */
+    private void writeSigned(long value) throws IOException {
+        writeNumber((value << 1) ^ (value >> 63));
+    }
+
+    /**
+     * Writes an unsigned number in 7-bit groups, lowest first, with the high bit set on all but the last.
+     *
+     * @param value the number to write, treated as unsigned
+     */
+    private void writeNumber(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        writeByte((int) value);
+    }
+
+    /**
+     * Writes one byte.
+     *
+     * @param b the byte to write, in the low 8 bits
+     */
+    private void writeByte(int b) throws IOException {
+        if (position == buffer.length) {
+            flush();
+        }
+        buffer[position++] = (byte) b;
+        size++;
+    }
+
+    /**
+     * Writes an array of bytes.
+     *
+     * @param bytes the bytes to write
+     */
+    private void writeBytes(byte[] bytes) throws IOException {
+        if (bytes.length > buffer.length - position) {
+            flush();
+            if (bytes.length > buffer.length) {
+                out.write(bytes);
+                size += bytes.length;
+                return;
+            }
+        }
+        System.arraycopy(bytes, 0, buffer, position, bytes.length);
+        position += bytes.length;
+        size += bytes.length;
+    }
+
+    /**
+     * Rolls a log file over: renames it to a name holding the time it was last written and
+     * then compresses and deletes rolled files on the housekeeping thread. Does nothing if the
+     * file does not exist or is empty.
+     *
+     * @param file      the active log file, which must be closed
+     * @param keepFiles the number of rolled files kept
+     * @param compress  true to compress rolled files with gzip
+     */
+    static void roll(File file, int keepFiles, boolean compress) {
+        if (!file.exists() || file.length() == 0) {
+            return;
+        }
+        String[] parts = splitName(file);
+        String stamp = LocalDateTime.ofInstant(Instant.ofEpochMilli(file.lastModified()), ZoneId.systemDefault())
+                .format(ROLLED_TIME);
+        File rolled = new File(file.getAbsoluteFile().getParentFile(), parts[0] + "-" + stamp + "." + parts[1]);
+        for (int i = 1; rolled.exists() || new File(rolled.getPath() + ".gz").exists(); i++) {
+            rolled = new File(file.getAbsoluteFile().getParentFile(), parts[0] + "-" + stamp + "-" + i + "." + parts[1]);
+        }
+        if (!file.renameTo(rolled)) {
+            System.err.println("Failed to roll over log file " + file);
+            return;
+        }
+        housekeeping.execute(() -> cleanUp(file, keepFiles, compress));
+    }
+
+    /**
+     * Waits for the housekeeping thread to finish the rolled files queued so far.
+     *
+     * @param timeoutMillis the longest time to wait, in milliseconds
+     */
+    static void awaitHousekeeping(long timeoutMillis) {
+        try {
+            housekeeping.submit(() -> { }).get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            // Rolled files left uncompressed are compressed after the next roll
+        }
+    }
+
+    /**
+     * Compresses the uncompressed rolled files of a log file if configured, then deletes the
+     * oldest rolled files beyond the number kept.
+     *
+     * @param file      the active log file
+     * @param keepFiles the number of rolled files kept
+     * @param compress  true to compress rolled files with gzip
+     */
+    private static void cleanUp(File file, int keepFiles, boolean compress) {
+        String[] parts = splitName(file);
+        String prefix = parts[0] + "-";
+        String suffix = "." + parts[1];
+        File[] listed = file.getAbsoluteFile().getParentFile().listFiles();
+        if (listed == null) {
+            return;
+        }
+        List<File> rolled = new ArrayList<>();
+        for (File candidate : listed) {
+            String name = candidate.getName();
+            if (!name.startsWith(prefix)) {
+                continue;
+            }
+            if (name.endsWith(suffix) && compress) {
+                File compressed = gzip(candidate);
+                rolled.add(compressed != null ? compressed : candidate);
+            } else if (name.endsWith(suffix) || name.endsWith(suffix + ".gz")) {
+                rolled.add(candidate);
+            } else if (name.endsWith(suffix + ".gz.tmp")) {
+                candidate.delete(); // Left by a compression cut short
+            }
+        }
+        // The timestamps in the names sort oldest first; compare the names without extensions
+        // so a file with a number after its timestamp sorts after the one without
+        rolled.sort((a, b) -> stem(a, suffix).compareTo(stem(b, suffix)));
+        for (int i = 0; i < rolled.size() - keepFiles; i++) {
+            rolled.get(i).delete();
+        }
+    }
+
+    /**
+     * Compresses a file with gzip and deletes the original.
+     *
+     * @param source the file to compress
+     * @return the compressed file, or null if it could not be written
+     */
+    private static File gzip(File source) {
+        File target = new File(source.getPath() + ".gz");
+        File temporary = new File(source.getPath() + ".gz.tmp");
+        try (InputStream in = new FileInputStream(source);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(temporary), BUFFER_SIZE)) {
+            in.transferTo(out);
+        } catch (IOException e) {
+            System.err.println("Failed to compress log file " + source + ": " + e.getMessage());
+            temporary.delete();
+            return null;
+        }
+        try {
+            Files.move(temporary.toPath(), target.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            System.err.println("Failed to compress log file " + source + ": " + e.getMessage());
+            temporary.delete();
+            return null;
+        }
+        source.delete();
+        return target;
+    }
+
+    /**
+     * Gets the name of a rolled file without its extensions.
+     *
+     * @param file   the rolled file
+     * @param suffix the extension of the log, with its dot
+     * @return the name up to the extension
+     */
+    private static String stem(File file, String suffix) {
+        String name = file.getName();
+        return name.substring(0, name.lastIndexOf(suffix));
+    }
+
+    /**
+     * Splits the name of a log file into its base name and extension.
+     *
+     * @param file the log file
+     * @return the base name and the extension, without the dot
+     */
+    private static String[] splitName(File file) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? new String[]{name, ""} : new String[]{name.substring(0, dot), name.substring(dot + 1)};
+    }
+}
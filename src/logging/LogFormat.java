@@ -0,0 +1,42 @@
+package logging;
+
+/**
+ * The LogFormat enum defines how the logger writes its messages to the log file.
+ */
+public enum LogFormat {
+
+    /**
+     * One line of text per message, with a timestamp, written to resources/log.txt.
+     */
+    TEXT("txt"),
+
+    /**
+     * Compact binary records written to resources/log.bin, read back with {@link LogDecoder}.
+     * Each record holds an event type, the time since the previous record and the values of
+     * the message; thread names are written once per file and then referred to by number.
+     */
+    BINARY("bin");
+
+    /**
+     * The file extension of log files in this format.
+     */
+    private final String extension;
+
+    /**
+     * Constructor to create a format.
+     *
+     * @param extension the file extension of log files in this format
+     */
+    LogFormat(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Gets the file extension of log files in this format.
+     *
+     * @return the extension, without the dot
+     */
+    public String getExtension() {
+        return extension;
+    }
+}
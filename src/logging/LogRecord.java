@@ -0,0 +1,86 @@
+package logging;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/**
+ * The LogRecord class holds one logged message: when and by which thread it was logged, its
+ * event type and its values. The text of the message is only built when it is needed.
+ */
+final class LogRecord {
+
+    /**
+     * The time zone timestamps are rendered in.
+     */
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    /**
+     * The time the message was logged, in nanoseconds since the epoch.
+     */
+    final long epochNanos;
+
+    /**
+     * The type of the message.
+     */
+    final LogEvent event;
+
+    /**
+     * The name of the thread that logged the message.
+     */
+    final String thread;
+
+    /**
+     * The first value of the message, such as a ticket id, 0 if the event carries none.
+     */
+    final long first;
+
+    /**
+     * The second value of the message, such as the ticket count of the pool, 0 if the event carries fewer than two.
+     */
+    final long second;
+
+    /**
+     * The text of a {@link LogEvent#TEXT} message, null otherwise.
+     */
+    final String text;
+
+    /**
+     * Constructor to create a record.
+     *
+     * @param epochNanos the time the message was logged, in nanoseconds since the epoch
+     * @param event      the type of the message
+     * @param thread     the name of the thread that logged the message
+     * @param first      the first value
+     * @param second     the second value
+     * @param text       the text of a TEXT message, null otherwise
+     */
+    LogRecord(long epochNanos, LogEvent event, String thread, long first, long second, String text) {
+        this.epochNanos = epochNanos;
+        this.event = event;
+        this.thread = thread;
+        this.first = first;
+        this.second = second;
+        this.text = text;
+    }
+
+    /**
+     * Gets the current time in nanoseconds since the epoch, as precise as the system clock allows.
+     *
+     * @return the current time
+     */
+    static long now() {
+        Instant now = Instant.now();
+        return now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    /**
+     * Renders the record as a line of the text log: the local timestamp, a colon and the message.
+     *
+     * @return the line, without a line separator
+     */
+    String toText() {
+        LocalDateTime time = LocalDateTime.ofInstant(Instant.ofEpochSecond(0, epochNanos), ZONE);
+        return time + " : " + event.render(thread, first, second, text);
+    }
+}
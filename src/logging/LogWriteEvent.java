@@ -0,0 +1,71 @@
+package logging;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * Flight Recorder event for log messages written to the console and the log file. In synchronous
+ * mode it spans one message on the logging thread, including the wait for the logger's lock, so
+ * it shows time a pool thread spends on log I/O while it holds the pool lock. In asynchronous mode
+ * it spans one batch on the background writer.
+ */
+@Name(LogWriteEvent.NAME)
+@Label("Log Write")
+@Category({"Ticketing", "Logging"})
+@Description("Log messages written to the console and the log file")
+@Threshold("100 us")
+@StackTrace(false)
+final class LogWriteEvent extends jdk.jfr.Event {
+
+    /**
+     * The name of the event in recordings.
+     */
+    static final String NAME = "ticketing.LogWrite";
+
+    /**
+     * The format of the log file.
+     */
+    @Label("Format")
+    String format;
+
+    /**
+     * The number of messages written.
+     */
+    @Label("Messages")
+    int messages;
+
+    /**
+     * Whether the messages were written by the background writer.
+     */
+    @Label("Asynchronous")
+    boolean async;
+
+    /**
+     * Whether the file was flushed as part of the write.
+     */
+    @Label("Flushed")
+    boolean flushed;
+
+    /**
+     * Ends the write and commits the event if a recording wants it.
+     *
+     * @param format   the format of the log file
+     * @param messages the number of messages written
+     * @param async    true if the background writer wrote the messages
+     * @param flushed  true if the file was flushed
+     */
+    void finish(LogFormat format, int messages, boolean async, boolean flushed) {
+        end();
+        if (shouldCommit()) {
+            this.format = format.name();
+            this.messages = messages;
+            this.async = async;
+            this.flushed = flushed;
+            commit();
+        }
+    }
+}
@@ -1,20 +1,186 @@
 package logging;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.LocalDateTime;
+import java.util.function.LongSupplier;
 
 /**
  * Logger class provides functionality to log messages to a console and a file.
- * It includes methods to append messages to a log file and clear the log file.
+ * It includes methods to append messages to a log file and roll the log file over.
+ * In asynchronous mode messages are handed to a background writer instead of
+ * being written on the calling thread.
+ *
+ * Frequent messages are logged as a {@link LogEvent} and its values, which are only turned into
+ * text when printed or written to a text log. The log file is written as text or, with the
+ * BINARY format, as compact records read back with {@link LogDecoder}. It is rolled over when
+ * it grows too large or too old and at every start, keeping a number of rolled files.
  */
 public class Logger {
     /**
-     * The path to the log file where messages will be written.
+     * The path of the log file without its extension, which depends on the format.
      */
-    private final static String LOG_FILE = "resources/log.txt";
+    private final static String LOG_FILE = "resources/log";
+
+    /**
+     * How long shutting down waits for rolled files to be compressed, in milliseconds.
+     */
+    private static final long HOUSEKEEPING_WAIT_MILLIS = 5000;
+
+    /**
+     * The format of the log file.
+     */
+    private static LogFormat format = LogFormat.TEXT;
+
+    /**
+     * The size at which the log file is rolled over, in bytes, 0 for no limit.
+     */
+    private static long maxFileBytes = 10L * 1024 * 1024;
+
+    /**
+     * The age at which the log file is rolled over, in milliseconds, 0 for no limit.
+     */
+    private static long rotateMillis = 0;
+
+    /**
+     * The number of rolled log files kept.
+     */
+    private static int keepFiles = 5;
+
+    /**
+     * Flag to indicate rolled log files are compressed with gzip.
+     */
+    private static boolean compress = false;
+
+    /**
+     * The log file written in synchronous mode, opened on the first message.
+     */
+    private static LogFile file;
+
+    /**
+     * The clock timestamping messages, in nanoseconds since the epoch.
+     */
+    private static volatile LongSupplier clock = LogRecord::now;
+
+    /**
+     * Flag to indicate if messages should be logged at all.
+     * Benchmarks switch logging off to measure the ticket pools on their own.
+     */
+    private static volatile boolean enabled = true;
+
+    /**
+     * Flag to indicate if messages should also be printed to the console.
+     */
+    private static volatile boolean consoleEnabled = true;
+
+    /**
+     * The background appender used in asynchronous mode, or null when logging synchronously.
+     */
+    private static volatile AsyncLogAppender appender;
+
+    /**
+     * Flag to indicate the shutdown hook flushing the asynchronous logger has been registered.
+     */
+    private static boolean shutdownHookRegistered = false;
+
+    /**
+     * Switches the logger to asynchronous mode. Messages are queued in a bounded queue and
+     * written to the console and the log file by a background thread, which is flushed and
+     * stopped by {@link #shutdown()} or, failing that, by a JVM shutdown hook.
+     *
+     * @param queueCapacity  the maximum number of messages waiting to be written
+     * @param overflowPolicy what to do with a message when the queue is full
+     */
+    public static synchronized void enableAsync(int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (appender != null) {
+            return; // Already running asynchronously
+        }
+        // The background writer gets a log file of its own
+        closeFile();
+        appender = new AsyncLogAppender(newLogFile(), queueCapacity, overflowPolicy);
+        if (!shutdownHookRegistered) {
+            Runtime.getRuntime().addShutdownHook(new Thread(Logger::shutdown, "Log Shutdown"));
+            shutdownHookRegistered = true;
+        }
+    }
+
+    /**
+     * Writes every queued message, closes the log file and returns to synchronous logging.
+     * Does nothing if the logger is not in asynchronous mode.
+     */
+    public static synchronized void shutdown() {
+        AsyncLogAppender current = appender;
+        if (current != null) {
+            appender = null;
+            current.close();
+        }
+        LogFile.awaitHousekeeping(HOUSEKEEPING_WAIT_MILLIS);
+    }
+
+    /**
+     * Sets the format and rotation of the log file. Takes effect with the next message in
+     * synchronous mode, and the next time asynchronous mode is enabled.
+     *
+     * @param format        the format of the log file
+     * @param maxMegabytes  the size at which the log file is rolled over, in MiB, 0 for no limit
+     * @param rotateMinutes the age at which the log file is rolled over, in minutes, 0 for no limit
+     * @param keepFiles     the number of rolled log files kept, 0 to delete them
+     * @param compress      true to compress rolled log files with gzip
+     */
+    public static synchronized void setFileOptions(LogFormat format, int maxMegabytes, int rotateMinutes,
+                                                   int keepFiles, boolean compress) {
+        closeFile();
+        Logger.format = format == null ? LogFormat.TEXT : format;
+        Logger.maxFileBytes = maxMegabytes * 1024L * 1024L;
+        Logger.rotateMillis = rotateMinutes * 60_000L;
+        Logger.keepFiles = keepFiles;
+        Logger.compress = compress;
+    }
+
+    /**
+     * Enables or disables printing log messages to the console.
+     * Messages are still written to the log file.
+     *
+     * @param consoleEnabled true to print messages, false to only write them to the file
+     */
+    public static void setConsoleEnabled(boolean consoleEnabled) {
+        Logger.consoleEnabled = consoleEnabled;
+    }
+
+    /**
+     * Checks if log messages are printed to the console.
+     *
+     * @return true if messages are printed to the console
+     */
+    static boolean isConsoleEnabled() {
+        return consoleEnabled;
+    }
+
+    /**
+     * Replaces the clock timestamping messages, so a simulation logs its virtual time.
+     *
+     * @param clock the clock in nanoseconds since the epoch, or null for the system clock
+     */
+    public static void setClock(LongSupplier clock) {
+        Logger.clock = clock == null ? LogRecord::now : clock;
+    }
+
+    /**
+     * Enables or disables logging.
+     *
+     * @param enabled true to log messages, false to discard them
+     */
+    public static void setEnabled(boolean enabled) {
+        Logger.enabled = enabled;
+    }
+
+    /**
+     * Checks if logging is enabled, so callers can skip building messages that would be discarded.
+     *
+     * @return true if messages are logged
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
 
     /**
      * Logs a message with a timestamp to both the console and the log file.
@@ -22,53 +188,128 @@ public class Logger {
      * @param message the message to be logged
      */
     public static void log(String message) {
-        // Add a timestamp to the message
-        String timeStampMessage = LocalDateTime.now() + " : " + message;
+        if (enabled) {
+            log(LogEvent.TEXT, 0, 0, message);
+        }
+    }
+
+    /**
+     * Logs an event without values.
+     *
+     * @param event the event to be logged
+     */
+    public static void log(LogEvent event) {
+        if (enabled) {
+            log(event, 0, 0, null);
+        }
+    }
+
+    /**
+     * Logs an event with one value, such as a count or a ticket id.
+     *
+     * @param event the event to be logged
+     * @param value the value of the event
+     */
+    public static void log(LogEvent event, long value) {
+        if (enabled) {
+            log(event, value, 0, null);
+        }
+    }
+
+    /**
+     * Logs an event with two values.
+     *
+     * @param event  the event to be logged
+     * @param first  the first value of the event
+     * @param second the second value of the event
+     */
+    public static void log(LogEvent event, long first, long second) {
+        if (enabled) {
+            log(event, first, second, null);
+        }
+    }
+
+    /**
+     * Timestamps a message and writes it, or hands it to the background writer in asynchronous mode.
+     *
+     * @param event  the event to be logged
+     * @param first  the first value of the event
+     * @param second the second value of the event
+     * @param text   the text of a TEXT message, null otherwise
+     */
+    private static void log(LogEvent event, long first, long second, String text) {
+        // Add a timestamp and the thread to the message
+        LogRecord record = new LogRecord(clock.getAsLong(), event, Thread.currentThread().getName(), first, second, text);
+
+        // In asynchronous mode hand the message to the background writer and return
+        AsyncLogAppender current = appender;
+        while (current != null) {
+            if (current.append(record)) {
+                return;
+            }
+            current = appender; // Closed meanwhile: try its successor, or write the message here
+        }
+
+        LogWriteEvent write = new LogWriteEvent();
+        write.begin();
 
         // Print the message to the console
-        System.out.println(timeStampMessage);
+        if (consoleEnabled) {
+            System.out.println(record.toText());
+        }
 
         // Write the message to the log file, appending to the file
-        writeToFile(timeStampMessage, true);
+        writeToFile(record);
+        write.finish(format, 1, false, true);
     }
 
     /**
-     * Clears the log file by overwriting it with an empty string.
-     * This method is synchronized to ensure thread safety when clearing the log.
+     * Rolls the text and binary log files over, so a new run starts with empty log files and
+     * the previous ones are kept as rolled files.
+     * This method is synchronized to ensure thread safety when rolling the log.
      */
-    public static synchronized void clearLogFile() {
-        // Overwrite the log file with an empty string
-        writeToFile("", false); // Overwrite file
+    public static synchronized void rollLogFile() {
+        closeFile();
+        for (LogFormat each : LogFormat.values()) {
+            LogFile.roll(new File(LOG_FILE + "." + each.getExtension()), keepFiles, compress);
+        }
     }
 
     /**
-     * Writes a message to the log file. If the file or its parent directories do not exist, they are created.
+     * Creates a log file with the current format and rotation.
      *
-     * @param message the message to write to the log file
-     * @param append  true to append to the file, false to overwrite the file
+     * @return the log file, not yet opened
      */
-    private static void writeToFile(String message, boolean append) {
-        // Create a File object representing the log file
-        File file = new File(LOG_FILE); // Log file
-        try {
-            // Check if the file exists; if not, create it along with any necessary parent directories
-            if (!file.exists()) { // Create file if not exists
-                file.getParentFile().mkdirs(); // Create parent directories
-                file.createNewFile(); // Create the file
-            }
+    private static LogFile newLogFile() {
+        return new LogFile(LOG_FILE + "." + format.getExtension(), format, maxFileBytes, rotateMillis, keepFiles, compress);
+    }
 
-            // Use a BufferedWriter to write to the file, appending or overwriting based on the append flag
-            try (BufferedWriter bw = new BufferedWriter(new FileWriter(file, append))) {
-                if (!message.isEmpty()) { // Only write if the message is not empty
-                    bw.write(message); // Write the message to the file
-                    bw.newLine(); // Add a new line after the message
-                }
-            }
+    /**
+     * Closes the log file written in synchronous mode; the next message opens it again.
+     */
+    private static synchronized void closeFile() {
+        if (file != null) {
+            file.close();
+            file = null;
+        }
+    }
+
+    /**
+     * Writes a message to the log file and passes it to the file at once.
+     * If the file or its parent directories do not exist, they are created.
+     *
+     * @param record the message to write to the log file
+     */
+    private static synchronized void writeToFile(LogRecord record) {
+        if (file == null) {
+            file = newLogFile();
+        }
+        try {
+            file.write(record);
+            file.flush();
         } catch (IOException e) {
             // Print an error message to the console if writing to the file fails
             System.err.println("Failed to write to log file: " + e.getMessage()); // Error message
         }
     }
 }
-
-
@@ -0,0 +1,24 @@
+package logging;
+
+/**
+ * The OverflowPolicy enum defines what the asynchronous logger does with a
+ * message when its in-memory queue is full.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Wait until the background writer makes room in the queue.
+     */
+    BLOCK,
+
+    /**
+     * Discard the message and count it as dropped.
+     */
+    DROP,
+
+    /**
+     * Keep one message out of every sample interval, waiting for room for it,
+     * and discard the others.
+     */
+    SAMPLE
+}
@@ -0,0 +1,144 @@
+package metrics;
+
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+/**
+ * The FlightRecording class starts and stops a Java Flight Recorder recording of the ticketing
+ * events to a local file: contended pool lock acquires, waits for space or tickets, log writes and
+ * ticket handoffs, with the JVM's own monitor events for the locks that are still monitors.
+ *
+ * Each event only reaches the recording when it lasts at least its threshold. While no recording
+ * runs the events are disabled and the instrumented code does not commit them, so leaving the
+ * instrumentation in costs close to nothing. Only one recording runs at a time.
+ */
+public final class FlightRecording {
+
+    /**
+     * The file a recording is written to when none is given.
+     */
+    public static final String DEFAULT_FILE = "resources/ticketing.jfr";
+
+    /**
+     * The events recorded, as named by the pool and the logger.
+     */
+    private static final String POOL_LOCK = "ticketing.PoolLock";
+    private static final String POOL_WAIT = "ticketing.PoolWait";
+    private static final String TICKET_HANDOFF = "ticketing.TicketHandoff";
+    private static final String LOG_WRITE = "ticketing.LogWrite";
+
+    /**
+     * The shortest contended lock acquire recorded.
+     */
+    private static Duration lockThreshold = Duration.ofNanos(20_000);
+
+    /**
+     * The shortest wait for space or a ticket recorded.
+     */
+    private static Duration waitThreshold = Duration.ofMillis(1);
+
+    /**
+     * The shortest log write recorded.
+     */
+    private static Duration logWriteThreshold = Duration.ofNanos(100_000);
+
+    /**
+     * The shortest ticket handoff recorded.
+     */
+    private static Duration handoffThreshold = Duration.ofNanos(100_000);
+
+    /**
+     * The running recording, null if none is running.
+     */
+    private static Recording recording;
+
+    /**
+     * The file the running recording is written to.
+     */
+    private static Path destination;
+
+    private FlightRecording() {
+    }
+
+    /**
+     * Sets the thresholds of the recordings started from now on.
+     *
+     * @param lockMicros     the shortest contended lock acquire recorded, in microseconds
+     * @param waitMicros     the shortest wait for space or a ticket recorded, in microseconds
+     * @param logWriteMicros the shortest log write recorded, in microseconds
+     * @param handoffMicros  the shortest ticket handoff recorded, in microseconds
+     */
+    public static synchronized void setThresholds(long lockMicros, long waitMicros, long logWriteMicros, long handoffMicros) {
+        lockThreshold = Duration.ofNanos(lockMicros * 1000);
+        waitThreshold = Duration.ofNanos(waitMicros * 1000);
+        logWriteThreshold = Duration.ofNanos(logWriteMicros * 1000);
+        handoffThreshold = Duration.ofNanos(handoffMicros * 1000);
+    }
+
+    /**
+     * Checks whether a recording is running.
+     *
+     * @return true if a recording is running
+     */
+    public static synchronized boolean isRecording() {
+        return recording != null;
+    }
+
+    /**
+     * Starts recording the ticketing events to a file. The file is written when the recording is
+     * stopped, or when the JVM exits if it is still running then.
+     *
+     * @param file the file to write the recording to, null for the default file
+     * @return the path of the file
+     * @throws IOException           if the directory of the file cannot be created
+     * @throws IllegalStateException if a recording is already running
+     */
+    public static synchronized Path start(String file) throws IOException {
+        if (recording != null) {
+            throw new IllegalStateException("A recording to " + destination + " is already running");
+        }
+        Path path = Paths.get(file == null ? DEFAULT_FILE : file).toAbsolutePath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Recording started = new Recording();
+        started.setName("Ticketing");
+        started.enable(POOL_LOCK).withThreshold(lockThreshold).withoutStackTrace();
+        started.enable(POOL_WAIT).withThreshold(waitThreshold).withoutStackTrace();
+        started.enable(TICKET_HANDOFF).withThreshold(handoffThreshold).withoutStackTrace();
+        started.enable(LOG_WRITE).withThreshold(logWriteThreshold).withoutStackTrace();
+        // Locks that are still monitors, such as the logger's and the pool's list, show up as monitor events
+        started.enable("jdk.JavaMonitorEnter").withThreshold(lockThreshold).withStackTrace();
+        started.enable("jdk.JavaMonitorWait").withThreshold(waitThreshold).withoutStackTrace();
+        started.setDestination(path);
+        started.setDumpOnExit(true);
+        started.start();
+        recording = started;
+        destination = path;
+        return path;
+    }
+
+    /**
+     * Stops the running recording and writes it to its file.
+     *
+     * @return the path of the file written
+     * @throws IllegalStateException if no recording is running
+     */
+    public static synchronized Path stop() {
+        if (recording == null) {
+            throw new IllegalStateException("No recording is running");
+        }
+        try {
+            recording.stop(); // Writes the recording to its destination
+            return destination;
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The LatencyHistogram class records durations in nanoseconds into log-scaled buckets.
+ * Every power of two is split into eight sub-buckets, so a percentile is reported within
+ * about 12% of the recorded value. Recording is a single atomic increment and never locks.
+ */
+public class LatencyHistogram {
+
+    /**
+     * Number of sub-buckets per power of two, as a power of two.
+     */
+    private static final int SUB_BUCKET_BITS = 3;
+
+    /**
+     * Number of sub-buckets per power of two.
+     */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values below this are counted exactly, one bucket per value.
+     */
+    private static final int LINEAR_LIMIT = SUB_BUCKETS * 2;
+
+    /**
+     * Total number of buckets, enough for any positive long.
+     */
+    private static final int BUCKET_COUNT = LINEAR_LIMIT + (64 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    /**
+     * Number of recorded values per bucket.
+     */
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+
+    /**
+     * Number of recorded values.
+     */
+    private final LongAdder count = new LongAdder();
+
+    /**
+     * Sum of the recorded values.
+     */
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * Largest recorded value.
+     */
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a duration.
+     *
+     * @param nanos the duration in nanoseconds; negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        buckets.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    /**
+     * Gets the number of recorded values.
+     *
+     * @return the number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the largest recorded value.
+     *
+     * @return the largest value in nanoseconds
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean of the recorded values.
+     *
+     * @return the mean in nanoseconds, 0 if nothing was recorded
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the value below which the given fraction of the recorded values fall.
+     *
+     * @param quantile the fraction, for example 0.99 for the 99th percentile
+     * @return the upper bound of the bucket holding the percentile, capped at the maximum
+     */
+    public long getPercentile(double quantile) {
+        long total = 0;
+        long[] counts = new long[BUCKET_COUNT];
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(upperBoundOf(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    /**
+     * Clears every recorded value.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    /**
+     * Summarizes the histogram as count, mean, p50, p99, p999 and max, in microseconds.
+     *
+     * @return the summary, in insertion order
+     */
+    public Map<String, Object> summary() {
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("count", getCount());
+        summary.put("meanMicros", micros(Math.round(getMean())));
+        summary.put("p50Micros", micros(getPercentile(0.50)));
+        summary.put("p99Micros", micros(getPercentile(0.99)));
+        summary.put("p999Micros", micros(getPercentile(0.999)));
+        summary.put("maxMicros", micros(getMax()));
+        return summary;
+    }
+
+    /**
+     * Converts nanoseconds to microseconds rounded to one decimal.
+     *
+     * @param nanos the value in nanoseconds
+     * @return the value in microseconds
+     */
+    private static double micros(long nanos) {
+        return Math.round(nanos / 100.0) / 10.0;
+    }
+
+    /**
+     * Finds the bucket a value belongs to.
+     *
+     * @param value a non-negative value
+     * @return the bucket index
+     */
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Finds the largest value that falls into a bucket.
+     *
+     * @param bucket the bucket index
+     * @return the largest value of the bucket
+     */
+    static long upperBoundOf(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        int subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lower = (1L << exponent) + subBucket * width;
+        return lower + width - 1;
+    }
+}
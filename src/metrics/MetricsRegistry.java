@@ -0,0 +1,184 @@
+package metrics;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * The MetricsRegistry class holds the application's named counters, per-key counters,
+ * gauges and latency histograms. Metrics are created on first use and live for the
+ * lifetime of the process; callers on hot paths keep the returned objects in fields
+ * instead of looking them up again.
+ */
+public class MetricsRegistry {
+
+    /**
+     * Named counters.
+     */
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    /**
+     * Named groups of counters, one counter per key such as a thread name.
+     */
+    private static final Map<String, Map<String, LongAdder>> keyedCounters = new ConcurrentHashMap<>();
+
+    /**
+     * Named latency histograms.
+     */
+    private static final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * Named gauges, read when a report is produced.
+     */
+    private static final Map<String, Supplier<Object>> gauges = new ConcurrentHashMap<>();
+
+    /**
+     * Gson instance for writing metrics with pretty printing enabled.
+     */
+    private static final Gson gson = new GsonBuilder().setPrettyPrinting().create();
+
+    /**
+     * Gets or creates a counter.
+     *
+     * @param name the counter name
+     * @return the counter
+     */
+    public static LongAdder counter(String name) {
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Gets or creates the counter for one key of a counter group.
+     *
+     * @param name the counter group name
+     * @param key  the key within the group, for example a thread name
+     * @return the counter
+     */
+    public static LongAdder keyedCounter(String name, String key) {
+        return keyedCounters.computeIfAbsent(name, group -> new ConcurrentHashMap<>())
+                .computeIfAbsent(key, k -> new LongAdder());
+    }
+
+    /**
+     * Gets the counters of a counter group, such as the tickets added by each vendor thread.
+     *
+     * @param name the counter group name
+     * @return a read-only view of the counters by key, empty if none was created yet
+     */
+    public static Map<String, LongAdder> keyedCounters(String name) {
+        return Collections.unmodifiableMap(keyedCounters.computeIfAbsent(name, group -> new ConcurrentHashMap<>()));
+    }
+
+    /**
+     * Gets or creates a latency histogram.
+     *
+     * @param name the histogram name
+     * @return the histogram
+     */
+    public static LatencyHistogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Registers a gauge, replacing any gauge with the same name.
+     *
+     * @param name  the gauge name
+     * @param value supplies the current value when a report is produced
+     */
+    public static void gauge(String name, Supplier<Object> value) {
+        gauges.put(name, value);
+    }
+
+    /**
+     * Resets every counter and histogram to zero. Gauges are left in place.
+     */
+    public static void reset() {
+        counters.values().forEach(LongAdder::reset);
+        keyedCounters.values().forEach(group -> group.values().forEach(LongAdder::reset));
+        histograms.values().forEach(LatencyHistogram::reset);
+    }
+
+    /**
+     * Takes a snapshot of every metric, sorted by name.
+     *
+     * @return the snapshot with counters, keyed counters, gauges and histogram summaries
+     */
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+
+        Map<String, Long> counterValues = new TreeMap<>();
+        counters.forEach((name, counter) -> counterValues.put(name, counter.sum()));
+        snapshot.put("counters", counterValues);
+
+        Map<String, Object> gaugeValues = new TreeMap<>();
+        gauges.forEach((name, gauge) -> gaugeValues.put(name, gauge.get()));
+        snapshot.put("gauges", gaugeValues);
+
+        Map<String, Object> histogramValues = new TreeMap<>();
+        histograms.forEach((name, histogram) -> histogramValues.put(name, histogram.summary()));
+        snapshot.put("histograms", histogramValues);
+
+        Map<String, Map<String, Long>> groups = new TreeMap<>();
+        keyedCounters.forEach((name, group) -> {
+            Map<String, Long> values = new TreeMap<>();
+            group.forEach((key, counter) -> values.put(key, counter.sum()));
+            groups.put(name, values);
+        });
+        snapshot.put("keyedCounters", groups);
+        return snapshot;
+    }
+
+    /**
+     * Renders the counters, gauges and histograms as text for the console.
+     * Keyed counters are summarized by their number of keys and total, and series by their length.
+     *
+     * @return the report
+     */
+    public static String report() {
+        StringBuilder report = new StringBuilder("---- Metrics ----").append(System.lineSeparator());
+        new TreeMap<>(counters).forEach((name, counter) ->
+                report.append(String.format("%-32s %d%n", name, counter.sum())));
+        new TreeMap<>(gauges).forEach((name, gauge) -> {
+            Object value = gauge.get();
+            // Series such as the occupancy history only go into the JSON dump
+            String text = value instanceof Collection ? ((Collection<?>) value).size() + " samples" : String.valueOf(value);
+            report.append(String.format("%-32s %s%n", name, text));
+        });
+        new TreeMap<>(histograms).forEach((name, histogram) ->
+                report.append(String.format("%-32s %s%n", name, histogram.summary())));
+        new TreeMap<>(keyedCounters).forEach((name, group) -> {
+            long total = group.values().stream().mapToLong(LongAdder::sum).sum();
+            report.append(String.format("%-32s %d keys, total %d%n", name, group.size(), total));
+        });
+        return report.toString();
+    }
+
+    /**
+     * Writes a snapshot of every metric to a JSON file.
+     *
+     * @param path the path of the JSON file
+     */
+    public static void writeJson(String path) {
+        File file = new File(path);
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        try (Writer writer = new FileWriter(file)) {
+            gson.toJson(snapshot(), writer);
+        } catch (IOException e) {
+            System.err.println("Failed to write metrics: " + e.getMessage());
+        }
+    }
+}
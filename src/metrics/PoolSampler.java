@@ -0,0 +1,132 @@
+package metrics;
+
+import core.TicketOperations;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The PoolSampler class samples a ticket pool once per interval on a background thread.
+ * It records the pool occupancy and the tickets added and sold per second, publishes the
+ * latest values as gauges and keeps a short history of samples for the JSON dump.
+ */
+public class PoolSampler {
+
+    /**
+     * Number of samples kept in the history.
+     */
+    private static final int HISTORY_SIZE = 120;
+
+    /**
+     * The pool being sampled.
+     */
+    private final TicketOperations ticketPool;
+
+    /**
+     * Time between samples, in milliseconds.
+     */
+    private final long intervalMillis;
+
+    /**
+     * The most recent samples, oldest first.
+     */
+    private final Deque<Map<String, Object>> history = new ArrayDeque<>();
+
+    /**
+     * The background thread taking the samples, null until started.
+     */
+    private Thread samplerThread;
+
+    /**
+     * Latest occupancy and rates.
+     */
+    private volatile int occupancy;
+    private volatile double addedPerSecond;
+    private volatile double soldPerSecond;
+
+    /**
+     * Constructor to create a sampler.
+     *
+     * @param ticketPool     the pool to sample
+     * @param intervalMillis time between samples, in milliseconds
+     */
+    public PoolSampler(TicketOperations ticketPool, long intervalMillis) {
+        this.ticketPool = ticketPool;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Registers the gauges and starts sampling.
+     */
+    public void start() {
+        MetricsRegistry.gauge("pool.occupancy", () -> occupancy);
+        MetricsRegistry.gauge("pool.added.perSecond", () -> Math.round(addedPerSecond));
+        MetricsRegistry.gauge("pool.sold.perSecond", () -> Math.round(soldPerSecond));
+        MetricsRegistry.gauge("pool.history", this::getHistory);
+        samplerThread = new Thread(this::sampleLoop, "Pool Sampler");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+    }
+
+    /**
+     * Stops sampling.
+     */
+    public void stop() {
+        if (samplerThread != null) {
+            samplerThread.interrupt();
+        }
+    }
+
+    /**
+     * Gets a copy of the sample history.
+     *
+     * @return the samples, oldest first
+     */
+    public synchronized List<Map<String, Object>> getHistory() {
+        return new ArrayList<>(history);
+    }
+
+    /**
+     * Main loop of the sampler thread.
+     */
+    private void sampleLoop() {
+        long lastTime = System.nanoTime();
+        int lastAdded = ticketPool.getCounter();
+        int lastSold = ticketPool.getSoldTicketCounter();
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                Thread.sleep(intervalMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            long now = System.nanoTime();
+            int added = ticketPool.getCounter();
+            int sold = ticketPool.getSoldTicketCounter();
+            double seconds = (now - lastTime) / 1_000_000_000.0;
+
+            occupancy = ticketPool.getPoolSize();
+            addedPerSecond = (added - lastAdded) / seconds;
+            soldPerSecond = (sold - lastSold) / seconds;
+
+            Map<String, Object> sample = new LinkedHashMap<>();
+            sample.put("epochMillis", System.currentTimeMillis());
+            sample.put("occupancy", occupancy);
+            sample.put("addedPerSecond", Math.round(addedPerSecond));
+            sample.put("soldPerSecond", Math.round(soldPerSecond));
+            synchronized (this) {
+                if (history.size() == HISTORY_SIZE) {
+                    history.removeFirst();
+                }
+                history.addLast(sample);
+            }
+
+            lastTime = now;
+            lastAdded = added;
+            lastSold = sold;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package metrics;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SalesAnalytics class keeps streaming sales figures for the console {@code top} command:
+ * tickets added and sold per second over sliding 1, 10 and 60 second windows, and the tickets
+ * each vendor released and each customer bought, with their rate over the last 10 seconds.
+ *
+ * It adds nothing to the sell path. The pools already count every ticket in the striped
+ * {@link LongAdder} counters of the {@link MetricsRegistry}, overall and per thread; a background
+ * thread reads their sums every {@link #TICK_MILLIS} ms into ring buffers of time buckets, and a
+ * window rate is the difference between the newest bucket and the bucket the window's length
+ * before it. Reading a sum never blocks the threads adding to it.
+ */
+public class SalesAnalytics {
+
+    /**
+     * Time between samples of the overall counters, in milliseconds.
+     */
+    private static final long TICK_MILLIS = 100;
+
+    /**
+     * Ticks between samples of the per-vendor and per-customer counters.
+     */
+    private static final int TICKS_PER_SECOND = (int) (1000 / TICK_MILLIS);
+
+    /**
+     * Lengths of the sliding windows, in seconds.
+     */
+    private static final int[] WINDOW_SECONDS = {1, 10, 60};
+
+    /**
+     * Buckets in the ring of the overall counters, one more than the ticks of the longest window.
+     */
+    private static final int TICK_BUCKETS = 60 * TICKS_PER_SECOND + 1;
+
+    /**
+     * Length of the window of the per-vendor and per-customer rates, in seconds.
+     */
+    private static final int KEY_WINDOW_SECONDS = 10;
+
+    /**
+     * Buckets in the ring of each vendor and customer, one more than the seconds of their window.
+     */
+    private static final int KEY_BUCKETS = KEY_WINDOW_SECONDS + 1;
+
+    /**
+     * Tickets added to any pool, summed by every vendor thread.
+     */
+    private final LongAdder added = MetricsRegistry.counter("pool.tickets.added");
+
+    /**
+     * Tickets sold from any pool, summed by every customer thread.
+     */
+    private final LongAdder sold = MetricsRegistry.counter("pool.tickets.sold");
+
+    /**
+     * When each bucket of the overall counters was taken, in {@link System#nanoTime()}.
+     */
+    private final long[] tickNanos = new long[TICK_BUCKETS];
+
+    /**
+     * Tickets added and sold so far at each bucket of the overall counters.
+     */
+    private final long[] tickAdded = new long[TICK_BUCKETS];
+    private final long[] tickSold = new long[TICK_BUCKETS];
+
+    /**
+     * Number of buckets of the overall counters taken so far.
+     */
+    private long ticks = 0;
+
+    /**
+     * When each bucket of the per-vendor and per-customer counters was taken, in {@link System#nanoTime()}.
+     */
+    private final long[] secondNanos = new long[KEY_BUCKETS];
+
+    /**
+     * Number of buckets of the per-vendor and per-customer counters taken so far.
+     */
+    private long seconds = 0;
+
+    /**
+     * The rings of every vendor, by thread name.
+     */
+    private final Map<String, KeyWindow> vendors = new HashMap<>();
+
+    /**
+     * The rings of every customer, by thread name.
+     */
+    private final Map<String, KeyWindow> customers = new HashMap<>();
+
+    /**
+     * The background thread taking the samples, null until started.
+     */
+    private Thread samplerThread;
+
+    /**
+     * Registers the window rates as gauges and starts sampling.
+     */
+    public void start() {
+        for (int window : WINDOW_SECONDS) {
+            MetricsRegistry.gauge("sales.added.perSecond." + window + "s", () -> Math.round(getAddedPerSecond(window)));
+            MetricsRegistry.gauge("sales.sold.perSecond." + window + "s", () -> Math.round(getSoldPerSecond(window)));
+        }
+        samplerThread = new Thread(this::sampleLoop, "Sales Analytics");
+        samplerThread.setDaemon(true);
+        samplerThread.start();
+    }
+
+    /**
+     * Stops sampling.
+     */
+    public void stop() {
+        if (samplerThread != null) {
+            samplerThread.interrupt();
+        }
+    }
+
+    /**
+     * Gets the tickets added per second over a sliding window, or over the time sampled so far
+     * if that is shorter.
+     *
+     * @param windowSeconds the length of the window, from 1 to 60 seconds
+     * @return the tickets added per second
+     */
+    public synchronized double getAddedPerSecond(int windowSeconds) {
+        return rate(tickAdded, windowSeconds);
+    }
+
+    /**
+     * Gets the tickets sold per second over a sliding window, or over the time sampled so far
+     * if that is shorter.
+     *
+     * @param windowSeconds the length of the window, from 1 to 60 seconds
+     * @return the tickets sold per second
+     */
+    public synchronized double getSoldPerSecond(int windowSeconds) {
+        return rate(tickSold, windowSeconds);
+    }
+
+    /**
+     * Renders the window rates and the busiest vendors and customers as text for the console.
+     * Vendors and customers are ranked by their rate over the last 10 seconds, then by their total.
+     *
+     * @param limit the most vendors and customers listed
+     * @return the report
+     */
+    public synchronized String top(int limit) {
+        StringBuilder report = new StringBuilder("---- Top ----").append(System.lineSeparator());
+        report.append(String.format("%-24s %12s %12s %12s%n", "tickets/s", "1s", "10s", "60s"));
+        report.append(String.format("%-24s %12.0f %12.0f %12.0f%n", "added",
+                rate(tickAdded, 1), rate(tickAdded, 10), rate(tickAdded, 60)));
+        report.append(String.format("%-24s %12.0f %12.0f %12.0f%n", "sold",
+                rate(tickSold, 1), rate(tickSold, 10), rate(tickSold, 60)));
+        appendBusiest(report, "vendor", "released", vendors, limit);
+        appendBusiest(report, "customer", "bought", customers, limit);
+        return report.toString();
+    }
+
+    /**
+     * Appends the busiest vendors or customers to a report.
+     *
+     * @param report  the report
+     * @param title   the column title of the names
+     * @param counted the column title of the totals
+     * @param windows the rings of the vendors or customers
+     * @param limit   the most listed
+     */
+    private void appendBusiest(StringBuilder report, String title, String counted, Map<String, KeyWindow> windows, int limit) {
+        List<KeyWindow> busiest = new ArrayList<>(windows.values());
+        busiest.sort((a, b) -> {
+            int byRate = Long.compare(b.recent(), a.recent());
+            return byRate != 0 ? byRate : Long.compare(b.total(), a.total());
+        });
+        double windowSeconds = secondsCovered();
+        report.append(System.lineSeparator());
+        report.append(String.format("%-24s %12s %12s%n", title, counted, "per s (10s)"));
+        for (KeyWindow window : busiest.subList(0, Math.min(limit, busiest.size()))) {
+            report.append(String.format("%-24s %12d %12.0f%n", window.name, window.total(),
+                    windowSeconds > 0 ? window.recent() / windowSeconds : 0));
+        }
+        if (busiest.size() > limit) {
+            report.append(String.format("... %d more%n", busiest.size() - limit));
+        }
+    }
+
+    /**
+     * Computes the rate of an overall counter between the newest bucket and the bucket a window before it.
+     *
+     * @param values        the ring of the counter
+     * @param windowSeconds the length of the window
+     * @return the count per second, 0 before two buckets are taken
+     */
+    private double rate(long[] values, int windowSeconds) {
+        if (ticks < 2) {
+            return 0;
+        }
+        long newest = ticks - 1;
+        long oldest = Math.max(0, newest - (long) windowSeconds * TICKS_PER_SECOND);
+        int to = (int) (newest % TICK_BUCKETS);
+        int from = (int) (oldest % TICK_BUCKETS);
+        double elapsed = (tickNanos[to] - tickNanos[from]) / 1e9;
+        return elapsed > 0 ? Math.max(0, values[to] - values[from]) / elapsed : 0;
+    }
+
+    /**
+     * Gets the time between the newest bucket of the per-vendor and per-customer counters and
+     * the oldest bucket of their window.
+     *
+     * @return the time covered, in seconds
+     */
+    private double secondsCovered() {
+        if (seconds < 2) {
+            return 0;
+        }
+        long newest = seconds - 1;
+        long oldest = Math.max(0, newest - KEY_WINDOW_SECONDS);
+        return (secondNanos[(int) (newest % KEY_BUCKETS)] - secondNanos[(int) (oldest % KEY_BUCKETS)]) / 1e9;
+    }
+
+    /**
+     * Main loop of the sampler thread.
+     */
+    private void sampleLoop() {
+        while (!Thread.currentThread().isInterrupted()) {
+            sample();
+            try {
+                Thread.sleep(TICK_MILLIS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Takes a bucket of the overall counters, and once a second a bucket of every vendor and customer.
+     * The sums are read before taking the lock, so the console never waits on the counters.
+     */
+    private void sample() {
+        long now = System.nanoTime();
+        long addedNow = added.sum();
+        long soldNow = sold.sum();
+        boolean perKey = ticks % TICKS_PER_SECOND == 0;
+        Map<String, LongAdder> vendorCounters = perKey ? MetricsRegistry.keyedCounters("vendor.tickets.added") : null;
+        Map<String, LongAdder> customerCounters = perKey ? MetricsRegistry.keyedCounters("customer.tickets.bought") : null;
+        synchronized (this) {
+            int bucket = (int) (ticks % TICK_BUCKETS);
+            tickNanos[bucket] = now;
+            tickAdded[bucket] = addedNow;
+            tickSold[bucket] = soldNow;
+            ticks++;
+            if (perKey) {
+                int second = (int) (seconds % KEY_BUCKETS);
+                secondNanos[second] = now;
+                sampleKeys(vendorCounters, vendors, second);
+                sampleKeys(customerCounters, customers, second);
+                seconds++;
+            }
+        }
+    }
+
+    /**
+     * Takes a bucket of every vendor or customer, adding the rings of those seen for the first time.
+     *
+     * @param counters the counters of the vendors or customers, by thread name
+     * @param windows  the rings of the vendors or customers
+     * @param second   the bucket to write
+     */
+    private void sampleKeys(Map<String, LongAdder> counters, Map<String, KeyWindow> windows, int second) {
+        long oldest = Math.max(0, seconds - KEY_WINDOW_SECONDS);
+        counters.forEach((name, counter) -> windows
+                .computeIfAbsent(name, KeyWindow::new)
+                .sample(counter.sum(), second, (int) (oldest % KEY_BUCKETS)));
+    }
+
+    /**
+     * The ring of one vendor or customer: its total at each of the last seconds.
+     */
+    private static final class KeyWindow {
+
+        /**
+         * The thread name of the vendor or customer.
+         */
+        private final String name;
+
+        /**
+         * The total at each bucket; buckets taken before the vendor or customer was seen count as 0.
+         */
+        private final long[] totals = new long[KEY_BUCKETS];
+
+        /**
+         * The newest total.
+         */
+        private long total;
+
+        /**
+         * The tickets counted between the oldest bucket of the window and the newest.
+         */
+        private long recent;
+
+        /**
+         * Constructor to create the ring of a vendor or customer seen for the first time.
+         *
+         * @param name the thread name
+         */
+        private KeyWindow(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Writes the newest total and updates the count of the window.
+         *
+         * @param value  the newest total
+         * @param bucket the bucket to write
+         * @param oldest the oldest bucket of the window
+         */
+        private void sample(long value, int bucket, int oldest) {
+            totals[bucket] = value;
+            total = value;
+            recent = Math.max(0, value - totals[oldest]);
+        }
+
+        /**
+         * Gets the newest total.
+         *
+         * @return the total
+         */
+        private long total() {
+            return total;
+        }
+
+        /**
+         * Gets the tickets counted over the window.
+         *
+         * @return the tickets of the window
+         */
+        private long recent() {
+            return recent;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package pipeline;
+
+import metrics.MetricsRegistry;
+import util.Ticket;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The CustomerSubscriber class is a customer that buys tickets by asking for them. It requests
+ * a batch of tickets, and once the whole batch has arrived it requests the next one, so it never
+ * has more than a batch outstanding. It stops when the pool completes or fails.
+ */
+public class CustomerSubscriber implements Flow.Subscriber<Ticket> {
+
+    /**
+     * The name of the customer, keying its metrics.
+     */
+    private final String name;
+
+    /**
+     * Tickets requested at a time.
+     */
+    private final int batchSize;
+
+    /**
+     * Tickets bought by this customer, in the per-customer metric.
+     */
+    private final LongAdder bought;
+
+    /**
+     * Released once the pool has completed or failed.
+     */
+    private final CountDownLatch finished = new CountDownLatch(1);
+
+    /**
+     * The subscription to the pool, set once subscribed.
+     */
+    private Flow.Subscription subscription;
+
+    /**
+     * Tickets of the current batch still to arrive.
+     */
+    private int outstanding = 0;
+
+    /**
+     * The error the pool failed with, null if it completed normally or is still running.
+     */
+    private volatile Throwable error;
+
+    /**
+     * Constructor to create a customer subscriber.
+     *
+     * @param name      the name of the customer, such as "Customer 1"
+     * @param batchSize tickets requested at a time, at least 1
+     */
+    public CustomerSubscriber(String name, int batchSize) {
+        this.name = name;
+        this.batchSize = Math.max(1, batchSize);
+        this.bought = MetricsRegistry.keyedCounter("customer.tickets.bought", name);
+    }
+
+    /**
+     * Keeps the subscription and requests the first batch.
+     *
+     * @param subscription the subscription to the pool
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null) {
+            subscription.cancel(); // Subscribed to one pool only
+            return;
+        }
+        this.subscription = subscription;
+        outstanding = batchSize;
+        subscription.request(batchSize);
+    }
+
+    /**
+     * Buys a ticket and requests the next batch once the current one is complete.
+     *
+     * @param ticket the ticket bought
+     */
+    @Override
+    public void onNext(Ticket ticket) {
+        bought.increment();
+        if (--outstanding == 0) {
+            outstanding = batchSize;
+            subscription.request(batchSize);
+        }
+    }
+
+    /**
+     * Records the error the pool failed with and stops.
+     *
+     * @param throwable the error
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        error = throwable;
+        finished.countDown();
+    }
+
+    /**
+     * Stops once the pool has sold every ticket.
+     */
+    @Override
+    public void onComplete() {
+        finished.countDown();
+    }
+
+    /**
+     * Stops buying; the tickets of the current batch not yet delivered stay in the pool.
+     */
+    public void cancel() {
+        Flow.Subscription current = subscription;
+        if (current != null) {
+            current.cancel();
+        }
+        finished.countDown();
+    }
+
+    /**
+     * Waits until the pool has completed or failed.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the customer finished in time
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public boolean awaitFinished(long timeout, TimeUnit unit) throws InterruptedException {
+        return finished.await(timeout, unit);
+    }
+
+    /**
+     * Gets the name of the customer.
+     *
+     * @return the name
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of tickets bought by this customer.
+     *
+     * @return the tickets bought
+     */
+    public long getBoughtTickets() {
+        return bought.sum();
+    }
+
+    /**
+     * Gets the error the pool failed with.
+     *
+     * @return the error, or null if the pool completed normally or is still running
+     */
+    public Throwable getError() {
+        return error;
+    }
+}
@@ -0,0 +1,606 @@
+package pipeline;
+
+import core.PoolListener;
+import logging.LogEvent;
+import logging.Logger;
+import metrics.MetricsRegistry;
+import util.Ticket;
+
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TicketProcessor class is a ticket pool built on {@link Flow}: vendors publish tickets into
+ * it and customers subscribe to it. It is bounded by backpressure rather than by blocking. The
+ * pool only requests as many tickets from its vendors as it has free space, and only hands
+ * tickets to customers that have requested them, so nothing ever waits inside the pool.
+ *
+ * Every change of state, whether a ticket arriving, a customer requesting or a vendor completing,
+ * runs one loop on the thread that caused it. A thread that finds the loop already running leaves
+ * its work to that thread. The loop runs tickets through the {@link TicketStage}s, hands each
+ * customer as many tickets as it asked for in one go, and requests more tickets from the vendors.
+ * With vendors that publish on request the whole sale runs on the threads of the customers,
+ * with no lock and no thread handoff.
+ *
+ * The pool completes its customers once every connected vendor has completed and the last
+ * ticket is sold, and fails them if a vendor or a stage fails.
+ */
+public class TicketProcessor implements Flow.Processor<Ticket, Ticket> {
+
+    /**
+     * Maximum number of tickets in the pool, counting tickets requested from vendors and not yet arrived.
+     */
+    private final int capacity;
+
+    /**
+     * Most tickets requested from one vendor at a time.
+     */
+    private final int requestSize;
+
+    /**
+     * The stages every ticket goes through as it enters the pool, in order.
+     */
+    private final List<TicketStage> stages = new CopyOnWriteArrayList<>();
+
+    /**
+     * The vendors connected to the pool.
+     */
+    private final List<Inlet> inlets = new CopyOnWriteArrayList<>();
+
+    /**
+     * The customers subscribed to the pool.
+     */
+    private final List<Outlet> outlets = new CopyOnWriteArrayList<>();
+
+    /**
+     * Tickets published by vendors and not yet through the stages, from any thread.
+     */
+    private final ConcurrentLinkedQueue<Ticket> arrived = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of tickets in {@link #arrived}.
+     */
+    private final AtomicInteger arrivedCount = new AtomicInteger();
+
+    /**
+     * Tickets through the stages and waiting for a customer, only touched by the loop.
+     */
+    private final ArrayDeque<Ticket> buffer;
+
+    /**
+     * Number of pending runs of the loop; only the caller that raises it from 0 runs the loop.
+     */
+    private final AtomicInteger work = new AtomicInteger();
+
+    /**
+     * The inlet the pool's own subscriber methods use, created on the first {@link #onSubscribe}.
+     */
+    private final AtomicReference<Inlet> primary = new AtomicReference<>();
+
+    /**
+     * The first error of a vendor or stage, null while none has failed.
+     */
+    private final AtomicReference<Throwable> error = new AtomicReference<>();
+
+    /**
+     * Listener notified of every ticket entering the pool and sold.
+     */
+    private volatile PoolListener listener = PoolListener.NONE;
+
+    /**
+     * Total tickets that entered the pool, written by the loop.
+     */
+    private volatile int counter = 0;
+
+    /**
+     * Total tickets sold, written by the loop.
+     */
+    private volatile int soldTicketCounter = 0;
+
+    /**
+     * Set once the pool has completed or failed its customers.
+     */
+    private volatile boolean terminated = false;
+
+    /**
+     * Position of the next vendor to request tickets from and customer to serve, so none is favoured.
+     */
+    private int nextInlet = 0;
+    private int nextOutlet = 0;
+
+    /**
+     * Pipeline-wide counters.
+     */
+    private static final LongAdder ADDED = MetricsRegistry.counter("pipeline.tickets.added");
+    private static final LongAdder SOLD = MetricsRegistry.counter("pipeline.tickets.sold");
+    private static final LongAdder DROPPED = MetricsRegistry.counter("pipeline.tickets.dropped");
+
+    /**
+     * Constructor to create an empty pool.
+     *
+     * @param capacity    the maximum number of tickets in the pool, at least 1
+     * @param requestSize the most tickets requested from one vendor at a time, at least 1
+     */
+    public TicketProcessor(int capacity, int requestSize) {
+        this.capacity = Math.max(1, capacity);
+        this.requestSize = Math.max(1, Math.min(requestSize, this.capacity));
+        this.buffer = new ArrayDeque<>(this.capacity);
+    }
+
+    /**
+     * Adds a stage every ticket goes through as it enters the pool, after the stages added before.
+     *
+     * @param stage the stage
+     * @return this pool, to add more stages
+     */
+    public TicketProcessor addStage(TicketStage stage) {
+        stages.add(stage);
+        return this;
+    }
+
+    /**
+     * Sets the listener notified of every ticket entering the pool and sold, such as the journal.
+     *
+     * @param listener the listener, null to remove it
+     */
+    public void setPoolListener(PoolListener listener) {
+        this.listener = listener == null ? PoolListener.NONE : listener;
+    }
+
+    /**
+     * Connects vendors to the pool. All of them are registered before the first is subscribed,
+     * so the pool does not complete while some of them are still being connected.
+     *
+     * @param vendors the vendors publishing tickets into the pool
+     */
+    @SafeVarargs
+    public final void connect(Flow.Publisher<Ticket>... vendors) {
+        Inlet[] added = new Inlet[vendors.length];
+        for (int i = 0; i < vendors.length; i++) {
+            added[i] = new Inlet();
+            inlets.add(added[i]);
+        }
+        for (int i = 0; i < vendors.length; i++) {
+            vendors[i].subscribe(added[i]);
+        }
+    }
+
+    /**
+     * Subscribes a customer to the pool. A customer subscribing after the pool completed is completed at once.
+     *
+     * @param subscriber the customer
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Ticket> subscriber) {
+        Outlet outlet = new Outlet(subscriber);
+        subscriber.onSubscribe(outlet);
+        outlets.add(outlet);
+        signal();
+    }
+
+    /**
+     * Subscribes the pool to one upstream publisher through its own subscriber methods; further
+     * publishers are connected with {@link #connect}. A second subscription here is cancelled.
+     *
+     * @param subscription the subscription to the publisher
+     */
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        Inlet inlet = new Inlet();
+        if (!primary.compareAndSet(null, inlet)) {
+            subscription.cancel();
+            return;
+        }
+        inlets.add(inlet);
+        inlet.onSubscribe(subscription);
+    }
+
+    /**
+     * Receives a ticket from the publisher subscribed through {@link #onSubscribe}.
+     *
+     * @param ticket the ticket
+     */
+    @Override
+    public void onNext(Ticket ticket) {
+        primary.get().onNext(ticket);
+    }
+
+    /**
+     * Fails the pool with the error of the publisher subscribed through {@link #onSubscribe}.
+     *
+     * @param throwable the error
+     */
+    @Override
+    public void onError(Throwable throwable) {
+        primary.get().onError(throwable);
+    }
+
+    /**
+     * Records that the publisher subscribed through {@link #onSubscribe} has completed.
+     */
+    @Override
+    public void onComplete() {
+        primary.get().onComplete();
+    }
+
+    /**
+     * Gets the total number of tickets that entered the pool.
+     *
+     * @return the tickets added
+     */
+    public int getCounter() {
+        return counter;
+    }
+
+    /**
+     * Gets the total number of tickets sold.
+     *
+     * @return the tickets sold
+     */
+    public int getSoldTicketCounter() {
+        return soldTicketCounter;
+    }
+
+    /**
+     * Gets the number of tickets waiting for a customer.
+     *
+     * @return the tickets in the pool
+     */
+    public int getPoolSize() {
+        return counter - soldTicketCounter;
+    }
+
+    /**
+     * Checks whether the pool has completed or failed its customers.
+     *
+     * @return true once the pool is finished
+     */
+    public boolean isTerminated() {
+        return terminated;
+    }
+
+    /**
+     * Runs the loop, or leaves the work to the thread already running it.
+     */
+    private void signal() {
+        if (work.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        while (true) {
+            try {
+                drain();
+            } catch (RuntimeException e) {
+                // A stage or listener failed; fail the customers instead of losing the loop
+                error.compareAndSet(null, e);
+                drainTermination();
+            }
+            missed = work.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * One pass of the loop: takes in the tickets that arrived, serves the customers, requests
+     * tickets for the free space and completes the customers once the sale is over.
+     */
+    private void drain() {
+        if (error.get() != null) {
+            drainTermination();
+            return;
+        }
+        takeArrived();
+        removeFinishedCustomers();
+        deliver();
+        listener.awaitDurable(); // Once per pass, for every ticket it took in and handed out
+        requestTickets();
+        if (!terminated && allVendorsCompleted() && arrivedCount.get() == 0 && buffer.isEmpty()) {
+            terminated = true;
+        }
+        if (terminated) {
+            drainTermination();
+        }
+    }
+
+    /**
+     * Runs the tickets that arrived through the stages into the buffer.
+     */
+    private void takeArrived() {
+        int added = 0;
+        Ticket ticket;
+        while ((ticket = arrived.poll()) != null) {
+            arrivedCount.decrementAndGet();
+            if (!passesStages(ticket)) {
+                DROPPED.increment();
+                continue;
+            }
+            buffer.add(ticket);
+            listener.ticketAdded(ticket.getId());
+            added++;
+        }
+        if (added > 0) {
+            counter += added;
+            ADDED.add(added);
+            Logger.log(LogEvent.TICKETS_ADDED, added, counter);
+        }
+    }
+
+    /**
+     * Runs a ticket through every stage.
+     *
+     * @param ticket the ticket
+     * @return true if every stage passed it on
+     */
+    private boolean passesStages(Ticket ticket) {
+        for (TicketStage stage : stages) {
+            if (!stage.process(ticket)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Stops serving the customers that cancelled, and fails those that made an invalid request.
+     */
+    private void removeFinishedCustomers() {
+        for (Outlet outlet : outlets) {
+            if (outlet.cancelled) {
+                outlets.remove(outlet);
+            } else if (outlet.error != null) {
+                outlets.remove(outlet);
+                outlet.subscriber.onError(outlet.error);
+            }
+        }
+    }
+
+    /**
+     * Hands the buffered tickets to the customers that asked for them, taking turns between
+     * customers and giving each as many tickets as it asked for at once.
+     */
+    private void deliver() {
+        boolean progress = true;
+        while (!buffer.isEmpty() && progress && !outlets.isEmpty()) {
+            progress = false;
+            int count = outlets.size();
+            for (int i = 0; i < count && !buffer.isEmpty(); i++) {
+                Outlet outlet = outlets.get(Math.floorMod(nextOutlet++, outlets.size()));
+                if (outlet.cancelled || outlet.error != null) {
+                    continue; // Removed on the next pass
+                }
+                long wanted = Math.min(outlet.requested.get(), buffer.size());
+                if (wanted <= 0) {
+                    continue;
+                }
+                for (long sent = 0; sent < wanted; sent++) {
+                    Ticket ticket = buffer.poll();
+                    listener.ticketSold(ticket.getId());
+                    outlet.subscriber.onNext(ticket); // The customer may request more; the loop serves it
+                }
+                outlet.requested.addAndGet(-wanted);
+                soldTicketCounter += (int) wanted;
+                SOLD.add(wanted);
+                Logger.log(LogEvent.TICKETS_REMOVED, wanted);
+                Logger.log(LogEvent.TICKETS_SOLD, soldTicketCounter);
+                progress = true;
+            }
+        }
+    }
+
+    /**
+     * Requests tickets from the vendors with nothing outstanding, taking turns between them,
+     * as long as the tickets in the pool and on their way leave free space.
+     */
+    private void requestTickets() {
+        if (inlets.isEmpty()) {
+            return;
+        }
+        // Read what is outstanding before what has arrived: a ticket arriving in between is counted twice, never missed
+        long outstanding = 0;
+        for (Inlet inlet : inlets) {
+            outstanding += inlet.outstanding.get();
+        }
+        long free = capacity - buffer.size() - arrivedCount.get() - outstanding;
+        int count = inlets.size();
+        for (int i = 0; i < count && free > 0; i++) {
+            Inlet inlet = inlets.get(Math.floorMod(nextInlet++, inlets.size()));
+            Flow.Subscription subscription = inlet.subscription;
+            if (inlet.completed || subscription == null || inlet.outstanding.get() > 0) {
+                continue;
+            }
+            int n = (int) Math.min(requestSize, free);
+            free -= n;
+            inlet.outstanding.addAndGet(n);
+            subscription.request(n); // The vendor may publish right away; the tickets wait in the arrived queue
+        }
+    }
+
+    /**
+     * Checks whether every connected vendor has completed.
+     *
+     * @return true if at least one vendor was connected and all of them have completed
+     */
+    private boolean allVendorsCompleted() {
+        if (inlets.isEmpty()) {
+            return false;
+        }
+        for (Inlet inlet : inlets) {
+            if (!inlet.completed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Completes or fails every customer not yet told, and cancels the vendors if the pool failed.
+     */
+    private void drainTermination() {
+        Throwable failure = error.get();
+        if (failure != null && !terminated) {
+            terminated = true;
+            buffer.clear();
+            for (Inlet inlet : inlets) {
+                Flow.Subscription subscription = inlet.subscription;
+                if (subscription != null && !inlet.completed) {
+                    inlet.completed = true;
+                    subscription.cancel();
+                }
+            }
+        }
+        for (Outlet outlet : outlets) {
+            outlets.remove(outlet);
+            if (outlet.cancelled) {
+                continue;
+            }
+            if (outlet.error != null) {
+                outlet.subscriber.onError(outlet.error);
+            } else if (failure != null) {
+                outlet.subscriber.onError(failure);
+            } else {
+                outlet.subscriber.onComplete();
+            }
+        }
+    }
+
+    /**
+     * The pool's subscription to one vendor.
+     */
+    private final class Inlet implements Flow.Subscriber<Ticket> {
+
+        /**
+         * The subscription to the vendor, set once subscribed.
+         */
+        private volatile Flow.Subscription subscription;
+
+        /**
+         * Tickets requested from the vendor and not yet arrived.
+         */
+        private final AtomicLong outstanding = new AtomicLong();
+
+        /**
+         * Set once the vendor has completed, failed or been cancelled.
+         */
+        private volatile boolean completed = false;
+
+        /**
+         * Keeps the subscription and lets the loop request the first tickets.
+         *
+         * @param subscription the subscription to the vendor
+         */
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            signal();
+        }
+
+        /**
+         * Queues a ticket published by the vendor for the loop.
+         *
+         * @param ticket the ticket
+         */
+        @Override
+        public void onNext(Ticket ticket) {
+            arrived.add(ticket);
+            arrivedCount.incrementAndGet(); // Counted as arrived before it stops counting as outstanding
+            outstanding.decrementAndGet();
+            signal();
+        }
+
+        /**
+         * Fails the pool with the vendor's error.
+         *
+         * @param throwable the error
+         */
+        @Override
+        public void onError(Throwable throwable) {
+            completed = true;
+            error.compareAndSet(null, throwable);
+            signal();
+        }
+
+        /**
+         * Records that the vendor has released its last ticket; what it had not sent frees up.
+         */
+        @Override
+        public void onComplete() {
+            completed = true;
+            outstanding.set(0);
+            signal();
+        }
+    }
+
+    /**
+     * A customer's subscription to the pool.
+     */
+    private final class Outlet implements Flow.Subscription {
+
+        /**
+         * The customer.
+         */
+        private final Flow.Subscriber<? super Ticket> subscriber;
+
+        /**
+         * Tickets the customer has requested and not yet received.
+         */
+        private final AtomicLong requested = new AtomicLong();
+
+        /**
+         * The error of an invalid request, reported to the customer instead of tickets.
+         */
+        private volatile Throwable error;
+
+        /**
+         * Set once the customer cancels.
+         */
+        private volatile boolean cancelled = false;
+
+        /**
+         * Constructor to create the subscription of a customer.
+         *
+         * @param subscriber the customer
+         */
+        private Outlet(Flow.Subscriber<? super Ticket> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds to the tickets the customer wants and lets the loop serve them.
+         *
+         * @param n the number of tickets, at least 1
+         */
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                // The loop reports the error, so it never overlaps a ticket being delivered
+                error = new IllegalArgumentException("Requested " + n + " tickets");
+                signal();
+                return;
+            }
+            requested.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            signal();
+        }
+
+        /**
+         * Stops serving the customer; tickets it asked for and did not get stay in the pool.
+         */
+        @Override
+        public void cancel() {
+            cancelled = true;
+            signal();
+        }
+    }
+}
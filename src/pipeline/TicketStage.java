@@ -0,0 +1,21 @@
+package pipeline;
+
+import util.Ticket;
+
+/**
+ * The TicketStage interface is a step every ticket goes through as it enters a
+ * {@link TicketProcessor}, such as validating it or writing it to a journal. Stages run one after
+ * another on the thread moving the ticket into the pool, so they add no thread handoff; a stage
+ * that blocks holds up the whole pipeline and should stay quick.
+ */
+@FunctionalInterface
+public interface TicketStage {
+
+    /**
+     * Processes a ticket entering the pool.
+     *
+     * @param ticket the ticket
+     * @return true to pass the ticket on, false to drop it
+     */
+    boolean process(Ticket ticket);
+}
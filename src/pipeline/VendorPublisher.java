@@ -0,0 +1,206 @@
+package pipeline;
+
+import metrics.MetricsRegistry;
+import util.Ticket;
+import util.TicketIdGenerator;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The VendorPublisher class is a vendor that releases tickets only when they are asked for.
+ * Instead of blocking on a full pool, it publishes as many tickets as its subscriber has
+ * requested and waits for the next request, so the pool's free space is the only pace.
+ *
+ * Tickets are published on the thread that requests them, and a request made while tickets are
+ * being published is served by the same loop instead of recursing. The vendors of a sale share
+ * an allowance of tickets, and a vendor completes once the allowance is used up.
+ */
+public class VendorPublisher implements Flow.Publisher<Ticket> {
+
+    /**
+     * The index of the vendor, held in the id of every ticket it releases.
+     */
+    private final int vendorIndex;
+
+    /**
+     * The tickets still to be released by all vendors of the sale.
+     */
+    private final AtomicInteger allowance;
+
+    /**
+     * Tickets released by this vendor, in the per-vendor metric.
+     */
+    private final LongAdder released;
+
+    /**
+     * The generator the sequence numbers of the vendor's tickets come from.
+     */
+    private final TicketIdGenerator idGenerator = TicketIdGenerator.shared();
+
+    /**
+     * Set once a subscriber has subscribed; a vendor publishes to one subscriber.
+     */
+    private final AtomicBoolean subscribed = new AtomicBoolean(false);
+
+    /**
+     * Constructor to create a vendor publisher.
+     *
+     * @param vendorIndex the index of the vendor, matching the number in its name
+     * @param allowance   the tickets still to be released by all vendors of the sale, shared between them
+     */
+    public VendorPublisher(int vendorIndex, AtomicInteger allowance) {
+        this.vendorIndex = vendorIndex;
+        this.allowance = allowance;
+        this.released = MetricsRegistry.keyedCounter("vendor.tickets.added", "Vendor " + vendorIndex);
+    }
+
+    /**
+     * Subscribes the pool to the vendor's tickets. A second subscriber is refused with an error.
+     *
+     * @param subscriber the subscriber
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super Ticket> subscriber) {
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("Vendor " + vendorIndex + " already has a subscriber"));
+            return;
+        }
+        Release release = new Release(subscriber);
+        subscriber.onSubscribe(release);
+        release.drain(); // Completes at once if the allowance is already used up
+    }
+
+    /**
+     * Gets the index of the vendor.
+     *
+     * @return the vendor index
+     */
+    public int getVendorIndex() {
+        return vendorIndex;
+    }
+
+    /**
+     * Takes one ticket from the allowance shared by the vendors, without taking it below zero.
+     *
+     * @return true if a ticket was taken, false if the allowance is used up
+     */
+    private boolean takeFromAllowance() {
+        int left;
+        do {
+            left = allowance.get();
+            if (left <= 0) {
+                return false;
+            }
+        } while (!allowance.compareAndSet(left, left - 1));
+        return true;
+    }
+
+    /**
+     * The subscription of the vendor's subscriber, publishing tickets as they are requested.
+     */
+    private final class Release implements Flow.Subscription {
+
+        /**
+         * The subscriber the tickets are published to.
+         */
+        private final Flow.Subscriber<? super Ticket> subscriber;
+
+        /**
+         * Tickets requested and not yet published.
+         */
+        private final AtomicLong demand = new AtomicLong();
+
+        /**
+         * Number of pending calls to the publishing loop; only the caller that raises it from 0 runs the loop.
+         */
+        private final AtomicInteger work = new AtomicInteger();
+
+        /**
+         * Set once the subscriber cancels or the vendor has completed or failed.
+         */
+        private volatile boolean done = false;
+
+        /**
+         * Constructor to create the subscription.
+         *
+         * @param subscriber the subscriber the tickets are published to
+         */
+        private Release(Flow.Subscriber<? super Ticket> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        /**
+         * Adds to the tickets requested and publishes them.
+         *
+         * @param n the number of tickets requested, at least 1
+         */
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                if (!done) {
+                    done = true;
+                    subscriber.onError(new IllegalArgumentException("Requested " + n + " tickets"));
+                }
+                return;
+            }
+            demand.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        /**
+         * Stops publishing; tickets not yet published stay in the allowance for the other vendors.
+         */
+        @Override
+        public void cancel() {
+            done = true;
+        }
+
+        /**
+         * Publishes the requested tickets until the demand or the allowance runs out. Requests
+         * made by the subscriber while it receives a ticket are served by the same loop.
+         */
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return; // The thread already publishing picks up the new demand
+            }
+            int missed = 1;
+            while (true) {
+                long requested = demand.get();
+                long published = 0;
+                while (published < requested && !done) {
+                    if (!takeFromAllowance()) {
+                        break;
+                    }
+                    subscriber.onNext(new Ticket(vendorIndex, idGenerator.nextSequence()));
+                    released.increment();
+                    published++;
+                }
+                if (published > 0) {
+                    demand.addAndGet(-published);
+                }
+                if (!done && allowance.get() <= 0) {
+                    // Every ticket of the sale has been released
+                    done = true;
+                    subscriber.onComplete();
+                }
+                missed = work.addAndGet(-missed);
+                if (missed == 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,514 @@
+package server;
+
+import core.TicketOperations;
+import logging.Logger;
+import metrics.MetricsRegistry;
+import util.Ticket;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The TicketServer class lets buyers outside the JVM reach a ticket pool over TCP on the
+ * loopback interface. One thread runs a {@link Selector} over every connection, so thousands
+ * of buyers cost no thread each.
+ *
+ * The protocol is one ASCII request per line, answered by one line in the same order:
+ * <ul>
+ *     <li>{@code BUY n}: buys up to n tickets (1 to 64), answered {@code OK id...} with the
+ *     packed ticket ids, or {@code NONE} if the pool has no ticket free right now.</li>
+ *     <li>{@code RELEASE id}: puts a ticket bought on the same connection back into the pool,
+ *     answered {@code OK}, {@code FULL} if the pool has no space, or {@code ERR}.</li>
+ *     <li>{@code STATUS}: answered {@code OK pool=n sold=n added=n}.</li>
+ * </ul>
+ * Requests may be pipelined: a buyer can send many before reading the answers. Every pass of
+ * the selector parses the requests of all ready connections first and then serves them as one
+ * batch, so all the BUY requests of a pass take their tickets from the pool in one
+ * {@link TicketOperations#pollTo} call. The pool is never waited on: a BUY that finds no
+ * ticket is answered NONE at once, and the selector thread never blocks or queues in a priority lane.
+ */
+public class TicketServer implements AutoCloseable {
+
+    /**
+     * Most tickets one BUY request may ask for.
+     */
+    public static final int MAX_TICKETS_PER_BUY = 64;
+
+    /**
+     * Longest request line accepted, in bytes; a longer line closes the connection.
+     */
+    private static final int MAX_LINE_BYTES = 256;
+
+    /**
+     * Size of the read buffer of each connection, in bytes.
+     */
+    private static final int READ_BUFFER_BYTES = 4096;
+
+    /**
+     * Answers waiting to be written above which a connection is no longer read, in bytes,
+     * so a buyer that does not read its answers cannot make the server buffer without bound.
+     */
+    private static final int MAX_PENDING_OUTPUT_BYTES = 1 << 20;
+
+    /**
+     * The pool the tickets are bought from.
+     */
+    private final TicketOperations ticketPool;
+
+    /**
+     * Selector over the listening socket and every connection.
+     */
+    private final Selector selector;
+
+    /**
+     * The listening socket.
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The thread running the selector.
+     */
+    private final Thread selectorThread;
+
+    /**
+     * Requests parsed in the current pass of the selector, in arrival order.
+     */
+    private final List<Request> batch = new ArrayList<>();
+
+    /**
+     * Tickets taken from the pool for the BUY requests of the current pass.
+     */
+    private final List<Ticket> bought = new ArrayList<>();
+
+    /**
+     * Connections with answers added in the current pass.
+     */
+    private final Set<Connection> answered = new HashSet<>();
+
+    /**
+     * Builds each answer line.
+     */
+    private final StringBuilder line = new StringBuilder();
+
+    /**
+     * Requests served, batches served and connections accepted.
+     */
+    private final LongAdder requests = MetricsRegistry.counter("server.requests");
+    private final LongAdder batches = MetricsRegistry.counter("server.batches");
+    private final LongAdder accepted = MetricsRegistry.counter("server.connections.accepted");
+
+    /**
+     * Number of open connections, written by the selector thread.
+     */
+    private volatile int openConnections = 0;
+
+    /**
+     * Flag to indicate the server should stop.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * Constructor to open the server on a loopback port and register its gauge.
+     *
+     * @param ticketPool the pool the tickets are bought from
+     * @param port       the port to listen on, 0 for any free port
+     * @throws IOException if the port cannot be opened
+     */
+    public TicketServer(TicketOperations ticketPool, int port) throws IOException {
+        this.ticketPool = ticketPool;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        this.selectorThread = new Thread(this::selectLoop, "Ticket Server");
+        this.selectorThread.setDaemon(true);
+        MetricsRegistry.gauge("server.connections.open", () -> openConnections);
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        selectorThread.start();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     *
+     * @return the port, the one chosen by the system if 0 was asked for
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Stops serving, closing the listening socket and every connection.
+     * Tickets bought through the server stay sold.
+     */
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // Restore the interrupted status
+        }
+        for (SelectionKey key : selector.keys()) {
+            closeQuietly(key);
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            // Nothing left to release
+        }
+    }
+
+    /**
+     * Main loop of the selector thread: reads the requests of every ready connection, serves them
+     * as one batch and writes the answers.
+     */
+    private void selectLoop() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                System.err.println("Ticket server stopped: " + e.getMessage());
+                return;
+            }
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    if (key.isWritable()) {
+                        write(key);
+                    }
+                    if (key.isValid() && key.isReadable()) {
+                        read(key);
+                    }
+                } catch (IOException e) {
+                    closeQuietly(key); // The buyer went away
+                }
+            }
+            serveBatch();
+        }
+    }
+
+    /**
+     * Accepts every pending connection.
+     *
+     * @throws IOException if a connection cannot be set up
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new Connection(key));
+            openConnections++;
+            accepted.increment();
+            Logger.log("Ticket server accepted a connection from " + channel.getRemoteAddress());
+        }
+    }
+
+    /**
+     * Reads what a connection has sent and parses its complete request lines into the batch.
+     *
+     * @param key the key of the connection
+     * @throws IOException if the connection fails
+     */
+    private void read(SelectionKey key) throws IOException {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        if (channel.read(connection.input) < 0) {
+            closeQuietly(key);
+            return;
+        }
+        ByteBuffer input = connection.input;
+        input.flip();
+        int lineStart = input.position();
+        for (int i = input.position(); i < input.limit(); i++) {
+            if (input.get(i) == '\n') {
+                batch.add(parse(connection, input, lineStart, i));
+                lineStart = i + 1;
+            }
+        }
+        input.position(lineStart);
+        input.compact();
+        if (input.position() > MAX_LINE_BYTES) {
+            Logger.log("Ticket server closed a connection sending a line longer than " + MAX_LINE_BYTES + " bytes.");
+            closeQuietly(key);
+        }
+    }
+
+    /**
+     * Parses one request line.
+     *
+     * @param connection the connection the line came from
+     * @param input      the buffer holding the line
+     * @param start      the index of the first byte of the line
+     * @param end        the index of the line feed ending it
+     * @return the request, of type ERROR if the line is not understood
+     */
+    private static Request parse(Connection connection, ByteBuffer input, int start, int end) {
+        if (end > start && input.get(end - 1) == '\r') {
+            end--; // Accept CRLF line ends
+        }
+        byte[] bytes = new byte[end - start];
+        input.get(start, bytes);
+        String[] words = new String(bytes, StandardCharsets.US_ASCII).trim().split(" +");
+        try {
+            switch (words[0].toUpperCase()) {
+                case "BUY":
+                    int count = words.length > 1 ? Integer.parseInt(words[1]) : 1;
+                    if (count >= 1 && count <= MAX_TICKETS_PER_BUY) {
+                        return new Request(connection, RequestType.BUY, count);
+                    }
+                    break;
+                case "RELEASE":
+                    if (words.length == 2) {
+                        return new Request(connection, RequestType.RELEASE, Long.parseLong(words[1]));
+                    }
+                    break;
+                case "STATUS":
+                    return new Request(connection, RequestType.STATUS, 0);
+                default:
+                    break;
+            }
+        } catch (NumberFormatException e) {
+            // Answered as an error below
+        }
+        return new Request(connection, RequestType.ERROR, 0);
+    }
+
+    /**
+     * Serves the requests parsed in this pass in arrival order, taking the tickets of every BUY
+     * request from the pool at once, and writes the answers.
+     */
+    private void serveBatch() {
+        if (batch.isEmpty()) {
+            return;
+        }
+        int wanted = 0;
+        for (Request request : batch) {
+            if (request.type == RequestType.BUY) {
+                wanted += (int) request.argument;
+            }
+        }
+        bought.clear();
+        // A pool may hand out fewer than asked in one step, so ask again until it has none free
+        while (bought.size() < wanted && ticketPool.pollTo(bought, wanted - bought.size()) > 0) {
+            // Keep draining
+        }
+        int next = 0;
+        for (Request request : batch) {
+            Connection connection = request.connection;
+            line.setLength(0);
+            switch (request.type) {
+                case BUY:
+                    if (next == bought.size()) {
+                        line.append("NONE");
+                        break;
+                    }
+                    line.append("OK");
+                    for (int i = 0; i < request.argument && next < bought.size(); i++) {
+                        long ticketId = bought.get(next++).getId();
+                        connection.held.add(ticketId);
+                        line.append(' ').append(ticketId);
+                    }
+                    break;
+                case RELEASE:
+                    if (!connection.held.remove(request.argument)) {
+                        line.append("ERR ticket not bought on this connection");
+                    } else if (ticketPool.returnTicket(new Ticket(request.argument))) {
+                        line.append("OK");
+                    } else {
+                        connection.held.add(request.argument); // Still bought, the buyer may try again
+                        line.append("FULL");
+                    }
+                    break;
+                case STATUS:
+                    line.append("OK pool=").append(ticketPool.getPoolSize())
+                            .append(" sold=").append(ticketPool.getSoldTicketCounter())
+                            .append(" added=").append(ticketPool.getCounter());
+                    break;
+                case ERROR:
+                default:
+                    line.append("ERR expected BUY n, RELEASE id or STATUS");
+            }
+            connection.append(line);
+            answered.add(connection);
+        }
+        requests.add(batch.size());
+        batches.increment();
+        batch.clear();
+        for (Connection connection : answered) {
+            try {
+                write(connection.key);
+            } catch (IOException e) {
+                closeQuietly(connection.key);
+            }
+        }
+        answered.clear();
+    }
+
+    /**
+     * Writes as much of the pending answers of a connection as the socket takes, and only waits
+     * for the socket to become writable while some are left.
+     *
+     * @param key the key of the connection
+     * @throws IOException if the connection fails
+     */
+    private void write(SelectionKey key) throws IOException {
+        if (!key.isValid()) {
+            return;
+        }
+        Connection connection = (Connection) key.attachment();
+        ByteBuffer output = connection.output;
+        output.flip();
+        ((SocketChannel) key.channel()).write(output);
+        output.compact();
+        int interest = SelectionKey.OP_READ;
+        if (output.position() > 0) {
+            interest |= SelectionKey.OP_WRITE;
+            if (output.position() > MAX_PENDING_OUTPUT_BYTES) {
+                interest &= ~SelectionKey.OP_READ; // Stop reading until the buyer reads its answers
+            }
+        }
+        key.interestOps(interest);
+    }
+
+    /**
+     * Closes a connection, or the listening socket, ignoring errors.
+     *
+     * @param key the key of the channel
+     */
+    private void closeQuietly(SelectionKey key) {
+        if (key.attachment() != null && key.isValid()) {
+            openConnections--;
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            // Already closed
+        }
+    }
+
+    /**
+     * The kinds of request.
+     */
+    private enum RequestType {
+        BUY, RELEASE, STATUS, ERROR
+    }
+
+    /**
+     * One parsed request.
+     */
+    private static final class Request {
+
+        /**
+         * The connection the request came from and is answered on.
+         */
+        private final Connection connection;
+
+        /**
+         * The kind of request.
+         */
+        private final RequestType type;
+
+        /**
+         * The number of tickets to buy, or the ticket id to release.
+         */
+        private final long argument;
+
+        /**
+         * Constructor to create a request.
+         *
+         * @param connection the connection the request came from
+         * @param type       the kind of request
+         * @param argument   the number of tickets to buy, or the ticket id to release
+         */
+        private Request(Connection connection, RequestType type, long argument) {
+            this.connection = connection;
+            this.type = type;
+            this.argument = argument;
+        }
+    }
+
+    /**
+     * The state of one buyer connection, only used by the selector thread.
+     */
+    private static final class Connection {
+
+        /**
+         * The key of the connection.
+         */
+        private final SelectionKey key;
+
+        /**
+         * Bytes read and not yet parsed, in write mode.
+         */
+        private final ByteBuffer input = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        /**
+         * Answers not yet written, in write mode.
+         */
+        private ByteBuffer output = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        /**
+         * Ids of the tickets bought on this connection and not released.
+         */
+        private final Set<Long> held = new HashSet<>();
+
+        /**
+         * Constructor to create the state of a new connection.
+         *
+         * @param key the key of the connection
+         */
+        private Connection(SelectionKey key) {
+            this.key = key;
+        }
+
+        /**
+         * Adds an answer line to the pending output, growing the buffer if needed.
+         *
+         * @param answer the answer, ASCII without its line feed
+         */
+        private void append(CharSequence answer) {
+            if (output.remaining() < answer.length() + 1) {
+                ByteBuffer grown = ByteBuffer.allocate(Math.max(output.capacity() * 2, output.position() + answer.length() + 1));
+                output.flip();
+                grown.put(output);
+                output = grown;
+            }
+            for (int i = 0; i < answer.length(); i++) {
+                output.put((byte) answer.charAt(i));
+            }
+            output.put((byte) '\n');
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package simulation;
+
+import java.util.PriorityQueue;
+
+/**
+ * The EventQueue class runs actions in order of a virtual clock, one at a time on the calling
+ * thread. Running an action moves the clock to its time; no real time passes while waiting.
+ *
+ * Actions due at the same time run in the order they were scheduled, so a run depends on
+ * nothing but its inputs and is repeated exactly by running it again.
+ */
+public class EventQueue {
+
+    /**
+     * The actions waiting to run, earliest first.
+     */
+    private final PriorityQueue<Entry> entries = new PriorityQueue<>();
+
+    /**
+     * The current virtual time, in nanoseconds since the start of the run.
+     */
+    private long now = 0;
+
+    /**
+     * The number of actions scheduled so far, ordering actions due at the same time.
+     */
+    private long scheduled = 0;
+
+    /**
+     * The number of actions run so far.
+     */
+    private long executed = 0;
+
+    /**
+     * Gets the current virtual time.
+     *
+     * @return the nanoseconds since the start of the run
+     */
+    public long now() {
+        return now;
+    }
+
+    /**
+     * Gets the number of actions run so far.
+     *
+     * @return the number of actions run
+     */
+    public long getExecutedCount() {
+        return executed;
+    }
+
+    /**
+     * Gets the number of actions waiting to run.
+     *
+     * @return the number of actions waiting
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Schedules an action to run after a delay.
+     *
+     * @param delayNanos the virtual time until the action runs, 0 to run it after the actions due now
+     * @param action     the action
+     */
+    public void schedule(long delayNanos, Runnable action) {
+        entries.add(new Entry(now + Math.max(0, delayNanos), scheduled++, action));
+    }
+
+    /**
+     * Runs the actions in order of their time until none is left or the next is due after the end.
+     *
+     * @param endNanos the virtual time to stop at, or Long.MAX_VALUE to run every action
+     * @return the virtual time the run stopped at: the time of the last action, or the end if actions are left
+     */
+    public long runUntil(long endNanos) {
+        Entry next;
+        while ((next = entries.peek()) != null) {
+            if (next.time > endNanos) {
+                now = endNanos; // The actions left are due after the end
+                return now;
+            }
+            entries.poll();
+            now = next.time;
+            executed++;
+            next.action.run();
+        }
+        return now;
+    }
+
+    /**
+     * An action and the time it is due.
+     */
+    private static final class Entry implements Comparable<Entry> {
+
+        /**
+         * The virtual time the action is due.
+         */
+        private final long time;
+
+        /**
+         * The order the action was scheduled in.
+         */
+        private final long sequence;
+
+        /**
+         * The action.
+         */
+        private final Runnable action;
+
+        /**
+         * Constructor to create an entry.
+         *
+         * @param time     the virtual time the action is due
+         * @param sequence the order the action was scheduled in
+         * @param action   the action
+         */
+        private Entry(long time, long sequence, Runnable action) {
+            this.time = time;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        /**
+         * Orders entries by time, then by the order they were scheduled in.
+         *
+         * @param other the entry to compare with
+         * @return a negative number, zero or a positive number as this entry runs before, with or after the other
+         */
+        @Override
+        public int compareTo(Entry other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}
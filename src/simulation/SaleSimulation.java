@@ -0,0 +1,423 @@
+package simulation;
+
+import configuration.Configurations;
+import core.CustomerClass;
+import core.TicketOperations;
+import core.TicketPoolFactory;
+import logging.LogEvent;
+import logging.Logger;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+import threads.Customer;
+import threads.Pacer;
+import threads.Vendor;
+import util.TicketIdGenerator;
+
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The SaleSimulation class runs a sale on a virtual clock instead of real threads, to answer
+ * capacity questions such as which pool size keeps customer waits short, in a fraction of the
+ * time a live run takes.
+ *
+ * The vendors, customers and pool are the ones a live run uses: vendors release tickets with
+ * {@link Vendor#release(int)}, customers buy with {@link Customer#buyOnce()} and the pool comes
+ * from the {@link TicketPoolFactory}. Instead of sleeping between operations, each vendor and
+ * customer schedules its next step on an {@link EventQueue}, after a pause drawn from an
+ * exponential distribution around the interval of its {@link Pacer}. A vendor finding the pool
+ * full, or a customer finding it empty, waits until a step of the other side makes room or adds
+ * tickets; waiting customers are chosen between the classes by the priority policy, as the
+ * priority lanes of a live pool choose.
+ *
+ * Everything runs on one virtual thread, which takes the name of each vendor or customer as it
+ * steps, so per-thread metrics and log messages read as in a live run. Pauses come from a random
+ * source seeded by the configuration, so a run with the same configuration and seed gives the same
+ * results. Waits are recorded in virtual time in the histograms a live run records real waits in.
+ */
+public class SaleSimulation {
+
+    /**
+     * The configuration of the sale.
+     */
+    private final Configurations configurations;
+
+    /**
+     * The pool the vendors and customers share.
+     */
+    private final TicketOperations ticketPool;
+
+    /**
+     * The actions of the vendors and customers in order of virtual time.
+     */
+    private final EventQueue queue = new EventQueue();
+
+    /**
+     * The generator of the vendors' ticket ids, reading the virtual clock from the id epoch, so a
+     * run with the same configuration and seed releases the same ids.
+     */
+    private final TicketIdGenerator idGenerator =
+            new TicketIdGenerator(() -> TicketIdGenerator.EPOCH_MILLIS + queue.now() / 1_000_000L);
+
+    /**
+     * The random source drawing the pauses.
+     */
+    private final SplittableRandom random;
+
+    /**
+     * Vendors waiting for space in the pool, in the order they started waiting.
+     */
+    private final ArrayDeque<SimulatedVendor> waitingVendors = new ArrayDeque<>();
+
+    /**
+     * Customers waiting for tickets, by class, in the order they started waiting.
+     */
+    private final ArrayDeque<SimulatedCustomer> waitingRegular = new ArrayDeque<>();
+    private final ArrayDeque<SimulatedCustomer> waitingVip = new ArrayDeque<>();
+
+    /**
+     * VIP customers served in a row while a regular customer waited, for the WEIGHTED policy.
+     */
+    private int vipStreak = 0;
+
+    /**
+     * The number of vendors that have not released all their tickets.
+     */
+    private int activeVendors = 0;
+
+    /**
+     * Virtual time vendors waited for space and customers waited for tickets, as in a live run.
+     */
+    private final LatencyHistogram addWait = MetricsRegistry.histogram("pool.addTicket.wait");
+    private final LatencyHistogram removeWait = MetricsRegistry.histogram("pool.removeTicket.wait");
+    private final LatencyHistogram[] removeWaitByClass = {
+            MetricsRegistry.histogram("pool.removeTicket.wait.regular"),
+            MetricsRegistry.histogram("pool.removeTicket.wait.vip")
+    };
+
+    /**
+     * Steps run by the simulation.
+     */
+    private final LongAdder steps = MetricsRegistry.counter("simulation.steps");
+
+    /**
+     * Constructor to create a simulated sale with a new pool, without running it.
+     *
+     * @param configurations the configuration of the sale
+     * @param seed           the seed of the random source drawing the pauses
+     */
+    public SaleSimulation(Configurations configurations, long seed) {
+        this.configurations = configurations;
+        this.ticketPool = TicketPoolFactory.create(configurations);
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * Gets the pool of the simulated sale.
+     *
+     * @return the pool
+     */
+    public TicketOperations getTicketPool() {
+        return ticketPool;
+    }
+
+    /**
+     * Gets the number of steps the vendors and customers took.
+     *
+     * @return the number of steps run
+     */
+    public long getStepCount() {
+        return queue.getExecutedCount();
+    }
+
+    /**
+     * Runs the sale until every ticket is sold, no step is left or the configured duration has
+     * passed in virtual time, then stops the pool.
+     *
+     * @return the virtual time the sale took, in nanoseconds
+     * @throws InterruptedException if the calling thread is interrupted while the simulation runs
+     */
+    public long run() throws InterruptedException {
+        long[] elapsed = new long[1];
+        // Log messages carry the virtual time, counted from the real time the run starts
+        long startEpochNanos = System.currentTimeMillis() * 1_000_000L;
+        Logger.setClock(() -> startEpochNanos + queue.now());
+        try {
+            Thread simulationThread = Thread.ofVirtual().name("Simulation").start(() -> elapsed[0] = simulate());
+            simulationThread.join();
+        } finally {
+            Logger.setClock(null);
+        }
+        return elapsed[0];
+    }
+
+    /**
+     * Creates the vendors and customers, schedules their first steps and runs the event queue.
+     *
+     * @return the virtual time the sale took, in nanoseconds
+     */
+    private long simulate() {
+        for (int i = 0; i < configurations.getNumberOfVendors(); i++) {
+            Pacer pacer = Pacer.create(configurations.getPacingMode(), configurations.getReleaseRates());
+            Vendor vendor = new Vendor(ticketPool, i, pacer, configurations.getTotalTickets(), configurations.getReleaseBatchSize());
+            vendor.setIdGenerator(idGenerator);
+            start(new SimulatedVendor("Vendor " + i, vendor, pacer));
+            activeVendors++;
+        }
+        for (CustomerClass customerClass : CustomerClass.values()) {
+            String prefix = customerClass == CustomerClass.VIP ? "VIP Customer " : "Customer ";
+            for (int i = 0; i < configurations.getNumberOfCustomers(); i++) {
+                Pacer pacer = Pacer.create(configurations.getPacingMode(), configurations.getRetrievalRate());
+                Customer customer = new Customer(ticketPool, pacer, configurations.getTotalTickets(),
+                        configurations.getRetrievalBatchSize(), customerClass);
+                start(new SimulatedCustomer(prefix + i, customer, pacer));
+            }
+        }
+        long end = configurations.getDurationSeconds() > 0
+                ? configurations.getDurationSeconds() * 1_000_000_000L : Long.MAX_VALUE;
+        long elapsed = queue.runUntil(end);
+        ticketPool.setStopFlag(true);
+        return elapsed;
+    }
+
+    /**
+     * Schedules the first step of a vendor or customer after a pause, so they do not all start at once.
+     *
+     * @param actor the vendor or customer
+     */
+    private void start(Actor actor) {
+        queue.schedule(pause(actor.pacer.getIntervalNanos()), actor);
+    }
+
+    /**
+     * Draws a pause from an exponential distribution, so steps arrive like independent buyers do.
+     *
+     * @param meanNanos the mean pause, 0 for none
+     * @return the pause in nanoseconds
+     */
+    private long pause(long meanNanos) {
+        if (meanNanos <= 0) {
+            return 0;
+        }
+        return (long) (-Math.log(1.0 - random.nextDouble()) * meanNanos);
+    }
+
+    /**
+     * Wakes up to the given number of waiting vendors, as a live pool does when tickets are bought.
+     *
+     * @param count the number of places freed
+     */
+    private void wakeVendors(int count) {
+        for (int i = 0; i < count && !waitingVendors.isEmpty(); i++) {
+            queue.schedule(0, waitingVendors.poll());
+        }
+    }
+
+    /**
+     * Wakes up to the given number of waiting customers, chosen between the classes by the
+     * priority policy as a live pool chooses between its priority lanes.
+     *
+     * @param count the number of tickets added
+     */
+    private void wakeCustomers(int count) {
+        for (int i = 0; i < count; i++) {
+            SimulatedCustomer customer = nextCustomer();
+            if (customer == null) {
+                return;
+            }
+            queue.schedule(0, customer);
+        }
+    }
+
+    /**
+     * Takes the waiting customer served next. With STRICT, VIP customers go first until a regular
+     * customer has waited the starvation time; with WEIGHTED, VIP customers get the configured
+     * number of tickets for every regular ticket; with NONE, the customer waiting longest goes first.
+     *
+     * @return the customer, or null if none is waiting
+     */
+    private SimulatedCustomer nextCustomer() {
+        SimulatedCustomer vip = waitingVip.peek();
+        SimulatedCustomer regular = waitingRegular.peek();
+        if (vip == null || regular == null) {
+            vipStreak = 0;
+            return vip != null ? waitingVip.poll() : waitingRegular.poll();
+        }
+        boolean serveVip;
+        switch (configurations.getPriorityPolicy()) {
+            case STRICT:
+                serveVip = queue.now() - regular.waitingSince < configurations.getVipStarvationMillis() * 1_000_000L;
+                break;
+            case WEIGHTED:
+                serveVip = vipStreak < Math.max(1, configurations.getVipWeight());
+                break;
+            case NONE:
+            default:
+                serveVip = vip.waitingSince <= regular.waitingSince;
+        }
+        if (serveVip) {
+            vipStreak++;
+            return waitingVip.poll();
+        }
+        vipStreak = 0;
+        return waitingRegular.poll();
+    }
+
+    /**
+     * A simulated vendor or customer: each run is one step taken under its own thread name.
+     */
+    private abstract class Actor implements Runnable {
+
+        /**
+         * The thread name a live run gives the vendor or customer.
+         */
+        private final String name;
+
+        /**
+         * The pacer holding the interval between two steps.
+         */
+        final Pacer pacer;
+
+        /**
+         * The virtual time the actor started waiting on the pool, -1 if it is not waiting.
+         */
+        long waitingSince = -1;
+
+        /**
+         * Constructor to create an actor.
+         *
+         * @param name  the thread name a live run gives the vendor or customer
+         * @param pacer the pacer holding the interval between two steps
+         */
+        Actor(String name, Pacer pacer) {
+            this.name = name;
+            this.pacer = pacer;
+        }
+
+        /**
+         * Takes one step under the name of the vendor or customer.
+         */
+        @Override
+        public void run() {
+            Thread.currentThread().setName(name);
+            steps.increment();
+            step();
+        }
+
+        /**
+         * Schedules the next step after a pause.
+         */
+        void scheduleNext() {
+            queue.schedule(pause(pacer.getIntervalNanos()), this);
+        }
+
+        /**
+         * Takes one step: one release or one purchase, or starts waiting on the pool.
+         */
+        abstract void step();
+    }
+
+    /**
+     * A simulated vendor.
+     */
+    private final class SimulatedVendor extends Actor {
+
+        /**
+         * The vendor releasing the tickets.
+         */
+        private final Vendor vendor;
+
+        /**
+         * Constructor to create a simulated vendor.
+         *
+         * @param name   the thread name a live run gives the vendor
+         * @param vendor the vendor releasing the tickets
+         * @param pacer  the pacer of the vendor
+         */
+        SimulatedVendor(String name, Vendor vendor, Pacer pacer) {
+            super(name, pacer);
+            this.vendor = vendor;
+        }
+
+        /**
+         * Releases a batch of tickets, or waits for space if the pool is full.
+         */
+        @Override
+        void step() {
+            int released = vendor.isFinished() ? 0 : vendor.release(configurations.getReleaseBatchSize());
+            if (released == 0) {
+                if (vendor.isFinished()) {
+                    activeVendors--;
+                    return;
+                }
+                if (waitingSince < 0) {
+                    waitingSince = queue.now();
+                    Logger.log(LogEvent.POOL_FULL);
+                }
+                waitingVendors.add(this); // The pool is full; a purchase wakes the vendor
+                return;
+            }
+            if (waitingSince >= 0) {
+                addWait.record(queue.now() - waitingSince);
+                waitingSince = -1;
+            }
+            wakeCustomers(released);
+            scheduleNext();
+        }
+    }
+
+    /**
+     * A simulated customer.
+     */
+    private final class SimulatedCustomer extends Actor {
+
+        /**
+         * The customer buying the tickets.
+         */
+        private final Customer customer;
+
+        /**
+         * Constructor to create a simulated customer.
+         *
+         * @param name     the thread name a live run gives the customer
+         * @param customer the customer buying the tickets
+         * @param pacer    the pacer of the customer
+         */
+        SimulatedCustomer(String name, Customer customer, Pacer pacer) {
+            super(name, pacer);
+            this.customer = customer;
+        }
+
+        /**
+         * Buys tickets, or waits for tickets if the pool is empty.
+         */
+        @Override
+        void step() {
+            if (customer.isFinished()) {
+                return;
+            }
+            int bought = customer.buyOnce();
+            if (bought == 0) {
+                if (activeVendors == 0) {
+                    return; // No ticket will be added again
+                }
+                if (waitingSince < 0) {
+                    waitingSince = queue.now();
+                    Logger.log(LogEvent.POOL_EMPTY);
+                }
+                // The pool is empty; a release wakes the customer
+                (customer.getCustomerClass() == CustomerClass.VIP ? waitingVip : waitingRegular).add(this);
+                return;
+            }
+            if (waitingSince >= 0) {
+                long waited = queue.now() - waitingSince;
+                removeWait.record(waited);
+                removeWaitByClass[customer.getCustomerClass().ordinal()].record(waited);
+                waitingSince = -1;
+            }
+            wakeVendors(bought);
+            scheduleNext();
+        }
+    }
+}
@@ -1,7 +1,16 @@
 package threads;
 
 import core.AbstractTicketHandler;
-import core.TicketPool;
+import core.CustomerClass;
+import core.TicketEvent;
+import core.TicketHolds;
+import core.TicketOperations;
+import util.Ticket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Customer class represents a thread that simulates a customer retrieving tickets from the TicketPool.
@@ -10,15 +19,40 @@ import core.TicketPool;
 public class Customer extends AbstractTicketHandler implements Runnable {
 
     /**
-     * The rate at which tickets are retrieved, in milliseconds.
+     * The longest a customer waits for a ticket before checking the stop flag again, in milliseconds.
      */
-    private int retrievalRate;
+    private static final long WAIT_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Spaces out the retrievals according to the retrieval rate.
+     */
+    private final Pacer pacer;
 
     /**
      * The total number of tickets the customer is allowed to retrieve.
      */
     private  final int totalTickets;
 
+    /**
+     * The number of tickets retrieved in one step.
+     */
+    private final int batchSize;
+
+    /**
+     * The priority class the customer waits for tickets in.
+     */
+    private final CustomerClass customerClass;
+
+    /**
+     * The holds the customer reserves tickets through, or null to buy tickets directly.
+     */
+    private TicketHolds holds;
+
+    /**
+     * Percentage of held tickets the customer abandons instead of buying.
+     */
+    private int abandonPercent;
+
     /**
      * Constructor for the Customer class.
      *
@@ -26,13 +60,76 @@ public class Customer extends AbstractTicketHandler implements Runnable {
      * @param retrievalRate the rate at which tickets are retrieved (in milliseconds)
      * @param totalTickets  the total number of tickets the customer can retrieve
      */
-    public Customer(TicketPool ticketPool, int retrievalRate, int totalTickets) {
+    public Customer(TicketOperations ticketPool, int retrievalRate, int totalTickets) {
+        this(ticketPool, retrievalRate, totalTickets, 1);
+    }
+
+    /**
+     * Constructor for the Customer class with a retrieval batch size.
+     *
+     * @param ticketPool    the TicketPool from which tickets will be retrieved
+     * @param retrievalRate the rate at which tickets are retrieved (in milliseconds)
+     * @param totalTickets  the total number of tickets the customer can retrieve
+     * @param batchSize     the number of tickets retrieved in one step
+     */
+    public Customer(TicketOperations ticketPool, int retrievalRate, int totalTickets, int batchSize) {
+        this(ticketPool, Pacer.create(PacingMode.SLEEP, retrievalRate), totalTickets, batchSize);
+    }
+
+    /**
+     * Constructor for the Customer class with a pacer and a retrieval batch size.
+     *
+     * @param ticketPool   the TicketPool from which tickets will be retrieved
+     * @param pacer        spaces out the retrievals, owned by this customer
+     * @param totalTickets the total number of tickets the customer can retrieve
+     * @param batchSize    the number of tickets retrieved in one step
+     */
+    public Customer(TicketOperations ticketPool, Pacer pacer, int totalTickets, int batchSize) {
+        this(ticketPool, pacer, totalTickets, batchSize, CustomerClass.REGULAR);
+    }
+
+    /**
+     * Constructor for the Customer class with a pacer, a retrieval batch size and a priority class.
+     *
+     * @param ticketPool    the TicketPool from which tickets will be retrieved
+     * @param pacer         spaces out the retrievals, owned by this customer
+     * @param totalTickets  the total number of tickets the customer can retrieve
+     * @param batchSize     the number of tickets retrieved in one step
+     * @param customerClass the priority class the customer waits for tickets in
+     */
+    public Customer(TicketOperations ticketPool, Pacer pacer, int totalTickets, int batchSize, CustomerClass customerClass) {
         super(ticketPool);
-        this.retrievalRate = retrievalRate;
+        this.pacer = pacer;
         this.totalTickets = totalTickets;
+        this.batchSize = Math.max(1, batchSize);
+        this.customerClass = customerClass;
+    }
+
+    /**
+     * Constructor for a Customer buying the tickets of one event of a registry.
+     *
+     * @param event         the event whose pool the customer buys from, up to the event's ticket count
+     * @param pacer         spaces out the retrievals, owned by this customer
+     * @param batchSize     the number of tickets retrieved in one step
+     * @param customerClass the priority class the customer waits for tickets in
+     */
+    public Customer(TicketEvent event, Pacer pacer, int batchSize, CustomerClass customerClass) {
+        this(event.getTicketPool(), pacer, event.getTotalTickets(), batchSize, customerClass);
     }
 
 
+    /**
+     * Makes the customer reserve each ticket before buying it, abandoning some of the holds.
+     * Tickets are then reserved one at a time, whatever the batch size.
+     *
+     * @param holds          the holds to reserve tickets through
+     * @param abandonPercent percentage of held tickets left to expire instead of bought
+     */
+    public void useHolds(TicketHolds holds, int abandonPercent) {
+        this.holds = holds;
+        this.abandonPercent = abandonPercent;
+    }
+
     /**
      * Handles ticket retrieval logic by invoking the run method.
      * This method overrides the handlerTickets method in the AbstractTicketHandler class.
@@ -48,20 +145,88 @@ public class Customer extends AbstractTicketHandler implements Runnable {
      * It continuously retrieves tickets from the TicketPool until a stop condition is met.
      */
     @Override
-    public synchronized void run() {
+    public void run() {
 
         // Continue retrieving tickets as long as the stop flag is not set
         // and the total tickets sold is within the allowed limit
-        while (!ticketpool.shouldStop() && ticketpool.getSoldTicketCounter()<= totalTickets){
-            ticketpool.removeTicket(); // Remove a ticket from the pool
+        List<Ticket> purchased = new ArrayList<>(batchSize);
+        while (!ticketpool.shouldStop() && !isRetired() && boughtTickets() <= totalTickets){
+            if (holds != null) {
+                // Reserve a ticket, then buy it or abandon the cart and let the hold expire
+                long hold = holds.reserve(customerClass, WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                if (hold == TicketHolds.NO_HOLD) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break; // Exit the loop if interrupted
+                    }
+                    continue; // Still empty, try again without pausing
+                }
+                if (ThreadLocalRandom.current().nextInt(100) >= abandonPercent) {
+                    holds.confirm(hold);
+                }
+            } else if (batchSize == 1) {
+                // Remove a ticket from the pool, waiting a bounded time so the stop flag is checked again regularly
+                if (ticketpool.tryRemoveTicket(customerClass, WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS).isEmpty()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        break; // Exit the loop if interrupted
+                    }
+                    continue; // Still empty, try again without pausing
+                }
+            } else {
+                ticketpool.drainTo(purchased, batchSize, customerClass); // Remove up to a batch of tickets in one step
+                purchased.clear();
+            }
             try {
                 // Pause the thread for the specified retrieval rate
-                Thread.sleep(retrievalRate * 500);
+                pacer.pace();
             } catch (InterruptedException e) {
-                // Handle interruption during sleep
+                // Handle interruption while waiting
                 Thread.currentThread().interrupt(); // Restore the interrupted status
                 break; // Exit the loop if interrupted
             }
         }
     }
+
+    /**
+     * Buys tickets once without waiting, for a caller that drives the customer itself instead of
+     * running it on a thread, such as the simulation. Buys one ticket, or up to a batch with a
+     * batch size above one. Holds are not used.
+     *
+     * @return the number of tickets bought, 0 if the pool was empty
+     */
+    public int buyOnce() {
+        if (batchSize == 1) {
+            return ticketpool.tryRemoveTicket(customerClass, 0, TimeUnit.NANOSECONDS).isPresent() ? 1 : 0;
+        }
+        List<Ticket> purchased = new ArrayList<>(batchSize);
+        return ticketpool.tryDrainTo(purchased, batchSize, 0, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Checks if the customer has stopped buying: the pool was stopped, the customer was retired
+     * or every ticket was bought.
+     *
+     * @return true if the customer buys no more tickets
+     */
+    public boolean isFinished() {
+        return ticketpool.shouldStop() || isRetired() || boughtTickets() > totalTickets;
+    }
+
+    /**
+     * Gets the class of the customer.
+     *
+     * @return the customer class
+     */
+    public CustomerClass getCustomerClass() {
+        return customerClass;
+    }
+
+    /**
+     * Gets the number of tickets bought so far. Held tickets are not counted, as an expired
+     * hold puts its ticket back for the customers to buy.
+     *
+     * @return the tickets sold and not held
+     */
+    private int boughtTickets() {
+        return ticketpool.getSoldTicketCounter() - (holds == null ? 0 : holds.getHeldCount());
+    }
 }
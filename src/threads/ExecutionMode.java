@@ -0,0 +1,17 @@
+package threads;
+
+/**
+ * The ExecutionMode enum defines what kind of threads run the vendors and customers.
+ */
+public enum ExecutionMode {
+
+    /**
+     * One platform thread per vendor and customer.
+     */
+    PLATFORM_THREADS,
+
+    /**
+     * One virtual thread per vendor and customer, so tens of thousands of customers can be simulated.
+     */
+    VIRTUAL_THREADS
+}
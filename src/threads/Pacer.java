@@ -0,0 +1,147 @@
+package threads;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The Pacer class spaces out the operations of one vendor or customer.
+ * Paced modes work from a schedule of deadlines rather than a fixed pause after each
+ * operation, so the time an operation takes does not lower the rate. A thread that falls
+ * behind catches up by skipping the wait, but if it falls more than 10 ms (or one interval)
+ * behind it restarts its schedule instead of bursting.
+ * A pacer holds the schedule of a single thread and is not shared, but its rate may be
+ * changed from another thread while it runs.
+ */
+public class Pacer {
+
+    /**
+     * How long before a deadline a spinning pacer stops parking, in nanoseconds.
+     */
+    private static final long SPIN_THRESHOLD_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    /**
+     * How far a thread may fall behind its schedule and still catch up, in nanoseconds.
+     */
+    private static final long MAX_LAG_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    /**
+     * The pacing mode the pacer was created with, which a rate change keeps.
+     */
+    private final PacingMode configuredMode;
+
+    /**
+     * How the pacer waits, NONE while the rate is 0.
+     */
+    private volatile PacingMode mode;
+
+    /**
+     * The time between two operations, in nanoseconds.
+     */
+    private volatile long intervalNanos;
+
+    /**
+     * The {@link System#nanoTime()} at which the next operation is due, 0 before the first operation.
+     */
+    private long nextDeadline = 0;
+
+    /**
+     * Constructor to create a pacer for a configured mode; the rate is set afterwards.
+     *
+     * @param configuredMode how the pacer waits, null selects SLEEP
+     */
+    private Pacer(PacingMode configuredMode) {
+        this.configuredMode = configuredMode == null ? PacingMode.SLEEP : configuredMode;
+    }
+
+    /**
+     * Creates a pacer for a rate from the configuration.
+     * With SLEEP the rate is the number of half seconds to sleep, otherwise operations per second;
+     * a rate of 0 or less runs unpaced.
+     *
+     * @param mode how the pacer waits, null selects SLEEP
+     * @param rate the configured release or retrieval rate
+     * @return the pacer
+     */
+    public static Pacer create(PacingMode mode, int rate) {
+        Pacer pacer = new Pacer(mode);
+        pacer.setRate(rate);
+        return pacer;
+    }
+
+    /**
+     * Changes the rate, taking effect from the next operation, so a running thread can be sped
+     * up or slowed down. The rate has the same meaning as in {@link #create(PacingMode, int)}.
+     *
+     * @param rate the new release or retrieval rate
+     */
+    public void setRate(int rate) {
+        if (configuredMode == PacingMode.SLEEP) {
+            intervalNanos = TimeUnit.MILLISECONDS.toNanos(rate * 500L);
+            mode = PacingMode.SLEEP;
+        } else if (configuredMode == PacingMode.NONE || rate <= 0) {
+            intervalNanos = 0;
+            mode = PacingMode.NONE;
+        } else {
+            intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+            // Only vendors are driven by the release scheduler, threads that pace themselves park
+            mode = configuredMode == PacingMode.SCHEDULED ? PacingMode.PARK : configuredMode;
+        }
+    }
+
+    /**
+     * Gets the time between two operations at the current rate.
+     *
+     * @return the interval in nanoseconds, 0 when unpaced
+     */
+    public long getIntervalNanos() {
+        return intervalNanos;
+    }
+
+    /**
+     * Waits until the next operation is due.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    public void pace() throws InterruptedException {
+        switch (mode) {
+            case SLEEP:
+                Thread.sleep(TimeUnit.NANOSECONDS.toMillis(intervalNanos));
+                return;
+            case NONE:
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                return;
+            default:
+                awaitDeadline();
+        }
+    }
+
+    /**
+     * Moves the schedule on by one interval and waits for the new deadline,
+     * parking and, in SPIN_PARK mode, spinning for the last few microseconds.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting
+     */
+    private void awaitDeadline() throws InterruptedException {
+        long now = System.nanoTime();
+        if (nextDeadline == 0 || now - nextDeadline > Math.max(intervalNanos, MAX_LAG_NANOS)) {
+            nextDeadline = now; // First operation, or too far behind to catch up
+        }
+        nextDeadline += intervalNanos;
+        long parkUntil = mode == PacingMode.SPIN_PARK ? nextDeadline - SPIN_THRESHOLD_NANOS : nextDeadline;
+        while (true) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            long remaining = parkUntil - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+        }
+        while (System.nanoTime() - nextDeadline < 0) {
+            Thread.onSpinWait(); // Only reached in SPIN_PARK mode
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package threads;
+
+/**
+ * The PacingMode enum defines how vendors and customers wait between operations.
+ * In every mode except SLEEP the release and retrieval rates are operations per second per thread.
+ */
+public enum PacingMode {
+
+    /**
+     * Sleeps rate * 500 milliseconds between operations, the interactive behavior.
+     */
+    SLEEP,
+
+    /**
+     * Parks with {@link java.util.concurrent.locks.LockSupport#parkNanos(long)} until the next operation is due.
+     */
+    PARK,
+
+    /**
+     * Parks until shortly before the next operation is due, then spins, for rates above what parking can hit precisely.
+     */
+    SPIN_PARK,
+
+    /**
+     * Does not wait between operations.
+     */
+    NONE,
+
+    /**
+     * Vendors are driven by the timer threads of a {@link ReleaseScheduler} instead of a thread each;
+     * customers pace as with PARK.
+     */
+    SCHEDULED
+}
@@ -0,0 +1,327 @@
+package threads;
+
+import logging.Logger;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The ReleaseScheduler class drives many vendors from a few timer threads, instead of one
+ * thread per vendor sleeping between releases.
+ *
+ * Every vendor gets a token bucket. The vendors are dealt out over the timer threads, and each
+ * timer thread ticks its vendors at a fixed rate: a tick adds the tokens earned since the last
+ * tick, at the vendor's rate, and releases one ticket per whole token. Tokens are earned from the
+ * measured time between ticks, so a late or slow tick is made up by the next one and the release
+ * rate does not drift. A bucket holds at most the burst allowance, so a vendor that was held back
+ * by a full pool releases at most that many tickets at once when space frees up. Releases never
+ * wait on the pool, so one slow pool does not hold up the other vendors of a timer thread.
+ *
+ * Rates can be changed while the scheduler runs, for one vendor or all of them.
+ * A vendor leaves the scheduler once it has released its tickets or its pool is stopped.
+ */
+public class ReleaseScheduler {
+
+    /**
+     * Time between two ticks of a timer thread, in milliseconds.
+     */
+    private static final long TICK_MILLIS = 10;
+
+    /**
+     * Timer threads ticking the vendors.
+     */
+    private final ScheduledExecutorService timers;
+
+    /**
+     * The vendors of each timer thread.
+     */
+    private final Shard[] shards;
+
+    /**
+     * The number of vendors scheduled so far, choosing the timer thread of the next one.
+     */
+    private final AtomicInteger nextShard = new AtomicInteger();
+
+    /**
+     * Number of vendors scheduled and not finished; its monitor is waited on for the last vendor.
+     */
+    private final AtomicInteger scheduled = new AtomicInteger();
+
+    /**
+     * Tickets released by the scheduler.
+     */
+    private final LongAdder released = MetricsRegistry.counter("scheduler.tickets.released");
+
+    /**
+     * Vendors retired because a release failed.
+     */
+    private final LongAdder failed = MetricsRegistry.counter("scheduler.vendors.failed");
+
+    /**
+     * Time each tick of a timer thread takes, and how late each tick starts.
+     */
+    private final LatencyHistogram tickTime = MetricsRegistry.histogram("scheduler.tick");
+    private final LatencyHistogram tickLateness = MetricsRegistry.histogram("scheduler.tick.lateness");
+
+    /**
+     * Constructor to start the timer threads and register the gauge.
+     *
+     * @param threadCount the number of timer threads, at least 1
+     */
+    public ReleaseScheduler(int threadCount) {
+        int count = Math.max(1, threadCount);
+        this.timers = Executors.newScheduledThreadPool(count, Thread.ofPlatform().name("Release Scheduler ", 0).daemon().factory());
+        this.shards = new Shard[count];
+        for (int i = 0; i < count; i++) {
+            shards[i] = new Shard();
+            // Fixed-rate ticks are timed from the first one, so a late tick does not push back the ones after it
+            timers.scheduleAtFixedRate(shards[i]::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        MetricsRegistry.gauge("scheduler.vendors", scheduled::get);
+    }
+
+    /**
+     * Schedules a vendor to release tickets at a rate. Vendors are dealt out over the timer threads in turn.
+     *
+     * @param vendor        the vendor, which must not also run on a thread of its own
+     * @param ratePerSecond the tickets released per second, 0 or less to release as fast as the pool takes them
+     * @param burst         the most tickets released at once after falling behind, at least 1
+     * @return the handle to change the rate of the vendor
+     */
+    public ScheduledVendor schedule(Vendor vendor, double ratePerSecond, int burst) {
+        ScheduledVendor scheduledVendor = new ScheduledVendor(vendor, ratePerSecond, burst);
+        scheduled.incrementAndGet();
+        shards[Math.floorMod(nextShard.getAndIncrement(), shards.length)].incoming.add(scheduledVendor);
+        return scheduledVendor;
+    }
+
+    /**
+     * Changes the rate of every scheduled vendor.
+     *
+     * @param ratePerSecond the tickets released per second by each vendor, 0 or less for unpaced
+     * @return the number of vendors changed
+     */
+    public int setRate(double ratePerSecond) {
+        int changed = 0;
+        for (Shard shard : shards) {
+            for (ScheduledVendor vendor : shard.incoming) {
+                vendor.setRate(ratePerSecond);
+                changed++;
+            }
+            synchronized (shard.vendors) {
+                for (ScheduledVendor vendor : shard.vendors) {
+                    vendor.setRate(ratePerSecond);
+                    changed++;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Gets the number of vendors scheduled and not finished.
+     *
+     * @return the number of vendors
+     */
+    public int getScheduledCount() {
+        return scheduled.get();
+    }
+
+    /**
+     * Waits until every scheduled vendor has finished, then stops the timer threads.
+     * Vendors finish once they have released their tickets or their pool is stopped.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public void awaitTermination() throws InterruptedException {
+        synchronized (scheduled) {
+            while (scheduled.get() > 0) {
+                scheduled.wait();
+            }
+        }
+        timers.shutdownNow();
+    }
+
+    /**
+     * The vendors ticked by one timer thread.
+     */
+    private final class Shard {
+
+        /**
+         * Vendors scheduled since the last tick, taken over by the timer thread on its next tick.
+         */
+        private final ConcurrentLinkedQueue<ScheduledVendor> incoming = new ConcurrentLinkedQueue<>();
+
+        /**
+         * The vendors of the timer thread. Only changed by the timer thread, and locked so
+         * {@link #setRate(double)} can go over them.
+         */
+        private final List<ScheduledVendor> vendors = new ArrayList<>();
+
+        /**
+         * The time the next tick is due on the fixed-rate schedule, 0 before the first tick.
+         */
+        private long nextTickNanos = 0;
+
+        /**
+         * Releases the tickets every vendor of the timer thread is due, and drops the finished vendors.
+         */
+        private void tick() {
+            long now = System.nanoTime();
+            if (nextTickNanos == 0) {
+                nextTickNanos = now; // The fixed-rate schedule starts with the first tick
+            }
+            tickLateness.record(Math.max(0, now - nextTickNanos));
+            nextTickNanos += TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+            synchronized (vendors) {
+                ScheduledVendor newVendor;
+                while ((newVendor = incoming.poll()) != null) {
+                    newVendor.lastRefillNanos = now; // Tokens are earned from the first tick on
+                    vendors.add(newVendor);
+                }
+                for (int i = vendors.size() - 1; i >= 0; i--) {
+                    ScheduledVendor vendor = vendors.get(i);
+                    try {
+                        if (vendor.vendor.isFinished()) {
+                            remove(i);
+                            continue;
+                        }
+                        released.add(vendor.tick(now));
+                    } catch (RuntimeException e) {
+                        // An exception escaping the tick would cancel every later tick of the timer
+                        // thread, so only the failing vendor is retired and the others go on
+                        Logger.log("Scheduled vendor failed and was retired: " + e);
+                        failed.increment();
+                        vendor.vendor.retire();
+                        remove(i);
+                    }
+                }
+            }
+            tickTime.record(System.nanoTime() - now);
+        }
+
+        /**
+         * Drops a finished or failed vendor from the timer thread.
+         *
+         * @param i the position of the vendor
+         */
+        private void remove(int i) {
+            // Swap the last vendor into the gap, the order of the vendors does not matter
+            vendors.set(i, vendors.get(vendors.size() - 1));
+            vendors.remove(vendors.size() - 1);
+            if (scheduled.decrementAndGet() == 0) {
+                synchronized (scheduled) {
+                    scheduled.notifyAll(); // Wake the thread waiting for the last vendor
+                }
+            }
+        }
+    }
+
+    /**
+     * A vendor driven by the scheduler, with its token bucket.
+     */
+    public static final class ScheduledVendor {
+
+        /**
+         * The vendor releasing the tickets.
+         */
+        private final Vendor vendor;
+
+        /**
+         * The most tickets released at once after falling behind.
+         */
+        private final int burst;
+
+        /**
+         * The tickets released per second, 0 or less for unpaced.
+         */
+        private volatile double ratePerSecond;
+
+        /**
+         * Tokens earned and not spent; a token is one ticket. Only used by the timer thread.
+         */
+        private double tokens = 0;
+
+        /**
+         * The time tokens were last added, only used by the timer thread.
+         */
+        private long lastRefillNanos;
+
+        /**
+         * Tickets released by this vendor through the scheduler.
+         */
+        private volatile long releasedCount = 0;
+
+        /**
+         * Constructor to create the bucket of a vendor.
+         *
+         * @param vendor        the vendor releasing the tickets
+         * @param ratePerSecond the tickets released per second, 0 or less for unpaced
+         * @param burst         the most tickets released at once after falling behind
+         */
+        private ScheduledVendor(Vendor vendor, double ratePerSecond, int burst) {
+            this.vendor = vendor;
+            this.ratePerSecond = ratePerSecond;
+            this.burst = Math.max(1, burst);
+        }
+
+        /**
+         * Adds the tokens earned since the last tick and releases a ticket for each whole token.
+         *
+         * @param now the time of the tick
+         * @return the number of tickets released
+         */
+        private int tick(long now) {
+            double rate = ratePerSecond;
+            double earned = rate <= 0 ? burst : rate * (now - lastRefillNanos) / 1e9;
+            lastRefillNanos = now;
+            // A bucket never holds less than two ticks of tokens, so a fast vendor does not lose
+            // tokens to the cap on ticks that arrive on time
+            double capacity = Math.max(burst, rate * 2 * TICK_MILLIS / 1000.0);
+            tokens = Math.min(capacity, tokens + earned);
+            int due = (int) tokens;
+            if (due == 0) {
+                return 0;
+            }
+            int count = vendor.release(due);
+            tokens -= count; // Tokens left by a full pool stay in the bucket, up to its capacity
+            releasedCount += count;
+            return count;
+        }
+
+        /**
+         * Changes the rate of the vendor, from its next tick on.
+         *
+         * @param ratePerSecond the tickets released per second, 0 or less for unpaced
+         */
+        public void setRate(double ratePerSecond) {
+            this.ratePerSecond = ratePerSecond;
+        }
+
+        /**
+         * Gets the rate of the vendor.
+         *
+         * @return the tickets released per second, 0 or less for unpaced
+         */
+        public double getRate() {
+            return ratePerSecond;
+        }
+
+        /**
+         * Gets the number of tickets the vendor released through the scheduler.
+         *
+         * @return the tickets released
+         */
+        public long getReleasedCount() {
+            return releasedCount;
+        }
+    }
+}
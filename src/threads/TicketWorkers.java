@@ -0,0 +1,163 @@
+package threads;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The TicketWorkers class runs vendor and customer runnables, one thread per task,
+ * on platform or virtual threads depending on the execution mode.
+ * Threads are named "Vendor n", "Customer n" and "VIP Customer n" so log messages
+ * look the same in both modes.
+ * Tasks can be started while the workers are being waited for, so the number of vendors
+ * and customers can be scaled up during a run.
+ */
+public class TicketWorkers {
+
+    /**
+     * Executor running the vendor tasks.
+     */
+    private final ExecutorService vendors;
+
+    /**
+     * Executor running the regular customer tasks.
+     */
+    private final ExecutorService customers;
+
+    /**
+     * Executor running the VIP customer tasks.
+     */
+    private final ExecutorService vipCustomers;
+
+    /**
+     * Number of tasks started and not finished, guarded by this object's monitor.
+     */
+    private int active = 0;
+
+    /**
+     * Flag set once every task has finished and no more can be started, guarded by this object's monitor.
+     */
+    private boolean terminated = false;
+
+    /**
+     * Constructor to create the executors for the given execution mode.
+     *
+     * @param executionMode the kind of threads to run the tasks on, null selects platform threads
+     */
+    public TicketWorkers(ExecutionMode executionMode) {
+        boolean virtual = executionMode == ExecutionMode.VIRTUAL_THREADS;
+        this.vendors = Executors.newThreadPerTaskExecutor(factory(virtual, "Vendor ", Thread.NORM_PRIORITY));
+        this.customers = Executors.newThreadPerTaskExecutor(factory(virtual, "Customer ", Thread.NORM_PRIORITY));
+        // Virtual threads always run at normal priority, so the VIP priority only applies to platform threads
+        this.vipCustomers = Executors.newThreadPerTaskExecutor(factory(virtual, "VIP Customer ", Thread.MAX_PRIORITY));
+    }
+
+    /**
+     * Creates a thread factory naming its threads with the given prefix and a counter starting at 0.
+     *
+     * @param virtual  true to create virtual threads, false for platform threads
+     * @param prefix   the thread name prefix
+     * @param priority the priority of platform threads
+     * @return the thread factory
+     */
+    private static ThreadFactory factory(boolean virtual, String prefix, int priority) {
+        if (virtual) {
+            return Thread.ofVirtual().name(prefix, 0).factory();
+        }
+        return Thread.ofPlatform().name(prefix, 0).priority(priority).factory();
+    }
+
+    /**
+     * Starts a vendor task on its own thread.
+     *
+     * @param vendor the vendor to run
+     */
+    public void startVendor(Runnable vendor) {
+        start(vendors, vendor);
+    }
+
+    /**
+     * Starts a customer task on its own thread.
+     *
+     * @param customer the customer to run
+     */
+    public void startCustomer(Runnable customer) {
+        start(customers, customer);
+    }
+
+    /**
+     * Starts a VIP customer task on its own thread.
+     *
+     * @param customer the VIP customer to run
+     */
+    public void startVipCustomer(Runnable customer) {
+        start(vipCustomers, customer);
+    }
+
+    /**
+     * Starts a task on an executor, counting it until it finishes.
+     *
+     * @param executor the executor to run the task on
+     * @param task     the task to run
+     * @throws RejectedExecutionException if the workers have terminated or were interrupted
+     */
+    private void start(ExecutorService executor, Runnable task) {
+        synchronized (this) {
+            if (terminated) {
+                throw new RejectedExecutionException("The workers have terminated");
+            }
+            active++;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            finished(); // Never started, so it does not keep awaitTermination waiting
+            throw e;
+        }
+    }
+
+    /**
+     * Counts a task as finished and wakes the thread waiting for the last one.
+     */
+    private synchronized void finished() {
+        if (--active == 0) {
+            notifyAll();
+        }
+    }
+
+    /**
+     * Interrupts every running vendor and customer thread.
+     */
+    public void interruptAll() {
+        vendors.shutdownNow();
+        customers.shutdownNow();
+        vipCustomers.shutdownNow();
+    }
+
+    /**
+     * Waits for every vendor and customer task to finish, including tasks started while waiting,
+     * then shuts the executors down.
+     *
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public void awaitTermination() throws InterruptedException {
+        synchronized (this) {
+            while (active > 0) {
+                wait();
+            }
+            terminated = true;
+        }
+        for (ExecutorService executor : new ExecutorService[]{vendors, customers, vipCustomers}) {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+    }
+}
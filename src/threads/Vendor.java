@@ -2,9 +2,16 @@ package threads;
 
 import core.AbstractTicketHandler;
 
-import core.TicketPool;
+import core.TicketEvent;
+import core.TicketOperations;
+import logging.LogEvent;
 import logging.Logger;
 import util.Ticket;
+import util.TicketIdGenerator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The Vendor class represents a ticket vendor that adds tickets to the ticket pool.
@@ -13,15 +20,40 @@ import util.Ticket;
 public class Vendor extends AbstractTicketHandler implements Runnable {
 
     /**
-     * The rate at which tickets are released, in milliseconds.
+     * The longest a vendor waits for space before checking the stop flag and ticket limit again, in milliseconds.
+     */
+    private static final long WAIT_TIMEOUT_MILLIS = 100;
+
+    /**
+     * Spaces out the releases according to the release rate.
      */
-    private final int ticketReleaseRate;
+    private final Pacer pacer;
 
     /**
      * The total number of tickets the vendor can release.
      */
     private final int totalTicket;
 
+    /**
+     * The number of tickets released in one step.
+     */
+    private final int batchSize;
+
+    /**
+     * The index of the vendor, packed into the id of every ticket it releases.
+     */
+    private final int vendorIndex;
+
+    /**
+     * The generator the sequence numbers of the vendor's tickets come from.
+     */
+    private TicketIdGenerator idGenerator = TicketIdGenerator.shared();
+
+    /**
+     * The id of a ticket {@link #release(int)} found no space for, 0 if none is waiting.
+     */
+    private long pendingTicketId = 0;
+
     /**
      * Constructor to initialize the Vendor with a ticket pool, release rate, and total tickets.
      *
@@ -29,10 +61,62 @@ public class Vendor extends AbstractTicketHandler implements Runnable {
      * @param ticketReleaseRate the rate at which tickets are released (in milliseconds)
      * @param totalTicket       the total number of tickets the vendor will release
      */
-    public Vendor(TicketPool ticketPool, int ticketReleaseRate, int totalTicket) {
+    public Vendor(TicketOperations ticketPool, int ticketReleaseRate, int totalTicket) {
+        this(ticketPool, ticketReleaseRate, totalTicket, 1);
+    }
+
+    /**
+     * Constructor to initialize the Vendor with a ticket pool, release rate, total tickets and batch size.
+     *
+     * @param ticketPool        the ticket pool shared among vendors and customers
+     * @param ticketReleaseRate the rate at which tickets are released (in milliseconds)
+     * @param totalTicket       the total number of tickets the vendor will release
+     * @param batchSize         the number of tickets released in one step
+     */
+    public Vendor(TicketOperations ticketPool, int ticketReleaseRate, int totalTicket, int batchSize) {
+        this(ticketPool, 0, ticketReleaseRate, totalTicket, batchSize);
+    }
+
+    /**
+     * Constructor to initialize the Vendor with a ticket pool, vendor index, release rate, total tickets and batch size.
+     *
+     * @param ticketPool        the ticket pool shared among vendors and customers
+     * @param vendorIndex       the index of the vendor, matching the number in its thread name
+     * @param ticketReleaseRate the rate at which tickets are released (in milliseconds)
+     * @param totalTicket       the total number of tickets the vendor will release
+     * @param batchSize         the number of tickets released in one step
+     */
+    public Vendor(TicketOperations ticketPool, int vendorIndex, int ticketReleaseRate, int totalTicket, int batchSize) {
+        this(ticketPool, vendorIndex, Pacer.create(PacingMode.SLEEP, ticketReleaseRate), totalTicket, batchSize);
+    }
+
+    /**
+     * Constructor to initialize the Vendor with a ticket pool, vendor index, pacer, total tickets and batch size.
+     *
+     * @param ticketPool  the ticket pool shared among vendors and customers
+     * @param vendorIndex the index of the vendor, matching the number in its thread name
+     * @param pacer       spaces out the releases, owned by this vendor
+     * @param totalTicket the total number of tickets the vendor will release
+     * @param batchSize   the number of tickets released in one step
+     */
+    public Vendor(TicketOperations ticketPool, int vendorIndex, Pacer pacer, int totalTicket, int batchSize) {
         super(ticketPool);
-        this.ticketReleaseRate = ticketReleaseRate;
+        this.vendorIndex = vendorIndex;
+        this.pacer = pacer;
         this.totalTicket = totalTicket;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    /**
+     * Constructor to initialize a Vendor releasing the tickets of one event of a registry.
+     *
+     * @param event       the event whose pool the vendor fills, up to the event's ticket count
+     * @param vendorIndex the index of the vendor within the event
+     * @param pacer       spaces out the releases, owned by this vendor
+     * @param batchSize   the number of tickets released in one step
+     */
+    public Vendor(TicketEvent event, int vendorIndex, Pacer pacer, int batchSize) {
+        this(event.getTicketPool(), vendorIndex, pacer, event.getTotalTickets(), batchSize);
     }
 
     /**
@@ -52,18 +136,35 @@ public class Vendor extends AbstractTicketHandler implements Runnable {
     @Override
     public void run() {
 
-        // Continue running until the stop flag is set or all tickets are added
-        while(!ticketpool.shouldStop() && ticketpool.getCounter()<totalTicket){
+        long ticketId = 0; // The ticket waiting for space, valid while pending is true
+        boolean pending = false;
 
-            // Create a new ticket with the current thread name and a unique ID
-            Ticket ticket =new Ticket(Thread.currentThread().getName(), ("ID "+ System.nanoTime()));
+        // Continue running until the stop flag is set or all tickets are added
+        while(!ticketpool.shouldStop() && !isRetired() && ticketpool.getCounter()<totalTicket){
 
-            // Add the ticket to the pool
-            ticketpool.addTicket(ticket);
+            if (batchSize == 1) {
+                if (!pending) {
+                    ticketId = nextTicketId();
+                    pending = true;
+                }
+                // Add the ticket by its packed id, a compact pool stores it without creating an object.
+                // The wait for space is bounded, so the stop flag and ticket limit are checked again regularly
+                if (!ticketpool.tryAddTicketId(ticketId, WAIT_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        Logger.log("Thread interrupted: " + Thread.currentThread().getName());
+                        break;
+                    }
+                    continue; // Still full, retry the same ticket without pausing again
+                }
+                pending = false;
+            } else {
+                // Release a block of tickets, without going past the total ticket limit
+                releaseBatch(Math.min(batchSize, totalTicket - ticketpool.getCounter()));
+            }
 
             try {
-                // Sleep for the specified release rate to simulate ticket release timing
-                Thread.sleep(ticketReleaseRate * 500);
+                // Wait for the specified release rate to simulate ticket release timing
+                pacer.pace();
             } catch (InterruptedException e) {
 
                 // Log and handle thread interruption gracefully
@@ -77,7 +178,97 @@ public class Vendor extends AbstractTicketHandler implements Runnable {
 
 
         // Log a message indicating that the vendor thread has completed its task
-        Logger.log("All tickets have been sold. Thread " + Thread.currentThread().getName() + " has completed its task.");
+        Logger.log(LogEvent.VENDOR_FINISHED);
+
+    }
+
+    /**
+     * Releases up to the given number of tickets without waiting, for a vendor driven by a
+     * {@link ReleaseScheduler} instead of a thread of its own. A ticket that finds the pool full
+     * is kept and released first on the next call, so no id is skipped.
+     *
+     * @param max the most tickets to release
+     * @return the number of tickets released, fewer than asked if the pool is full or the vendor is finished
+     */
+    public int release(int max) {
+        int released = 0;
+        while (released < max && !isFinished()) {
+            if (pendingTicketId == 0) {
+                pendingTicketId = nextTicketId();
+            }
+            if (!ticketpool.tryAddTicketId(pendingTicketId, 0, TimeUnit.NANOSECONDS)) {
+                break; // The pool is full, try again on the next call
+            }
+            pendingTicketId = 0;
+            released++;
+        }
+        return released;
+    }
+
+    /**
+     * Checks whether the vendor has no more tickets to release.
+     *
+     * @return true if the stop flag is set, the vendor is retired or the ticket limit is reached
+     */
+    public boolean isFinished() {
+        return ticketpool.shouldStop() || isRetired() || ticketpool.getCounter() >= totalTicket;
+    }
 
+    /**
+     * Creates a block of tickets and adds it to the pool with the batch operation.
+     * When the pool only has room for part of the block, the rest is added once space frees up.
+     *
+     * @param size the number of tickets to release
+     */
+    private void releaseBatch(int size) {
+        if (size <= 0) {
+            return; // Other vendors already released the remaining tickets
+        }
+        List<Ticket> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(createTicket());
+        }
+        while (!batch.isEmpty() && !ticketpool.shouldStop()) {
+            int added = ticketpool.addTickets(batch);
+            batch.subList(0, added).clear(); // Keep the tickets that did not fit
+        }
+    }
+
+    /**
+     * Creates the next ticket released by this vendor.
+     *
+     * @return a new ticket holding the vendor index and the next sequence number
+     */
+    public Ticket createTicket() {
+        return new Ticket(nextTicketId());
+    }
+
+    /**
+     * Packs the id of the next ticket released by this vendor.
+     *
+     * @return the packed id holding the vendor index and the next sequence number
+     */
+    public long nextTicketId() {
+        return Ticket.pack(vendorIndex, idGenerator.nextSequence());
+    }
+
+    /**
+     * Continues the vendor's sequence numbers after those released before a restart,
+     * so recovered tickets and new tickets never share an id.
+     *
+     * @param lastSequence the highest sequence number released before the restart
+     */
+    public void resumeAfter(long lastSequence) {
+        idGenerator.resumeAfter(lastSequence);
+    }
+
+    /**
+     * Sets the generator the vendor takes its sequence numbers from, such as one reading a
+     * simulated clock; vendors use {@link TicketIdGenerator#shared()} unless given one.
+     *
+     * @param idGenerator the generator
+     */
+    public void setIdGenerator(TicketIdGenerator idGenerator) {
+        this.idGenerator = idGenerator;
     }
 }
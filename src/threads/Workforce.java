@@ -0,0 +1,320 @@
+package threads;
+
+import configuration.Configurations;
+import core.AbstractTicketHandler;
+import core.CustomerClass;
+import core.TicketHolds;
+import core.TicketOperations;
+import metrics.LatencyHistogram;
+import metrics.MetricsRegistry;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Workforce class keeps track of the running vendors and customers of a sale, so a new
+ * configuration can be applied while the sale runs.
+ *
+ * Applying a configuration resizes the pool, changes the release and retrieval rates of the
+ * running threads and starts or retires vendors and customers to match the new counts. Retired
+ * vendors and customers finish their current operation and stop, the newest first; new vendors
+ * get vendor indices never used before, so their ticket ids never clash. Values that only take
+ * effect at start, such as the pool type or the ticket count, are reported and left unchanged.
+ * The time each reload takes is recorded in the "config.reload" histogram.
+ */
+public class Workforce {
+
+    /**
+     * The pool the vendors and customers share.
+     */
+    private final TicketOperations ticketPool;
+
+    /**
+     * The configuration of the sale, updated in place with every value applied.
+     */
+    private final Configurations configurations;
+
+    /**
+     * Executors running the vendor and customer threads.
+     */
+    private final TicketWorkers workers;
+
+    /**
+     * The release scheduler driving the vendors, null if each vendor runs on a thread of its own.
+     */
+    private final ReleaseScheduler scheduler;
+
+    /**
+     * The holds customers reserve tickets through, null if they buy directly.
+     */
+    private final TicketHolds holds;
+
+    /**
+     * The highest sequence number released before a restart, which new vendors continue after.
+     */
+    private final long lastSequence;
+
+    /**
+     * The running vendors, regular customers and VIP customers, oldest first.
+     */
+    private final List<Member> vendors = new ArrayList<>();
+    private final List<Member> customers = new ArrayList<>();
+    private final List<Member> vipCustomers = new ArrayList<>();
+
+    /**
+     * Time each reload takes to apply, and the number of reloads applied.
+     */
+    private final LatencyHistogram reloadTime = MetricsRegistry.histogram("config.reload");
+    private final LongAdder reloads = MetricsRegistry.counter("config.reloads");
+
+    /**
+     * Constructor to create the workforce of a sale, without starting anyone.
+     *
+     * @param ticketPool     the pool the vendors and customers share
+     * @param configurations the configuration of the sale, updated in place by {@link #apply(Configurations)}
+     * @param workers        the executors running the vendor and customer threads
+     * @param scheduler      the release scheduler driving the vendors, or null for a thread per vendor
+     * @param holds          the holds customers reserve tickets through, or null to buy directly
+     * @param lastSequence   the highest sequence number released before a restart, 0 for a new sale
+     */
+    public Workforce(TicketOperations ticketPool, Configurations configurations, TicketWorkers workers,
+                     ReleaseScheduler scheduler, TicketHolds holds, long lastSequence) {
+        this.ticketPool = ticketPool;
+        this.configurations = configurations;
+        this.workers = workers;
+        this.scheduler = scheduler;
+        this.holds = holds;
+        this.lastSequence = lastSequence;
+    }
+
+    /**
+     * Starts the vendors, customers and VIP customers of the configuration.
+     */
+    public synchronized void start() {
+        scaleVendors(configurations.getNumberOfVendors());
+        scaleCustomers(customers, CustomerClass.REGULAR, configurations.getNumberOfCustomers());
+        scaleCustomers(vipCustomers, CustomerClass.VIP, configurations.getNumberOfCustomers());
+    }
+
+    /**
+     * Applies the values of a new configuration that can change while the sale runs: the pool
+     * size, the release and retrieval rates and the numbers of vendors and customers.
+     *
+     * @param next the new configuration, already validated
+     * @return a description of what changed and how long it took, for the console
+     */
+    public synchronized String apply(Configurations next) {
+        long start = System.nanoTime();
+        if (ticketPool.shouldStop()) {
+            return "The sale is stopping, the configuration was not applied.";
+        }
+        List<String> changes = new ArrayList<>();
+
+        if (next.getMaxPoolTickets() != configurations.getMaxPoolTickets()) {
+            if (ticketPool.resize(next.getMaxPoolTickets())) {
+                changes.add("pool size " + configurations.getMaxPoolTickets() + " -> " + next.getMaxPoolTickets());
+                configurations.setMaxPoolTickets(next.getMaxPoolTickets());
+            } else {
+                changes.add("pool size kept, a " + configurations.getPoolType() + " pool cannot be resized");
+            }
+        }
+        if (next.getReleaseRates() != configurations.getReleaseRates()) {
+            changes.add("release rate " + configurations.getReleaseRates() + " -> " + next.getReleaseRates());
+            configurations.setReleaseRates(next.getReleaseRates());
+            for (Member vendor : vendors) {
+                vendor.setRate(next.getReleaseRates());
+            }
+        }
+        if (next.getRetrievalRate() != configurations.getRetrievalRate()) {
+            changes.add("retrieval rate " + configurations.getRetrievalRate() + " -> " + next.getRetrievalRate());
+            configurations.setRetrievalRate(next.getRetrievalRate());
+            for (Member customer : customers) {
+                customer.setRate(next.getRetrievalRate());
+            }
+            for (Member customer : vipCustomers) {
+                customer.setRate(next.getRetrievalRate());
+            }
+        }
+        try {
+            if (next.getNumberOfVendors() != vendors.size()) {
+                changes.add("vendors " + vendors.size() + " -> " + next.getNumberOfVendors());
+                scaleVendors(next.getNumberOfVendors());
+                configurations.setNumberOfVendors(next.getNumberOfVendors());
+            }
+            if (next.getNumberOfCustomers() != customers.size()) {
+                changes.add("customers " + customers.size() + " -> " + next.getNumberOfCustomers() + " of each class");
+                scaleCustomers(customers, CustomerClass.REGULAR, next.getNumberOfCustomers());
+                scaleCustomers(vipCustomers, CustomerClass.VIP, next.getNumberOfCustomers());
+                configurations.setNumberOfCustomers(next.getNumberOfCustomers());
+            }
+        } catch (RejectedExecutionException e) {
+            changes.add("no threads started, the sale has finished");
+        }
+        List<String> restartOnly = restartOnlyChanges(next);
+        if (!restartOnly.isEmpty()) {
+            changes.add("needs a restart: " + String.join(", ", restartOnly));
+        }
+
+        long elapsed = System.nanoTime() - start;
+        reloadTime.record(elapsed);
+        reloads.increment();
+        return String.format("Configuration reloaded in %.3f ms: %s", elapsed / 1e6,
+                changes.isEmpty() ? "no changes" : String.join("; ", changes));
+    }
+
+    /**
+     * Gets the number of running vendors.
+     *
+     * @return the number of vendors started and not retired
+     */
+    public synchronized int getVendorCount() {
+        return vendors.size();
+    }
+
+    /**
+     * Gets the number of running customers of each class.
+     *
+     * @return the number of regular customers started and not retired
+     */
+    public synchronized int getCustomerCount() {
+        return customers.size();
+    }
+
+    /**
+     * Starts or retires vendors until the given number run.
+     *
+     * @param count the number of vendors wanted
+     */
+    private void scaleVendors(int count) {
+        while (vendors.size() > count) {
+            vendors.remove(vendors.size() - 1).handler.retire(); // The newest vendor goes first
+        }
+        while (vendors.size() < count) {
+            Pacer pacer = Pacer.create(configurations.getPacingMode(), configurations.getReleaseRates());
+            // The newest vendor retires first, so the running vendors keep the indexes 0 to count - 1; a
+            // reused index never repeats an id, as sequence numbers are unique across vendors
+            Vendor vendor = new Vendor(ticketPool, vendors.size(), pacer, configurations.getTotalTickets(),
+                    configurations.getReleaseBatchSize());
+            vendor.resumeAfter(lastSequence); // Never reuse the id of a ticket released before a restart
+            Member member = new Member(vendor, pacer);
+            if (scheduler != null) {
+                member.scheduled = scheduler.schedule(vendor, configurations.getReleaseRates(), configurations.getReleaseBurst());
+            } else {
+                workers.startVendor(vendor);
+            }
+            vendors.add(member);
+        }
+    }
+
+    /**
+     * Starts or retires customers of one class until the given number run.
+     *
+     * @param members       the running customers of the class
+     * @param customerClass the class of the customers
+     * @param count         the number of customers wanted
+     */
+    private void scaleCustomers(List<Member> members, CustomerClass customerClass, int count) {
+        while (members.size() > count) {
+            members.remove(members.size() - 1).handler.retire(); // The newest customer goes first
+        }
+        while (members.size() < count) {
+            Pacer pacer = Pacer.create(configurations.getPacingMode(), configurations.getRetrievalRate());
+            Customer customer = new Customer(ticketPool, pacer, configurations.getTotalTickets(),
+                    configurations.getRetrievalBatchSize(), customerClass);
+            if (holds != null) {
+                customer.useHolds(holds, configurations.getHoldAbandonPercent());
+            }
+            if (customerClass == CustomerClass.VIP) {
+                // A VIP customer waits in the VIP lane of the pool, and on platform threads
+                // it also runs at maximum priority to get more CPU time
+                workers.startVipCustomer(customer);
+            } else {
+                workers.startCustomer(customer);
+            }
+            members.add(new Member(customer, pacer));
+        }
+    }
+
+    /**
+     * Lists the values of a new configuration that differ from the running one but only take effect at start.
+     *
+     * @param next the new configuration
+     * @return the names of the values that need a restart
+     */
+    private List<String> restartOnlyChanges(Configurations next) {
+        List<String> names = new ArrayList<>();
+        addIfChanged(names, "totalTickets", configurations.getTotalTickets(), next.getTotalTickets());
+        addIfChanged(names, "poolType", configurations.getPoolType(), next.getPoolType());
+        addIfChanged(names, "executionMode", configurations.getExecutionMode(), next.getExecutionMode());
+        addIfChanged(names, "pacingMode", configurations.getPacingMode(), next.getPacingMode());
+        addIfChanged(names, "releaseBatchSize", configurations.getReleaseBatchSize(), next.getReleaseBatchSize());
+        addIfChanged(names, "retrievalBatchSize", configurations.getRetrievalBatchSize(), next.getRetrievalBatchSize());
+        addIfChanged(names, "priorityPolicy", configurations.getPriorityPolicy(), next.getPriorityPolicy());
+        addIfChanged(names, "holdTtlMillis", configurations.getHoldTtlMillis(), next.getHoldTtlMillis());
+        addIfChanged(names, "journalEnabled", configurations.isJournalEnabled(), next.isJournalEnabled());
+        addIfChanged(names, "serverPort", configurations.getServerPort(), next.getServerPort());
+        return names;
+    }
+
+    /**
+     * Adds a name to the list if its running and new values differ.
+     *
+     * @param names   the list of changed names
+     * @param name    the name of the value
+     * @param running the running value
+     * @param next    the new value
+     */
+    private static void addIfChanged(List<String> names, String name, Object running, Object next) {
+        if (!Objects.equals(running, next)) {
+            names.add(name);
+        }
+    }
+
+    /**
+     * A running vendor or customer with the pacer it was started with.
+     */
+    private static final class Member {
+
+        /**
+         * The vendor or customer.
+         */
+        private final AbstractTicketHandler handler;
+
+        /**
+         * The pacer spacing out its operations.
+         */
+        private final Pacer pacer;
+
+        /**
+         * The scheduler handle of a vendor driven by the release scheduler, null otherwise.
+         */
+        private ReleaseScheduler.ScheduledVendor scheduled;
+
+        /**
+         * Constructor to create a member.
+         *
+         * @param handler the vendor or customer
+         * @param pacer   the pacer spacing out its operations
+         */
+        private Member(AbstractTicketHandler handler, Pacer pacer) {
+            this.handler = handler;
+            this.pacer = pacer;
+        }
+
+        /**
+         * Changes the rate of the member, through the scheduler for a scheduled vendor.
+         *
+         * @param rate the new release or retrieval rate
+         */
+        private void setRate(int rate) {
+            if (scheduled != null) {
+                scheduled.setRate(rate);
+            } else {
+                pacer.setRate(rate);
+            }
+        }
+    }
+}
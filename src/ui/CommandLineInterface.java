@@ -1,10 +1,19 @@
 package ui;
 
 import configuration.Configurations;
+import core.PoolType;
+import core.PriorityPolicy;
+import journal.Durability;
+import logging.LogFormat;
 import logging.Logger;
+import logging.OverflowPolicy;
+import threads.ExecutionMode;
+import threads.PacingMode;
+import util.Ticket;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
 
 import java.io.*;
 import java.util.Scanner;
@@ -20,6 +29,63 @@ public class CommandLineInterface {
      */
     private static final String CONFIG_FILE = "resources/configuration.json";
 
+    /**
+     * Path of the configuration file the run started from, read again when the configuration is reloaded.
+     */
+    private static String configurationFile = CONFIG_FILE;
+
+    /**
+     * Usage of the headless mode, printed for --help and invalid arguments.
+     */
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: Main [--name=value ...]",
+            "  --config=PATH            configuration file to start from (default " + CONFIG_FILE + ")",
+            "  --tickets=N              total number of tickets to sell",
+            "  --duration=SECONDS       stop after this long even if tickets are left, 0 to sell them all",
+            "  --pool-size=N            maximum number of tickets in the pool",
+            "  --vendors=N              number of vendors",
+            "  --customers=N            number of customers, started once as regular and once as VIP customers",
+            "  --release-rate=N         tickets per second per vendor, 0 for unpaced",
+            "  --retrieval-rate=N       tickets per second per customer, 0 for unpaced",
+            "  --pacing=MODE            PARK, SPIN_PARK, NONE, SCHEDULED, or SLEEP for the interactive rate * 500 ms",
+            "  --scheduler-threads=N    timer threads driving every vendor with SCHEDULED pacing",
+            "  --release-burst=N        most tickets a scheduled vendor releases at once after falling behind",
+            "  --pool-type=TYPE         SYNCHRONIZED, RING_BUFFER, SHARDED, COMPACT or SEAT_MAP",
+            "  --shards=N               shards of a sharded pool, 0 for one per processor",
+            "  --seat-sections=N        sections of a seat map pool, 0 for one per processor",
+            "  --seats-per-row=N        seats in a row of a seat map pool, 1 to 64",
+            "  --execution-mode=MODE    PLATFORM_THREADS or VIRTUAL_THREADS",
+            "  --events=N               events sold at once, each with its own pool and the tickets, pool size and rates above",
+            "  --event-skew=S           Zipf exponent spreading extra customers over the events, 0 for even demand",
+            "  --release-batch=N        tickets a vendor adds in one step",
+            "  --retrieval-batch=N      tickets a customer removes in one step",
+            "  --async-logging=BOOL     write the log file from a background thread",
+            "  --log-overflow=POLICY    BLOCK, DROP or SAMPLE when the log queue is full",
+            "  --log-format=FORMAT      TEXT for resources/log.txt, BINARY for resources/log.bin read with logging.LogDecoder",
+            "  --log-max-size=MIB       roll the log file over at this size, 0 for no limit (default 10)",
+            "  --log-rotate=MINUTES     roll the log file over at this age, 0 for no limit",
+            "  --log-keep=N             rolled log files kept (default 5)",
+            "  --log-compress=BOOL      compress rolled log files with gzip",
+            "  --journal=BOOL           write every ticket added and sold to the journal",
+            "  --journal-dir=PATH       directory of the journal (default resources/journal)",
+            "  --journal-durability=D   NONE, PERIODIC or PER_BATCH: when journal records are forced to disk",
+            "  --journal-flush=MILLIS   time between two forces of the journal in PERIODIC mode",
+            "  --snapshot-interval=S    seconds between two snapshots of a journaled pool, 0 for none",
+            "  --priority-policy=P      NONE, STRICT or WEIGHTED: how waiting VIP and regular customers are served",
+            "  --vip-weight=N           tickets VIP customers get for every regular ticket with WEIGHTED",
+            "  --vip-starvation=MILLIS  wait after which a regular customer goes ahead of VIP customers with STRICT",
+            "  --hold-ttl=MILLIS        customers hold each ticket before buying it, for this long at most; 0 to buy directly",
+            "  --hold-abandon=PERCENT   percentage of held tickets customers abandon and let expire",
+            "  --server-port=PORT       serve BUY, RELEASE and STATUS requests over TCP on this loopback port, 0 for none",
+            "  --watch-config=BOOL      apply changes to the configuration file while the system runs (default true)",
+            "  --simulate=BOOL          run the sale on a virtual clock; rates, waits and the duration are in simulated time",
+            "  --seed=N                 seed of the random pauses of a simulated sale (default 42)",
+            "  --jfr=FILE               write a flight recording of the pool and logger events of the whole run to FILE",
+            "  --jfr-lock-threshold=US  shortest contended pool lock acquire recorded, in microseconds (default 20)",
+            "  --jfr-wait-threshold=US  shortest wait for space or a ticket recorded, in microseconds (default 1000)",
+            "  --jfr-log-threshold=US   shortest log write recorded, in microseconds (default 100)",
+            "  --jfr-handoff-threshold=US shortest ticket handoff to a waiting customer recorded, in microseconds (default 100)");
+
     /**
      * Gson instance for JSON serialization and deserialization with pretty printing enabled.
      */
@@ -69,7 +135,17 @@ public class CommandLineInterface {
         // Gather remaining configuration details
         int retrievalRate = getInputs(input, "Please enter the rate at which tickets are retrieved (must be greater than 0): ");
         int releaseRate = getInputs(input, "Please enter the rate at which tickets are released (must be greater than 0): ");
-        int numberOfVendors = getInputs(input, "Please enter the number of vendors: ");
+        int numberOfVendors;
+
+        // Ensure every vendor gets an index that fits in a ticket id
+        while(true){
+            numberOfVendors = getInputs(input, "Please enter the number of vendors: ");
+            if (numberOfVendors <= Ticket.MAX_VENDOR_INDEX + 1){
+                break;
+            }else{
+                System.out.println("The number of vendors cannot be greater than " + (Ticket.MAX_VENDOR_INDEX + 1) + ". Please try again.");
+            }
+        }
         int numberOfCustomers = getInputs(input, "Please enter the number of customers: ");
 
         Logger.log("System configurations successfully initialized.");
@@ -85,6 +161,293 @@ public class CommandLineInterface {
     }
 
 
+    /**
+     * Builds the system configurations from command line arguments, for headless runs.
+     * Starts from the configuration file given with --config, or the saved configuration,
+     * and overrides it with the other options. Prints the usage when the arguments are invalid.
+     *
+     * @param args the command line arguments, each of the form --name=value
+     * @return the {@link Configurations} object, or null if the arguments are invalid or --help was given
+     */
+    public static Configurations configurations(String[] args) {
+        String configFile = CONFIG_FILE;
+        for (String arg : args) {
+            if (arg.startsWith("--config=")) {
+                configFile = arg.substring("--config=".length());
+            }
+        }
+        configurationFile = configFile;
+        Configurations config = loadConfiguration(configFile);
+        if (config == null) {
+            config = new Configurations();
+        }
+
+        try {
+            for (String arg : args) {
+                int separator = arg.indexOf('=');
+                if (!arg.startsWith("--") || separator < 0) {
+                    throw new IllegalArgumentException(arg.equals("--help") ? null : "Unknown argument: " + arg);
+                }
+                applyOption(config, arg.substring(2, separator), arg.substring(separator + 1));
+            }
+            validate(config);
+        } catch (IllegalArgumentException e) {
+            if (e.getMessage() != null) {
+                System.err.println(e.getMessage());
+            }
+            System.out.println(USAGE);
+            return null;
+        }
+        return config;
+    }
+
+    /**
+     * Checks the values a run cannot start or go on with.
+     *
+     * @param config the configuration to check
+     * @throws IllegalArgumentException if a value is invalid
+     */
+    private static void validate(Configurations config) {
+        if (config.getTotalTickets() <= 0 || config.getMaxPoolTickets() <= 0
+                || config.getNumberOfVendors() <= 0 || config.getNumberOfCustomers() <= 0 || config.getEventCount() <= 0) {
+            throw new IllegalArgumentException("tickets, pool-size, vendors, customers and events must be greater than 0");
+        }
+        if (config.getNumberOfVendors() > Ticket.MAX_VENDOR_INDEX + 1) {
+            // Every vendor of a pool needs an index that fits in a ticket id
+            throw new IllegalArgumentException("vendors must be at most " + (Ticket.MAX_VENDOR_INDEX + 1));
+        }
+    }
+
+    /**
+     * Gets the configuration file the run started from.
+     *
+     * @return the path of the configuration file
+     */
+    public static String getConfigurationFile() {
+        return configurationFile;
+    }
+
+    /**
+     * Reads the configuration file the run started from again, for a live reload.
+     * Values missing from the file take their defaults.
+     *
+     * @return the configuration in the file
+     * @throws IllegalArgumentException if the file cannot be read, is not valid JSON or has invalid values
+     */
+    public static Configurations reloadConfiguration() {
+        Configurations config;
+        try (Reader reader = new FileReader(configurationFile)) {
+            config = gson.fromJson(reader, Configurations.class);
+        } catch (IOException | JsonParseException e) {
+            throw new IllegalArgumentException("Cannot read " + configurationFile + ": " + e.getMessage());
+        }
+        if (config == null) {
+            throw new IllegalArgumentException(configurationFile + " is empty");
+        }
+        validate(config);
+        return config;
+    }
+
+    /**
+     * Applies one command line option to a configuration.
+     *
+     * @param config the configuration to change
+     * @param name   the option name without the leading dashes
+     * @param value  the option value
+     * @throws IllegalArgumentException if the option is unknown or its value is invalid
+     */
+    private static void applyOption(Configurations config, String name, String value) {
+        switch (name) {
+            case "config":
+                break; // Already loaded
+            case "tickets":
+                config.setTotalTickets(parseCount(name, value));
+                break;
+            case "duration":
+                config.setDurationSeconds(parseCount(name, value));
+                break;
+            case "pool-size":
+                config.setMaxPoolTickets(parseCount(name, value));
+                break;
+            case "vendors":
+                config.setNumberOfVendors(parseCount(name, value));
+                break;
+            case "customers":
+                config.setNumberOfCustomers(parseCount(name, value));
+                break;
+            case "release-rate":
+                config.setReleaseRates(parseCount(name, value));
+                break;
+            case "retrieval-rate":
+                config.setRetrievalRate(parseCount(name, value));
+                break;
+            case "pacing":
+                config.setPacingMode(PacingMode.valueOf(value.toUpperCase()));
+                break;
+            case "pool-type":
+                config.setPoolType(PoolType.valueOf(value.toUpperCase()));
+                break;
+            case "scheduler-threads":
+                config.setSchedulerThreads(parseCount(name, value));
+                break;
+            case "release-burst":
+                config.setReleaseBurst(parseCount(name, value));
+                break;
+            case "shards":
+                config.setShardCount(parseCount(name, value));
+                break;
+            case "seat-sections":
+                config.setSeatSections(parseCount(name, value));
+                break;
+            case "seats-per-row":
+                config.setSeatsPerRow(parseCount(name, value));
+                break;
+            case "events":
+                config.setEventCount(parseCount(name, value));
+                break;
+            case "event-skew":
+                config.setEventSkew(parseSkew(name, value));
+                break;
+            case "execution-mode":
+                config.setExecutionMode(ExecutionMode.valueOf(value.toUpperCase()));
+                break;
+            case "release-batch":
+                config.setReleaseBatchSize(parseCount(name, value));
+                break;
+            case "retrieval-batch":
+                config.setRetrievalBatchSize(parseCount(name, value));
+                break;
+            case "async-logging":
+                config.setAsyncLogging(Boolean.parseBoolean(value));
+                break;
+            case "log-overflow":
+                config.setLogOverflowPolicy(OverflowPolicy.valueOf(value.toUpperCase()));
+                break;
+            case "log-format":
+                config.setLogFormat(LogFormat.valueOf(value.toUpperCase()));
+                break;
+            case "log-max-size":
+                config.setLogMaxFileMegabytes(parseCount(name, value));
+                break;
+            case "log-rotate":
+                config.setLogRotateMinutes(parseCount(name, value));
+                break;
+            case "log-keep":
+                config.setLogKeepFiles(parseCount(name, value));
+                break;
+            case "log-compress":
+                config.setLogCompress(Boolean.parseBoolean(value));
+                break;
+            case "journal":
+                config.setJournalEnabled(Boolean.parseBoolean(value));
+                break;
+            case "journal-dir":
+                config.setJournalDirectory(value);
+                break;
+            case "journal-durability":
+                config.setJournalDurability(Durability.valueOf(value.toUpperCase()));
+                break;
+            case "journal-flush":
+                config.setJournalFlushMillis(parseCount(name, value));
+                break;
+            case "snapshot-interval":
+                config.setSnapshotIntervalSeconds(parseCount(name, value));
+                break;
+            case "priority-policy":
+                config.setPriorityPolicy(PriorityPolicy.valueOf(value.toUpperCase()));
+                break;
+            case "vip-weight":
+                config.setVipWeight(parseCount(name, value));
+                break;
+            case "vip-starvation":
+                config.setVipStarvationMillis(parseCount(name, value));
+                break;
+            case "hold-ttl":
+                config.setHoldTtlMillis(parseCount(name, value));
+                break;
+            case "hold-abandon":
+                config.setHoldAbandonPercent(parseCount(name, value));
+                break;
+            case "watch-config":
+                config.setWatchConfiguration(Boolean.parseBoolean(value));
+                break;
+            case "simulate":
+                config.setSimulation(Boolean.parseBoolean(value));
+                break;
+            case "seed":
+                try {
+                    config.setSimulationSeed(Long.parseLong(value));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+                }
+                break;
+            case "jfr":
+                config.setJfrFile(value);
+                break;
+            case "jfr-lock-threshold":
+                config.setJfrLockThresholdMicros(parseCount(name, value));
+                break;
+            case "jfr-wait-threshold":
+                config.setJfrWaitThresholdMicros(parseCount(name, value));
+                break;
+            case "jfr-log-threshold":
+                config.setJfrLogThresholdMicros(parseCount(name, value));
+                break;
+            case "jfr-handoff-threshold":
+                config.setJfrHandoffThresholdMicros(parseCount(name, value));
+                break;
+            case "server-port":
+                int port = parseCount(name, value);
+                if (port > 65535) {
+                    throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+                }
+                config.setServerPort(port);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown option: --" + name);
+        }
+    }
+
+    /**
+     * Parses the value of a numeric command line option.
+     *
+     * @param name  the option name, for the error message
+     * @param value the option value
+     * @return the value, 0 or greater
+     * @throws IllegalArgumentException if the value is not a number or is negative
+     */
+    private static int parseCount(String name, String value) {
+        try {
+            int count = Integer.parseInt(value);
+            if (count >= 0) {
+                return count;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+    }
+
+    /**
+     * Parses the value of a skew command line option.
+     *
+     * @param name  the option name, for the error message
+     * @param value the option value
+     * @return the value, 0 or greater
+     * @throws IllegalArgumentException if the value is not a number or is negative
+     */
+    private static double parseSkew(String name, String value) {
+        try {
+            double skew = Double.parseDouble(value);
+            if (skew >= 0) {
+                return skew;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below
+        }
+        throw new IllegalArgumentException("Invalid value for --" + name + ": " + value);
+    }
+
     /**
      * Prompts the user for an integer input with the given prompt message.
      * Ensures the input is a valid positive integer.
@@ -122,7 +485,18 @@ public class CommandLineInterface {
      *         null otherwise.
      */
     private static Configurations loadConfiguration() {
-        try (Reader reader = new FileReader(CONFIG_FILE)) {
+        return loadConfiguration(CONFIG_FILE);
+    }
+
+    /**
+     * Loads a configuration from a JSON file.
+     *
+     * @param path the path of the JSON file
+     * @return the {@link Configurations} object if the file exists and is valid;
+     *         null otherwise.
+     */
+    private static Configurations loadConfiguration(String path) {
+        try (Reader reader = new FileReader(path)) {
             return gson.fromJson(reader, Configurations.class); // Deserialize JSON to Configuration object
         } catch (FileNotFoundException e) {
             System.out.println("No existing configuration file found.");
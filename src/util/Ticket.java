@@ -1,30 +1,170 @@
 package util;
 
-public class Ticket {
-    private String ticketID;
-    private String vendorID;
-    public Ticket(String ticketID, String vendorID) {
-        this.ticketID = ticketID;
-        this.vendorID = vendorID;
+/**
+ * The Ticket class represents one ticket released by a vendor.
+ * A ticket is immutable and holds a single packed long id encoding the index of the
+ * vendor that released it and the vendor's sequence number for it, handed out by a
+ * {@link TicketIdGenerator}, so a ticket costs one small object and no strings. The ticket
+ * and vendor IDs are rendered as text only when they are logged or displayed.
+ */
+public final class Ticket {
+
+    /**
+     * Number of low bits of the id holding the sequence number.
+     */
+    private static final int SEQUENCE_BITS = 48;
+
+    /**
+     * Mask selecting the sequence number of an id.
+     */
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+
+    /**
+     * Largest sequence number that fits in an id.
+     */
+    public static final long MAX_SEQUENCE = SEQUENCE_MASK;
+
+    /**
+     * Largest vendor index that fits in an id.
+     */
+    public static final int MAX_VENDOR_INDEX = (1 << (Long.SIZE - SEQUENCE_BITS)) - 1;
+
+    /**
+     * The packed id of the ticket.
+     */
+    private final long id;
+
+    /**
+     * Constructor to create a ticket from a packed id.
+     *
+     * @param id the packed id, see {@link #pack(int, long)}
+     */
+    public Ticket(long id) {
+        this.id = id;
     }
 
-    public String getTicketID() {
-        return ticketID;
+    /**
+     * Constructor to create a ticket for a vendor and sequence number.
+     *
+     * @param vendorIndex the index of the vendor releasing the ticket
+     * @param sequence    the vendor's sequence number for the ticket
+     */
+    public Ticket(int vendorIndex, long sequence) {
+        this(pack(vendorIndex, sequence));
     }
 
-    public void setTicketID(String ticketID) {
-        this.ticketID = ticketID;
+    /**
+     * Packs a vendor index and sequence number into a ticket id.
+     * The vendor index takes the high 16 bits and the sequence number the low 48 bits.
+     *
+     * @param vendorIndex the index of the vendor, from 0 to {@link #MAX_VENDOR_INDEX}
+     * @param sequence    the vendor's sequence number for the ticket, from 0 to {@link #MAX_SEQUENCE}
+     * @return the packed id
+     * @throws IllegalArgumentException if the vendor index or sequence number does not fit
+     */
+    public static long pack(int vendorIndex, long sequence) {
+        if (vendorIndex < 0 || vendorIndex > MAX_VENDOR_INDEX) {
+            throw new IllegalArgumentException("Vendor index out of range: " + vendorIndex);
+        }
+        if (sequence < 0 || sequence > SEQUENCE_MASK) {
+            throw new IllegalArgumentException("Sequence number out of range: " + sequence);
+        }
+        return ((long) vendorIndex << SEQUENCE_BITS) | sequence;
     }
 
-    public String getVendorID() {
-        return vendorID;
+    /**
+     * Gets the vendor index held in a packed id, without creating a ticket.
+     *
+     * @param id the packed id
+     * @return the vendor index
+     */
+    public static int vendorIndexOf(long id) {
+        return (int) (id >>> SEQUENCE_BITS);
+    }
+
+    /**
+     * Gets the sequence number held in a packed id, without creating a ticket.
+     *
+     * @param id the packed id
+     * @return the sequence number
+     */
+    public static long sequenceOf(long id) {
+        return id & SEQUENCE_MASK;
+    }
+
+    /**
+     * Gets the packed id of the ticket.
+     *
+     * @return the packed id
+     */
+    public long getId() {
+        return id;
     }
 
-    public void setVendorID(String vendorID) {
-        this.vendorID = vendorID;
+    /**
+     * Gets the index of the vendor that released the ticket.
+     *
+     * @return the vendor index
+     */
+    public int getVendorIndex() {
+        return (int) (id >>> SEQUENCE_BITS);
     }
 
+    /**
+     * Gets the vendor's sequence number for the ticket.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequenceOf(id);
+    }
 
+    /**
+     * Renders the ticket ID for logging and display.
+     *
+     * @return the ticket ID, for example "ID 42"
+     */
+    public String getTicketID() {
+        return "ID " + getSequence();
+    }
 
+    /**
+     * Renders the vendor ID for logging and display. It matches the name of the vendor's thread.
+     *
+     * @return the vendor ID, for example "Vendor 3"
+     */
+    public String getVendorID() {
+        return "Vendor " + getVendorIndex();
+    }
 
+    /**
+     * Compares tickets by their packed id.
+     *
+     * @param o the object to compare with
+     * @return true if o is a ticket with the same id
+     */
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Ticket && ((Ticket) o).id == id;
+    }
+
+    /**
+     * Computes the hash code from the packed id.
+     *
+     * @return the hash code
+     */
+    @Override
+    public int hashCode() {
+        return Long.hashCode(id);
+    }
+
+    /**
+     * Converts the ticket to a string for logging and display.
+     *
+     * @return a string with the vendor and ticket IDs
+     */
+    @Override
+    public String toString() {
+        return getVendorID() + " " + getTicketID();
+    }
 }
@@ -0,0 +1,184 @@
+package util;
+
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * The TicketIdGenerator class hands out the sequence numbers of ticket ids, in the style of
+ * Snowflake ids: the sequence is a clock reading in milliseconds since {@link #EPOCH_MILLIS} with
+ * {@link #IDS_PER_MILLI_BITS} bits of counter below it, and {@link Ticket#pack(int, long)} puts
+ * the vendor index above it. Sequence numbers only ever grow, so ids are unique across vendors,
+ * threads and restarts.
+ *
+ * Sequence numbers come from one AtomicLong, leased in blocks to each thread, so a thread takes
+ * the next number of its block without a lock or an allocation and only touches the shared
+ * counter once per block. A lease never starts below the current clock reading. A busy sale can
+ * take numbers faster than {@code 2^IDS_PER_MILLI_BITS} per millisecond and run ahead of the
+ * clock; the clock catches up once it slows down.
+ *
+ * A clock that steps back is counted and otherwise ignored, as the counter never goes back. A
+ * restart gets ids above the previous run's from the clock, unless the previous run was still
+ * ahead of the clock when it stopped or the clock stepped back across the restart.
+ * {@link #resumeAfter(long)} covers both, given the highest sequence number recovered from the journal.
+ *
+ * The 48 bits of sequence leave 38 bits of milliseconds, so the generator lasts until
+ * {@link #EXHAUSTED_AT}, in September 2034, or earlier by as much as a sale has run ahead of the
+ * clock. From then on it throws rather than wrap around to ids already handed out.
+ */
+public final class TicketIdGenerator {
+
+    /**
+     * The start of the clock readings in sequence numbers, 2026-01-01T00:00:00Z.
+     */
+    public static final long EPOCH_MILLIS = Instant.parse("2026-01-01T00:00:00Z").toEpochMilli();
+
+    /**
+     * Bits of counter below the clock reading: 1024 sequence numbers a millisecond before a sale
+     * runs ahead of the clock, leaving 38 bits of milliseconds, about 8.7 years from the epoch.
+     */
+    public static final int IDS_PER_MILLI_BITS = 10;
+
+    /**
+     * The clock reading at which the milliseconds no longer fit in a sequence number, 2034-09-17T10:58:26.944Z.
+     */
+    public static final Instant EXHAUSTED_AT =
+            Instant.ofEpochMilli(EPOCH_MILLIS + ((Ticket.MAX_SEQUENCE + 1) >> IDS_PER_MILLI_BITS));
+
+    /**
+     * Sequence numbers leased to a thread at a time.
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * The generator vendors use unless they are given one.
+     */
+    private static final TicketIdGenerator SHARED = new TicketIdGenerator(System::currentTimeMillis);
+
+    /**
+     * The next sequence number not yet leased to a thread.
+     */
+    private final AtomicLong next = new AtomicLong();
+
+    /**
+     * The clock, in milliseconds since the Unix epoch.
+     */
+    private final LongSupplier clock;
+
+    /**
+     * The latest clock reading seen by a lease, to notice the clock stepping back.
+     */
+    private final AtomicLong lastMillis = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * Number of times the clock was seen stepping back.
+     */
+    private final AtomicLong clockRegressions = new AtomicLong();
+
+    /**
+     * The block leased to each thread: the next sequence number to hand out and the end of the block.
+     */
+    private final ThreadLocal<long[]> blocks = ThreadLocal.withInitial(() -> new long[2]);
+
+    /**
+     * Constructor to create a generator reading the given clock.
+     *
+     * @param clock the clock, in milliseconds since the Unix epoch, such as {@link System#currentTimeMillis()}
+     */
+    public TicketIdGenerator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Gets the generator vendors use unless they are given one, reading the system clock.
+     *
+     * @return the shared generator
+     */
+    public static TicketIdGenerator shared() {
+        return SHARED;
+    }
+
+    /**
+     * Hands out the next sequence number of the current thread's block, leasing a new block
+     * when it is used up.
+     *
+     * @return a sequence number no other call of this generator returns
+     * @throws IllegalStateException if sequence numbers are exhausted, see {@link #EXHAUSTED_AT}
+     */
+    public long nextSequence() {
+        long[] block = blocks.get();
+        if (block[0] == block[1]) {
+            lease(block);
+        }
+        return block[0]++;
+    }
+
+    /**
+     * Leases the next block of sequence numbers, starting no lower than the current clock reading.
+     *
+     * @param block the block of the current thread, overwritten with the new block
+     * @throws IllegalStateException if the block would not fit in a ticket id, from {@link #EXHAUSTED_AT} on
+     */
+    private void lease(long[] block) {
+        long floor = floor();
+        long start;
+        long current;
+        do {
+            current = next.get();
+            start = Math.max(current, floor);
+            if (start > Ticket.MAX_SEQUENCE - BLOCK_SIZE + 1) {
+                throw new IllegalStateException("Ticket sequence numbers exhausted at " + start + ", ids last until " + EXHAUSTED_AT);
+            }
+        } while (!next.compareAndSet(current, start + BLOCK_SIZE));
+        block[0] = start;
+        block[1] = start + BLOCK_SIZE;
+    }
+
+    /**
+     * Reads the clock as the lowest sequence number of the current millisecond, and counts the clock stepping back.
+     *
+     * @return the clock reading in sequence numbers
+     */
+    private long floor() {
+        // Read the latest reading before the clock, so a reading raced past by another thread is not a regression
+        long last = lastMillis.get();
+        long millis = clock.getAsLong();
+        if (millis >= last) {
+            lastMillis.accumulateAndGet(millis, Math::max);
+        } else if (lastMillis.compareAndSet(last, millis)) {
+            // Follow the clock back, so one step back counts once; the counter carries on from where it was
+            clockRegressions.incrementAndGet();
+        }
+        return Math.max(0, millis - EPOCH_MILLIS) << IDS_PER_MILLI_BITS;
+    }
+
+    /**
+     * Continues after the sequence numbers handed out before a restart, so none is handed out again
+     * even if the previous run was ahead of the clock or the clock has stepped back since.
+     * Blocks already leased to threads keep their numbers, so call it before tickets are released.
+     *
+     * @param lastSequence the highest sequence number handed out before the restart
+     */
+    public void resumeAfter(long lastSequence) {
+        next.accumulateAndGet(lastSequence + 1, Math::max);
+    }
+
+    /**
+     * Gets how far the leased sequence numbers are ahead of the clock.
+     *
+     * @return the milliseconds the counter is ahead of the clock, 0 if it is not
+     */
+    public long getRunAheadMillis() {
+        long nowMillis = clock.getAsLong() - EPOCH_MILLIS;
+        return Math.max(0, (next.get() >> IDS_PER_MILLI_BITS) - nowMillis);
+    }
+
+    /**
+     * Gets the number of times the clock was seen stepping back.
+     *
+     * @return the number of clock regressions
+     */
+    public long getClockRegressions() {
+        return clockRegressions.get();
+    }
+}
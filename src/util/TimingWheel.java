@@ -0,0 +1,352 @@
+package util;
+
+import java.util.Arrays;
+import java.util.function.LongConsumer;
+
+/**
+ * The TimingWheel class is a hierarchical timing wheel: it schedules timers that carry a long
+ * payload to expire at a tick, and hands their payloads back when the clock passes that tick.
+ *
+ * There are four levels of 64 slots. The first level has one slot per tick; each higher level
+ * has one slot per revolution of the level below, so the wheel covers 2^24 ticks. A timer is
+ * placed in the lowest level whose span holds its delay and moves down one level each time
+ * the level below turns over, until it expires from the first level. Scheduling and cancelling
+ * are O(1), and advancing the clock only visits the slot of each tick passed and the slots
+ * cascading at that tick, never every timer. Timers further out than the span wait in the top
+ * level and are placed again when they come round.
+ *
+ * Timers are kept in parallel primitive arrays linked into per-slot doubly linked lists, so a
+ * timer costs 32 bytes and no object, and millions can be outstanding. A timer is referred to
+ * by a handle holding its entry and a generation, so a stale handle to a reused entry is
+ * recognised. The wheel is not thread-safe: the caller guards it with its own lock.
+ */
+public class TimingWheel {
+
+    /**
+     * Number of bits of a tick selecting the slot on one level.
+     */
+    private static final int SLOT_BITS = 6;
+
+    /**
+     * Number of slots on each level.
+     */
+    private static final int SLOTS = 1 << SLOT_BITS;
+
+    /**
+     * Mask selecting the slot on one level.
+     */
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    /**
+     * Number of levels.
+     */
+    private static final int LEVELS = 4;
+
+    /**
+     * Longest delay the levels cover, in ticks.
+     */
+    public static final long MAX_DELAY_TICKS = (1L << (SLOT_BITS * LEVELS)) - 1;
+
+    /**
+     * Marks the end of a list, an empty slot or an entry not in any slot.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * First entry of each slot, level by level.
+     */
+    private final int[] heads = new int[LEVELS * SLOTS];
+
+    /**
+     * Payload of each entry.
+     */
+    private long[] payloads;
+
+    /**
+     * Tick each entry expires at.
+     */
+    private long[] expiries;
+
+    /**
+     * Next entry in the same slot, or the next free entry.
+     */
+    private int[] next;
+
+    /**
+     * Previous entry in the same slot.
+     */
+    private int[] previous;
+
+    /**
+     * Slot each entry is in, NONE while it is free.
+     */
+    private int[] slots;
+
+    /**
+     * Generation of each entry, increased every time it is freed.
+     */
+    private int[] generations;
+
+    /**
+     * First free entry, reused before the arrays grow.
+     */
+    private int free = NONE;
+
+    /**
+     * Number of entries ever used, the arrays are free above it.
+     */
+    private int used = 0;
+
+    /**
+     * Number of timers scheduled.
+     */
+    private int size = 0;
+
+    /**
+     * The next tick to expire: every timer due before it has been handed back.
+     */
+    private long currentTick;
+
+    /**
+     * Constructor to create an empty wheel.
+     *
+     * @param startTick       the first tick of the clock
+     * @param initialCapacity the number of timers to make room for up front
+     */
+    public TimingWheel(long startTick, int initialCapacity) {
+        int capacity = Math.max(16, initialCapacity);
+        this.payloads = new long[capacity];
+        this.expiries = new long[capacity];
+        this.next = new int[capacity];
+        this.previous = new int[capacity];
+        this.slots = new int[capacity];
+        this.generations = new int[capacity];
+        this.currentTick = startTick;
+        Arrays.fill(heads, NONE);
+    }
+
+    /**
+     * Schedules a timer.
+     *
+     * @param payload    the value handed back when the timer expires
+     * @param expiryTick the tick the timer expires at; a tick already passed expires at the next advance
+     * @return the handle of the timer, used to cancel it
+     */
+    public long schedule(long payload, long expiryTick) {
+        int entry = allocate();
+        payloads[entry] = payload;
+        expiries[entry] = Math.max(expiryTick, currentTick);
+        link(entry);
+        size++;
+        return ((long) generations[entry] << 32) | entry;
+    }
+
+    /**
+     * Checks whether a timer is still scheduled.
+     *
+     * @param handle the handle of the timer
+     * @return true if the timer has neither expired nor been cancelled
+     */
+    public boolean isScheduled(long handle) {
+        int entry = (int) handle;
+        return entry >= 0 && entry < used && slots[entry] != NONE && generations[entry] == (int) (handle >>> 32);
+    }
+
+    /**
+     * Gets the payload of a scheduled timer.
+     *
+     * @param handle the handle of the timer
+     * @return the payload
+     * @throws IllegalStateException if the timer is not scheduled
+     */
+    public long payload(long handle) {
+        if (!isScheduled(handle)) {
+            throw new IllegalStateException("Timer is not scheduled: " + handle);
+        }
+        return payloads[(int) handle];
+    }
+
+    /**
+     * Cancels a timer.
+     *
+     * @param handle the handle of the timer
+     * @return true if the timer was cancelled, false if it had already expired or been cancelled
+     */
+    public boolean cancel(long handle) {
+        if (!isScheduled(handle)) {
+            return false;
+        }
+        int entry = (int) handle;
+        unlink(entry);
+        release(entry);
+        size--;
+        return true;
+    }
+
+    /**
+     * Advances the clock to a tick, handing back the payload of every timer due up to and including it.
+     *
+     * @param tick    the tick reached
+     * @param expired receives the payload of each expired timer
+     * @return the number of timers expired
+     */
+    public int advanceTo(long tick, LongConsumer expired) {
+        int count = 0;
+        while (currentTick <= tick) {
+            // Move the timers of the higher levels down as the levels below turn over
+            for (int level = 1; level < LEVELS && (currentTick & ((1L << (SLOT_BITS * level)) - 1)) == 0; level++) {
+                cascade(level * SLOTS + (int) ((currentTick >>> (SLOT_BITS * level)) & SLOT_MASK));
+            }
+            int slot = (int) (currentTick & SLOT_MASK);
+            int entry = heads[slot];
+            heads[slot] = NONE;
+            while (entry != NONE) {
+                int following = next[entry];
+                long payload = payloads[entry];
+                release(entry);
+                size--;
+                count++;
+                expired.accept(payload);
+                entry = following;
+            }
+            currentTick++;
+        }
+        return count;
+    }
+
+    /**
+     * Cancels every timer, handing back their payloads. Visits every slot, so it is only meant for shutdown.
+     *
+     * @param cancelled receives the payload of each cancelled timer
+     * @return the number of timers cancelled
+     */
+    public int cancelAll(LongConsumer cancelled) {
+        int count = 0;
+        for (int slot = 0; slot < heads.length; slot++) {
+            int entry = heads[slot];
+            heads[slot] = NONE;
+            while (entry != NONE) {
+                int following = next[entry];
+                long payload = payloads[entry];
+                release(entry);
+                count++;
+                cancelled.accept(payload);
+                entry = following;
+            }
+        }
+        size = 0;
+        return count;
+    }
+
+    /**
+     * Gets the number of timers scheduled.
+     *
+     * @return the number of timers that have neither expired nor been cancelled
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the next tick to expire.
+     *
+     * @return the tick the next advance starts at
+     */
+    public long getCurrentTick() {
+        return currentTick;
+    }
+
+    /**
+     * Places the timers of a higher level slot again, relative to the current tick.
+     *
+     * @param slot the slot to empty
+     */
+    private void cascade(int slot) {
+        int entry = heads[slot];
+        heads[slot] = NONE;
+        while (entry != NONE) {
+            int following = next[entry];
+            link(entry);
+            entry = following;
+        }
+    }
+
+    /**
+     * Adds an entry to the slot its expiry falls in: the lowest level whose span holds its delay.
+     *
+     * @param entry the entry to add
+     */
+    private void link(int entry) {
+        long expiry = expiries[entry];
+        long delay = expiry - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delay >= (1L << (SLOT_BITS * (level + 1)))) {
+            level++;
+        }
+        if (delay > MAX_DELAY_TICKS) {
+            expiry = currentTick + MAX_DELAY_TICKS; // Park it in the top level until it comes round again
+        }
+        int slot = level * SLOTS + (int) ((expiry >>> (SLOT_BITS * level)) & SLOT_MASK);
+        int head = heads[slot];
+        next[entry] = head;
+        previous[entry] = NONE;
+        if (head != NONE) {
+            previous[head] = entry;
+        }
+        heads[slot] = entry;
+        slots[entry] = slot;
+    }
+
+    /**
+     * Removes an entry from its slot.
+     *
+     * @param entry the entry to remove
+     */
+    private void unlink(int entry) {
+        int before = previous[entry];
+        int after = next[entry];
+        if (before == NONE) {
+            heads[slots[entry]] = after;
+        } else {
+            next[before] = after;
+        }
+        if (after != NONE) {
+            previous[after] = before;
+        }
+    }
+
+    /**
+     * Takes a free entry, growing the arrays when every entry is in use.
+     *
+     * @return the entry
+     */
+    private int allocate() {
+        if (free != NONE) {
+            int entry = free;
+            free = next[entry];
+            return entry;
+        }
+        if (used == payloads.length) {
+            int capacity = payloads.length * 2;
+            payloads = Arrays.copyOf(payloads, capacity);
+            expiries = Arrays.copyOf(expiries, capacity);
+            next = Arrays.copyOf(next, capacity);
+            previous = Arrays.copyOf(previous, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            generations = Arrays.copyOf(generations, capacity);
+        }
+        return used++;
+    }
+
+    /**
+     * Returns an entry to the free list and invalidates its handles.
+     *
+     * @param entry the entry to free
+     */
+    private void release(int entry) {
+        slots[entry] = NONE;
+        generations[entry]++;
+        next[entry] = free;
+        free = entry;
+    }
+}
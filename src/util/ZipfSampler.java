@@ -0,0 +1,64 @@
+package util;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The ZipfSampler class draws ranks from a Zipf distribution, to spread demand over many
+ * events the way real demand is spread: a few events are very popular and most get little
+ * interest. Rank k, counting from 0, is drawn with a probability proportional to
+ * 1 / (k + 1)^exponent; an exponent of 0 spreads the draws evenly and 1 is the classic skew.
+ *
+ * The cumulative probabilities are computed once, so a draw is a binary search. The sampler
+ * is immutable and draws with {@link ThreadLocalRandom}, so threads can share it.
+ */
+public final class ZipfSampler {
+
+    /**
+     * Cumulative probability of each rank, the last one 1.
+     */
+    private final double[] cumulative;
+
+    /**
+     * Constructor to create a sampler.
+     *
+     * @param ranks    the number of ranks, at least 1
+     * @param exponent the skew of the distribution, 0 or greater
+     */
+    public ZipfSampler(int ranks, double exponent) {
+        if (ranks <= 0 || exponent < 0) {
+            throw new IllegalArgumentException("A Zipf distribution needs at least one rank and a non-negative exponent");
+        }
+        cumulative = new double[ranks];
+        double sum = 0;
+        for (int k = 0; k < ranks; k++) {
+            sum += 1 / Math.pow(k + 1, exponent);
+            cumulative[k] = sum;
+        }
+        for (int k = 0; k < ranks; k++) {
+            cumulative[k] /= sum;
+        }
+        cumulative[ranks - 1] = 1; // Rounding must not leave a gap at the top
+    }
+
+    /**
+     * Draws a rank.
+     *
+     * @return the rank, 0 for the most popular
+     */
+    public int sample() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int index = Arrays.binarySearch(cumulative, u);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Gets the probability of drawing a rank.
+     *
+     * @param rank the rank, 0 for the most popular
+     * @return the probability
+     */
+    public double probability(int rank) {
+        return rank == 0 ? cumulative[0] : cumulative[rank] - cumulative[rank - 1];
+    }
+}